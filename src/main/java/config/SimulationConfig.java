@@ -0,0 +1,32 @@
+package config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import logic.RealTimeMode;
+import logic.SimulationExecutor;
+
+@Configuration
+public class SimulationConfig {
+
+	@Bean(destroyMethod = "shutdown")
+	public SimulationExecutor simulationExecutor(
+			@Value("${simulation.concurrency:0}") int concurrency, // 0 uses the number of available processors
+			@Value("${simulation.queueCapacity:100}") int queueCapacity,
+			@Value("${simulation.retainedJobs:100}") int retainedJobs,
+			@Value("${simulation.memoryBudget:0}") long memoryBudget, // bytes, 0 uses half of the maximum heap size
+			@Value("${simulation.cpuBudget:0}") double cpuBudget, // CPU seconds per simulation, 0 for no limit
+			@Value("${simulation.realTimeMode:pool}") String realTimeMode, // pool, timer or virtual
+			@Value("${simulation.timerThreads:2}") int timerThreads,
+			@Value("${simulation.maxRealTimeJobs:10000}") int maxRealTimeJobs) {
+		if (concurrency <= 0) {
+			concurrency = Runtime.getRuntime().availableProcessors();
+		}
+		if (memoryBudget <= 0) {
+			memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+		}
+		return new SimulationExecutor(concurrency, queueCapacity, retainedJobs, memoryBudget, cpuBudget,
+				RealTimeMode.valueOf(realTimeMode.toUpperCase()), timerThreads, maxRealTimeJobs);
+	}
+}
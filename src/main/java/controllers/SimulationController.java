@@ -1,10 +1,15 @@
 package controllers;
 
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -12,10 +17,20 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import entities.Floorplan;
 import logic.Input;
+import logic.CostEstimate;
+import logic.CostEstimator;
+import logic.JobStatus;
+import logic.PlaybackClock;
+import logic.SimulationExecutor;
+import logic.SimulationJob;
 import logic.Simulator;
 import main.Resources;
+import script.Script;
 
 @RestController
 @RequestMapping("/api/simulation/")
@@ -24,6 +39,9 @@ public class SimulationController {
 	
 	@Autowired
 	private NotificationController notificationController;
+	
+	@Autowired(required = false)
+	private SimulationExecutor simulationExecutor;
 
 	@PostMapping("/input") // requires the prior instantiation of a Floorplan object
 	public String postInput(@RequestBody String inputString) {
@@ -35,7 +53,7 @@ public class SimulationController {
 		
 		// Instantiate a Input object
 		Input input = new Input();
-		input.setInput(inputString);
+		input.setInput(unwrapJsonInput(inputString));
 		
 		// Test agent instructions input
 		String testResult = input.test();
@@ -47,30 +65,204 @@ public class SimulationController {
 		return testResult;
 	}
 	
+	@PostMapping("/input/stream") // parses the request body while it is being received. The input text is not retained.
+	public String postInputStream(Reader inputReader) {
+		// Test for prior instantiation of a Floorplan object
+		if (Resources.getFloorplan() == null) {
+			System.out.println("ERROR: no floorplan has been instantiated");
+			return "ERROR: no floorplan has been instantiated";
+		}
+		
+		// Test agent instructions input
+		Input input = new Input();
+		String testResult = input.test(inputReader);
+		if (testResult.equals("consumed")) {
+			Resources.setInput(input);
+		} else {
+			System.out.println(testResult);
+		}
+		return testResult;
+	}
+	
+	// Clients may post the input wrapped in a JSON object, e.g. {"input":"agent(John_Doe){...}"}
+	private String unwrapJsonInput(String inputString) {
+		if (!inputString.trim().startsWith("{")) {
+			return inputString;
+		}
+		try {
+			JsonNode inputNode = new ObjectMapper().readTree(inputString).get("input");
+			if (inputNode != null && inputNode.isTextual()) {
+				return inputNode.asText();
+			}
+		} catch (JsonProcessingException e) {
+			// not JSON, parse the body as script
+		}
+		return inputString;
+	}
+	
 	@GetMapping("/Input")
 	public @ResponseBody String getInput() {
+		if (Resources.getInput().getInput() == null) {
+			// posted to /input/stream, which parses the input without keeping it
+			return "the input has been posted as a stream and its text has not been retained";
+		}
 		return Resources.getInput().getInput(); 
 	}
 	
-	@PostMapping("/simulator")
-	public String postSimulator(@RequestBody Simulator simulator) throws MqttPersistenceException, InterruptedException, MqttException, JsonProcessingException {
+	@PostMapping("/simulator") // runs the simulation and returns when it has ended
+	public String postSimulator(@RequestBody Simulator simulator) throws InterruptedException {
+		String testResult = testSimulator(simulator);
+		if (!testResult.equals("consumed")) {
+			return testResult;
+		}
+		
+		SimulationJob job;
+		if (simulationExecutor == null) {
+			// no worker pool outside of the web server, e.g. when started with command line arguments
+			prepareSimulator(simulator);
+			job = new SimulationJob(0, simulator, getFloorplan(simulator), getScript(simulator), null);
+			job.run();
+		} else {
+			try {
+				job = submitJob(simulator);
+			} catch (RejectedExecutionException e) {
+				System.out.println("ERROR: " + e.getMessage());
+				return "ERROR: " + e.getMessage();
+			}
+			job.await();
+		}
+		
+		if (job.getStatus() == JobStatus.FAILED) {
+			return job.getError();
+		}
+		if (job.getStatus() == JobStatus.CANCELLED) {
+			return "ERROR: the simulation has been cancelled";
+		}
+		return testResult;
+	}
+	
+	@PostMapping("/jobs") // queues the simulation and returns the ID of its job immediately
+	public String postJob(@RequestBody Simulator simulator) {
+		String testResult = testSimulator(simulator);
+		if (!testResult.equals("consumed")) {
+			return testResult;
+		}
+		if (simulationExecutor == null) {
+			return "ERROR: simulation jobs are not available";
+		}
+		
+		try {
+			return String.valueOf(submitJob(simulator).getId());
+		} catch (RejectedExecutionException e) {
+			System.out.println("ERROR: " + e.getMessage());
+			return "ERROR: " + e.getMessage();
+		}
+	}
+	
+	@GetMapping("/estimate") // predicted cost of simulating the posted floorplan and input
+	public @ResponseBody CostEstimate getEstimate() {
+		if (Resources.getFloorplan() == null || Resources.getInput() == null) {
+			return null;
+		}
+		return CostEstimator.estimate(Resources.getFloorplan(), Resources.getInput().getScript());
+	}
+	
+	@GetMapping("/jobs")
+	public @ResponseBody Collection<SimulationJob> getJobs() {
+		if (simulationExecutor == null) {
+			return new ArrayList<SimulationJob>();
+		}
+		return simulationExecutor.getJobs();
+	}
+	
+	@GetMapping("/jobs/{id}")
+	public @ResponseBody SimulationJob getJob(@PathVariable long id) {
+		if (simulationExecutor == null) {
+			return null;
+		}
+		return simulationExecutor.getJob(id);
+	}
+	
+	@DeleteMapping("/jobs/{id}") // cancels the job
+	public String deleteJob(@PathVariable long id) {
+		if (simulationExecutor == null || !simulationExecutor.cancel(id)) {
+			return "ERROR: no queued or running job exists with the ID specified";
+		}
+		return "cancelled";
+	}
+	
+	@PostMapping("/jobs/{id}/pause") // pauses a running real-time simulation
+	public String pauseJob(@PathVariable long id) {
+		PlaybackClock playback = getPlayback(id);
+		if (playback == null) {
+			return "ERROR: no running real-time simulation exists with the ID specified";
+		}
+		playback.pause();
+		return "consumed";
+	}
+	
+	@PostMapping("/jobs/{id}/resume")
+	public String resumeJob(@PathVariable long id) {
+		PlaybackClock playback = getPlayback(id);
+		if (playback == null) {
+			return "ERROR: no running real-time simulation exists with the ID specified";
+		}
+		playback.resume();
+		return "consumed";
+	}
+	
+	@PostMapping("/jobs/{id}/relativeTime") // changes the speed of a running real-time simulation
+	public String postJobRelativeTime(@PathVariable long id, @RequestBody double relativeTime) {
+		PlaybackClock playback = getPlayback(id);
+		if (playback == null) {
+			return "ERROR: no running real-time simulation exists with the ID specified";
+		}
+		if (relativeTime <= 0) {
+			return "ERROR: \"relativeTime\" must be positive";
+		}
+		playback.setRelativeTime(relativeTime);
+		return "consumed";
+	}
+	
+	private PlaybackClock getPlayback(long id) {
+		SimulationJob job = simulationExecutor == null ? null : simulationExecutor.getJob(id);
+		return job == null ? null : job.getPlayback();
+	}
+	
+	// Tests that the input has been instantiated, unless a recording is replayed, and that the simulator is valid
+	private String testSimulator(Simulator simulator) {
 		// Test for prior instantiation of a Input object
-		if (Resources.getInput() == null) {
+		if (simulator.getReplayFileName() == null && Resources.getInput() == null) {
 			System.out.println("ERROR: no instructions input has been instantiated");
 			return "ERROR: no instructions input has been instantiated";
 		}
 		
 		// Test simulator input
 		String testResult = simulator.test();
-		if (testResult.equals("consumed")) {
-			Resources.setSimulator(simulator);
-			Resources.getSimulator().setNotification(notificationController);
-			Resources.getSimulator().startSimulator();
-		} else {
+		if (!testResult.equals("consumed")) {
 			System.out.println(testResult);
 		}
 		return testResult;
-		
+	}
+	
+	// The run uses the floorplan and input posted before the simulator, even if they are replaced while it runs
+	private SimulationJob submitJob(Simulator simulator) {
+		prepareSimulator(simulator);
+		return simulationExecutor.submit(simulator, getFloorplan(simulator), getScript(simulator));
+	}
+	
+	// A replay does not simulate the posted floorplan and input
+	private Floorplan getFloorplan(Simulator simulator) {
+		return simulator.getReplayFileName() == null ? Resources.getFloorplan() : null;
+	}
+	
+	private Script getScript(Simulator simulator) {
+		return simulator.getReplayFileName() == null ? Resources.getInput().getScript() : null;
+	}
+	
+	private void prepareSimulator(Simulator simulator) {
+		Resources.setSimulator(simulator);
+		simulator.setNotification(notificationController);
 	}
 	
 	@GetMapping("/simulator")
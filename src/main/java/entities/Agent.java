@@ -11,6 +11,8 @@ public class Agent {
 	private double speed; // meter per second
 	
 	@JsonIgnore private Position position;
+	@JsonIgnore private Population population; // null if the agent is not member of a population
+	@JsonIgnore private int memberNumber;
 	
 	//Constructors
 	public Agent(String id, Position point, double speed) {
@@ -58,6 +60,21 @@ public class Agent {
 	public void setSpeed(double speed) {
 		this.speed = speed;
 	}
+
+	@JsonIgnore
+	public Population getPopulation() {
+		return population;
+	}
+
+	@JsonIgnore
+	public int getMemberNumber() {
+		return memberNumber;
+	}
+
+	public void setPopulation(Population population, int memberNumber) {
+		this.population = population;
+		this.memberNumber = memberNumber;
+	}
 	
 	
 
@@ -0,0 +1,10 @@
+package entities;
+
+/**
+ * When a triggered passive sensor emits readings.
+ */
+public enum Emission {
+	PERIODIC, // every triggerFrequency while triggered
+	ON_CHANGE, // once when the state has changed
+	HEARTBEAT // once when the state has changed, then every heartbeatPeriods * triggerFrequency while it is unchanged
+}
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import geo.Position;
 
 public class Floorplan {
@@ -16,6 +18,9 @@ public class Floorplan {
 	private ArrayList<SensorActive> activeSensors;
 	private ArrayList<SensorPassive> passiveSensors;
 	private ArrayList<Entity> entities;
+	private ArrayList<Population> populations = new ArrayList<Population>();
+	
+	@JsonIgnore private volatile ArrayList<Agent> allAgents; // cached, as passive sensors iterate all agents whenever they are updated
 	
 	public Floorplan(int tileSideLength, int width, int height, ArrayList<Agent> agents, ArrayList<Position> walls, ArrayList<SensorActive> activeSensors, ArrayList<SensorPassive> passiveSensors, ArrayList<Entity> entities) {
 		this.tileSideLength = tileSideLength;
@@ -117,12 +122,53 @@ public class Floorplan {
 			}
 		}
 		
-		// test to ensure that agents have unique IDs
+		//--- populations ---//
+		Set<String> populationIds = new HashSet<String>();
+		for (Population population : populations) {
+			// test that count is positive
+			if (population.getCount() <= 0) {
+				return "ERROR: the \"count\" of the population "+population.getId()+" has not been defined or is not positive";
+			}
+			// test that spawnArea has been defined and is within the grid
+			if (population.getSpawnArea() == null || population.getSpawnArea().isEmpty()) {
+				return "ERROR: the \"spawnArea\" of the population "+population.getId()+" has not been defined";
+			}
+			for (Position position : population.getSpawnArea()) {
+				if (!isWithin(position)) {
+					return "ERROR: the spawn area of the population "+population.getId()+" at "+position+" is not within the grid";
+				}
+				if (walls.contains(position)) {
+					return "ERROR: the spawn area of the population "+population.getId()+" contains the non-walkable tile "+position;
+				}
+				for (Entity entity : getAllEntities()) {
+					if (entity.getWalkable() == false && entity.getPhysicalArea().contains(position)) {
+						return "ERROR: the spawn area of the population "+population.getId()+" contains the non-walkable tile "+position;
+					}
+				}
+			}
+			// test that speeds are positive and form a range
+			if (population.getMinSpeed() <= 0 || population.getMaxSpeed() < population.getMinSpeed()) {
+				return "ERROR: \"minSpeed\" and \"maxSpeed\" of the population "+population.getId()+" must be positive with minSpeed not above maxSpeed";
+			}
+			// test that variations are within range
+			if (population.getWaitVariation() < 0 || population.getWaitVariation() >= 1) {
+				return "ERROR: \"waitVariation\" of the population "+population.getId()+" must be at least 0 and below 1";
+			}
+			if (population.getTargetVariation() < 0) {
+				return "ERROR: \"targetVariation\" of the population "+population.getId()+" has been defined as a negative integer";
+			}
+			populationIds.add(population.getId());
+		}
+		if (populationIds.size() < populations.size()) {
+			return "ERROR: the IDs of the populations are not unique";
+		}
+		
+		// test to ensure that agents, including members of populations, have unique IDs
 		Set<String> uniquesIds = new HashSet<String>();
-		for (Agent agent : agents) {
+		for (Agent agent : getAllAgents()) {
 			uniquesIds.add(agent.getId());
 		}
-		if(uniquesIds.size() < agents.size()){
+		if(uniquesIds.size() < getAllAgents().size()){
 			return "ERROR: the IDs of the agents are not unique";
 		}
 
@@ -176,6 +222,13 @@ public class Floorplan {
 			if (passiveSensor.getTriggerFrequency() == 0) {
 				return "ERROR: \"triggerFrequency\" of the passive sensor "+passiveSensor.getName()+" has not been defined or has its value defined as zero";
 			}
+			// test that the emission is defined, with a positive number of heartbeat periods
+			if (passiveSensor.getEmission() == null) {
+				return "ERROR: \"emission\" of the passive sensor "+passiveSensor.getName()+" must be PERIODIC, ON_CHANGE or HEARTBEAT";
+			}
+			if (passiveSensor.getEmission() == Emission.HEARTBEAT && passiveSensor.getHeartbeatPeriods() < 1) {
+				return "ERROR: \"heartbeatPeriods\" of the passive sensor "+passiveSensor.getName()+" must be at least 1";
+			}
 		}
 		return "consumed";
 	}
@@ -192,6 +245,34 @@ public class Floorplan {
 		return allSensors;
 	}
 	
+	// Agents defined individually followed by the members of all populations. The list is only cached once it is
+	// complete, as runs and estimates may ask for it at the same time.
+	@JsonIgnore
+	public ArrayList<Agent> getAllAgents() {
+		ArrayList<Agent> cached = allAgents;
+		if (cached == null) {
+			cached = new ArrayList<Agent>(agents);
+			for (Population population : populations) {
+				cached.addAll(population.getMembers());
+			}
+			allAgents = cached;
+		}
+		return cached;
+	}
+	
+	// Agents of a run with the given seed, with the members of populations without a seed spawned from the seed of the run
+	@JsonIgnore
+	public ArrayList<Agent> getAllAgents(Long runSeed) {
+		if (runSeed == null || runSeed == 0) {
+			return getAllAgents();
+		}
+		ArrayList<Agent> runAgents = new ArrayList<Agent>(agents);
+		for (Population population : populations) {
+			runAgents.addAll(population.getMembers(runSeed));
+		}
+		return runAgents;
+	}
+	
 	public ArrayList<Entity> getAllEntities() {
 		ArrayList<Entity> allEntities = new ArrayList<Entity>();
 		allEntities.addAll(activeSensors);
@@ -222,6 +303,7 @@ public class Floorplan {
 
 	public void setAgents(ArrayList<Agent> agents) {
 		this.agents = agents;
+		this.allAgents = null;
 	}
 
 	public ArrayList<Position> getWalls() {
@@ -263,6 +345,15 @@ public class Floorplan {
 	public void setPassiveSensors(ArrayList<SensorPassive> passiveSensors) {
 		this.passiveSensors = passiveSensors;
 	}
+
+	public ArrayList<Population> getPopulations() {
+		return populations;
+	}
+
+	public void setPopulations(ArrayList<Population> populations) {
+		this.populations = populations;
+		this.allAgents = null;
+	}
 	
 	
 	
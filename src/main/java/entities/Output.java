@@ -1,9 +1,10 @@
 package entities;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 
+import utils.IsoTimestamp;
+
 public class Output {
 	private LocalDateTime time;
 	private String type;
@@ -22,7 +23,7 @@ public class Output {
 	}
 
 	public String getTime() {
-		return time.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")).toString();
+		return IsoTimestamp.format(time);
 	}
 
 	public String getName() {
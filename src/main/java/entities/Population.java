@@ -0,0 +1,153 @@
+package entities;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import geo.Position;
+
+/**
+ * Group of agents that execute the same population(id){...} block of the input.
+ * Members are spawned on random tiles of the spawn area with a random speed, and vary
+ * their wait times and goto targets by a member specific seed.
+ */
+public class Population {
+
+	private String id;
+	private int count;
+	private ArrayList<Position> spawnArea;
+	private double minSpeed; // meter per second
+	private double maxSpeed; // meter per second
+	private double waitVariation = 0; // relative deviation of wait times, e.g. 0.2 for up to 20% shorter or longer waits
+	private int targetVariation = 0; // deviation of goto coordinates in tiles
+	private Long seed; // Null or 0 will ensure a random seed
+
+	@JsonIgnore private ArrayList<Agent> members;
+
+	//Constructors
+	public Population(String id, int count, ArrayList<Position> spawnArea, double minSpeed, double maxSpeed, double waitVariation, int targetVariation, Long seed) {
+		this.id = id;
+		this.count = count;
+		this.spawnArea = spawnArea;
+		this.minSpeed = minSpeed;
+		this.maxSpeed = maxSpeed;
+		this.waitVariation = waitVariation;
+		this.targetVariation = targetVariation;
+		this.seed = seed;
+	}
+
+	public Population() {
+	}
+
+	// Spawns the members on first access, once even if several runs start together. Member IDs are the population ID
+	// followed by _1, _2, ...
+	@JsonIgnore
+	public synchronized ArrayList<Agent> getMembers() {
+		if (members == null) {
+			members = spawn((seed == null || seed == 0) ? new Random() : new Random(seed));
+		}
+		return members;
+	}
+
+	// Returns the members spawned in a run with the given seed. A population without a seed of its own spawns its
+	// members with a generator derived from the seed of the run and the population ID, so seeded runs are reproducible.
+	@JsonIgnore
+	public ArrayList<Agent> getMembers(Long runSeed) {
+		if ((seed != null && seed != 0) || runSeed == null || runSeed == 0) {
+			return getMembers();
+		}
+		return spawn(new Random(runSeed * 1000003 + id.hashCode()));
+	}
+
+	private ArrayList<Agent> spawn(Random random) {
+		ArrayList<Agent> spawned = new ArrayList<Agent>(count);
+		for (int i = 1; i <= count; i++) {
+			Position position = spawnArea.get(random.nextInt(spawnArea.size()));
+			double speed = minSpeed + (maxSpeed - minSpeed) * random.nextDouble();
+			Agent member = new Agent(id + "_" + i, position, speed);
+			member.setPopulation(this, i);
+			spawned.add(member);
+		}
+		return spawned;
+	}
+
+	// Seed of the random variation of a member, or null if the population has no seed
+	public Long getMemberSeed(int memberNumber) {
+		if (seed == null || seed == 0) {
+			return null;
+		}
+		return seed * 1000003 + memberNumber;
+	}
+
+	//Accessors and Mutators
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+		members = null;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+		members = null;
+	}
+
+	public ArrayList<Position> getSpawnArea() {
+		return spawnArea;
+	}
+
+	public void setSpawnArea(ArrayList<Position> spawnArea) {
+		this.spawnArea = spawnArea;
+		members = null;
+	}
+
+	public double getMinSpeed() {
+		return minSpeed;
+	}
+
+	public void setMinSpeed(double minSpeed) {
+		this.minSpeed = minSpeed;
+		members = null;
+	}
+
+	public double getMaxSpeed() {
+		return maxSpeed;
+	}
+
+	public void setMaxSpeed(double maxSpeed) {
+		this.maxSpeed = maxSpeed;
+		members = null;
+	}
+
+	public double getWaitVariation() {
+		return waitVariation;
+	}
+
+	public void setWaitVariation(double waitVariation) {
+		this.waitVariation = waitVariation;
+	}
+
+	public int getTargetVariation() {
+		return targetVariation;
+	}
+
+	public void setTargetVariation(int targetVariation) {
+		this.targetVariation = targetVariation;
+	}
+
+	public Long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(Long seed) {
+		this.seed = seed;
+		members = null;
+	}
+}
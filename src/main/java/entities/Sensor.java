@@ -1,20 +1,23 @@
 package entities;
 
-import java.time.format.DateTimeFormatter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.JsonTypeInfo.Id;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import geo.Position;
-import main.Main;
-import main.Resources;
+import logic.SimulationContext;
+import output.Reading;
 
 
 @JsonTypeInfo(use = Id.CLASS,
@@ -22,8 +25,8 @@ include = JsonTypeInfo.As.PROPERTY,
 property = "type")
 public abstract class Sensor extends Entity{
 	
-	protected HashMap<String, Object> state = new HashMap<String, Object>();
-	ObjectMapper mapper = new ObjectMapper();
+	protected SensorState state = new SensorState(StateSchema.of(getClass())); // fields declared by the sensor class
+	@JsonIgnore protected SimulationContext context; // run the sensor belongs to, null for sensors of the shared floorplan
 	
 	public Sensor(String name, ArrayList<Position> physicalArea, ArrayList<Position> interactArea, Boolean walkable) {
 		super(name, physicalArea, interactArea, walkable);
@@ -32,25 +35,51 @@ public abstract class Sensor extends Entity{
 	public Sensor() {
 	}
 	
+	// Publishes the current state to the outputs of the run (console, WebSocket, MQTT and CSV), which write it asynchronously
 	public void outputSensorReading() throws MqttPersistenceException, MqttException, JsonProcessingException {
-		Output output = new Output(Resources.getSimulator().getClock(),getClass().getSimpleName(),getName(),state);
-		String json = mapper.writeValueAsString(output);
-	    //System.out.println(json);
-		
-		System.out.println(Resources.getSimulator().getClock().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")).toString()+" : "+getClass().getSimpleName()+" : "+getName()+" : "+state.toString()); //human readable output for console
-		if (Main.isWebsocketOutput() == true) {
-			Resources.getSimulator().getNotification().notifyToClient(Resources.getSimulator().getClock().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")).toString()+" : "+getClass().getSimpleName()+" : "+getName()+" : "+state.toString());
+		try {
+			context.getOutput().publish(new Reading(context.getClock(),getClass().getSimpleName(),getName(),state,getReadingAgents()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // the run stops at its next event
 		}
-		//System.out.println("{\"time\":\""+Resources.getSimulator().getClock().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")).toString()+"\",\"type\":\""+getClass().getSimpleName()+"\",\"name\":\""+getName()+"\",\"state\":"+mapper.writeValueAsString(state)+"}"); // JSON format for MQTT output
-		// MQTT output
-		if (Resources.getSimulator().getMqttOutput() == true) {
-			Resources.getMqtt().publish(json);
-		}
-		
-		// CSV output
-		if (Resources.getSimulator().getCsvOutput() == true) {
-			Resources.getLog().writeToFile(Resources.getSimulator().getClock().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")).toString()+","+getClass().getSimpleName()+","+getName()+","+state.toString());
+	}
+	
+	// Ids of the agents a reading relates to, by default the agents within the interact area of the sensor
+	protected List<String> getReadingAgents() {
+		List<String> agents = Collections.emptyList();
+		for (Agent agent : context.getAgents()) {
+			if (getInteractArea().contains(agent.getPosition())) {
+				if (agents.isEmpty()) {
+					agents = new ArrayList<String>();
+				}
+				agents.add(agent.getId());
+			}
 		}
+		return agents;
+	}
+	
+	// Writes the values the sensor keeps outside of its state during a run, e.g. the time it was turned on, to a
+	// checkpoint of the run. Sensors with such values override both methods.
+	public void writeRunValues(DataOutput out) throws IOException {
+	}
+	
+	public void readRunValues(DataInput in) throws IOException {
+	}
+	
+	//Accessors and Mutators
+	@JsonIgnore
+	public SensorState getState() {
+		return state;
+	}
+	
+	@JsonIgnore
+	public SimulationContext getContext() {
+		return context;
+	}
+	
+	@JsonIgnore
+	public void setContext(SimulationContext context) {
+		this.context = context;
 	}
 	
 }
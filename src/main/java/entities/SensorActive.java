@@ -1,11 +1,13 @@
 package entities;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import geo.Position;
@@ -14,6 +16,7 @@ public abstract class SensorActive extends Sensor {
 	
 	// Properties
 	protected ArrayList<String> commands;
+	@JsonIgnore private Agent interactingAgent; // during interact(), null if the interaction is not by an agent
 	
 	// Constructors
 	public SensorActive(String name, ArrayList<Position> physicalArea, ArrayList<Position> interactArea, Boolean walkable) {
@@ -28,13 +31,31 @@ public abstract class SensorActive extends Sensor {
 	// Methods 
 	// Outputs sensor reading if the interaction leads to a different sensor state
 	public void interact(String command) throws MqttPersistenceException, MqttException, JsonProcessingException {
-		HashMap<String, Object> initialState = new HashMap<>(state);
+		state.clearDirty();
 		updateState(command);
-		if (!state.equals(initialState)) {
+		if (state.isDirty()) {
 			outputSensorReading();
 		}
 	}
 	
+	// Interaction of an agent, which the reading relates to
+	public void interact(String command, Agent agent) throws MqttPersistenceException, MqttException, JsonProcessingException {
+		interactingAgent = agent;
+		try {
+			interact(command);
+		} finally {
+			interactingAgent = null;
+		}
+	}
+	
+	@Override
+	protected List<String> getReadingAgents() {
+		if (interactingAgent == null) {
+			return Collections.emptyList();
+		}
+		return Collections.singletonList(interactingAgent.getId());
+	}
+	
 	// Abstract methods that must be implemented by active sensors
 	public abstract void updateState(String command) throws MqttPersistenceException, MqttException;
 	
@@ -10,7 +10,10 @@ import geo.Position;
 public abstract class SensorPassive extends Sensor {
 	
 	@JsonIgnore private LocalDateTime lastTriggerTime;
+	@JsonIgnore private boolean changePending = true; // the state has changed since the last planned reading
 	private long triggerFrequency;
+	private Emission emission = Emission.PERIODIC;
+	private int heartbeatPeriods = 60; // trigger periods between readings of an unchanged state in HEARTBEAT emission
 
 	public SensorPassive(String name, ArrayList<Position> physicalArea, ArrayList<Position> interactArea, Boolean walkable, long triggerFrequency) {
 		super(name, physicalArea, interactArea, walkable);
@@ -26,6 +29,34 @@ public abstract class SensorPassive extends Sensor {
 	
 	public abstract void defineDefaultState();
 	
+	// Updates the state when the agents have moved and returns whether the sensor is triggered.
+	// Whether the state has changed since the last planned reading is kept in isChangePending().
+	public boolean updateTrigger() {
+		state.clearDirty();
+		boolean triggered = updateState();
+		changePending = changePending || state.isDirty();
+		return triggered;
+	}
+	
+	// Nanoseconds between readings while the state is unchanged, or 0 if an unchanged state is not emitted again
+	@JsonIgnore
+	public long getEmissionPeriod() {
+		switch (emission) {
+		case ON_CHANGE:
+			return 0;
+		case HEARTBEAT:
+			return triggerFrequency * heartbeatPeriods;
+		default:
+			return triggerFrequency;
+		}
+	}
+	
+	// Estimated share of time the sensor is triggered, used to estimate the cost of a simulation.
+	// By default the sensor is assumed to be triggered while an agent is in its interact area.
+	public double estimateTriggerShare(int agents, int walkableTiles) {
+		return Math.min(1, (double) agents * getInteractArea().size() / walkableTiles);
+	}
+	
 	//Accessors and Mutators
 	public LocalDateTime getLastTriggerTime() {
 		return lastTriggerTime;
@@ -35,11 +66,37 @@ public abstract class SensorPassive extends Sensor {
 		this.lastTriggerTime = lastTriggerTime;
 	}
 
+	@JsonIgnore
+	public boolean isChangePending() {
+		return changePending;
+	}
+
+	@JsonIgnore
+	public void setChangePending(boolean changePending) {
+		this.changePending = changePending;
+	}
+
 	public long getTriggerFrequency() {
 		return triggerFrequency;
 	}
 
 	public void setTriggerFrequency(long triggerFrequency) {
 		this.triggerFrequency = triggerFrequency;
-	};
+	}
+
+	public Emission getEmission() {
+		return emission;
+	}
+
+	public void setEmission(Emission emission) {
+		this.emission = emission;
+	}
+
+	public int getHeartbeatPeriods() {
+		return heartbeatPeriods;
+	}
+
+	public void setHeartbeatPeriods(int heartbeatPeriods) {
+		this.heartbeatPeriods = heartbeatPeriods;
+	}
 }
@@ -0,0 +1,316 @@
+package entities;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * State of a sensor, stored in the slots of its StateSchema: booleans and numbers in a long array without boxing,
+ * strings and other values in an object array. A field is marked dirty when it is set to a different value,
+ * so whether the state has changed is known without comparing it to a copy.
+ *
+ * Fields that have not been set are null. Getters of primitive fields return 0 or false for them.
+ *
+ * The schema is shared by all sensors of a class and only holds its declared fields. A state that is put a field by
+ * name derives a schema of its own for it, see put().
+ */
+public final class SensorState {
+
+	private StateSchema schema; // replaced by a derived schema when a field is put by name
+	private boolean derived = false; // the schema belongs to this state
+	private StateField[] fields; // the fields of the schema the slots have been sized for
+	private long[] primitives;
+	private Object[] objects;
+	private long nulls = -1L; // a bit per field that is null
+	private long dirty = 0; // a bit per field that has changed since clearDirty()
+
+	public SensorState(StateSchema schema) {
+		this.schema = schema;
+		this.fields = new StateField[0];
+		this.primitives = new long[0];
+		this.objects = new Object[0];
+		fit();
+	}
+
+	private SensorState(SensorState state) {
+		this.schema = state.schema;
+		this.fields = state.fields;
+		this.primitives = state.primitives.clone();
+		this.objects = state.objects.clone();
+		this.nulls = state.nulls;
+	}
+
+	// Sizes the slots for fields that have been added to the schema
+	private void fit() {
+		fields = schema.getFields();
+		primitives = Arrays.copyOf(primitives, schema.getPrimitiveCount());
+		objects = Arrays.copyOf(objects, schema.getObjectCount());
+	}
+
+	private void check(StateField field, StateField.Type type) {
+		if (field.getIndex() >= fields.length) {
+			fit();
+		}
+		if (field.getIndex() >= fields.length || fields[field.getIndex()] != field) {
+			throw new IllegalArgumentException("the field \"" + field.getName() + "\" is not part of the state of this sensor");
+		}
+		if (type != null && field.getType() != type) {
+			throw new IllegalArgumentException("the field \"" + field.getName() + "\" is of type " + field.getType() + ", not " + type);
+		}
+	}
+
+	// Typed getters
+	public boolean getBoolean(StateField field) {
+		check(field, StateField.Type.BOOLEAN);
+		return primitives[field.getSlot()] != 0;
+	}
+
+	public int getInt(StateField field) {
+		check(field, StateField.Type.INT);
+		return (int) primitives[field.getSlot()];
+	}
+
+	public long getLong(StateField field) {
+		check(field, StateField.Type.LONG);
+		return primitives[field.getSlot()];
+	}
+
+	public double getDouble(StateField field) {
+		check(field, StateField.Type.DOUBLE);
+		return Double.longBitsToDouble(primitives[field.getSlot()]);
+	}
+
+	public String getString(StateField field) {
+		check(field, StateField.Type.STRING);
+		return (String) objects[field.getSlot()];
+	}
+
+	public Object getObject(StateField field) {
+		check(field, StateField.Type.OBJECT);
+		return objects[field.getSlot()];
+	}
+
+	public boolean isNull(StateField field) {
+		check(field, null);
+		return (nulls & (1L << field.getIndex())) != 0;
+	}
+
+	// Typed setters, which mark the field dirty if the value changes
+	public void setBoolean(StateField field, boolean value) {
+		setPrimitive(field, StateField.Type.BOOLEAN, value ? 1 : 0);
+	}
+
+	public void setInt(StateField field, int value) {
+		setPrimitive(field, StateField.Type.INT, value);
+	}
+
+	public void setLong(StateField field, long value) {
+		setPrimitive(field, StateField.Type.LONG, value);
+	}
+
+	public void setDouble(StateField field, double value) {
+		setPrimitive(field, StateField.Type.DOUBLE, Double.doubleToLongBits(value));
+	}
+
+	public void setString(StateField field, String value) {
+		setObject(field, StateField.Type.STRING, value);
+	}
+
+	public void setObject(StateField field, Object value) {
+		setObject(field, StateField.Type.OBJECT, value);
+	}
+
+	public void setNull(StateField field) {
+		check(field, null);
+		long bit = 1L << field.getIndex();
+		if ((nulls & bit) == 0) {
+			nulls |= bit;
+			dirty |= bit;
+			if (!field.getType().isPrimitive()) {
+				objects[field.getSlot()] = null;
+			}
+		}
+	}
+
+	private void setPrimitive(StateField field, StateField.Type type, long bits) {
+		check(field, type);
+		long bit = 1L << field.getIndex();
+		if ((nulls & bit) != 0 || primitives[field.getSlot()] != bits) {
+			primitives[field.getSlot()] = bits;
+			nulls &= ~bit;
+			dirty |= bit;
+		}
+	}
+
+	private void setObject(StateField field, StateField.Type type, Object value) {
+		if (value == null) {
+			check(field, type);
+			setNull(field);
+			return;
+		}
+		check(field, type);
+		long bit = 1L << field.getIndex();
+		if ((nulls & bit) != 0 || !Objects.equals(objects[field.getSlot()], value)) {
+			objects[field.getSlot()] = value;
+			nulls &= ~bit;
+			dirty |= bit;
+		}
+	}
+
+	// Returns the value of the field, boxed
+	public Object get(StateField field) {
+		if (isNull(field)) {
+			return null;
+		}
+		switch (field.getType()) {
+		case BOOLEAN:
+			return getBoolean(field);
+		case INT:
+			return getInt(field);
+		case LONG:
+			return getLong(field);
+		case DOUBLE:
+			return getDouble(field);
+		default:
+			return objects[field.getSlot()];
+		}
+	}
+
+	// Returns the value of the field with the name, or null if the schema has no such field
+	public Object get(String name) {
+		StateField field = schema.getField(name);
+		return field == null ? null : get(field);
+	}
+
+	// Sets the field with the name to a boxed value. A name the schema does not have yet is added as an OBJECT field,
+	// so sensors can also be written without declaring their schema. The field is added to a schema of this state,
+	// derived from the schema of the class, so other sensors and later runs keep the declared fields only.
+	public void put(String name, Object value) {
+		StateField field = schema.getField(name);
+		if (field == null) {
+			if (!derived) {
+				schema = schema.derive();
+				derived = true;
+			}
+			field = schema.addObject(name);
+		}
+		if (value == null) {
+			setNull(field);
+			return;
+		}
+		switch (field.getType()) {
+		case BOOLEAN:
+			setBoolean(field, (Boolean) value);
+			break;
+		case INT:
+			setInt(field, ((Number) value).intValue());
+			break;
+		case LONG:
+			setLong(field, ((Number) value).longValue());
+			break;
+		case DOUBLE:
+			setDouble(field, ((Number) value).doubleValue());
+			break;
+		case STRING:
+			setString(field, (String) value);
+			break;
+		default:
+			setObject(field, value);
+		}
+	}
+
+	// Whether a field has changed since clearDirty()
+	public boolean isDirty() {
+		return dirty != 0;
+	}
+
+	public boolean isDirty(StateField field) {
+		check(field, null);
+		return (dirty & (1L << field.getIndex())) != 0;
+	}
+
+	public void clearDirty() {
+		dirty = 0;
+	}
+
+	// Returns a bit per field whose value differs from the given earlier state of the same sensor.
+	// Fields the earlier state does not hold yet are changed.
+	public long changedSince(SensorState previous) {
+		long all = mask(fields.length);
+		if (previous == null || previous.schema != schema) {
+			return all;
+		}
+		long changed = ((nulls ^ previous.nulls) | ~mask(previous.fields.length)) & all;
+		for (int i = 0; i < Math.min(fields.length, previous.fields.length); i++) {
+			long bit = 1L << i;
+			if ((changed & bit) != 0 || (nulls & bit) != 0) {
+				continue;
+			}
+			int slot = fields[i].getSlot();
+			if (fields[i].getType().isPrimitive() ? primitives[slot] != previous.primitives[slot] : !Objects.equals(objects[slot], previous.objects[slot])) {
+				changed |= bit;
+			}
+		}
+		return changed;
+	}
+
+	private static long mask(int fieldCount) {
+		return fieldCount == 64 ? -1L : (1L << fieldCount) - 1;
+	}
+
+	// Returns a copy of the values, e.g. for a reading that is written while the sensor changes
+	public SensorState copy() {
+		return new SensorState(this);
+	}
+
+	// Number of fields held, which are the first fields of the schema
+	public int size() {
+		return fields.length;
+	}
+
+	public StateField getField(int index) {
+		return fields[index];
+	}
+
+	// Returns the values by field name, in the order of the schema
+	public Map<String, Object> toMap() {
+		LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+		for (StateField field : fields) {
+			map.put(field.getName(), get(field));
+		}
+		return map;
+	}
+
+	// Appends the values like Map.toString(), e.g. {power=ON, volume=5}
+	public void appendTo(StringBuilder builder) {
+		builder.append('{');
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(fields[i].getName()).append('=');
+			if (isNull(fields[i])) {
+				builder.append("null");
+			} else if (fields[i].getType() == StateField.Type.BOOLEAN) {
+				builder.append(getBoolean(fields[i]));
+			} else if (fields[i].getType() == StateField.Type.INT) {
+				builder.append(getInt(fields[i]));
+			} else if (fields[i].getType() == StateField.Type.LONG) {
+				builder.append(getLong(fields[i]));
+			} else if (fields[i].getType() == StateField.Type.DOUBLE) {
+				builder.append(getDouble(fields[i]));
+			} else {
+				builder.append(objects[fields[i].getSlot()]);
+			}
+		}
+		builder.append('}');
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		appendTo(builder);
+		return builder.toString();
+	}
+}
@@ -0,0 +1,62 @@
+package entities;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Field of a StateSchema. Sensors keep their fields in static constants and read and write their state through them.
+ */
+public final class StateField {
+
+	public enum Type {
+		BOOLEAN,
+		INT,
+		LONG,
+		DOUBLE,
+		STRING,
+		OBJECT; // any other value, serialized by Jackson
+
+		boolean isPrimitive() {
+			return this != STRING && this != OBJECT;
+		}
+	}
+
+	private final String name;
+	private final Type type;
+	private final int index; // position in the schema and bit of the dirty and null masks
+	private final int slot; // position in the primitive or object slots of a SensorState
+	private final SerializedString serializedName; // escaped once for all readings
+
+	StateField(String name, Type type, int index, int slot) {
+		this.name = name;
+		this.type = type;
+		this.index = index;
+		this.slot = slot;
+		this.serializedName = new SerializedString(name);
+	}
+
+	@Override
+	public String toString() {
+		return name + ":" + type;
+	}
+
+	//Accessors
+	public String getName() {
+		return name;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	int getSlot() {
+		return slot;
+	}
+
+	public SerializedString getSerializedName() {
+		return serializedName;
+	}
+}
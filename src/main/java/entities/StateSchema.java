@@ -0,0 +1,127 @@
+package entities;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fields of the state of a sensor class, declared once per class:
+ *
+ *     private static final StateSchema schema = StateSchema.of(Television.class);
+ *     private static final StateField VOLUME = schema.addInt("volume");
+ *
+ * The schema of a class starts with the fields of the schema of its superclass, and only holds declared fields.
+ * Fields that are only put by name, see SensorState.put(), are added as OBJECT fields to a schema derived for that
+ * state, so they do not change the state of other sensors of the class.
+ */
+public final class StateSchema {
+
+	public static final int MAX_FIELDS = 64; // a bit per field in the dirty and null masks
+
+	private static final ClassValue<StateSchema> schemas = new ClassValue<StateSchema>() {
+		@Override
+		protected StateSchema computeValue(Class<?> type) {
+			return new StateSchema(type.getSuperclass() == null ? null : StateSchema.of(type.getSuperclass()));
+		}
+	};
+
+	private volatile StateField[] fields;
+	private final ConcurrentHashMap<String, StateField> fieldsByName = new ConcurrentHashMap<String, StateField>();
+	private int primitiveCount = 0; // guarded by this
+	private int objectCount = 0; // guarded by this
+
+	private StateSchema(StateSchema parent) {
+		fields = new StateField[0];
+		if (parent != null) {
+			synchronized (parent) {
+				fields = parent.fields;
+				primitiveCount = parent.primitiveCount;
+				objectCount = parent.objectCount;
+			}
+			for (StateField field : fields) {
+				fieldsByName.put(field.getName(), field);
+			}
+		}
+	}
+
+	// Returns the schema of the sensor class
+	public static StateSchema of(Class<?> type) {
+		return schemas.get(type);
+	}
+
+	// Returns a new schema that belongs to no class, e.g. of the readings of a recording
+	public static StateSchema create() {
+		return new StateSchema(null);
+	}
+
+	// Returns a new schema that starts with the fields of this one, e.g. for fields a single state adds by name
+	public StateSchema derive() {
+		return new StateSchema(this);
+	}
+
+	public StateField addBoolean(String name) {
+		return add(name, StateField.Type.BOOLEAN);
+	}
+
+	public StateField addInt(String name) {
+		return add(name, StateField.Type.INT);
+	}
+
+	public StateField addLong(String name) {
+		return add(name, StateField.Type.LONG);
+	}
+
+	public StateField addDouble(String name) {
+		return add(name, StateField.Type.DOUBLE);
+	}
+
+	public StateField addString(String name) {
+		return add(name, StateField.Type.STRING);
+	}
+
+	public StateField addObject(String name) {
+		return add(name, StateField.Type.OBJECT);
+	}
+
+	// Adds a field, or returns the field of the name if it has been added with the same type before
+	public synchronized StateField add(String name, StateField.Type type) {
+		StateField existing = fieldsByName.get(name);
+		if (existing != null) {
+			if (existing.getType() != type) {
+				throw new IllegalStateException("the state field \"" + name + "\" has been declared as " + existing.getType());
+			}
+			return existing;
+		}
+		if (fields.length == MAX_FIELDS) {
+			throw new IllegalStateException("the state of a sensor has at most " + MAX_FIELDS + " fields");
+		}
+		int slot = type.isPrimitive() ? primitiveCount++ : objectCount++;
+		StateField field = new StateField(name, type, fields.length, slot);
+		StateField[] extended = Arrays.copyOf(fields, fields.length + 1);
+		extended[field.getIndex()] = field;
+		fields = extended;
+		fieldsByName.put(name, field);
+		return field;
+	}
+
+	// Returns the field with the name, or null if none exists
+	public StateField getField(String name) {
+		return fieldsByName.get(name);
+	}
+
+	//Accessors
+	StateField[] getFields() {
+		return fields;
+	}
+
+	public int size() {
+		return fields.length;
+	}
+
+	synchronized int getPrimitiveCount() {
+		return primitiveCount;
+	}
+
+	synchronized int getObjectCount() {
+		return objectCount;
+	}
+}
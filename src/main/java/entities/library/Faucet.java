@@ -1,7 +1,11 @@
 package entities.library;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -9,10 +13,16 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
 import entities.SensorActive;
-import main.Resources;
+import entities.StateField;
+import entities.StateSchema;
 
 public class Faucet extends SensorActive {
 	
+	// State
+	private static final StateSchema schema = StateSchema.of(Faucet.class);
+	private static final StateField WATER_OUTPUT = schema.addString("water_output");
+	private static final StateField CONSUMED_WATER = schema.addDouble("consumed_water"); // in Liters
+	
 	private LocalDateTime lastTurnOnDateTime;
 	private double flowRate = 0.06; // Liters per second
 	
@@ -27,21 +37,35 @@ public class Faucet extends SensorActive {
 	}
 	
 	public void defineDefaultState() {
-		state.put("water_output", "OFF");
-		state.put("consumed_water", 0.0); // in Liters
+		state.setString(WATER_OUTPUT, "OFF");
+		state.setDouble(CONSUMED_WATER, 0.0);
+	}
+	
+	@Override
+	public void writeRunValues(DataOutput out) throws IOException {
+		out.writeBoolean(lastTurnOnDateTime != null);
+		if (lastTurnOnDateTime != null) {
+			out.writeLong(lastTurnOnDateTime.toEpochSecond(ZoneOffset.UTC));
+			out.writeInt(lastTurnOnDateTime.getNano());
+		}
+	}
+	
+	@Override
+	public void readRunValues(DataInput in) throws IOException {
+		lastTurnOnDateTime = in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
 	}
 	
 	// Sensor behavior
 	public void updateState(String command) throws MqttPersistenceException, MqttException {
 		// Set power status
-		if (command.equals("TURN_ON") && state.get("water_output").equals("OFF")) {
-			state.put("water_output", "ON");
-			lastTurnOnDateTime = Resources.getSimulator().getClock();
-		} else if (command.equals("TURN_OFF") && state.get("water_output").equals("ON")) {
-			state.put("water_output", "OFF");
-			Duration duration = Duration.between(lastTurnOnDateTime, Resources.getSimulator().getClock());
-			Double consumedWater = duration.toSeconds() * flowRate;
-			state.put("consumed_water", (Double) state.get("consumed_water") + consumedWater);
+		if (command.equals("TURN_ON") && state.getString(WATER_OUTPUT).equals("OFF")) {
+			state.setString(WATER_OUTPUT, "ON");
+			lastTurnOnDateTime = context.getClock();
+		} else if (command.equals("TURN_OFF") && state.getString(WATER_OUTPUT).equals("ON")) {
+			state.setString(WATER_OUTPUT, "OFF");
+			Duration duration = Duration.between(lastTurnOnDateTime, context.getClock());
+			double consumedWater = duration.toSeconds() * flowRate;
+			state.setDouble(CONSUMED_WATER, state.getDouble(CONSUMED_WATER) + consumedWater);
 		}
 	}
 }
@@ -5,27 +5,32 @@ import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
 import entities.Agent;
 import entities.SensorPassive;
-import main.Resources;
+import entities.StateField;
+import entities.StateSchema;
 
 public class FloorSensor extends SensorPassive {
 
+	// State
+	private static final StateSchema schema = StateSchema.of(FloorSensor.class);
+	private static final StateField PRESSURE_POSITION = schema.addObject("pressurePosition");
+
 	// Default constructor
 	public FloorSensor()  throws MqttPersistenceException, MqttException {
 	}
 	
 	public void defineDefaultState() {
-		state.put("pressurePosition", null);
+		state.setNull(PRESSURE_POSITION);
 	}
 	
 	// Trigger behavior 
 	public boolean updateState() {
-		for (Agent agent : Resources.getFloorplan().getAgents()) {
+		for (Agent agent : context.getAgents()) {
 			if (getInteractArea().contains(agent.getPosition())) {
-				state.put("pressurePosition", agent.getPosition());
+				state.setObject(PRESSURE_POSITION, agent.getPosition());
 				return true;
 			}
 		}
-		state.put("pressurePosition", null);
+		state.setNull(PRESSURE_POSITION);
 		return false;
 	}
 }
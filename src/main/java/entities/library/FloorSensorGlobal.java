@@ -7,27 +7,38 @@ import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
 import entities.Agent;
 import entities.SensorPassive;
+import entities.StateField;
+import entities.StateSchema;
 import geo.Position;
-import main.Resources;
 
 public class FloorSensorGlobal extends SensorPassive {
 
+	// State
+	private static final StateSchema schema = StateSchema.of(FloorSensorGlobal.class);
+	private static final StateField PRESSURE_POSITIONS = schema.addObject("pressurePositions");
+
 	// Default constructor
 	public FloorSensorGlobal()  throws MqttPersistenceException, MqttException {
 	}
 	
 	public void defineDefaultState() {
-		state.put("pressurePositions", null);
+		state.setNull(PRESSURE_POSITIONS);
 	}
 	
 	// Trigger behavior 
 	public boolean updateState() {
 		ArrayList<Position> agentPositions = new ArrayList<Position>();
-		for (Agent agent : Resources.getFloorplan().getAgents()) {
+		for (Agent agent : context.getAgents()) {
 			agentPositions.add(agent.getPosition());
 		}
-		state.put("pressurePositions", agentPositions);
+		state.setObject(PRESSURE_POSITIONS, agentPositions);
 		return true;
 
 	}
+	
+	// Triggered for the whole simulation
+	@Override
+	public double estimateTriggerShare(int agents, int walkableTiles) {
+		return 1;
+	}
 }
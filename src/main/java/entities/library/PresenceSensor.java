@@ -6,28 +6,33 @@ import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
 import entities.Agent;
 import entities.SensorPassive;
-import main.Resources;
+import entities.StateField;
+import entities.StateSchema;
 
 public class PresenceSensor extends SensorPassive {
 
+	// State
+	private static final StateSchema schema = StateSchema.of(PresenceSensor.class);
+	private static final StateField TRIGGERED = schema.addBoolean("triggered");
+
 	// Default constructor
 	public PresenceSensor()  throws MqttPersistenceException, MqttException {
 		
 	}
 	
 	public void defineDefaultState() {
-		state.put("triggered", false);
+		state.setBoolean(TRIGGERED, false);
 	}
 	
 	// Trigger behavior 
 	public boolean updateState() {
-		for (Agent agent : Resources.getFloorplan().getAgents()) {
+		for (Agent agent : context.getAgents()) {
 			if (getInteractArea().contains(agent.getPosition())) {
-				state.put("triggered", true);
+				state.setBoolean(TRIGGERED, true);
 				return true;
 			}
 		}
-		state.put("triggered", false);
+		state.setBoolean(TRIGGERED, false);
 		return false;
 	}
 }
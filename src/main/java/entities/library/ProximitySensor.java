@@ -5,32 +5,38 @@ import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
 import entities.Agent;
 import entities.SensorPassive;
+import entities.StateField;
+import entities.StateSchema;
 import geo.Position;
-import main.Resources;
 
 public class ProximitySensor extends SensorPassive {
 
+	// State
+	private static final StateSchema schema = StateSchema.of(ProximitySensor.class);
+	private static final StateField TRIGGERED = schema.addBoolean("triggered");
+	private static final StateField PROXIMITY = schema.addDouble("proximity"); // null while not triggered
+
 	// Default constructor
 	public ProximitySensor()  throws MqttPersistenceException, MqttException {
 	}
 	
 	public void defineDefaultState() {
-		state.put("triggered", false);
-		state.put("proximity", null);
+		state.setBoolean(TRIGGERED, false);
+		state.setNull(PROXIMITY);
 	}
 	
 	// Trigger behavior 
 	public boolean updateState() {
 		
 		if (getPhysicalArea().size() == 0) {
-			state.put("triggered", false);
-			state.put("proximity", null);
+			state.setBoolean(TRIGGERED, false);
+			state.setNull(PROXIMITY);
 			return false;
 		}
 		
 		Double closestProximity = null;
 		
-		for (Agent agent : Resources.getFloorplan().getAgents()) {
+		for (Agent agent : context.getAgents()) {
 			if (getInteractArea().contains(agent.getPosition())) {
 				
 				double x = 0;
@@ -50,12 +56,12 @@ public class ProximitySensor extends SensorPassive {
 		}
 		
 		if (closestProximity != null) {
-			state.put("triggered", true);
-			state.put("proximity", closestProximity);
+			state.setBoolean(TRIGGERED, true);
+			state.setDouble(PROXIMITY, closestProximity);
 			return true;
 		} else {
-			state.put("triggered", false);
-			state.put("proximity", null);
+			state.setBoolean(TRIGGERED, false);
+			state.setNull(PROXIMITY);
 			return false;
 		}
 	}
@@ -7,9 +7,17 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
 import entities.SensorActive;
+import entities.StateField;
+import entities.StateSchema;
 
 public class Television extends SensorActive {
 	
+	// State
+	private static final StateSchema schema = StateSchema.of(Television.class);
+	private static final StateField POWER = schema.addString("power");
+	private static final StateField CHANNEL = schema.addString("channel");
+	private static final StateField VOLUME = schema.addInt("volume");
+	
 	public Television() throws MqttPersistenceException, MqttException {
 	}
 
@@ -27,25 +35,25 @@ public class Television extends SensorActive {
 	}
 	
 	public void defineDefaultState() {
-		state.put("power", "OFF");
-		state.put("channel", "CHANNEL1");
-		state.put("volume", 5);
+		state.setString(POWER, "OFF");
+		state.setString(CHANNEL, "CHANNEL1");
+		state.setInt(VOLUME, 5);
 	}
 	
 	// Sensor behavior
 	public void updateState(String command) throws MqttPersistenceException, MqttException {
 		// Set power status
 		if (command.equals("ON") || command.equals("OFF")) {
-			state.put("power", command);
+			state.setString(POWER, command);
 		// Set channel
-		} else if ((command.equals("CHANNEL1") || command.equals("CHANNEL2") || command.equals("CHANNEL3") || command.equals("CHANNEL4")) && state.get("power").equals("ON")) {
-			state.put("channel", command);
+		} else if ((command.equals("CHANNEL1") || command.equals("CHANNEL2") || command.equals("CHANNEL3") || command.equals("CHANNEL4")) && state.getString(POWER).equals("ON")) {
+			state.setString(CHANNEL, command);
 		// Turn volume down
-		} else if (command.equals("VOLUME_DOWN") && state.get("power").equals("ON") && (Integer) state.get("volume")>0) {
-			state.put("volume",(Integer) state.get("volume") - 1);
+		} else if (command.equals("VOLUME_DOWN") && state.getString(POWER).equals("ON") && state.getInt(VOLUME)>0) {
+			state.setInt(VOLUME, state.getInt(VOLUME) - 1);
 		// Turn volume up
-		} else if (command.equals("VOLUME_UP") && state.get("power").equals("ON") && (Integer) state.get("volume")<10) {
-			state.put("volume",(Integer) state.get("volume") + 1);
+		} else if (command.equals("VOLUME_UP") && state.getString(POWER).equals("ON") && state.getInt(VOLUME)<10) {
+			state.setInt(VOLUME, state.getInt(VOLUME) + 1);
 		}
 	}
 }
@@ -7,9 +7,16 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
 import entities.SensorActive;
+import entities.StateField;
+import entities.StateSchema;
 
 public class Toilet extends SensorActive {
 	
+	// State
+	private static final StateSchema schema = StateSchema.of(Toilet.class);
+	private static final StateField FLUSH_AMOUNT = schema.addInt("flush_amount");
+	private static final StateField CONSUMED_WATER = schema.addDouble("consumed_water"); // in Liters
+	
 	public Toilet() throws MqttPersistenceException, MqttException {
 	}
 
@@ -20,16 +27,16 @@ public class Toilet extends SensorActive {
 	}
 	
 	public void defineDefaultState() {
-		state.put("flush_amount", 0);
-		state.put("consumed_water", 0.0); // in Liters
+		state.setInt(FLUSH_AMOUNT, 0);
+		state.setDouble(CONSUMED_WATER, 0.0);
 	}
 	
 	// Sensor behavior
 	public void updateState(String command) throws MqttPersistenceException, MqttException {
 		// Set power status
 		if (command.equals("FLUSH")) {
-			state.put("flush_amount", (Integer) state.get("flush_amount") + 1);
-			state.put("consumed_water", (Double) state.get("consumed_water") + 3.3);
+			state.setInt(FLUSH_AMOUNT, state.getInt(FLUSH_AMOUNT) + 1);
+			state.setDouble(CONSUMED_WATER, state.getDouble(CONSUMED_WATER) + 3.3);
 		}
 	}
 }
@@ -0,0 +1,406 @@
+package logic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import entities.Agent;
+import entities.Entity;
+import entities.Floorplan;
+import entities.Population;
+import entities.SensorActive;
+import geo.Position;
+import pathfinding.AStarGrid;
+import pathfinding.AStarNode;
+import pathfinding.NodeState;
+import script.Cursor;
+import script.GotoEntityStatement;
+import script.GotoStatement;
+import script.InteractStatement;
+import script.Statement;
+import script.WaitStatement;
+
+/**
+ * Converts the statements of an agent to B-events while the simulation advances.
+ * A statement is planned when the B-events of the previous statement have been executed,
+ * so only the B-events of a single statement are held in memory per agent.
+ *
+ * With a PlanCache the agent is planned in isolation from the other agents, and its B-events are either taken
+ * from the plan of an earlier run or recorded as a plan for later runs.
+ */
+class AgentPlanner {
+
+	private final SimulationContext context;
+	private final Agent agent;
+	private final int index; // orders agents with B-events at the same time
+	private final Cursor cursor;
+
+	private final Floorplan floorplan;
+	private final AStarGrid grid;
+
+	private final Population population; // null if the agent is not member of a population
+	private final Random random; // chooses interaction positions and varies paths
+	private final Random variation; // varies wait times and goto targets of population members
+
+	// plans of the agent, null unless the plan cache is used
+	private final PlanCache plans;
+	private final String planKey;
+	private final PlanCache.Plan plan; // cached plan the B-events are taken from, or null if the agent is planned
+	private int planPosition = 0;
+	private PlanCache.Plan recording; // plan of the B-events planned so far, null if it is not recorded
+	private final long maxPlanEvents;
+	private final ArrayList<String> messages = new ArrayList<String>(); // printed while the statement was planned
+
+	private final ArrayDeque<BEvent> bEvents = new ArrayDeque<BEvent>();
+	private LocalDateTime nextEventTime; // of the first B-event, set by peek() so the queue of planners does not plan
+	private LocalDateTime bEventClock;
+	private Position position; // position of the agent after the planned B-events
+	private boolean ended = false;
+
+	AgentPlanner(SimulationContext context, Agent agent, int index, Cursor cursor) {
+		this(context, agent, index, cursor, null, null);
+	}
+
+	// Plans the agent with the plan of the key if it has been cached, or caches its plan when it has been planned
+	AgentPlanner(SimulationContext context, Agent agent, int index, Cursor cursor, PlanCache plans, String planKey) {
+		this.context = context;
+		this.agent = agent;
+		this.index = index;
+		this.cursor = cursor;
+		this.floorplan = context.getFloorplan();
+		this.grid = context.getGrid();
+		this.bEventClock = context.getClock();
+		this.position = agent.getInitialPosition();
+		this.population = agent.getPopulation();
+		this.plans = plans;
+		this.planKey = planKey;
+		if (plans == null) {
+			this.random = context.getRandom();
+			this.plan = null;
+			this.maxPlanEvents = 0;
+		} else {
+			// a random generator of its own, so the plan of the agent does not depend on the agents planned before it
+			this.random = new Random(context.getSimulator().getSeed() * 1000003 + agent.getId().hashCode());
+			this.plan = plans.get(planKey);
+			this.recording = plan == null ? new PlanCache.Plan() : null;
+			this.maxPlanEvents = plans.getMaxEvents();
+		}
+		if (population == null) {
+			this.variation = null;
+		} else {
+			Long memberSeed = population.getMemberSeed(agent.getMemberNumber());
+			this.variation = new Random(memberSeed == null ? random.nextLong() : memberSeed);
+		}
+	}
+
+	// Restores the planner of the agent from a checkpoint written by writeCheckpoint(), after the context has been restored
+	AgentPlanner(SimulationContext context, Agent agent, int index, DataInput in) throws IOException {
+		this.context = context;
+		this.agent = agent;
+		this.index = index;
+		this.cursor = new Cursor(context.getScript(), context.getBlock(agent), in);
+		this.floorplan = context.getFloorplan();
+		this.grid = context.getGrid();
+		this.population = agent.getPopulation();
+		this.random = context.getRandom();
+		this.plans = null;
+		this.planKey = null;
+		this.plan = null;
+		this.maxPlanEvents = 0;
+
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			BEventType type = BEventType.values()[in.readByte()];
+			LocalDateTime time = Checkpoint.readTime(in);
+			if (type == BEventType.MOVEMENT) {
+				bEvents.add(new BEvent(type, time, agent, grid.getNode(in.readInt(), in.readInt())));
+			} else if (type == BEventType.SENSOR_ACTIVATION) {
+				bEvents.add(new BEvent(type, time, agent, context.getActiveSensor(in.readUTF()), Checkpoint.readString(in)));
+			} else if (type == BEventType.OUTPUT) {
+				bEvents.add(new BEvent(type, time, Checkpoint.readString(in)));
+			} else {
+				bEvents.add(new BEvent(type, time));
+			}
+		}
+		this.bEventClock = Checkpoint.readTime(in);
+		this.position = new Position(in.readInt(), in.readInt());
+		this.ended = in.readBoolean();
+		this.variation = population == null ? null : Checkpoint.readRandom(in);
+	}
+
+	// Writes the position of the cursor and the B-events that have been planned but not executed, so the agent
+	// continues with the same statement after a resume. Planners of the plan cache are not checkpointed.
+	void writeCheckpoint(DataOutput out) throws IOException {
+		cursor.writeTo(out);
+		out.writeInt(bEvents.size());
+		for (BEvent event : bEvents) {
+			out.writeByte(event.getEventType().ordinal());
+			Checkpoint.writeTime(out, event.getEventDateTime());
+			if (event.getEventType() == BEventType.MOVEMENT) {
+				out.writeInt(event.getNode().getX());
+				out.writeInt(event.getNode().getY());
+			} else if (event.getEventType() == BEventType.SENSOR_ACTIVATION) {
+				out.writeUTF(event.getSensor().getName());
+				Checkpoint.writeString(out, event.getCommand());
+			} else if (event.getEventType() == BEventType.OUTPUT) {
+				Checkpoint.writeString(out, event.getOutput());
+			}
+		}
+		Checkpoint.writeTime(out, bEventClock);
+		out.writeInt(position.getX());
+		out.writeInt(position.getY());
+		out.writeBoolean(ended);
+		if (variation != null) {
+			Checkpoint.writeRandom(out, variation);
+		}
+	}
+
+	// Returns the next B-event of the agent without removing it, or null when the agent has no more B-events
+	BEvent peek() {
+		while (bEvents.isEmpty() && !ended) {
+			planNextStatement();
+		}
+		BEvent next = bEvents.peek();
+		nextEventTime = next == null ? null : next.getEventDateTime();
+		return next;
+	}
+
+	BEvent poll() {
+		peek();
+		return bEvents.poll();
+	}
+
+	private void planNextStatement() {
+		if (plan != null) {
+			replayNextStatement();
+			return;
+		}
+		planStatement();
+		if (recording != null) {
+			recordStatement();
+		}
+	}
+
+	private void planStatement() {
+		Statement statement = cursor.next();
+
+		if (statement == null) {
+			// Add end simulation event (for the scenario where the last instruction is wait, to allow for C-events in waiting period)
+			bEvents.add(new BEvent(BEventType.SIMULATION_END, bEventClock));
+			ended = true;
+			return;
+		}
+		context.statementPlanned();
+
+		// Add output B-event
+		bEvents.add(new BEvent(BEventType.OUTPUT, bEventClock, "* "+agent.getId()+" - "+statement+":"));
+
+		// GOTO
+		if (statement instanceof GotoStatement) {
+			GotoStatement gotoStatement = (GotoStatement) statement;
+			Position gotoPosition = new Position(gotoStatement.getX(), gotoStatement.getY());
+			if (population != null && population.getTargetVariation() > 0) {
+				gotoPosition = varyTarget(gotoPosition, population.getTargetVariation());
+			}
+			gotoInstructions(gotoPosition, new ArrayList<Position>());
+
+		// WAIT
+		} else if (statement instanceof WaitStatement) {
+			long waitTime = ((WaitStatement) statement).getSeconds() * 1000000000; // converts seconds to nanoseconds
+			if (population != null && population.getWaitVariation() > 0) {
+				waitTime = (long) (waitTime * (1 + population.getWaitVariation() * (2 * variation.nextDouble() - 1)));
+			}
+			bEventClock = bEventClock.plusNanos(waitTime);
+
+		// INTERACT
+		} else if (statement instanceof InteractStatement) {
+			InteractStatement interactStatement = (InteractStatement) statement;
+			interactInstructions(interactStatement.getSensorName(), interactStatement.getCommand());
+
+		// GOTO ENTITY
+		} else if (statement instanceof GotoEntityStatement) {
+			gotoEntityInstructions(((GotoEntityStatement) statement).getEntityName());
+		}
+	}
+
+	// Adds the B-events of the statement to the plan that is recorded, followed by the messages printed while it was planned
+	private void recordStatement() {
+		for (BEvent event : bEvents) {
+			long nanos = ChronoUnit.NANOS.between(context.getStart(), event.getEventDateTime());
+			switch (event.getEventType()) {
+			case MOVEMENT:
+				recording.add(new PlanCache.Step(BEventType.MOVEMENT, nanos, event.getNode().getX(), event.getNode().getY(), null, null));
+				break;
+			case SENSOR_ACTIVATION:
+				recording.add(new PlanCache.Step(BEventType.SENSOR_ACTIVATION, nanos, 0, 0, event.getSensor().getName(), event.getCommand()));
+				break;
+			default:
+				recording.add(new PlanCache.Step(event.getEventType(), nanos, 0, 0, event.getOutput(), null));
+			}
+		}
+		for (String message : messages) {
+			recording.add(new PlanCache.Step(null, 0, 0, 0, message, null));
+		}
+		messages.clear();
+		if (ended) {
+			plans.put(planKey, recording);
+			recording = null;
+		} else if (recording.size() > maxPlanEvents) {
+			recording = null; // would evict every other plan
+		}
+	}
+
+	// Adds the B-events of the next statement of the cached plan, and prints the messages printed while it was planned
+	private void replayNextStatement() {
+		do {
+			PlanCache.Step step = plan.get(planPosition++);
+			LocalDateTime time = context.getStart().plusNanos(step.getNanos());
+			if (step.getType() == null) {
+				print(step.getText());
+			} else if (step.getType() == BEventType.MOVEMENT) {
+				bEvents.add(new BEvent(BEventType.MOVEMENT, time, agent, grid.getNode(step.getX(), step.getY())));
+			} else if (step.getType() == BEventType.SENSOR_ACTIVATION) {
+				bEvents.add(new BEvent(BEventType.SENSOR_ACTIVATION, time, agent, context.getActiveSensor(step.getText()), step.getCommand()));
+			} else if (step.getType() == BEventType.OUTPUT) {
+				context.statementPlanned();
+				bEvents.add(new BEvent(BEventType.OUTPUT, time, step.getText()));
+			} else {
+				bEvents.add(new BEvent(step.getType(), time));
+				ended = true;
+			}
+		} while (planPosition < plan.size() && !startsStatement(plan.get(planPosition)));
+	}
+
+	private static boolean startsStatement(PlanCache.Step step) {
+		return step.getType() == BEventType.OUTPUT || step.getType() == BEventType.SIMULATION_END;
+	}
+
+	private void print(String message) {
+		try {
+			context.print(message);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // the run stops at its next event
+		}
+	}
+
+	private void gotoInstructions(Position gotoPosition, ArrayList<Position> exemptedCollisions) {
+		List<AStarNode> path;
+		if (plans == null) {
+			path = grid.getPath(
+					position.getX(),
+					position.getY(),
+					gotoPosition.getX(),
+					gotoPosition.getY(),
+					exemptedCollisions,
+					agent);
+		} else {
+			path = grid.getPath(
+					position.getX(),
+					position.getY(),
+					gotoPosition.getX(),
+					gotoPosition.getY(),
+					exemptedCollisions,
+					agent,
+					random);
+		}
+
+		// detects if goto is impossible (HALTING ERROR)
+		if (path.isEmpty()) {
+			print("ERROR: coordinates are not reachable");
+			if (recording != null) {
+				messages.add("ERROR: coordinates are not reachable");
+			}
+		}
+
+		for (AStarNode node : path) {
+			double distance = position.distance(new Position(node.getX(),node.getY())) * floorplan.getTileSideLength();
+			long time = (long) ((distance / agent.getSpeed()) * 1000000000);
+
+			//Agent jumps from start of tile to start of tile
+			long halfTime = time/2;
+			bEventClock = bEventClock.plusNanos(halfTime);
+			bEvents.add(new BEvent(BEventType.MOVEMENT, bEventClock, agent, node));
+			bEventClock = bEventClock.plusNanos(halfTime);
+			position = new Position(node.getX(),node.getY());
+		}
+	}
+
+	private void interactInstructions(String sensorName, String command) {
+		for (SensorActive activeSensor : context.getActiveSensors()) {
+			if (activeSensor.getName().equals(sensorName)) {
+				if (!activeSensor.getInteractArea().contains(position)) {
+					Position randomInteractPosition = activeSensor.getInteractArea().get(random.nextInt(activeSensor.getInteractArea().size()));
+					//intersection tiles of sensor's physicalArea tiles and interactArea tiles that should become walkable
+					ArrayList<Position> intersectionArrayList = new ArrayList<Position>();
+					for (Position t : activeSensor.getPhysicalArea()) {
+						if(activeSensor.getInteractArea().contains(t)) {
+							intersectionArrayList.add(t);
+						}
+					}
+
+					gotoInstructions(randomInteractPosition, intersectionArrayList);
+				}
+				bEvents.add(new BEvent(BEventType.SENSOR_ACTIVATION, bEventClock, agent, activeSensor, command));
+				break;
+			}
+		}
+	}
+
+	private void gotoEntityInstructions(String entityName) {
+		ArrayList<Entity> union = new ArrayList<Entity>();
+		union.addAll(floorplan.getEntities());
+		union.addAll(context.getActiveSensors());
+
+		for (Entity entity : union) {
+			if (entity.getName().equals(entityName)) {
+				if (!entity.getInteractArea().contains(position)) {
+					ArrayList<Position> gotoAblePositions = new ArrayList<Position>();
+					for (Position position : entity.getInteractArea()) {
+						if (grid.getNode(position.getX(), position.getY()).getState() == NodeState.WALKABLE || entity.getPhysicalArea().contains(position)) {
+							gotoAblePositions.add(position);
+						}
+					}
+					Position randomInteractPosition = gotoAblePositions.get(random.nextInt(gotoAblePositions.size()));
+					//intersection tiles of entity's physicalArea tiles and interactArea tiles that should become walkable
+					ArrayList<Position> intersectionArrayList = new ArrayList<Position>();
+					for (Position t : entity.getPhysicalArea()) {
+						if(entity.getInteractArea().contains(t)) {
+							intersectionArrayList.add(t);
+						}
+					}
+
+					gotoInstructions(randomInteractPosition, intersectionArrayList);
+				}
+				break;
+			}
+		}
+	}
+
+	// Returns a random walkable tile at most the given number of tiles from the target, or the target if none is found
+	private Position varyTarget(Position target, int maxDeviation) {
+		for (int attempt = 0; attempt < 8; attempt++) {
+			int x = target.getX() + variation.nextInt(2 * maxDeviation + 1) - maxDeviation;
+			int y = target.getY() + variation.nextInt(2 * maxDeviation + 1) - maxDeviation;
+			if (grid.isWithin(x, y) && grid.getNodeState(x, y) == NodeState.WALKABLE) {
+				return new Position(x, y);
+			}
+		}
+		return target;
+	}
+
+	//Accessors
+	int getIndex() {
+		return index;
+	}
+
+	// Returns the time of the next B-event as of the last peek()
+	LocalDateTime getNextEventTime() {
+		return nextEventTime;
+	}
+}
@@ -25,9 +25,10 @@ public class BEvent {
 	}
 	
 	// Sensor activation constructor
-	public BEvent(BEventType eventType, LocalDateTime eventDateTime, SensorActive sensor, String command) {
+	public BEvent(BEventType eventType, LocalDateTime eventDateTime, Agent agent, SensorActive sensor, String command) {
 		this.eventType = eventType;
 		this.eventDateTime = eventDateTime;
+		this.agent = agent;
 		this.sensor = sensor;
 		this.command = command;
 	}
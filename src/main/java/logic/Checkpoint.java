@@ -0,0 +1,326 @@
+package logic;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import entities.Floorplan;
+import entities.SensorState;
+import entities.StateField;
+import geo.Position;
+import script.Script;
+
+/**
+ * Checkpoints of a run, from which it is resumed at the simulated instant they have been taken at, e.g. after the
+ * process has restarted, or forked into several runs that continue from the same state.
+ *
+ * A checkpoint is taken on the simulation thread between two B-events, when no passive sensor readings are pending,
+ * and encoded into a byte array there; it is written to the file on a writer thread, through a temporary file that
+ * replaces the file when it is complete, so the file always holds the latest complete checkpoint.
+ *
+ * File layout, big-endian as written by DataOutput:
+ *   "IOTCKP01", UTF fingerprint of the floorplan and script, time of the start of the run, time of the checkpoint
+ *   the state of the context, see SimulationContext.writeCheckpoint()
+ *   the state of the planners of the agents that have B-events left, see SimulationRun.checkpoint() and AgentPlanner.writeCheckpoint()
+ * Times are long epoch seconds and int nanoseconds, strings in the state are an int length and UTF-8 bytes.
+ */
+public class Checkpoint {
+
+	static final byte[] MAGIC = "IOTCKP01".getBytes(StandardCharsets.US_ASCII);
+	public static final String FILE_EXTENSION = ".ckpt";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final ObjectInputFilter RANDOM_ONLY = ObjectInputFilter.Config.createFilter("java.util.Random;maxdepth=1;!*");
+
+	// types of the values of OBJECT fields
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_STRING = 1;
+	private static final byte VALUE_BOOLEAN = 2;
+	private static final byte VALUE_INT = 3;
+	private static final byte VALUE_LONG = 4;
+	private static final byte VALUE_DOUBLE = 5;
+	private static final byte VALUE_POSITION = 6;
+	private static final byte VALUE_LIST = 7;
+	private static final byte VALUE_MAP = 8;
+	private static final byte VALUE_JSON = 9;
+
+	// writes the checkpoints of all runs, in order
+	private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "checkpoint-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Checkpoint() {
+	}
+
+	// Returns the hexadecimal SHA-256 hash of the floorplan and script a checkpoint can only be resumed with
+	static String fingerprint(Floorplan floorplan, Script script) throws JsonProcessingException {
+		MessageDigest digest = ResultCache.sha256();
+		digest.update(ResultCache.canonicalJson(floorplan));
+		StringBuilder text = new StringBuilder();
+		ResultCache.appendBlocks("agents", script.getAgents(), text);
+		ResultCache.appendBlocks("macros", script.getMacros(), text);
+		ResultCache.appendBlocks("populations", script.getPopulations(), text);
+		ResultCache.update(digest, text.toString());
+		return ResultCache.hex(digest.digest());
+	}
+
+	// Writes the checkpoint to the file on the writer thread
+	static Future<?> write(Path file, byte[] checkpoint) {
+		return writer.submit(() -> {
+			Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.write(temporary, checkpoint);
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return null;
+		});
+	}
+
+	static void writeHeader(DataOutput out, String fingerprint, LocalDateTime start, LocalDateTime clock) throws IOException {
+		out.write(MAGIC);
+		out.writeUTF(fingerprint);
+		writeTime(out, start);
+		writeTime(out, clock);
+	}
+
+	// Reads the magic and returns the fingerprint. The start of the run and the time of the checkpoint follow, see readTime().
+	static String readHeader(DataInput in, Path file) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("not a checkpoint: " + file);
+		}
+		return in.readUTF();
+	}
+
+	// Returns the simulated time the checkpoint in the file has been taken at
+	public static LocalDateTime getTime(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			readHeader(in, file);
+			readTime(in); // start of the run
+			return readTime(in);
+		}
+	}
+
+	static void writeTime(DataOutput out, LocalDateTime time) throws IOException {
+		out.writeBoolean(time != null);
+		if (time != null) {
+			out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+			out.writeInt(time.getNano());
+		}
+	}
+
+	static LocalDateTime readTime(DataInput in) throws IOException {
+		return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+	}
+
+	// Random generators are written with Java serialization, which is the only way to get at their seed. The file may
+	// come from a request, so only a Random is deserialized from it.
+	static void writeRandom(DataOutput out, Random random) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+			objects.writeObject(random);
+		}
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+	}
+
+	static Random readRandom(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			objects.setObjectInputFilter(RANDOM_ONLY);
+			return (Random) objects.readObject();
+		} catch (ClassNotFoundException | InvalidClassException e) {
+			throw new IOException("the checkpoint is corrupt", e);
+		}
+	}
+
+	// Writes the fields of the state by name and type, so the state is restored even if the schema has grown since
+	static void writeState(DataOutput out, SensorState state) throws IOException {
+		out.writeInt(state.size());
+		for (int i = 0; i < state.size(); i++) {
+			StateField field = state.getField(i);
+			out.writeUTF(field.getName());
+			Object value = state.get(field);
+			if (value == null) {
+				out.writeByte(-1);
+				continue;
+			}
+			out.writeByte(field.getType().ordinal());
+			switch (field.getType()) {
+			case BOOLEAN:
+				out.writeBoolean((Boolean) value);
+				break;
+			case INT:
+				out.writeInt((Integer) value);
+				break;
+			case LONG:
+				out.writeLong((Long) value);
+				break;
+			case DOUBLE:
+				out.writeDouble((Double) value);
+				break;
+			case STRING:
+				writeString(out, (String) value);
+				break;
+			default:
+				writeValue(out, value);
+			}
+		}
+	}
+
+	static void readState(DataInput in, SensorState state) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			String name = in.readUTF();
+			byte type = in.readByte();
+			if (type < 0) {
+				state.put(name, null);
+				continue;
+			}
+			switch (StateField.Type.values()[type]) {
+			case BOOLEAN:
+				state.put(name, in.readBoolean());
+				break;
+			case INT:
+				state.put(name, in.readInt());
+				break;
+			case LONG:
+				state.put(name, in.readLong());
+				break;
+			case DOUBLE:
+				state.put(name, in.readDouble());
+				break;
+			case STRING:
+				state.put(name, readString(in));
+				break;
+			default:
+				state.put(name, readValue(in));
+			}
+		}
+		state.clearDirty();
+	}
+
+	// Writes the value of an OBJECT field with its type, so it is restored as the same classes and compares equal to
+	// the value the sensor sets after a resume. Values of other classes are written as JSON and restored as maps and
+	// lists, as the file must not choose the classes that are instantiated.
+	static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(VALUE_NULL);
+		} else if (value instanceof String) {
+			out.writeByte(VALUE_STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(VALUE_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(VALUE_INT);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(VALUE_LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(VALUE_DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Position) {
+			out.writeByte(VALUE_POSITION);
+			out.writeInt(((Position) value).getX());
+			out.writeInt(((Position) value).getY());
+		} else if (value instanceof List) {
+			out.writeByte(VALUE_LIST);
+			out.writeInt(((List<?>) value).size());
+			for (Object element : (List<?>) value) {
+				writeValue(out, element);
+			}
+		} else if (value instanceof Map) {
+			out.writeByte(VALUE_MAP);
+			out.writeInt(((Map<?, ?>) value).size());
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				writeValue(out, entry.getKey());
+				writeValue(out, entry.getValue());
+			}
+		} else {
+			out.writeByte(VALUE_JSON);
+			writeString(out, mapper.writeValueAsString(value));
+		}
+	}
+
+	static Object readValue(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case VALUE_NULL:
+			return null;
+		case VALUE_STRING:
+			return readString(in);
+		case VALUE_BOOLEAN:
+			return in.readBoolean();
+		case VALUE_INT:
+			return in.readInt();
+		case VALUE_LONG:
+			return in.readLong();
+		case VALUE_DOUBLE:
+			return in.readDouble();
+		case VALUE_POSITION:
+			return new Position(in.readInt(), in.readInt());
+		case VALUE_LIST:
+			int size = in.readInt();
+			ArrayList<Object> list = new ArrayList<Object>(size);
+			for (int i = 0; i < size; i++) {
+				list.add(readValue(in));
+			}
+			return list;
+		case VALUE_MAP:
+			int entries = in.readInt();
+			LinkedHashMap<Object, Object> map = new LinkedHashMap<Object, Object>();
+			for (int i = 0; i < entries; i++) {
+				map.put(readValue(in), readValue(in));
+			}
+			return map;
+		case VALUE_JSON:
+			return mapper.readValue(readString(in), Object.class);
+		default:
+			throw new IOException("the checkpoint is corrupt");
+		}
+	}
+
+	// Strings are written as a length and UTF-8 bytes, as DataOutput.writeUTF() is limited to 65535 bytes
+	static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,54 @@
+package logic;
+
+/**
+ * Predicted cost of simulating a floorplan and input, see CostEstimator.
+ */
+public class CostEstimate {
+
+	private final double events; // B-events and passive sensor readings
+	private final double pathSearches;
+	private final double pathfindingNodeVisits;
+	private final double simulatedSeconds; // until the last agent has executed its last statement
+	private final long memoryBytes; // peak memory of a run, in addition to the shared floorplan and script
+	private final double cpuSeconds; // processing time of a run in instant mode
+
+	public CostEstimate(double events, double pathSearches, double pathfindingNodeVisits, double simulatedSeconds, long memoryBytes, double cpuSeconds) {
+		this.events = events;
+		this.pathSearches = pathSearches;
+		this.pathfindingNodeVisits = pathfindingNodeVisits;
+		this.simulatedSeconds = simulatedSeconds;
+		this.memoryBytes = memoryBytes;
+		this.cpuSeconds = cpuSeconds;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.0f events, %.0f path searches, %.0f simulated seconds, %d MB of memory and %.1f CPU seconds",
+				events, pathSearches, simulatedSeconds, memoryBytes / (1024 * 1024), cpuSeconds);
+	}
+
+	//Accessors
+	public double getEvents() {
+		return events;
+	}
+
+	public double getPathSearches() {
+		return pathSearches;
+	}
+
+	public double getPathfindingNodeVisits() {
+		return pathfindingNodeVisits;
+	}
+
+	public double getSimulatedSeconds() {
+		return simulatedSeconds;
+	}
+
+	public long getMemoryBytes() {
+		return memoryBytes;
+	}
+
+	public double getCpuSeconds() {
+		return cpuSeconds;
+	}
+}
@@ -0,0 +1,147 @@
+package logic;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import entities.Agent;
+import entities.Floorplan;
+import entities.SensorPassive;
+import script.Block;
+import script.CallStatement;
+import script.GotoEntityStatement;
+import script.GotoStatement;
+import script.InteractStatement;
+import script.RepeatStatement;
+import script.Script;
+import script.Statement;
+import script.WaitStatement;
+
+/**
+ * Predicts the events, memory and pathfinding work of a run from a tested floorplan and input,
+ * without planning any path. The script is analysed per block, so macros, repeat statements and
+ * populations sharing a block are not expanded.
+ *
+ * The estimates are coarse: paths are assumed to have the mean distance between two tiles of the grid,
+ * and passive sensors are assumed to be triggered for the share of time an agent is in their interact area.
+ */
+public class CostEstimator {
+
+	// approximate costs measured on the classes involved
+	private static final long BYTES_PER_TILE = 176; // AStarNode with its trigger lists, and its share of the A* open and closed lists
+	private static final long BYTES_PER_AGENT = 640; // agent copy, AgentPlanner and Cursor
+	private static final long BYTES_PER_BEVENT = 56;
+	private static final long BYTES_PER_SENSOR = 2048; // sensor copy with state map and ObjectMapper
+	private static final long BYTES_PER_TRIGGER_EVENT = 80; // TriggerEvent with its LocalDateTime
+	private static final double NANOS_PER_EVENT = 2000; // dominated by the console output
+	private static final double NANOS_PER_NODE_VISIT = 10;
+	private static final long BYTES_PER_REPLAY = 2 << 20; // read buffer of the recording and the states of its sensor types
+	private static final double RECORDED_BYTES_PER_EVENT = 12;
+
+	private CostEstimator() {
+	}
+
+	public static CostEstimate estimate(Floorplan floorplan, Script script) {
+		int tiles = floorplan.getWidth() * floorplan.getHeight();
+		int walkableTiles = Math.max(1, tiles - floorplan.getWalls().size());
+		double meanPathTiles = Math.max(1, (floorplan.getWidth() + floorplan.getHeight()) / 3.0);
+
+		Map<Block, BlockCost> blockCosts = new IdentityHashMap<Block, BlockCost>();
+		double bEvents = 0;
+		double pathSearches = 0;
+		double simulatedSeconds = 0;
+		double longestWait = 0;
+		for (Agent agent : floorplan.getAllAgents()) {
+			Block block = agent.getPopulation() == null ? script.getAgents().get(agent.getId()) : script.getPopulations().get(agent.getPopulation().getId());
+			if (block == null) {
+				continue;
+			}
+			BlockCost cost = blockCost(block, script, blockCosts);
+			double moves = cost.paths * meanPathTiles;
+			bEvents += cost.statements + moves + cost.interacts + 1; // output events, movements, activations and the end event
+			pathSearches += cost.paths;
+			simulatedSeconds = Math.max(simulatedSeconds, cost.waitSeconds + moves * floorplan.getTileSideLength() / agent.getSpeed());
+			longestWait = Math.max(longestWait, cost.longestWait);
+		}
+
+		// passive sensor readings, and the readings buffered between two B-events, which are at most the longest wait apart
+		double readings = 0;
+		double bufferedReadings = 0;
+		int agentCount = floorplan.getAllAgents().size();
+		for (SensorPassive sensor : floorplan.getPassiveSensors()) {
+			double share = sensor.estimateTriggerShare(agentCount, walkableTiles);
+			if (sensor.getEmissionPeriod() == 0) {
+				// at most a reading per B-event, when the state changes
+				readings += bEvents * share;
+				bufferedReadings += share;
+			} else {
+				readings += simulatedSeconds * 1e9 / sensor.getEmissionPeriod() * share;
+				bufferedReadings += longestWait * 1e9 / sensor.getEmissionPeriod() * share;
+			}
+		}
+
+		double nodeVisits = pathSearches * (tiles + 8 * meanPathTiles * meanPathTiles); // heuristics of all nodes, and the neighbours of the nodes searched
+		double events = bEvents + readings;
+		double memory = tiles * BYTES_PER_TILE
+				+ agentCount * (BYTES_PER_AGENT + meanPathTiles * BYTES_PER_BEVENT)
+				+ floorplan.getAllSensors().size() * BYTES_PER_SENSOR
+				+ bufferedReadings * BYTES_PER_TRIGGER_EVENT;
+		double cpuSeconds = (events * NANOS_PER_EVENT + nodeVisits * NANOS_PER_NODE_VISIT) / 1e9;
+
+		return new CostEstimate(events, pathSearches, nodeVisits, simulatedSeconds, (long) Math.min(Long.MAX_VALUE, memory), cpuSeconds);
+	}
+
+	// Predicts the cost of replaying a recording of the given size, whose readings are published like simulated ones
+	public static CostEstimate estimateReplay(long recordingBytes) {
+		double events = recordingBytes / RECORDED_BYTES_PER_EVENT;
+		return new CostEstimate(events, 0, 0, 0, BYTES_PER_REPLAY, events * NANOS_PER_EVENT / 1e9);
+	}
+
+	private static BlockCost blockCost(Block block, Script script, Map<Block, BlockCost> blockCosts) {
+		BlockCost cost = blockCosts.get(block);
+		if (cost != null) {
+			return cost;
+		}
+		cost = new BlockCost();
+		for (Statement statement : block.getStatements()) {
+			if (statement instanceof CallStatement) {
+				cost.add(blockCost(script.getMacros().get(((CallStatement) statement).getMacroName()), script, blockCosts), 1);
+			} else if (statement instanceof RepeatStatement) {
+				RepeatStatement repeatStatement = (RepeatStatement) statement;
+				cost.add(blockCost(repeatStatement.getBody(), script, blockCosts), repeatStatement.getCount());
+			} else {
+				cost.statements++;
+				if (statement instanceof WaitStatement) {
+					long seconds = ((WaitStatement) statement).getSeconds();
+					cost.waitSeconds += seconds;
+					cost.longestWait = Math.max(cost.longestWait, seconds);
+				} else if (statement instanceof InteractStatement) {
+					cost.interacts++;
+					cost.paths++; // the agent walks to the sensor unless it is in its interact area
+				} else if (statement instanceof GotoStatement || statement instanceof GotoEntityStatement) {
+					cost.paths++;
+				}
+			}
+		}
+		blockCosts.put(block, cost);
+		return cost;
+	}
+
+	// Cost of executing a block once
+	private static class BlockCost {
+		private double statements = 0;
+		private double paths = 0;
+		private double interacts = 0;
+		private double waitSeconds = 0;
+		private double longestWait = 0;
+
+		private void add(BlockCost cost, int times) {
+			statements += cost.statements * times;
+			paths += cost.paths * times;
+			interacts += cost.interacts * times;
+			waitSeconds += cost.waitSeconds * times;
+			if (times > 0) {
+				longestWait = Math.max(longestWait, cost.longestWait);
+			}
+		}
+	}
+}
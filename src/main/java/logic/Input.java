@@ -1,191 +1,199 @@
 package logic;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 import entities.Agent;
 import entities.Entity;
+import entities.Population;
 import entities.SensorActive;
 import main.Resources;
 import pathfinding.NodeState;
+import script.Block;
+import script.CallStatement;
+import script.GotoEntityStatement;
+import script.GotoStatement;
+import script.InteractStatement;
+import script.Lexer;
+import script.Parser;
+import script.RepeatStatement;
+import script.Script;
+import script.ScriptError;
+import script.Statement;
 
 public class Input {
-	
+
 	private String input;
-	HashMap<String, String[]> agentInstructionLists = new HashMap<String, String[]>();
-	
-	@JsonIgnore private final Pattern agentInstructionListPattern = Pattern.compile("\\s*agent\\((\\w+)\\)\\s*\\{([^}]*)\\}");  //pattern for enclosing each agents instructions list
-	
-	@JsonIgnore private final Pattern gotoPattern = Pattern.compile("\\s*goto\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*\\)\\s*"); //gotoPattern that accepts coordinates of a tile that is within the boundaries of the specified grid and is walkable
-	@JsonIgnore private final Pattern gotoEntityPattern = Pattern.compile("\\s*goto\\(\\s*(\\w+)\\s*\\)\\s*"); //gotoEntityPattern that accepts name of Entity or SensorActive
-	@JsonIgnore private final Pattern interactPattern = Pattern.compile("\\s*interact\\(\\s*(\\w+),(\\w+)\\s*\\)\\s*"); //interactPattern that accepts sensorName and command
-	@JsonIgnore private final Pattern waitPattern = Pattern.compile("\\s*wait\\(\\s*(\\d+)\\s*\\)\\s*"); //waitPattern that accepts integer
-	@JsonIgnore private final Pattern emptyPattern = Pattern.compile("\\s*"); //empty statement and whitespace at end of input string 
-	
-	@JsonIgnore private final Pattern commentLinePattern = Pattern.compile("//.*");
-	@JsonIgnore private final Pattern commentBlockPattern = Pattern.compile("/\\*[\\s\\S]*\\*/");
-	
-	@JsonIgnore private final Pattern macroDefinePattern = Pattern.compile("\\s*macro\\((\\w+)\\)\\s*\\{([^}]*)\\}"); //\s*let\s+(\w+)\b(?<!\bgoto|wait|interact)\s*\{([^}]*)\}
-	//@JsonIgnore private final Pattern macroCallPattern = Pattern.compile("\\s*(\\w+)\\(\\s*\\)\\s*;");
-	
-	
-	
+	private Script script;
+
 	public Input(String input) {
 		this.input = input;
 	}
-	
-	public Input() {	
+
+	public Input() {
 	}
-	
-	//Preprocessor
+
 	public String test() {
-	
-	//Remove comments
-	String processedInput = this.input;
-	processedInput = commentLinePattern.matcher(processedInput).replaceAll("");
-	processedInput = commentBlockPattern.matcher(processedInput).replaceAll("");
-	
-	
-	//Represent macros internally
-	HashMap<String, String> macros = new HashMap<String, String>();
-	Matcher m = macroDefinePattern.matcher(processedInput);
-	while (m.find()) {
-	   macros.put(m.group(1), m.group(2));	   
+		return test(new StringReader(input));
 	}
-	processedInput = macroDefinePattern.matcher(processedInput).replaceAll("");
-
-	//Expand macros
-	for (HashMap.Entry<String, String> entry : macros.entrySet()) {
-        processedInput = Pattern.compile("\\s*"+entry.getKey()+"\\(\\s*\\)\\s*;").matcher(processedInput).replaceAll(entry.getValue());
-    }
-	
-	
-	
-	//Test input
-	String[] inputArray;
-	
-	Matcher listMatcher = agentInstructionListPattern.matcher(processedInput);
-	while (listMatcher.find()) {
-		
-		// Test if instructions for agent has been defined twice
-		if (agentInstructionLists.get(listMatcher.group(1)) != null) {
-			return "ERROR: instructions have been defined more than once for agent: "+listMatcher.group(1); // returns error-message
+
+	// Parses and tests the input in a single pass over the reader. All errors are reported, separated by line breaks.
+	public String test(Reader reader) {
+		List<ScriptError> errors = new ArrayList<ScriptError>();
+
+		//Parse input
+		try {
+			script = new Parser(new Lexer(reader, errors), errors).parse();
+		} catch (IOException e) {
+			return "ERROR: the input could not be read: " + e.getMessage();
 		}
-		
-		inputArray = listMatcher.group(2).split(";");
-		for (int i = 0; i < inputArray.length; i++) { 
-			if (gotoPattern.matcher(inputArray[i]).matches()) { 
-				// parse input
-				int x = Integer.parseInt(gotoPattern.matcher(inputArray[i]).replaceAll("$1"));
-				int y = Integer.parseInt(gotoPattern.matcher(inputArray[i]).replaceAll("$2"));
-				
-				// tests if coordinate are within grid boundaries
-				if (!Resources.getaStarGrid().isWithin(x, y)) {
-					return "ERROR: coordinate is out of bounds in statement "+(i+1)+": "+inputArray[i]; // returns error-message
-				}
-				// tests if coordinate is walkable
-				if (Resources.getaStarGrid().getNodeState(x, y) == NodeState.NOT_WALKABLE) {
-					return "ERROR: target coordinate is not walkable in statement "+(i+1)+": "+inputArray[i]; // returns error-message
+
+		//Test statements of macros and agent instruction lists
+		HashMap<String, SensorActive> activeSensors = new HashMap<String, SensorActive>();
+		for (SensorActive activeSensor : Resources.getFloorplan().getActiveSensors()) {
+			activeSensors.put(activeSensor.getName(), activeSensor);
+		}
+		HashSet<String> gotoableEntities = new HashSet<String>();
+		for (Entity entity : Resources.getFloorplan().getEntities()) {
+			gotoableEntities.add(entity.getName());
+		}
+		gotoableEntities.addAll(activeSensors.keySet());
+
+		for (Block block : script.getMacros().values()) {
+			testBlock(block, activeSensors, gotoableEntities, errors);
+		}
+		for (Block block : script.getAgents().values()) {
+			testBlock(block, activeSensors, gotoableEntities, errors);
+		}
+		for (Block block : script.getPopulations().values()) {
+			testBlock(block, activeSensors, gotoableEntities, errors);
+		}
+
+		//test that macros do not call themselves, directly or through other macros
+		HashMap<String, Boolean> visited = new HashMap<String, Boolean>(); // false while the macro is being visited, true when done
+		for (String macroName : script.getMacros().keySet()) {
+			testRecursion(macroName, visited, errors);
+		}
+
+		//test all agents in the floormap have an agent instruction list assigned to them
+		HashSet<String> agentIds = new HashSet<String>();
+		for (Agent agent : Resources.getFloorplan().getAgents()) {
+			agentIds.add(agent.getId());
+			if (!script.getAgents().containsKey(agent.getId())) {
+				errors.add(new ScriptError("no agent instructions have been defined for agent: " + agent.getId()));
+			}
+		}
+
+		//test all agent instruction lists corresponds to a defined agent in the floorplan
+		for (String key : script.getAgents().keySet()) {
+			if (!agentIds.contains(key)) {
+				errors.add(new ScriptError("no definition has been made in the floormap for agent: " + key));
+			}
+		}
+
+		//test all populations in the floormap have an instruction list assigned to them, and vice versa
+		HashSet<String> populationIds = new HashSet<String>();
+		for (Population population : Resources.getFloorplan().getPopulations()) {
+			populationIds.add(population.getId());
+			if (!script.getPopulations().containsKey(population.getId())) {
+				errors.add(new ScriptError("no population instructions have been defined for population: " + population.getId()));
+			}
+		}
+		for (String key : script.getPopulations().keySet()) {
+			if (!populationIds.contains(key)) {
+				errors.add(new ScriptError("no definition has been made in the floormap for population: " + key));
+			}
+		}
+
+		if (!errors.isEmpty()) {
+			// in order of the input, followed by the errors that do not relate to a position in it
+			errors.sort(Comparator.comparing((ScriptError error) -> error.getLine() == 0)
+					.thenComparingInt(ScriptError::getLine)
+					.thenComparingInt(ScriptError::getColumn));
+			StringBuilder result = new StringBuilder();
+			for (ScriptError error : errors) {
+				if (result.length() > 0) {
+					result.append("\n");
 				}
-				continue;
+				result.append(error);
 			}
-			
-			if (interactPattern.matcher(inputArray[i]).matches()) {
-				// parse input
-				String sensorNameInput = interactPattern.matcher(inputArray[i]).replaceAll("$1");
-				String commandInput = interactPattern.matcher(inputArray[i]).replaceAll("$2");
-				
-				SensorActive sensorInput = null;
-				for (SensorActive activeSensor : Resources.getFloorplan().getActiveSensors()) {
-					if (activeSensor.getName().equals(sensorNameInput)) {
-						sensorInput = activeSensor;
-						break;
-					}
+			return result.toString();
+		}
+		return "consumed";
+	}
+
+	private void testBlock(Block block, Map<String, SensorActive> activeSensors, HashSet<String> gotoableEntities, List<ScriptError> errors) {
+		for (Statement statement : block.getStatements()) {
+			if (statement instanceof GotoStatement) {
+				GotoStatement gotoStatement = (GotoStatement) statement;
+				// tests if coordinate are within grid boundaries
+				if (!Resources.getaStarGrid().isWithin(gotoStatement.getX(), gotoStatement.getY())) {
+					errors.add(new ScriptError("coordinate is out of bounds", statement));
+				// tests if coordinate is walkable
+				} else if (Resources.getaStarGrid().getNodeState(gotoStatement.getX(), gotoStatement.getY()) == NodeState.NOT_WALKABLE) {
+					errors.add(new ScriptError("target coordinate is not walkable", statement));
 				}
-				
+
+			} else if (statement instanceof InteractStatement) {
+				InteractStatement interactStatement = (InteractStatement) statement;
+				SensorActive sensorInput = activeSensors.get(interactStatement.getSensorName());
 				// test if active sensor name exists in the floorplan
 				if (sensorInput == null) {
-					return "ERROR: No active sensor exists with the name specified in statement "+(i+1)+": "+inputArray[i]; // returns error-message
-				}
+					errors.add(new ScriptError("No active sensor exists with the name specified", statement));
 				// test if command is applicable for the sensor
-				if (!sensorInput.getCommands().contains(commandInput)) {
-					return "ERROR: The specified type of sensor does not accept the command in statement "+(i+1)+": "+inputArray[i]; // returns error-message
+				} else if (!sensorInput.getCommands().contains(interactStatement.getCommand())) {
+					errors.add(new ScriptError("The specified type of sensor does not accept the command", statement));
 				}
-				continue;
-			}
-			
-			if (waitPattern.matcher(inputArray[i]).matches()) {
-				continue;
-			}
-			
-			if (gotoEntityPattern.matcher(inputArray[i]).matches()) {
-				// parse input
-				String entityNameInput = gotoEntityPattern.matcher(inputArray[i]).replaceAll("$1");
-				Entity entityInput = null;
-				ArrayList<Entity> gotoableEntities = new ArrayList<Entity>();
-				gotoableEntities.addAll(Resources.getFloorplan().getEntities());
-				gotoableEntities.addAll(Resources.getFloorplan().getActiveSensors());
-				for (Entity entity : gotoableEntities) {
-					if (entity.getName().equals(entityNameInput)) {
-						entityInput = entity;
-						break;
-					}
-				}
-				
+
+			} else if (statement instanceof GotoEntityStatement) {
 				// test if entity exists
-				if (entityInput == null) {
-					return "ERROR: No entity or active-sensor exists with the name specified in statement "+(i+1)+": "+inputArray[i]; // returns error-message
+				if (!gotoableEntities.contains(((GotoEntityStatement) statement).getEntityName())) {
+					errors.add(new ScriptError("No entity or active-sensor exists with the name specified", statement));
 				}
-				
-				continue;
-			}
-			
-			if (emptyPattern.matcher(inputArray[i]).matches()) {
-				continue;
+
+			} else if (statement instanceof CallStatement) {
+				// test if macro exists
+				if (!script.getMacros().containsKey(((CallStatement) statement).getMacroName())) {
+					errors.add(new ScriptError("No macro has been defined with the name specified", statement));
+				}
+
+			} else if (statement instanceof RepeatStatement) {
+				testBlock(((RepeatStatement) statement).getBody(), activeSensors, gotoableEntities, errors);
 			}
-			
-			return "ERROR: syntax error in statement "+(i+1)+": "+inputArray[i]; // returns error-message
-			
 		}
-		
-		agentInstructionLists.put(listMatcher.group(1), inputArray);	   
-		
 	}
-	
-	/*
-	// TEST!!! See input
-	for (String name: agentInstructionLists.keySet()) {
-	    String key = name.toString();
-	    String value = Arrays.toString(agentInstructionLists.get(name));
-	    System.out.println("key: " + key + "\n value: " + value);
-	}
-	*/
-	
-	//test all agents in the floormap have an agent instruction list assigned to them
-	for (Agent agent : Resources.getFloorplan().getAgents()) {
-		if (!agentInstructionLists.keySet().contains(agent.getId())) {
-			return "ERROR: no agent instructions have been defined for agent: "+agent.getId(); // returns error-message
+
+	private void testRecursion(String macroName, HashMap<String, Boolean> visited, List<ScriptError> errors) {
+		if (visited.containsKey(macroName)) {
+			return;
 		}
+		visited.put(macroName, false);
+		testRecursion(script.getMacros().get(macroName), visited, errors);
+		visited.put(macroName, true);
 	}
-	
-	//test all agent instruction lists corresponds to a defined agent in the floorplan
-	ArrayList<String> agentIds = new ArrayList<String>();
-	for (Agent agent : Resources.getFloorplan().getAgents()) {
-		agentIds.add(agent.getId());
-	}
-	for (String key : agentInstructionLists.keySet()) {
-		if (!agentIds.contains(key)) {
-			return "ERROR: no definition has been made in the floormap for agent: "+key; // returns error-message
+
+	private void testRecursion(Block block, HashMap<String, Boolean> visited, List<ScriptError> errors) {
+		for (Statement statement : block.getStatements()) {
+			if (statement instanceof CallStatement) {
+				String calledMacro = ((CallStatement) statement).getMacroName();
+				if (visited.get(calledMacro) == Boolean.FALSE) {
+					errors.add(new ScriptError("macro " + calledMacro + " calls itself recursively", statement));
+				} else if (script.getMacros().containsKey(calledMacro)) {
+					testRecursion(calledMacro, visited, errors);
+				}
+			} else if (statement instanceof RepeatStatement) {
+				testRecursion(((RepeatStatement) statement).getBody(), visited, errors);
+			}
 		}
 	}
-	
-	return "consumed";
-	}
-	
+
 	//Accessors and Mutators
 	public String getInput() {
 		return input;
@@ -195,26 +203,8 @@ public class Input {
 		this.input = input;
 	}
 
-	public HashMap<String, String[]> getAgentInstructionLists() {
-		return agentInstructionLists;
+	public Script getScript() {
+		return script;
 	}
 
-	public Pattern getGotopattern() {
-		return gotoPattern;
-	}
-
-	public Pattern getInteractpattern() {
-		return interactPattern;
-	}
-
-	public Pattern getWaitpattern() {
-		return waitPattern;
-	}
-
-	public Pattern getGotoentitypattern() {
-		return gotoEntityPattern;
-	}
-	
-	
-	
 }
@@ -0,0 +1,5 @@
+package logic;
+
+public enum JobStatus {
+    QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+}
@@ -0,0 +1,221 @@
+package logic;
+
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import entities.Agent;
+import entities.Floorplan;
+import entities.Population;
+import script.Block;
+import script.CallStatement;
+import script.RepeatStatement;
+import script.Script;
+import script.Statement;
+
+/**
+ * In-memory cache of the B-events planned for agents, so a run re-plans only the agents whose program, initial
+ * position, speed or floorplan have changed since an earlier run with the same seed.
+ *
+ * A plan is keyed by a SHA-256 hash of the floorplan, the seed, the agent and the statements of its block and of the
+ * macros it calls. Plans are only valid when the planning of an agent does not depend on the other agents, so runs
+ * that use the cache plan every agent with its own random generator and its own exempted areas of the grid, see
+ * AgentPlanner. The least recently used plans are evicted when the cache holds more than maxEvents B-events.
+ */
+public class PlanCache {
+
+	private static final String VERSION = "1"; // of the key and plan format, part of the key
+
+	private static final PlanCache shared = new PlanCache();
+
+	// plans by key, in order of use
+	private final LinkedHashMap<String, Plan> plans = new LinkedHashMap<String, Plan>(16, 0.75f, true);
+	private long maxEvents = 1000000;
+	private long events = 0; // held by all plans
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	// Returns the cache shared by all runs
+	public static PlanCache getShared() {
+		return shared;
+	}
+
+	// Returns the hexadecimal SHA-256 hash of the floorplan, which is part of the keys of the plans of its agents
+	static String version(Floorplan floorplan) throws JsonProcessingException {
+		return ResultCache.hex(ResultCache.sha256().digest(ResultCache.canonicalJson(floorplan)));
+	}
+
+	// Returns the key of the plan of the agent executing the block
+	static String key(String floorplanVersion, Script script, Block block, Agent agent, Simulator simulator) {
+		MessageDigest digest = ResultCache.sha256();
+		ResultCache.update(digest, VERSION);
+		ResultCache.update(digest, floorplanVersion);
+		ResultCache.update(digest, String.valueOf(simulator.getSeed()));
+		ResultCache.update(digest, agent.getId());
+		ResultCache.update(digest, agent.getInitialPosition().getX() + "," + agent.getInitialPosition().getY());
+		ResultCache.update(digest, String.valueOf(agent.getSpeed()));
+		Population population = agent.getPopulation();
+		if (population != null) {
+			ResultCache.update(digest, population.getId() + ":" + agent.getMemberNumber() + ":" + population.getWaitVariation() + ":" + population.getTargetVariation() + ":" + population.getMemberSeed(agent.getMemberNumber()));
+		}
+		ResultCache.update(digest, program(script, block));
+		return ResultCache.hex(digest.digest());
+	}
+
+	// Renders the block and the macros it calls, in order of name
+	private static String program(Script script, Block block) {
+		StringBuilder text = new StringBuilder();
+		if (block == null) {
+			return text.toString();
+		}
+		ResultCache.appendBlock(block, text);
+		TreeSet<String> macros = new TreeSet<String>();
+		ArrayDeque<Block> blocks = new ArrayDeque<Block>();
+		blocks.add(block);
+		while (!blocks.isEmpty()) {
+			for (Statement statement : blocks.poll().getStatements()) {
+				if (statement instanceof CallStatement) {
+					String macro = ((CallStatement) statement).getMacroName();
+					if (macros.add(macro) && script.getMacros().get(macro) != null) {
+						blocks.add(script.getMacros().get(macro));
+					}
+				} else if (statement instanceof RepeatStatement) {
+					blocks.add(((RepeatStatement) statement).getBody());
+				}
+			}
+		}
+		for (String macro : macros) {
+			text.append(macro);
+			if (script.getMacros().get(macro) != null) {
+				ResultCache.appendBlock(script.getMacros().get(macro), text);
+			}
+		}
+		return text.toString();
+	}
+
+	// Returns the plan of the key and marks it as used, or null if it is not cached
+	synchronized Plan get(String key) {
+		Plan plan = plans.get(key);
+		if (plan == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return plan;
+	}
+
+	// Caches the complete plan of an agent, then evicts the least recently used plans beyond the size limit
+	synchronized void put(String key, Plan plan) {
+		Plan replaced = plans.put(key, plan);
+		if (replaced != null) {
+			events -= replaced.size();
+		}
+		events += plan.size();
+		Iterator<Plan> iterator = plans.values().iterator();
+		while (events > maxEvents && iterator.hasNext()) {
+			events -= iterator.next().size();
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	// Removes all plans, e.g. after the pathfinding has changed
+	public synchronized void clear() {
+		plans.clear();
+		events = 0;
+	}
+
+	synchronized long getMaxEvents() {
+		return maxEvents;
+	}
+
+	synchronized void setMaxEvents(long maxEvents) {
+		this.maxEvents = maxEvents;
+	}
+
+	// Hits, misses and evictions since the start, and the plans and B-events that are cached
+	public synchronized Map<String, Object> getMetrics() {
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("hits", hits);
+		metrics.put("misses", misses);
+		metrics.put("evictions", evictions);
+		metrics.put("plans", plans.size());
+		metrics.put("events", events);
+		return metrics;
+	}
+
+	/**
+	 * B-events and messages planned for an agent, in order of planning. The B-events of a statement start with its
+	 * OUTPUT event and are followed by the messages printed while it was planned; the plan ends with SIMULATION_END.
+	 * Times are nanoseconds since the start of the run, so a plan is reused by runs that start at another time.
+	 */
+	static class Plan {
+
+		private final ArrayList<Step> steps = new ArrayList<Step>();
+
+		void add(Step step) {
+			steps.add(step);
+		}
+
+		Step get(int index) {
+			return steps.get(index);
+		}
+
+		int size() {
+			return steps.size();
+		}
+	}
+
+	// A planned B-event, or a message if the type is null
+	static class Step {
+
+		private final BEventType type;
+		private final long nanos;
+		private final int x; // of the node of a MOVEMENT
+		private final int y;
+		private final String text; // output of an OUTPUT, sensor of a SENSOR_ACTIVATION or the message
+		private final String command; // of a SENSOR_ACTIVATION
+
+		Step(BEventType type, long nanos, int x, int y, String text, String command) {
+			this.type = type;
+			this.nanos = nanos;
+			this.x = x;
+			this.y = y;
+			this.text = text;
+			this.command = command;
+		}
+
+		//Accessors
+		BEventType getType() {
+			return type;
+		}
+
+		long getNanos() {
+			return nanos;
+		}
+
+		int getX() {
+			return x;
+		}
+
+		int getY() {
+			return y;
+		}
+
+		String getText() {
+			return text;
+		}
+
+		String getCommand() {
+			return command;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package logic;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a real-time simulation against the wall clock.
+ * Every event has an absolute deadline, start + simulated time * relativeTime, so the time spent on output
+ * and the overshoot of parking do not add up over the run. An event that is due within the jitter window is
+ * released immediately, which coalesces bursts of events instead of parking for each of them, and lets a run
+ * that has fallen behind catch up.
+ *
+ * The playback can be paused, resumed and changed in speed while the simulation is running.
+ */
+public class PlaybackClock {
+
+	private final long jitterWindow; // nanoseconds
+
+	// guarded by this
+	private long wallAnchor; // System.nanoTime() at which the simulated time simAnchor is due
+	private long simAnchor; // simulated nanoseconds since the start of the simulation
+	private double relativeTime; // how many/few real-time seconds a simulated second takes
+	private boolean paused = false;
+	private long pausedAt;
+
+	private volatile Thread waiter; // thread parked in awaitSimulatedTime
+	private volatile Runnable wakeUpListener; // reschedules a simulation that is not waiting on a thread
+	private volatile long lag = 0; // nanoseconds the last event was released after its deadline
+	private volatile long maxLag = 0;
+
+	public PlaybackClock(double relativeTime, long jitterWindow) {
+		this(relativeTime, jitterWindow, 0);
+	}
+
+	// Starts the playback at the given simulated nanoseconds since the start of the simulation, e.g. of a resumed run
+	public PlaybackClock(double relativeTime, long jitterWindow, long simNanos) {
+		this.relativeTime = relativeTime;
+		this.jitterWindow = jitterWindow;
+		this.wallAnchor = System.nanoTime();
+		this.simAnchor = simNanos;
+	}
+
+	// Waits until the wall-clock deadline of the given simulated nanoseconds since the start of the simulation
+	public void awaitSimulatedTime(long simNanos) throws InterruptedException {
+		waiter = Thread.currentThread();
+		long remaining;
+		while ((remaining = poll(simNanos)) > 0) {
+			if (remaining == Long.MAX_VALUE) {
+				LockSupport.park(this); // until resumed
+			} else {
+				LockSupport.parkNanos(this, remaining);
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException("the simulation has been interrupted");
+			}
+		}
+	}
+
+	// Returns 0 if the given simulated time is due, otherwise the nanoseconds until it is due, or Long.MAX_VALUE while paused
+	public long poll(long simNanos) {
+		long remaining;
+		synchronized (this) {
+			remaining = paused ? Long.MAX_VALUE : deadline(simNanos) - System.nanoTime();
+		}
+		if (remaining > jitterWindow) {
+			return remaining;
+		}
+		lag = Math.max(0, -remaining);
+		maxLag = Math.max(maxLag, lag);
+		return 0;
+	}
+
+	private long deadline(long simNanos) {
+		return wallAnchor + (long) ((simNanos - simAnchor) * relativeTime);
+	}
+
+	public synchronized void pause() {
+		if (!paused) {
+			paused = true;
+			pausedAt = System.nanoTime();
+		}
+	}
+
+	// Continues the playback where it was paused, so the paused time is not caught up
+	public void resume() {
+		synchronized (this) {
+			if (paused) {
+				wallAnchor += System.nanoTime() - pausedAt;
+				paused = false;
+			}
+		}
+		wakeUp();
+	}
+
+	// Changes the speed from the current playback position on
+	public void setRelativeTime(double relativeTime) {
+		if (relativeTime <= 0) {
+			throw new IllegalArgumentException("relativeTime must be positive");
+		}
+		synchronized (this) {
+			long now = paused ? pausedAt : System.nanoTime();
+			simAnchor += (long) ((now - wallAnchor) / this.relativeTime);
+			wallAnchor = now;
+			this.relativeTime = relativeTime;
+		}
+		wakeUp();
+	}
+
+	// Lets the waiting simulation check its deadline again, e.g. after it has been resumed or cancelled
+	public void wakeUp() {
+		Thread thread = waiter;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		Runnable listener = wakeUpListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	//Accessors
+	public synchronized boolean isPaused() {
+		return paused;
+	}
+
+	public synchronized double getRelativeTime() {
+		return relativeTime;
+	}
+
+	public void setWakeUpListener(Runnable wakeUpListener) {
+		this.wakeUpListener = wakeUpListener;
+	}
+
+	public long getJitterWindow() {
+		return jitterWindow;
+	}
+
+	public long getLag() {
+		return lag;
+	}
+
+	public long getMaxLag() {
+		return maxLag;
+	}
+}
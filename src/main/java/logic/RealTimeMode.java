@@ -0,0 +1,10 @@
+package logic;
+
+/**
+ * How a SimulationExecutor runs real-time simulations, which spend most of their time waiting for the next event.
+ */
+public enum RealTimeMode {
+	POOL, // on the worker threads, like instant simulations
+	TIMER, // in steps on a few shared timer threads, holding no thread while waiting
+	VIRTUAL // on a virtual thread each, requires Java 21 or newer
+}
@@ -0,0 +1,56 @@
+package logic;
+
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+
+import output.RecordingReader;
+
+/**
+ * Replays a recorded run to the outputs of the context, paced by its playback like the run that was recorded.
+ * Nothing is simulated: the readings and messages are published as they have been recorded, so a replay
+ * only costs reading the recording and writing the outputs.
+ */
+class ReplayRun implements SteppedRun {
+
+	private final SimulationContext context;
+	private final RecordingReader recording;
+	private boolean pending = false; // the current record of the recording has not been published yet
+
+	ReplayRun(SimulationContext context) {
+		this.context = context;
+		this.recording = context.getReplay();
+	}
+
+	@Override
+	public long advance() throws InterruptedException, IOException {
+		while (true) {
+			// stop if the run has been cancelled
+			if (context.isCancelled() || Thread.interrupted()) {
+				context.print("*** Replay has been cancelled ***");
+				throw new InterruptedException("the replay has been cancelled");
+			}
+
+			if (!pending) {
+				if (!recording.next()) {
+					context.ended();
+					return ENDED;
+				}
+				pending = true;
+			}
+
+			// messages are printed after the reading before them, readings at their time
+			if (recording.getReading() != null) {
+				long due = ChronoUnit.NANOS.between(context.getStart(), recording.getTime());
+				if (context.getPlayback() != null && context.getPlayback().poll(due) != 0) {
+					return due;
+				}
+				context.setClock(recording.getTime());
+				context.getOutput().publish(recording.getReading());
+				context.eventProcessed();
+			} else {
+				context.print(recording.getMessage());
+			}
+			pending = false;
+		}
+	}
+}
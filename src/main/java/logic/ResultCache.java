@@ -0,0 +1,257 @@
+package logic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import entities.Floorplan;
+import output.RecordingReader;
+import output.RecordingSink;
+import script.Block;
+import script.CallStatement;
+import script.RepeatStatement;
+import script.Script;
+import script.Statement;
+
+/**
+ * On-disk cache of the output of deterministic runs, i.e. runs with a fixed seed, by a SHA-256 key of everything
+ * the readings and messages of a run depend on: the floorplan, the parsed script, the start time, the seed and the
+ * planning mode, as incremental planning draws from a random generator per agent.
+ * The outputs a run is written to are not part of the key, as a cached run is replayed to the outputs of the request.
+ *
+ * An entry is a recording, key.iotr, which is written under a temporary name while the run is simulated and moved
+ * in place when it has ended. When the entries exceed maxBytes, the least recently used ones are deleted; the last
+ * use of an entry is the modification time of its file, so the order survives restarts.
+ */
+public class ResultCache {
+
+	private static final String VERSION = "2"; // of the key and recording format, part of the key
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+
+	private static final ConcurrentHashMap<Path, ResultCache> caches = new ConcurrentHashMap<Path, ResultCache>();
+
+	// floorplans are hashed in a canonical form, so the order of JSON properties does not matter
+	private static final ObjectMapper mapper = new ObjectMapper()
+			.enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+			.enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+	private final Path directory;
+	private volatile long maxBytes;
+	private final AtomicLong temporaryNumber = new AtomicLong();
+
+	private long hits = 0; // guarded by this
+	private long misses = 0;
+	private long evictions = 0;
+
+	private ResultCache(Path directory) {
+		this.directory = directory;
+	}
+
+	// Returns the cache of the directory, which is shared by all runs using it
+	public static ResultCache of(Path directory, long maxBytes) throws IOException {
+		Files.createDirectories(directory);
+		ResultCache cache = caches.computeIfAbsent(directory.toAbsolutePath().normalize(), ResultCache::new);
+		cache.maxBytes = maxBytes;
+		return cache;
+	}
+
+	// Whether the runs of the floorplan by the simulator produce the same output every time, i.e. the simulator has a
+	// seed. Populations without a seed of their own spawn their members from the seed of the run.
+	public static boolean isDeterministic(Floorplan floorplan, Simulator simulator) {
+		return simulator.getSeed() != null && simulator.getSeed() != 0;
+	}
+
+	// Returns the hexadecimal SHA-256 key of the output of a run of the floorplan and script by the simulator
+	public static String key(Floorplan floorplan, Script script, Simulator simulator) throws JsonProcessingException {
+		MessageDigest digest = sha256();
+		update(digest, VERSION);
+		digest.update(canonicalJson(floorplan));
+		StringBuilder text = new StringBuilder();
+		appendBlocks("agents", script.getAgents(), text);
+		appendBlocks("macros", script.getMacros(), text);
+		appendBlocks("populations", script.getPopulations(), text);
+		update(digest, text.toString());
+		update(digest, String.valueOf(simulator.getClock()));
+		update(digest, String.valueOf(simulator.getSeed()));
+		update(digest, simulator.getIncrementalPlanning() ? "incremental" : "whole");
+		return hex(digest.digest());
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder text = new StringBuilder();
+		for (byte b : bytes) {
+			text.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return text.toString();
+	}
+
+	// JSON of the object with sorted properties and map entries
+	static byte[] canonicalJson(Object value) throws JsonProcessingException {
+		return mapper.writeValueAsBytes(value);
+	}
+
+	// Updates the digest with the length and UTF-8 bytes of the text, so the parts of the key cannot run into each other
+	static void update(MessageDigest digest, String text) {
+		byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+		digest.update((utf8.length + ":").getBytes(StandardCharsets.US_ASCII));
+		digest.update(utf8);
+	}
+
+	// Appends the blocks in order of name, as the order they have been declared in does not change the run
+	static void appendBlocks(String kind, Map<String, Block> blocks, StringBuilder text) {
+		text.append(kind).append('{');
+		for (Map.Entry<String, Block> entry : new TreeMap<String, Block>(blocks).entrySet()) {
+			text.append(entry.getKey());
+			appendBlock(entry.getValue(), text);
+		}
+		text.append('}');
+	}
+
+	static void appendBlock(Block block, StringBuilder text) {
+		text.append('{');
+		for (Statement statement : block.getStatements()) {
+			if (statement instanceof CallStatement) {
+				text.append("call ");
+			}
+			text.append(statement);
+			if (statement instanceof RepeatStatement) {
+				appendBlock(((RepeatStatement) statement).getBody(), text);
+			}
+			text.append(';');
+		}
+		text.append('}');
+	}
+
+	private Path entry(String key) {
+		return directory.resolve(key + RecordingSink.FILE_EXTENSION);
+	}
+
+	// Opens the cached output of the key and marks it as used, or returns null if it is not cached
+	synchronized RecordingReader open(String key) throws IOException {
+		Path entry = entry(key);
+		if (!Files.isRegularFile(entry)) {
+			misses++;
+			return null;
+		}
+		hits++;
+		Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		return new RecordingReader(entry); // stays readable if the entry is evicted while it is replayed
+	}
+
+	// Returns a new file name for a recording of the output of the key, without the extension of recordings
+	String newRecording(String key) {
+		return directory.resolve(key + "." + temporaryNumber.incrementAndGet() + TEMPORARY_EXTENSION).toString();
+	}
+
+	static Path recordingPath(String recording) {
+		return Paths.get(recording + RecordingSink.FILE_EXTENSION);
+	}
+
+	// Stores the recording of a run that has ended as the output of the key, then evicts entries beyond the size limit
+	synchronized void store(String key, Path recording) throws IOException {
+		Files.move(recording, entry(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		evict();
+	}
+
+	// Compares the recording of a run that has ended with the cached output of the key, or stores it if there is none.
+	// Returns false if the run has produced a different output than the cached run, i.e. the run is not deterministic.
+	synchronized boolean verify(String key, Path recording) throws IOException {
+		Path entry = entry(key);
+		if (!Files.isRegularFile(entry)) {
+			store(key, recording);
+			return true;
+		}
+		try {
+			return sameContent(entry, recording);
+		} finally {
+			Files.deleteIfExists(recording);
+		}
+	}
+
+	private static boolean sameContent(Path a, Path b) throws IOException {
+		if (Files.size(a) != Files.size(b)) {
+			return false;
+		}
+		try (InputStream inA = Files.newInputStream(a); InputStream inB = Files.newInputStream(b)) {
+			byte[] bufferA = new byte[65536];
+			byte[] bufferB = new byte[65536];
+			int length;
+			while ((length = inA.readNBytes(bufferA, 0, bufferA.length)) > 0) {
+				if (inB.readNBytes(bufferB, 0, length) != length || !Arrays.equals(bufferA, 0, length, bufferB, 0, length)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Deletes the least recently used entries until the entries fit into maxBytes
+	private void evict() throws IOException {
+		ArrayList<Path> entries = new ArrayList<Path>();
+		long bytes = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + RecordingSink.FILE_EXTENSION)) {
+			for (Path path : stream) {
+				if (!path.getFileName().toString().contains(TEMPORARY_EXTENSION)) {
+					entries.add(path);
+					bytes += Files.size(path);
+				}
+			}
+		}
+		if (bytes <= maxBytes) {
+			return;
+		}
+		LinkedHashMap<Path, FileTime> lastUse = new LinkedHashMap<Path, FileTime>();
+		for (Path path : entries) {
+			lastUse.put(path, Files.getLastModifiedTime(path));
+		}
+		entries.sort(Comparator.comparing(lastUse::get));
+		for (Path path : entries) {
+			if (bytes <= maxBytes) {
+				break;
+			}
+			long size = Files.size(path);
+			if (Files.deleteIfExists(path)) {
+				bytes -= size;
+				evictions++;
+			}
+		}
+	}
+
+	// Hits, misses and evictions since the cache was first used
+	public synchronized Map<String, Object> getMetrics() {
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("hits", hits);
+		metrics.put("misses", misses);
+		metrics.put("evictions", evictions);
+		return metrics;
+	}
+}
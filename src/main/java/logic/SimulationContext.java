@@ -0,0 +1,379 @@
+package logic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import entities.Agent;
+import entities.Floorplan;
+import entities.Sensor;
+import entities.SensorActive;
+import entities.SensorPassive;
+import output.OutputBus;
+import output.RecordingReader;
+import pathfinding.AStarGrid;
+import script.Block;
+import script.Script;
+
+/**
+ * State of a single simulation run.
+ * The floorplan and script are shared read-only between runs, while agents, sensors, the grid,
+ * the clock, the random generator and the outputs are private to the run, so that independent
+ * simulations can run at the same time.
+ *
+ * The context of a replay has no floorplan, script, agents or sensors; its readings are read from a recording.
+ */
+public class SimulationContext {
+
+	// sensors are copied through their JSON properties, like they are created from a posted floorplan
+	private static final ObjectMapper mapper = new ObjectMapper()
+			.disable(MapperFeature.USE_GETTERS_AS_SETTERS)
+			.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+	private final Simulator simulator;
+	private final Floorplan floorplan;
+	private final Script script;
+
+	private Random random; // replaced when the run is resumed from a checkpoint
+	private final AStarGrid grid;
+	private final ArrayList<Agent> agents = new ArrayList<Agent>();
+	private final ArrayList<SensorActive> activeSensors = new ArrayList<SensorActive>();
+	private final ArrayList<SensorPassive> passiveSensors = new ArrayList<SensorPassive>();
+
+	private final long totalStatements; // statements executed by all agents, used to estimate the progress of the run
+	private final RecordingReader replay; // null unless the run is a replay
+
+	private final LocalDateTime start;
+	private volatile LocalDateTime clock;
+	private OutputBus output; // sinks of the readings and messages of the run
+	private Executor outputExecutor; // shared by the sinks of many runs, null for a thread per sink
+	private volatile PlaybackClock playback; // null in instant simulations
+
+	// progress of the run, written by the simulation thread and read by others
+	private volatile long plannedStatements = 0;
+	private volatile long processedEvents = 0;
+	private volatile boolean cancelled = false;
+	private volatile boolean ended = false; // all events have been executed
+
+	// the output of a deterministic run is cached by its key, see ResultCache
+	private ResultCache cache;
+	private String cacheKey;
+	private boolean cacheHit = false; // the run replays the cached output
+	private String cacheRecording; // file name of the recording of a run that is not a cache hit
+
+	// checkpoints, see Checkpoint
+	private DataInput resume; // rest of the checkpoint the run is resumed from, read by the run, or null
+	private Future<?> checkpointWrite; // of the last checkpoint that has been taken, or null
+
+	public SimulationContext(Simulator simulator, Floorplan floorplan, Script script) {
+		this(simulator, floorplan, script, simulator.getClock());
+	}
+
+	// Creates the context of a run that started at the given time, e.g. of a run resumed from a checkpoint
+	public SimulationContext(Simulator simulator, Floorplan floorplan, Script script, LocalDateTime start) {
+		this.simulator = simulator;
+		this.floorplan = floorplan;
+		this.script = script;
+		this.replay = null;
+		this.start = start;
+		this.clock = start;
+
+		// instantiate Random object with specified seed. Null or 0 will ensure a random seed.
+		if (simulator.getSeed() == null || simulator.getSeed() == 0) {
+			random = new Random();
+		} else {
+			random = new Random(simulator.getSeed());
+		}
+		grid = new AStarGrid(floorplan, random);
+
+		// agents start at their initial positions
+		IdentityHashMap<Block, Long> statementCounts = new IdentityHashMap<Block, Long>(); // members of a population share a block
+		long statements = 0;
+		for (Agent template : floorplan.getAllAgents(simulator.getSeed())) {
+			Block block = getBlock(template);
+			if (block != null) {
+				statements += statementCounts.computeIfAbsent(block, script::countStatements);
+			}
+
+			Agent agent = new Agent(template.getId(), template.getInitialPosition(), template.getSpeed());
+			agent.setPopulation(template.getPopulation(), template.getMemberNumber());
+			agent.setPosition(agent.getInitialPosition());
+			agents.add(agent);
+		}
+		totalStatements = statements;
+
+		// sensors start in their default state
+		for (SensorActive template : floorplan.getActiveSensors()) {
+			activeSensors.add(copySensor(template, SensorActive.class));
+		}
+		for (SensorPassive template : floorplan.getPassiveSensors()) {
+			passiveSensors.add(copySensor(template, SensorPassive.class));
+		}
+	}
+
+	// Creates the context of a replay of the recording, which starts at the time the recorded run started
+	public SimulationContext(Simulator simulator, RecordingReader replay) {
+		this.simulator = simulator;
+		this.floorplan = null;
+		this.script = null;
+		this.replay = replay;
+		this.start = replay.getStart();
+		this.clock = start;
+		this.random = new Random();
+		this.grid = null;
+		this.totalStatements = 0;
+	}
+
+	// Writes the state of the run besides its planners to a checkpoint: the progress, the random generator, the positions
+	// of the agents, the sensors and the grid
+	void writeCheckpoint(DataOutput out) throws IOException {
+		out.writeLong(processedEvents);
+		out.writeLong(plannedStatements);
+		Checkpoint.writeRandom(out, random);
+		for (Agent agent : agents) {
+			out.writeInt(agent.getPosition().getX());
+			out.writeInt(agent.getPosition().getY());
+		}
+		for (SensorActive sensor : activeSensors) {
+			Checkpoint.writeState(out, sensor.getState());
+			sensor.writeRunValues(out);
+		}
+		for (SensorPassive sensor : passiveSensors) {
+			Checkpoint.writeState(out, sensor.getState());
+			Checkpoint.writeTime(out, sensor.getLastTriggerTime());
+			out.writeBoolean(sensor.isChangePending());
+			sensor.writeRunValues(out);
+		}
+		grid.writeCheckpoint(out, agents);
+	}
+
+	// Restores the state written by writeCheckpoint() at the time of the checkpoint
+	void readCheckpoint(DataInput in, LocalDateTime clock) throws IOException {
+		this.clock = clock;
+		processedEvents = in.readLong();
+		plannedStatements = in.readLong();
+		random = Checkpoint.readRandom(in);
+		grid.setRandom(random);
+		for (Agent agent : agents) {
+			agent.setPosition(in.readInt(), in.readInt());
+		}
+		for (SensorActive sensor : activeSensors) {
+			Checkpoint.readState(in, sensor.getState());
+			sensor.readRunValues(in);
+		}
+		for (SensorPassive sensor : passiveSensors) {
+			Checkpoint.readState(in, sensor.getState());
+			sensor.setLastTriggerTime(Checkpoint.readTime(in));
+			sensor.setChangePending(in.readBoolean());
+			sensor.readRunValues(in);
+		}
+		grid.readCheckpoint(in, agents);
+	}
+
+	private <T extends Sensor> T copySensor(T template, Class<T> type) {
+		T sensor = mapper.convertValue(template, type);
+		sensor.setContext(this);
+		return sensor;
+	}
+
+	// Returns the block of statements executed by the agent. Members of a population share the block of the population.
+	Block getBlock(Agent agent) {
+		if (agent.getPopulation() == null) {
+			return script.getAgents().get(agent.getId());
+		}
+		return script.getPopulations().get(agent.getPopulation().getId());
+	}
+
+	// Requests the run to stop at its next event
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	// Returns the share of the statements of all agents that have been planned, or of the replayed recording that has
+	// been read, between 0 and 1
+	public double getProgress() {
+		if (replay != null) {
+			return replay.getProgress();
+		}
+		if (totalStatements == 0) {
+			return 1;
+		}
+		return Math.min(1, (double) plannedStatements / totalStatements);
+	}
+
+	void statementPlanned() {
+		plannedStatements++;
+	}
+
+	void eventProcessed() {
+		processedEvents++;
+	}
+
+	void ended() {
+		ended = true;
+	}
+
+	public boolean isEnded() {
+		return ended;
+	}
+
+	void setCache(ResultCache cache, String cacheKey, boolean cacheHit) {
+		this.cache = cache;
+		this.cacheKey = cacheKey;
+		this.cacheHit = cacheHit;
+	}
+
+	// Prints a human-readable message of the run to the console and WebSocket, after the readings published before it
+	public void print(String message) throws InterruptedException {
+		if (output == null) {
+			simulator.print(message);
+		} else {
+			output.print(message);
+		}
+	}
+
+	// Returns the active sensor of this run with the given name, or null if none exists
+	public SensorActive getActiveSensor(String name) {
+		for (SensorActive sensor : activeSensors) {
+			if (sensor.getName().equals(name)) {
+				return sensor;
+			}
+		}
+		return null;
+	}
+
+	//Accessors and Mutators
+	public Simulator getSimulator() {
+		return simulator;
+	}
+
+	public Floorplan getFloorplan() {
+		return floorplan;
+	}
+
+	public Script getScript() {
+		return script;
+	}
+
+	public Random getRandom() {
+		return random;
+	}
+
+	public AStarGrid getGrid() {
+		return grid;
+	}
+
+	public ArrayList<Agent> getAgents() {
+		return agents;
+	}
+
+	public ArrayList<SensorActive> getActiveSensors() {
+		return activeSensors;
+	}
+
+	public ArrayList<SensorPassive> getPassiveSensors() {
+		return passiveSensors;
+	}
+
+	public long getTotalStatements() {
+		return totalStatements;
+	}
+
+	public long getPlannedStatements() {
+		return plannedStatements;
+	}
+
+	public long getProcessedEvents() {
+		return processedEvents;
+	}
+
+	public RecordingReader getReplay() {
+		return replay;
+	}
+
+	public LocalDateTime getStart() {
+		return start;
+	}
+
+	public LocalDateTime getClock() {
+		return clock;
+	}
+
+	void setClock(LocalDateTime clock) {
+		this.clock = clock;
+	}
+
+	public PlaybackClock getPlayback() {
+		return playback;
+	}
+
+	void setPlayback(PlaybackClock playback) {
+		this.playback = playback;
+	}
+
+	public OutputBus getOutput() {
+		return output;
+	}
+
+	void setOutput(OutputBus output) {
+		this.output = output;
+	}
+
+	ResultCache getCache() {
+		return cache;
+	}
+
+	public String getCacheKey() {
+		return cacheKey;
+	}
+
+	public boolean isCacheHit() {
+		return cacheHit;
+	}
+
+	String getCacheRecording() {
+		return cacheRecording;
+	}
+
+	void setCacheRecording(String cacheRecording) {
+		this.cacheRecording = cacheRecording;
+	}
+
+	DataInput getResume() {
+		return resume;
+	}
+
+	void setResume(DataInput resume) {
+		this.resume = resume;
+	}
+
+	Future<?> getCheckpointWrite() {
+		return checkpointWrite;
+	}
+
+	void setCheckpointWrite(Future<?> checkpointWrite) {
+		this.checkpointWrite = checkpointWrite;
+	}
+
+	Executor getOutputExecutor() {
+		return outputExecutor;
+	}
+
+	void setOutputExecutor(Executor outputExecutor) {
+		this.outputExecutor = outputExecutor;
+	}
+}
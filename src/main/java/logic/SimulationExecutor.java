@@ -0,0 +1,279 @@
+package logic;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entities.Floorplan;
+import script.Script;
+
+/**
+ * Runs simulation jobs on a bounded pool of worker threads.
+ * At most "concurrency" simulations run at the same time and at most "queueCapacity" wait for a worker,
+ * further submissions are rejected. Ended jobs are kept for status requests until "retainedJobs" newer jobs have ended.
+ *
+ * Jobs are admitted by their CostEstimate. A job estimated to need more memory than "memoryBudget", or more
+ * CPU seconds than "cpuBudget", is rejected. Otherwise it waits in the queue until the memory estimated for the
+ * running jobs leaves room for it. Queued jobs start in order of submission.
+ *
+ * Real-time simulations mostly wait for their next event. Unless the RealTimeMode is POOL, they do not take a worker,
+ * but run in steps on "timerThreads" shared timer threads (TIMER) or on a virtual thread each (VIRTUAL), so that
+ * up to "maxRealTimeJobs" of them can run at the same time without a platform thread per run. Their outputs are
+ * then written on a shared pool of "timerThreads" threads, or on virtual threads, instead of a thread per output.
+ */
+public class SimulationExecutor {
+
+	private final ExecutorService executor; // jobs are only handed to the pool when a worker is free
+	private final int concurrency;
+	private final int queueCapacity;
+	private final int retainedJobs;
+	private final long memoryBudget; // bytes
+	private final double cpuBudget; // seconds per run, 0 for no limit
+	private final RealTimeMode realTimeMode;
+	private final int maxRealTimeJobs;
+	private final ScheduledThreadPoolExecutor timer; // null unless the mode is TIMER
+	private final Method startVirtualThread; // null unless the mode is VIRTUAL
+	private final ExecutorService outputExecutor; // writes the outputs of real-time jobs, null if the mode is POOL
+
+	private final AtomicLong nextId = new AtomicLong(1);
+	private final Map<Long, SimulationJob> jobs = new ConcurrentHashMap<Long, SimulationJob>();
+	private final ConcurrentLinkedQueue<SimulationJob> endedJobs = new ConcurrentLinkedQueue<SimulationJob>();
+
+	// guarded by this
+	private final ArrayDeque<SimulationJob> queue = new ArrayDeque<SimulationJob>();
+	private int running = 0;
+	private int runningRealTime = 0; // not counted in running
+	private long reservedMemory = 0;
+
+	public SimulationExecutor(int concurrency, int queueCapacity, int retainedJobs, long memoryBudget, double cpuBudget) {
+		this(concurrency, queueCapacity, retainedJobs, memoryBudget, cpuBudget, RealTimeMode.POOL, 0, 0);
+	}
+
+	public SimulationExecutor(int concurrency, int queueCapacity, int retainedJobs, long memoryBudget, double cpuBudget, RealTimeMode realTimeMode, int timerThreads, int maxRealTimeJobs) {
+		if (concurrency < 1 || queueCapacity < 0 || retainedJobs < 0 || memoryBudget < 1 || cpuBudget < 0) {
+			throw new IllegalArgumentException("concurrency and memoryBudget must be positive, queueCapacity, retainedJobs and cpuBudget cannot be negative");
+		}
+		if (realTimeMode != RealTimeMode.POOL && maxRealTimeJobs < 1) {
+			throw new IllegalArgumentException("maxRealTimeJobs must be positive");
+		}
+		if (realTimeMode == RealTimeMode.TIMER) {
+			if (timerThreads < 1) {
+				throw new IllegalArgumentException("timerThreads must be positive");
+			}
+			this.timer = new ScheduledThreadPoolExecutor(timerThreads, daemonThreads("simulation-timer-"));
+			this.timer.setRemoveOnCancelPolicy(true); // steps are rescheduled when a run is resumed or sped up
+			this.outputExecutor = Executors.newFixedThreadPool(timerThreads, daemonThreads("simulation-output-"));
+			this.startVirtualThread = null;
+		} else if (realTimeMode == RealTimeMode.VIRTUAL) {
+			try {
+				this.startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+				this.outputExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("virtual threads require Java 21 or newer, this is Java " + System.getProperty("java.version"));
+			}
+			this.timer = null;
+		} else {
+			this.timer = null;
+			this.outputExecutor = null;
+			this.startVirtualThread = null;
+		}
+		this.realTimeMode = realTimeMode;
+		this.maxRealTimeJobs = maxRealTimeJobs;
+		this.executor = Executors.newFixedThreadPool(concurrency, daemonThreads("simulation-"));
+		this.concurrency = concurrency;
+		this.queueCapacity = queueCapacity;
+		this.retainedJobs = retainedJobs;
+		this.memoryBudget = memoryBudget;
+		this.cpuBudget = cpuBudget;
+	}
+
+	private static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	// Queues the simulation of the floorplan and script, or the replay of the recording of the simulator.
+	// Throws RejectedExecutionException with the reason if it is not admitted.
+	public SimulationJob submit(Simulator simulator, Floorplan floorplan, Script script) {
+		CostEstimate estimate = simulator.getReplayFileName() == null
+				? CostEstimator.estimate(floorplan, script)
+				: CostEstimator.estimateReplay(new File(simulator.getReplayFileName()).length());
+		String rejection = testAdmission(estimate);
+		if (rejection != null) {
+			throw new RejectedExecutionException(rejection);
+		}
+
+		SimulationJob job = new SimulationJob(nextId.getAndIncrement(), simulator, floorplan, script, estimate);
+		synchronized (this) {
+			queue.add(job);
+			dispatch();
+			if (queue.size() > queueCapacity) {
+				queue.removeLast();
+				throw new RejectedExecutionException("the maximum number of queued simulations has been reached");
+			}
+			jobs.put(job.getId(), job);
+		}
+		return job;
+	}
+
+	// Returns the reason the estimated run can never be admitted, or null if it can
+	public String testAdmission(CostEstimate estimate) {
+		if (estimate.getMemoryBytes() > memoryBudget) {
+			return "the simulation is estimated to need " + estimate.getMemoryBytes() / (1024 * 1024) + " MB of memory, which exceeds the budget of " + memoryBudget / (1024 * 1024) + " MB";
+		}
+		if (cpuBudget > 0 && estimate.getCpuSeconds() > cpuBudget) {
+			return String.format("the simulation is estimated to need %.0f CPU seconds, which exceeds the budget of %.0f seconds", estimate.getCpuSeconds(), cpuBudget);
+		}
+		return null;
+	}
+
+	// Starts queued jobs while workers are free and their estimated memory fits into the budget.
+	// A single job is always started when nothing else runs, as it has been admitted against the whole budget.
+	private synchronized void dispatch() {
+		while (!queue.isEmpty()) {
+			SimulationJob job = queue.peek();
+			boolean offPool = isOffPool(job);
+			if (offPool ? runningRealTime >= maxRealTimeJobs : running >= concurrency) {
+				return;
+			}
+			long memory = job.getEstimate().getMemoryBytes();
+			if (running + runningRealTime > 0 && reservedMemory + memory > memoryBudget) {
+				return;
+			}
+			queue.poll();
+			reservedMemory += memory;
+			if (!offPool) {
+				running++;
+				job.setFuture(executor.submit(() -> runJob(job)));
+			} else if (realTimeMode == RealTimeMode.TIMER) {
+				runningRealTime++;
+				job.setOutputExecutor(outputExecutor);
+				timer.execute(() -> job.start(timer, () -> jobFinished(job)));
+			} else {
+				runningRealTime++;
+				job.setOutputExecutor(outputExecutor);
+				FutureTask<Void> task = new FutureTask<Void>(() -> runJob(job), null);
+				job.setFuture(task); // cancelling the task interrupts the virtual thread
+				try {
+					startVirtualThread.invoke(null, task);
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException("cannot start a virtual thread", e);
+				}
+			}
+		}
+	}
+
+	private void runJob(SimulationJob job) {
+		try {
+			job.run();
+		} finally {
+			jobFinished(job);
+		}
+	}
+
+	// Real-time jobs run without a worker unless the mode is POOL
+	private boolean isOffPool(SimulationJob job) {
+		return realTimeMode != RealTimeMode.POOL && job.isRealTime();
+	}
+
+	private synchronized void jobFinished(SimulationJob job) {
+		if (isOffPool(job)) {
+			runningRealTime--;
+		} else {
+			running--;
+		}
+		reservedMemory -= job.getEstimate().getMemoryBytes();
+		jobEnded(job);
+		dispatch();
+	}
+
+	// Returns the job with the given ID, or null if it does not exist or is no longer retained
+	public SimulationJob getJob(long id) {
+		return jobs.get(id);
+	}
+
+	public Collection<SimulationJob> getJobs() {
+		ArrayList<SimulationJob> list = new ArrayList<SimulationJob>(jobs.values());
+		list.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+		return list;
+	}
+
+	public boolean cancel(long id) {
+		SimulationJob job = jobs.get(id);
+		if (job == null) {
+			return false;
+		}
+		synchronized (this) {
+			if (queue.remove(job)) {
+				job.cancel();
+				jobEnded(job);
+				dispatch(); // the job may have blocked the head of the queue
+				return true;
+			}
+		}
+		return job.cancel();
+	}
+
+	public synchronized int getRunningCount() {
+		return running;
+	}
+
+	public synchronized int getRunningRealTimeCount() {
+		return runningRealTime;
+	}
+
+	public RealTimeMode getRealTimeMode() {
+		return realTimeMode;
+	}
+
+	public synchronized int getQueuedCount() {
+		return queue.size();
+	}
+
+	public synchronized long getReservedMemory() {
+		return reservedMemory;
+	}
+
+	public void shutdown() {
+		synchronized (this) {
+			queue.clear();
+		}
+		for (SimulationJob job : jobs.values()) {
+			job.cancel();
+		}
+		executor.shutdownNow();
+		if (timer != null) {
+			timer.shutdownNow();
+		}
+		if (outputExecutor != null) {
+			outputExecutor.shutdownNow();
+		}
+	}
+
+	private void jobEnded(SimulationJob job) {
+		endedJobs.add(job);
+		while (endedJobs.size() > retainedJobs) {
+			SimulationJob oldest = endedJobs.poll();
+			if (oldest != null) {
+				jobs.remove(oldest.getId());
+			}
+		}
+	}
+}
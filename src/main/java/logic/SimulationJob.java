@@ -0,0 +1,358 @@
+package logic;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import entities.Floorplan;
+import script.Script;
+
+/**
+ * Simulation of a floorplan and script, or replay of a recording, usually submitted to a SimulationExecutor.
+ * The getters report the progress of the run and are safe to call from any thread.
+ */
+public class SimulationJob {
+
+	private final long id;
+	private final CostEstimate estimate; // null if the job has not been estimated
+	@JsonIgnore private final Simulator simulator;
+	@JsonIgnore private final Floorplan floorplan;
+	@JsonIgnore private final Script script;
+	@JsonIgnore private volatile SimulationContext context; // created when the job starts, so queued jobs hold no run state
+	@JsonIgnore private Future<?> future;
+	@JsonIgnore private final CountDownLatch endLatch = new CountDownLatch(1);
+	@JsonIgnore private final boolean realTime;
+	@JsonIgnore private Executor outputExecutor; // null for a consumer thread per output
+
+	// stepped runs on a timer, see start()
+	@JsonIgnore private SteppedRun run;
+	@JsonIgnore private ScheduledExecutorService timer;
+	@JsonIgnore private ScheduledFuture<?> step; // guarded by this
+	@JsonIgnore private Runnable onEnd;
+
+	private volatile JobStatus status = JobStatus.QUEUED;
+	private final LocalDateTime submitted = LocalDateTime.now();
+	private volatile LocalDateTime started;
+	private volatile LocalDateTime ended;
+	private volatile long startNanos;
+	private volatile long endNanos;
+	private volatile String error;
+	private volatile boolean cancelled = false;
+
+	public SimulationJob(long id, Simulator simulator, Floorplan floorplan, Script script, CostEstimate estimate) {
+		this.id = id;
+		this.simulator = simulator;
+		this.floorplan = floorplan;
+		this.script = script;
+		this.estimate = estimate;
+		this.realTime = !simulator.getInstantSimulation();
+	}
+
+	// Runs the simulation on the calling thread
+	public void run() {
+		synchronized (this) {
+			if (status != JobStatus.QUEUED) {
+				return; // cancelled before it was started
+			}
+			status = JobStatus.RUNNING;
+			started = LocalDateTime.now();
+			startNanos = System.nanoTime();
+		}
+		try {
+			context = simulator.createContext(floorplan, script);
+			context.setOutputExecutor(outputExecutor);
+			if (cancelled) {
+				throw new InterruptedException("the simulation has been cancelled");
+			}
+			simulator.startSimulator(context);
+			status = JobStatus.COMPLETED;
+		} catch (InterruptedException e) {
+			status = JobStatus.CANCELLED;
+		} catch (Exception e) {
+			error = "ERROR: " + e;
+			status = JobStatus.FAILED;
+			System.out.println(error);
+		} finally {
+			if (status == JobStatus.RUNNING) {
+				status = JobStatus.FAILED;
+				error = "ERROR: the simulation has stopped unexpectedly";
+			}
+			end();
+		}
+	}
+
+	// Runs a real-time simulation in steps on the timer, so the run holds no thread while it waits for its next event.
+	// Returns immediately, onEnd is run when the job has ended.
+	void start(ScheduledExecutorService timer, Runnable onEnd) {
+		this.timer = timer;
+		this.onEnd = onEnd;
+		synchronized (this) {
+			if (status != JobStatus.QUEUED) {
+				onEnd.run(); // cancelled before it was started
+				return;
+			}
+			status = JobStatus.RUNNING;
+			started = LocalDateTime.now();
+			startNanos = System.nanoTime();
+		}
+		try {
+			context = simulator.createContext(floorplan, script);
+			context.setOutputExecutor(outputExecutor);
+			if (cancelled) {
+				throw new InterruptedException("the simulation has been cancelled");
+			}
+			simulator.openOutputs(context);
+			run = simulator.createRun(context);
+			context.getPlayback().setWakeUpListener(() -> schedule(0)); // resumed, sped up or cancelled
+			schedule(0);
+		} catch (InterruptedException e) {
+			finish(JobStatus.CANCELLED, null);
+		} catch (Exception e) {
+			finish(JobStatus.FAILED, "ERROR: " + e);
+		}
+	}
+
+	// Executes the events that are due and schedules the next step for the deadline of the next event
+	private void step() {
+		synchronized (run) {
+			if (isDone()) {
+				return;
+			}
+			try {
+				long due = run.advance();
+				if (due == SteppedRun.ENDED) {
+					finish(JobStatus.COMPLETED, null);
+					return;
+				}
+				long remaining = context.getPlayback().poll(due);
+				if (remaining != Long.MAX_VALUE) { // while paused the playback wakes the run up when it is resumed
+					schedule(remaining);
+				}
+			} catch (InterruptedException e) {
+				finish(JobStatus.CANCELLED, null);
+			} catch (Exception e) {
+				finish(JobStatus.FAILED, "ERROR: " + e);
+			}
+		}
+	}
+
+	// Replaces the pending step
+	private synchronized void schedule(long delayNanos) {
+		if (isDone()) {
+			return;
+		}
+		if (step != null) {
+			step.cancel(false);
+		}
+		try {
+			step = timer.schedule(this::step, delayNanos, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			// the executor has been shut down and cancels the job
+		}
+	}
+
+	private void finish(JobStatus status, String error) {
+		try {
+			if (context != null) {
+				simulator.closeOutputs(context);
+			}
+		} catch (Exception e) {
+			if (error == null && status == JobStatus.COMPLETED) {
+				status = JobStatus.FAILED;
+				error = "ERROR: " + e;
+			}
+		}
+		if (error != null) {
+			System.out.println(error);
+		}
+		this.error = error;
+		this.status = status;
+		end();
+		onEnd.run();
+	}
+
+	private void end() {
+		endNanos = System.nanoTime();
+		ended = LocalDateTime.now();
+		endLatch.countDown();
+	}
+
+	// Cancels the job. A queued job will not start, while a running job stops at its next event.
+	public synchronized boolean cancel() {
+		if (status == JobStatus.QUEUED) {
+			status = JobStatus.CANCELLED;
+			ended = LocalDateTime.now();
+			endLatch.countDown();
+			return true;
+		}
+		if (status == JobStatus.RUNNING) {
+			cancelled = true;
+			if (context != null) {
+				context.cancel();
+			}
+			if (future != null) {
+				future.cancel(true); // interrupts real-time simulations waiting for the next event
+			}
+			if (run != null && context.getPlayback() != null) {
+				context.getPlayback().wakeUp(); // steps the run on the timer, which stops it
+			}
+			return true;
+		}
+		return false;
+	}
+
+	// Waits until the job has ended. The outcome is reported by the status of the job.
+	public void await() throws InterruptedException {
+		endLatch.await();
+	}
+
+	// Returns whether the job is paced against the wall clock
+	@JsonIgnore
+	public boolean isRealTime() {
+		return realTime;
+	}
+
+	public boolean isDone() {
+		return status == JobStatus.COMPLETED || status == JobStatus.FAILED || status == JobStatus.CANCELLED;
+	}
+
+	// Returns the seconds the job has been running, or ran in total if it has ended
+	public double getElapsedSeconds() {
+		if (started == null) {
+			return 0;
+		}
+		long end = ended == null ? System.nanoTime() : endNanos;
+		return (end - startNanos) / 1e9;
+	}
+
+	public double getEventsPerSecond() {
+		double elapsedSeconds = getElapsedSeconds();
+		return elapsedSeconds > 0 ? getProcessedEvents() / elapsedSeconds : 0;
+	}
+
+	// Estimated seconds until the run ends, extrapolated from the progress so far. Null if no estimate can be made.
+	public Double getEtaSeconds() {
+		if (status == JobStatus.COMPLETED) {
+			return 0.0;
+		}
+		double progress = getProgress();
+		if (status != JobStatus.RUNNING || progress <= 0) {
+			return null;
+		}
+		return getElapsedSeconds() * (1 - progress) / progress;
+	}
+
+	// Simulated seconds since the start of the simulation
+	public double getSimulatedSeconds() {
+		SimulationContext context = this.context;
+		return context == null ? 0 : ChronoUnit.NANOS.between(context.getStart(), context.getClock()) / 1e9;
+	}
+
+	// Returns the playback of a running real-time simulation, or null
+	@JsonIgnore
+	public PlaybackClock getPlayback() {
+		SimulationContext context = this.context;
+		return context == null || isDone() ? null : context.getPlayback();
+	}
+
+	// Seconds the last event of a real-time simulation was released after its deadline. Null for instant simulations.
+	public Double getLagSeconds() {
+		SimulationContext context = this.context;
+		return context == null || context.getPlayback() == null ? null : context.getPlayback().getLag() / 1e9;
+	}
+
+	public Double getMaxLagSeconds() {
+		SimulationContext context = this.context;
+		return context == null || context.getPlayback() == null ? null : context.getPlayback().getMaxLag() / 1e9;
+	}
+
+	// Readings that the outputs have dropped because they fell behind or failed
+	public long getDroppedReadings() {
+		SimulationContext context = this.context;
+		return context == null || context.getOutput() == null ? 0 : context.getOutput().getDropped();
+	}
+
+	// Statistics of the outputs by name, e.g. the latency and backlog of MQTT publishes. Null before the job has started.
+	public Map<String, Map<String, Object>> getOutputMetrics() {
+		SimulationContext context = this.context;
+		return context == null || context.getOutput() == null ? null : context.getOutput().getMetrics();
+	}
+
+	// Whether the output has been replayed from the result cache instead of simulated
+	public boolean isCacheHit() {
+		SimulationContext context = this.context;
+		return context != null && context.isCacheHit();
+	}
+
+	public boolean isPaused() {
+		PlaybackClock playback = getPlayback();
+		return playback != null && playback.isPaused();
+	}
+
+	//Accessors and Mutators
+	public long getId() {
+		return id;
+	}
+
+	public JobStatus getStatus() {
+		return status;
+	}
+
+	public LocalDateTime getSubmitted() {
+		return submitted;
+	}
+
+	public LocalDateTime getStarted() {
+		return started;
+	}
+
+	public LocalDateTime getEnded() {
+		return ended;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public CostEstimate getEstimate() {
+		return estimate;
+	}
+
+	public LocalDateTime getSimulatedTime() {
+		return context == null ? simulator.getClock() : context.getClock();
+	}
+
+	public double getProgress() {
+		return context == null ? 0 : context.getProgress();
+	}
+
+	public long getProcessedEvents() {
+		return context == null ? 0 : context.getProcessedEvents();
+	}
+
+	@JsonIgnore
+	public SimulationContext getContext() {
+		return context;
+	}
+
+	Future<?> getFuture() {
+		return future;
+	}
+
+	void setFuture(Future<?> future) {
+		this.future = future;
+	}
+
+	void setOutputExecutor(Executor outputExecutor) {
+		this.outputExecutor = outputExecutor;
+	}
+}
@@ -0,0 +1,274 @@
+package logic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Future;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import entities.Agent;
+import entities.SensorPassive;
+import script.Block;
+import script.Cursor;
+import script.Script;
+import utils.IsoTimestamp;
+
+/**
+ * Three-phase simulation of a context, executed in steps.
+ * advance() executes the events that are due and returns the simulated time of the next event when it is not
+ * due yet, so a real-time run can wait for its next event without holding a thread.
+ *
+ * Agents plan their first statement in the order of the floorplan, and each later statement when the B-events of
+ * their previous statement have been executed. A seeded run draws from its random generator in this order, so its
+ * paths and interaction positions differ from those of versions that planned all statements of an agent before the
+ * next agent.
+ *
+ * Checkpoints are taken between B-events once checkpointSeconds of simulated time have passed since the last one,
+ * and a run resumed from a checkpoint continues with the B-event after it, see Checkpoint.
+ */
+class SimulationRun implements SteppedRun {
+
+	private final SimulationContext context;
+	private final LocalDateTime start;
+
+	// B-events are planned per agent while the simulation advances, and executed in order of time. A planner is
+	// peeked before it is added, so the queue orders planners by the time of their next B-event without planning.
+	private final PriorityQueue<AgentPlanner> planners = new PriorityQueue<AgentPlanner>(
+			Comparator.comparing(AgentPlanner::getNextEventTime)
+			.thenComparingInt(AgentPlanner::getIndex));
+	private AgentPlanner planner; // planner of the pending B-event
+	private BEvent event; // pending B-event, executed after the passive sensor readings before it
+	private final ArrayDeque<TriggerEvent> triggers = new ArrayDeque<TriggerEvent>();
+	private boolean started = false;
+	private final boolean resumed; // from a checkpoint
+
+	// checkpoints of the run, null if none are taken
+	private final Path checkpointFile;
+	private final String fingerprint;
+	private final long checkpointInterval;
+	private LocalDateTime nextCheckpoint;
+
+	SimulationRun(SimulationContext context) throws JsonProcessingException {
+		this(context, false);
+
+		// agents that have been planned by an earlier run with the same seed reuse their plans
+		Simulator simulator = context.getSimulator();
+		PlanCache plans = null;
+		String floorplanVersion = null;
+		if (simulator.getIncrementalPlanning() == true && simulator.getSeed() != null && simulator.getSeed() != 0) {
+			plans = PlanCache.getShared();
+			plans.setMaxEvents(simulator.getPlanCacheEvents());
+			floorplanVersion = PlanCache.version(context.getFloorplan());
+		}
+
+		Script script = context.getScript();
+		int index = 0;
+		for (Agent agent : context.getAgents()) {
+			Block block = context.getBlock(agent);
+			AgentPlanner planner;
+			if (plans == null) {
+				planner = new AgentPlanner(context, agent, index++, new Cursor(script, block));
+			} else {
+				planner = new AgentPlanner(context, agent, index++, new Cursor(script, block), plans, PlanCache.key(floorplanVersion, script, block, agent, simulator));
+			}
+			if (planner.peek() != null) {
+				planners.add(planner);
+			}
+		}
+	}
+
+	// Resumes the run with the planners of the checkpoint, after the context has been restored from it
+	SimulationRun(SimulationContext context, DataInput in) throws IOException {
+		this(context, true);
+
+		// planners are added in the order of the queue they have been written from, so it is ordered the same way
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			int index = in.readInt();
+			AgentPlanner planner = new AgentPlanner(context, context.getAgents().get(index), index, in);
+			planner.peek(); // planned before the checkpoint
+			planners.add(planner);
+		}
+	}
+
+	private SimulationRun(SimulationContext context, boolean resumed) throws JsonProcessingException {
+		this.context = context;
+		this.start = context.getStart();
+		this.resumed = resumed;
+		Simulator simulator = context.getSimulator();
+		if (simulator.getCheckpointSeconds() > 0) {
+			this.checkpointFile = Paths.get(simulator.getCsvFileName() + Checkpoint.FILE_EXTENSION);
+			this.fingerprint = Checkpoint.fingerprint(context.getFloorplan(), context.getScript());
+			this.checkpointInterval = simulator.getCheckpointSeconds() * 1000000000;
+			scheduleCheckpoint();
+		} else {
+			this.checkpointFile = null;
+			this.fingerprint = null;
+			this.checkpointInterval = 0;
+		}
+	}
+
+	// Executes the events that are due. Returns the simulated nanoseconds since the start of the simulation
+	// of the next event, or ENDED when all events have been executed.
+	@Override
+	public long advance() throws InterruptedException, MqttPersistenceException, MqttException, IOException {
+		if (!started) {
+			context.print(resumed ? "*** Simulation has been resumed ***" : "*** Simulation has started ***");
+			started = true;
+		}
+		while (true) {
+			// stop if the run has been cancelled
+			if (context.isCancelled() || Thread.interrupted()) {
+				context.print("*** Simulation has been cancelled ***");
+				throw new InterruptedException("the simulation has been cancelled");
+			}
+
+			if (event == null) {
+				if (planners.isEmpty()) {
+					context.print("*** Simulation has ended ***");
+					context.ended();
+					return ENDED;
+				}
+				if (checkpointFile != null && !context.getClock().isBefore(nextCheckpoint)) {
+					checkpoint();
+				}
+				planner = planners.poll();
+				event = planner.poll();
+				planPassiveSensors(ChronoUnit.NANOS.between(context.getClock(), event.getEventDateTime()));
+			}
+
+			// C-phase: readings of passive sensors up to the B-event
+			while (!triggers.isEmpty()) {
+				TriggerEvent triggerEvent = triggers.peek();
+				long due = ChronoUnit.NANOS.between(start, triggerEvent.getDateTime());
+				if (!isDue(due)) {
+					return due;
+				}
+				triggers.poll();
+				context.setClock(triggerEvent.getDateTime());
+				((SensorPassive) triggerEvent.getSensor()).outputSensorReading();
+				context.eventProcessed();
+			}
+
+			// B-phase
+			long due = ChronoUnit.NANOS.between(start, event.getEventDateTime());
+			if (!isDue(due)) {
+				return due;
+			}
+			context.setClock(event.getEventDateTime());
+			execute(event);
+			context.eventProcessed();
+
+			if (planner.peek() != null) {
+				planners.add(planner);
+			}
+			event = null;
+		}
+	}
+
+	// Takes a checkpoint between two B-events and writes it on the writer thread. While the last checkpoint is still
+	// being written, the checkpoint is taken at the next B-event instead.
+	private void checkpoint() throws IOException {
+		Future<?> write = context.getCheckpointWrite();
+		if (write != null && !write.isDone()) {
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		Checkpoint.writeHeader(out, fingerprint, start, context.getClock());
+		context.writeCheckpoint(out);
+		out.writeInt(planners.size());
+		for (AgentPlanner planner : planners) { // in the order of the queue
+			out.writeInt(planner.getIndex());
+			planner.writeCheckpoint(out);
+		}
+		out.flush();
+		context.setCheckpointWrite(Checkpoint.write(checkpointFile, bytes.toByteArray()));
+		scheduleCheckpoint();
+	}
+
+	// Sets the time of the next checkpoint to the next multiple of the interval since the start after the clock
+	private void scheduleCheckpoint() {
+		if (checkpointFile != null) {
+			long elapsed = ChronoUnit.NANOS.between(start, context.getClock());
+			nextCheckpoint = start.plusNanos((elapsed / checkpointInterval + 1) * checkpointInterval);
+		}
+	}
+
+	private boolean isDue(long simNanos) {
+		return context.getPlayback() == null || context.getPlayback().poll(simNanos) == 0;
+	}
+
+	private void execute(BEvent event) throws InterruptedException, MqttPersistenceException, MqttException, JsonProcessingException {
+		// Movement event
+		if (event.getEventType() == BEventType.MOVEMENT) {
+
+			//update agent position
+			event.getAgent().setPosition(
+					event.getNode().getX(),
+					event.getNode().getY()
+					);
+			context.print(IsoTimestamp.format(context.getClock())+" : "+event.getAgent().getId()+" : "+event.getAgent().getPosition().toString()); // print time & position
+
+		// Active sensor activation event
+		} else if (event.getEventType() == BEventType.SENSOR_ACTIVATION) {
+			event.getSensor().interact(event.getCommand(), event.getAgent());
+
+		// Output event
+		} else if (event.getEventType() == BEventType.OUTPUT) {
+			context.print(event.getOutput());
+		}
+	}
+
+	// Plans the readings of the passive sensors triggered by the agent positions during the given nanoseconds.
+	// The state of a sensor does not change until the next B-event, so a sensor that only emits changes is read
+	// at most once, and not at all when its state is unchanged.
+	private void planPassiveSensors(long time) {
+		LocalDateTime clock = context.getClock();
+		ArrayList<TriggerEvent> eventList = new ArrayList<TriggerEvent>();
+		for (SensorPassive sensor : context.getPassiveSensors()) {
+			if (sensor.updateTrigger() == true) {
+				long period = sensor.getEmissionPeriod();
+				long i;
+				if (sensor.isChangePending()) {
+					i = sinceLastTrigger(sensor, clock, sensor.getTriggerFrequency());
+				} else if (period > 0) {
+					i = sinceLastTrigger(sensor, clock, period);
+				} else {
+					continue; // nothing to emit until the state changes
+				}
+				for (; i < time; i = i + period) {
+					eventList.add(new TriggerEvent(sensor,clock.plusNanos(i)));
+					sensor.setLastTriggerTime(clock.plusNanos(i));
+					sensor.setChangePending(false);
+					if (period == 0) {
+						break;
+					}
+				}
+			}
+		}
+		eventList.sort(Comparator.comparing(TriggerEvent::getDateTime));
+		triggers.addAll(eventList);
+	}
+
+	// Returns the nanoseconds after the clock until the given period has passed since the last reading of the sensor
+	private static long sinceLastTrigger(SensorPassive sensor, LocalDateTime clock, long period) {
+		if (sensor.getLastTriggerTime() == null) {
+			return 0;
+		}
+		return Math.max(0, period - sensor.getLastTriggerTime().until(clock,ChronoUnit.NANOS));
+	}
+}
@@ -1,62 +1,104 @@
 package logic;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Random;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
 import controllers.NotificationController;
+import entities.Floorplan;
+import output.Backpressure;
+import output.ColumnarLogSink;
+import output.DatabaseIndexing;
+import output.DatabaseSink;
+import output.Compression;
+import output.ConsoleSink;
+import output.CsvFileSink;
+import output.EncodedFileSink;
+import output.Encoding;
+import output.EventLogCase;
+import output.MqttSink;
+import output.OcelSink;
+import output.QueueSink;
+import output.OutputBus;
+import output.ReadingEncoder;
+import output.RecordingReader;
+import output.RecordingSink;
+import output.XesSink;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 
-import entities.Agent;
-import entities.Entity;
-import entities.Floorplan;
-import geo.Position;
 import main.Main;
-import main.MqttPaho;
+import main.MqttPahoAsync;
 import main.Resources;
-import pathfinding.AStarGrid;
-import pathfinding.AStarNode;
-import pathfinding.NodeState;
-import utils.Log;
-import entities.SensorActive;
-import entities.SensorPassive;
+import script.Script;
 
 public class Simulator {
 	
-	private LocalDateTime clock; // LocalDateTime.of(2020, 1, 1, 0, 0, 0, 0); 
+	private LocalDateTime clock; // start of the simulation, e.g. LocalDateTime.of(2020, 1, 1, 0, 0, 0, 0)
 	private boolean instantSimulation = true;
 	private double relativeTime; // how many/few real-time seconds should a simulated second take
+	private long jitterWindow = 1000000; // nanoseconds within which real-time events are released together
 	
 	private boolean mqttOutput;
 	private int qualityOfService;
 	private String mqttHost;
 	private String mqttPort;
 	private String rootTopic;
+	private int mqttMaxInflight = 100; // publishes waiting for the broker at a time
+	private String mqttPersistenceDirectory; // keeps unacknowledged QoS 1 and 2 messages on disk, null to keep them in memory
+	private boolean mqttTopicPerSensor = false; // publishes to rootTopic/<type>/<name> instead of rootTopic
+	private int mqttConnections = 1; // connections the sensors are shared between
 	
 	private boolean csvOutput = false;
 	private String csvFileName;
+	private boolean csvTypedColumns = false; // a file per sensor type with a column per state field, instead of a single file
+	private Compression csvCompression = Compression.NONE;
+	private long csvRotateBytes = 0; // starts a new file after this many bytes, 0 for no limit
+	private long csvRotateSeconds = 0; // starts a new file after this many simulated seconds, 0 for no limit
+	
+	private Encoding outputEncoding = Encoding.JSON; // of MQTT payloads and the encoded file
+	private boolean outputDictionary = false; // numbers sensors and state keys after their first reading, not with MQTT
+	private int outputKeyframeInterval = 0; // readings of a sensor per full state, the others carry the changed fields only; 0 for full states only
+	private boolean encodedFileOutput = false; // writes the encoded readings to csvFileName plus the extension of the encoding
+	private boolean columnarOutput = false; // writes the readings to a columnar log, csvFileName plus ".iotc"
+	private int columnarRowGroupSize = 65536; // rows per sensor type held in memory before they are written
+	private boolean xesOutput = false; // writes the readings as an XES event log, csvFileName plus ".xes"
+	private EventLogCase xesCase = EventLogCase.AGENT; // what the traces of the XES log are
+	private int xesSpillEvents = 65536; // events held in memory before they are sorted into a temporary file
+	private boolean ocelOutput = false; // writes the readings as an OCEL 2.0 event log, csvFileName plus ".ocel.json"
+	private boolean databaseOutput = false; // inserts the readings into an embedded H2 database, csvFileName plus ".mv.db"
+	private int databaseBatchSize = 10000; // readings inserted per commit
+	private DatabaseIndexing databaseIndexing = DatabaseIndexing.AFTER_LOAD;
+	private boolean queueOutput = false; // appends the encoded readings to a memory-mapped queue, csvFileName plus ".N.iotq"
+	private long queueSegmentBytes = 64 << 20; // size of a queue segment file
+	private boolean recordOutput = false; // records the readings and messages for replays, csvFileName plus ".iotr"
+	private String replayFileName; // replays this recording to the outputs instead of simulating the floorplan and input, null to simulate
+	private String cacheDirectory; // caches the output of runs with a seed in this directory, null to always simulate
+	private long cacheMaxBytes = 1L << 30; // size of the cached outputs before the least recently used ones are evicted
+	private boolean cacheVerify = false; // simulates cached runs anyway and fails them if the output differs from the cache
+	private boolean incrementalPlanning = false; // reuses the plans of agents that have not changed since an earlier run with the same seed
+	private long planCacheEvents = 1000000; // planned B-events held in memory for later runs
+	private long checkpointSeconds = 0; // checkpoints the run to csvFileName plus ".ckpt" after this many simulated seconds, 0 for none
+	private String resumeFileName; // resumes the run from this checkpoint instead of starting it, null to start
+	private Long forkSeed; // reseeds the random generator of a resumed run, so runs resumed from the same checkpoint diverge
 	
 	private Long seed;
+	
+	private int outputBufferSize = 8192; // readings buffered per output
+	private Backpressure backpressure = Backpressure.BLOCK; // what happens to readings when an output falls behind
 
 	private NotificationController notification;
-
-	private Floorplan floorplan = Resources.getFloorplan();
-	private AStarGrid grid = Resources.getaStarGrid();
-	ArrayList<SensorPassive> passiveSensors = floorplan.getPassiveSensors();
-	ArrayList<SensorActive> activeSensors = floorplan.getActiveSensors();
-	
-	// B-event properties
-	ArrayList<BEvent> bEvents;
-	LocalDateTime bEventClock;
 	
 	public Simulator(LocalDateTime clock, boolean instantSimulation, double relativeTime, boolean mqttOutput, int qualityOfService, String mqttHost, String mqttPort, String rootTopic, boolean csvOutput, String csvFileName, Long seed) {
 		this.clock = clock;
@@ -75,254 +117,216 @@ public class Simulator {
 	public Simulator() throws MqttException { 
 	}
 	
-	// next-event time progression discrete-event simulation
-	public void startSimulator() throws InterruptedException, MqttPersistenceException, MqttException, JsonProcessingException {
-		
-		// reset sensors' lastTriggerTime variable
-		for (SensorPassive sensor : passiveSensors) {
-			sensor.setLastTriggerTime(null);
+	// Simulates the floorplan and input that have been posted
+	public void startSimulator() throws InterruptedException, MqttPersistenceException, MqttException, JsonProcessingException, IOException {
+		startSimulator(createContext(Resources.getFloorplan(), Resources.getInput() == null ? null : Resources.getInput().getScript()));
+	}
+	
+	// Creates the state of a run of the floorplan and script, or of a replay if a recording has been set or the output
+	// of the run has been cached
+	SimulationContext createContext(Floorplan floorplan, Script script) throws IOException {
+		if (replayFileName != null) {
+			return new SimulationContext(this, new RecordingReader(Paths.get(replayFileName)));
 		}
-		
-		// reset agents' positions
-		for (Agent agent : floorplan.getAgents()) {
-			agent.setPosition(agent.getInitialPosition());
+		if (resumeFileName != null) {
+			return resumeContext(floorplan, script);
 		}
+		if (cacheDirectory == null || floorplan == null || script == null || !ResultCache.isDeterministic(floorplan, this)) {
+			return new SimulationContext(this, floorplan, script);
+		}
+		ResultCache cache = ResultCache.of(Paths.get(cacheDirectory), cacheMaxBytes);
+		String key = ResultCache.key(floorplan, script, this);
+		RecordingReader cached = cacheVerify ? null : cache.open(key);
+		SimulationContext context = cached != null ? new SimulationContext(this, cached) : new SimulationContext(this, floorplan, script);
+		context.setCache(cache, key, cached != null);
+		return context;
+	}
+	
+	// Restores the state of a run from the checkpoint. Its planners are restored by createRun().
+	private SimulationContext resumeContext(Floorplan floorplan, Script script) throws IOException {
+		Path file = Paths.get(resumeFileName);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+		if (!Checkpoint.readHeader(in, file).equals(Checkpoint.fingerprint(floorplan, script))) {
+			throw new IOException("the checkpoint \"" + resumeFileName + "\" has been taken of another floorplan or input");
+		}
+		SimulationContext context = new SimulationContext(this, floorplan, script, Checkpoint.readTime(in));
+		context.readCheckpoint(in, Checkpoint.readTime(in));
+		if (forkSeed != null) {
+			context.getRandom().setSeed(forkSeed);
+		}
+		context.setResume(in);
+		return context;
+	}
+	
+	SteppedRun createRun(SimulationContext context) throws IOException {
+		if (context.getReplay() != null) {
+			return new ReplayRun(context);
+		}
+		if (context.getResume() != null) {
+			return new SimulationRun(context, context.getResume());
+		}
+		return new SimulationRun(context);
+	}
+	
+	// next-event time progression discrete-event simulation
+	// All state that changes during the run is held by the context, so several contexts can be simulated at the same time.
+	public void startSimulator(SimulationContext context) throws InterruptedException, MqttPersistenceException, MqttException, JsonProcessingException, IOException {
+		openOutputs(context);
+		try {
+			SteppedRun run = createRun(context);
+			for (long due = run.advance(); due != SteppedRun.ENDED; due = run.advance()) {
+				// waits for the deadline of the next event, measured from the start of the simulation so that waiting errors do not accumulate
+				context.getPlayback().awaitSimulatedTime(due);
+			}
+		} finally {
+			closeOutputs(context);
+		}
+	}
+	
+	// Opens the outputs of the run. Each output writes the readings on its own consumer, so the simulation does not wait for I/O.
+	void openOutputs(SimulationContext context) throws MqttException, IOException {
+		OutputBus output = new OutputBus(outputBufferSize, backpressure, context.getOutputExecutor());
+		context.setOutput(output); // closed by closeOutputs() even if a later output fails to open
 		
-		// reset exemptedAreas of the grid
-		Resources.getaStarGrid().resetExemptedAreas();
-		
-		// reset B-events list
-		bEvents = new ArrayList<BEvent>();
+		// human readable output for console and WebSocket
+		output.addSink("console", new ConsoleSink(Main.isWebsocketOutput() ? notification : null));
 		
-		// start MQTT client if appropriate
+		// start MQTT clients if appropriate, each publishing the readings of a share of the sensors
 		if (mqttOutput == true) {
-			Resources.setMqtt(new MqttPaho(mqttHost, mqttPort, rootTopic, qualityOfService));
-		} else {
-			Resources.setMqtt(null);
+			ArrayList<MqttSink> sinks = new ArrayList<MqttSink>();
+			try {
+				for (int i = 0; i < mqttConnections; i++) {
+					String persistenceDirectory = mqttPersistenceDirectory == null || mqttConnections == 1 ? mqttPersistenceDirectory : mqttPersistenceDirectory+"/"+i;
+					sinks.add(new MqttSink(new MqttPahoAsync(mqttHost, mqttPort, rootTopic, qualityOfService, mqttMaxInflight, persistenceDirectory), mqttTopicPerSensor, new ReadingEncoder(outputEncoding, outputDictionary, outputKeyframeInterval)));
+				}
+			} catch (MqttException e) {
+				for (MqttSink sink : sinks) {
+					try {
+						sink.close();
+					} catch (Exception closeException) {
+						// the connection has failed as well
+					}
+				}
+				throw e;
+			}
+			output.addPartitionedSinks("mqtt", sinks);
 		}
 		
-		// instantiate Random object with specified seed. Null or 0 will ensure a random seed.
-		if (seed == null || seed == 0) {
-			Resources.setRandom(new Random());
-		} else {
-			Resources.setRandom(new Random(seed));
+		// CSV file(s) if the user wants to generate them
+		if (csvOutput == true) {
+			output.addSink("csv", new CsvFileSink(csvFileName, csvTypedColumns, csvCompression, csvRotateBytes, csvRotateSeconds * 1000000000));
 		}
 		
-		// instantiate Log object if user wants to generate a CSV file 
-		if (csvOutput == true) {
-			Resources.setLog(new Log(csvFileName));
-			Resources.getLog().createFile();
-			Resources.getLog().openFileWriter();
+		// encoded readings in a file
+		if (encodedFileOutput == true) {
+			output.addSink("file", new EncodedFileSink(csvFileName, new ReadingEncoder(outputEncoding, outputDictionary, outputKeyframeInterval)));
 		}
 		
-		// Converting instructions to B-events
-		for (Agent agent : Resources.getFloorplan().getAgents()) {
-			
-			bEventClock = clock;
-			
-			for (String statement : Resources.getInput().getAgentInstructionLists().get(agent.getId())) {
-				//print("* "+statement+":");
-				
-				// Add output B-event
-				String statementSansWhitespace = statement.replaceAll("\\s+","");
-				if (!statementSansWhitespace.equals("")) {
-					bEvents.add(new BEvent(BEventType.OUTPUT, bEventClock, "* "+agent.getId()+" - "+statement.replaceAll("\\s+","")+":"));
-				}
-				
-				
-				// GOTO
-				if (Resources.getInput().getGotopattern().matcher(statement).matches()) {
-					Position gotoPosition = new Position(
-						Integer.parseInt(Resources.getInput().getGotopattern().matcher(statement).replaceAll("$1")),
-						Integer.parseInt(Resources.getInput().getGotopattern().matcher(statement).replaceAll("$2"))
-					);
-					gotoInstructions(agent, gotoPosition, new ArrayList<Position>());
-				
-				// WAIT
-				} else if (Resources.getInput().getWaitpattern().matcher(statement).matches()) {
-					long waitTime = Long.parseLong(Resources.getInput().getWaitpattern().matcher(statement).replaceAll("$1")) * 1000000000; // converts seconds to nanoseconds
-					waitInstructions(waitTime);
-				
-				// INTERACT
-				} else if (Resources.getInput().getInteractpattern().matcher(statement).matches()) {
-					String sensorName = Resources.getInput().getInteractpattern().matcher(statement).replaceAll("$1");
-					String command = Resources.getInput().getInteractpattern().matcher(statement).replaceAll("$2");
-					interactInstructions(agent, sensorName, command);
-				
-				// GOTO ENTITY
-				} else if (Resources.getInput().getGotoentitypattern().matcher(statement).matches()) {
-					String entityName = Resources.getInput().getGotoentitypattern().matcher(statement).replaceAll("$1");
-					gotoEntityInstructions(agent, entityName);
-				}
-			}
-			
-			// Add end simulation event (for the scenario where the last instruction is wait, to allow for C-events in waiting period)
-			bEvents.add(new BEvent(BEventType.SIMULATION_END, bEventClock));
+		// columnar log for analysis
+		if (columnarOutput == true) {
+			output.addSink("columnar", new ColumnarLogSink(csvFileName, columnarRowGroupSize));
 		}
 		
-		// Sort B-events by time of event
-        bEvents.sort(Comparator.comparing(BEvent::getEventDateTime));
+		// event logs for process mining
+		if (xesOutput == true) {
+			output.addSink("xes", new XesSink(csvFileName, xesCase, xesSpillEvents));
+		}
+		if (ocelOutput == true) {
+			output.addSink("ocel", new OcelSink(csvFileName));
+		}
 		
-		// reset agents' positions
-		for (Agent agent : floorplan.getAgents()) {
-			agent.setPosition(agent.getInitialPosition());
+		// embedded database for SQL queries
+		if (databaseOutput == true) {
+			output.addSink("database", new DatabaseSink(csvFileName, databaseBatchSize, databaseIndexing));
 		}
 		
-		// Three-phase simulation start
-		print("*** Simulation has started ***");
-		for (BEvent event : bEvents) {
-			
-			//Update clock to next B-event
-			long diff = ChronoUnit.NANOS.between(clock, event.getEventDateTime());
-			
-			triggerPassiveSensors(diff);
-			
-			// Movement event
-			if (event.getEventType() == BEventType.MOVEMENT) {
-				
-				//update agent position
-				event.getAgent().setPosition(
-						event.getNode().getX(), 
-						event.getNode().getY()
-						);
-				print(clock.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")).toString()+" : "+event.getAgent().getId()+" : "+event.getAgent().getPosition().toString()); // print time & position
-			
-			// Active sensor activation event
-			} else if (event.getEventType() == BEventType.SENSOR_ACTIVATION) {
-				event.getSensor().interact(event.getCommand());
-			
-			// Output event
-			} else if (event.getEventType() == BEventType.OUTPUT) {
-				print(event.getOutput());
-			} 
-		}
-		print("*** Simulation has ended ***");
+		// recording for replays
+		if (recordOutput == true) {
+			output.addSink("recording", new RecordingSink(csvFileName, context.getStart()));
+		}
 		
-		// close fileWriter if user wants to generate a CSV file 
-		if (csvOutput == true) {
-			Resources.getLog().closeFileWriter();
+		// queue for consumers on the same host
+		if (queueOutput == true) {
+			output.addSink("queue", new QueueSink(csvFileName, new ReadingEncoder(outputEncoding, outputDictionary, outputKeyframeInterval), queueSegmentBytes));
 		}
-	}
-
-	private void gotoInstructions(Agent agent, Position gotoPosition, ArrayList<Position> exemptedCollisions) throws InterruptedException, MqttPersistenceException, MqttException, JsonProcessingException {
-		List<AStarNode> path;
-		path = grid.getPath(
-				agent.getPosition().getX(), 
-				agent.getPosition().getY(), 
-				gotoPosition.getX(), 
-				gotoPosition.getY(),
-				exemptedCollisions,
-				agent);
 		
-		// detects if goto is impossible (HALTING ERROR)
-		if (path.isEmpty()) {
-			print("ERROR: coordinates are not reachable");
+		// recording of a deterministic run that has not been cached, stored in the cache when the run has ended.
+		// It blocks whatever the backpressure policy is, as a recording with dropped readings must not be cached.
+		if (context.getCacheKey() != null && !context.isCacheHit()) {
+			context.setCacheRecording(context.getCache().newRecording(context.getCacheKey()));
+			output.addSink("cache", new RecordingSink(context.getCacheRecording(), context.getStart()), Backpressure.BLOCK);
 		}
 		
-		for (AStarNode node : path) {
-			double distance = agent.getPosition().distance(new Position(node.getX(),node.getY())) * floorplan.getTileSideLength();
-			long time = (long) ((distance / agent.getSpeed()) * 1000000000);
-			
-			//Agent jumps from start of tile to start of tile
-			long halfTime = time/2;
-			bEventClock = bEventClock.plusNanos(halfTime);
-			bEvents.add(new BEvent(BEventType.MOVEMENT, bEventClock, agent, node));
-			bEventClock = bEventClock.plusNanos(halfTime);
-			agent.setPosition(new Position(node.getX(),node.getY()));
+		// real-time playback starts now, at the time of the checkpoint if the run is resumed
+		if (instantSimulation == false) {
+			context.setPlayback(new PlaybackClock(relativeTime, jitterWindow, ChronoUnit.NANOS.between(context.getStart(), context.getClock())));
 		}
 	}
-
-	private void waitInstructions(long waitTime) throws InterruptedException, MqttPersistenceException, MqttException, JsonProcessingException {
-		bEventClock = bEventClock.plusNanos(waitTime);
-	}
 	
-	private void interactInstructions(Agent agent, String sensorName, String command) throws MqttPersistenceException, InterruptedException, MqttException, JsonProcessingException {
-		for (SensorActive activeSensor : activeSensors) {
-			if (activeSensor.getName().equals(sensorName)) {
-				if (!activeSensor.getInteractArea().contains(agent.getPosition())) {
-					Position randomInteractPosition = activeSensor.getInteractArea().get(Resources.getRandom().nextInt(activeSensor.getInteractArea().size()));
-					//print("randomInteractPosition: "+randomInteractPosition); //test
-					//intersection tiles of sensor's physicalArea tiles and interactArea tiles that should become walkable
-					ArrayList<Position> intersectionArrayList = new ArrayList<Position>();
-			        for (Position t : activeSensor.getPhysicalArea()) {
-			            if(activeSensor.getInteractArea().contains(t)) {
-			            	intersectionArrayList.add(t);
-			            }
-			        }
-					
-					gotoInstructions(agent, randomInteractPosition, intersectionArrayList);
-				}
-				bEvents.add(new BEvent(BEventType.SENSOR_ACTIVATION, bEventClock, activeSensor, command));
-				break;
+	// Waits until the outputs have written all readings, then disconnects the MQTT client and closes the CSV file
+	// and the replayed recording. The recording of a run that has ended is stored in the cache, and the last checkpoint
+	// of the run is written.
+	void closeOutputs(SimulationContext context) throws InterruptedException {
+		boolean closed = false;
+		try {
+			if (context.getOutput() != null) {
+				context.getOutput().close();
 			}
-		}
-	}
-	
-	private void gotoEntityInstructions(Agent agent, String entityName) throws MqttPersistenceException, InterruptedException, MqttException, JsonProcessingException {
-		ArrayList<Entity> union = new ArrayList<Entity>();
-		union.addAll(floorplan.getEntities());
-		union.addAll(activeSensors);
-		
-		for (Entity entity : union) {
-			if (entity.getName().equals(entityName)) {
-				if (!entity.getInteractArea().contains(agent.getPosition())) {
-					ArrayList<Position> gotoAblePositions = new ArrayList<Position>();
-					for (Position position : entity.getInteractArea()) {
-						if (grid.getNode(position.getX(), position.getY()).getState() == NodeState.WALKABLE || entity.getPhysicalArea().contains(position)) {
-							gotoAblePositions.add(position);
-						}
+			if (context.getCheckpointWrite() != null) {
+				awaitCheckpoint(context);
+			}
+			closed = true;
+		} finally {
+			try {
+				if (context.getCacheRecording() != null) {
+					cacheOutput(context, closed);
+				}
+			} finally {
+				if (context.getReplay() != null) {
+					try {
+						context.getReplay().close();
+					} catch (IOException e) {
+						// the recording has been read
 					}
-					Position randomInteractPosition = gotoAblePositions.get(Resources.getRandom().nextInt(gotoAblePositions.size()));
-					//print("randomInteractPosition: "+randomInteractPosition); //test
-					//intersection tiles of entity's physicalArea tiles and interactArea tiles that should become walkable
-					ArrayList<Position> intersectionArrayList = new ArrayList<Position>();
-			        for (Position t : entity.getPhysicalArea()) {
-			            if(entity.getInteractArea().contains(t)) {
-			            	intersectionArrayList.add(t);
-			            }
-			        }
-					
-					gotoInstructions(agent, randomInteractPosition, intersectionArrayList);
 				}
-				break;
 			}
 		}
 	}
 	
-	private void updateTime(long nanos) throws InterruptedException {
-		clock = clock.plusNanos(nanos);
-		
-		if (instantSimulation == false) {
-			TimeUnit.NANOSECONDS.sleep( (long) Math.round(nanos * relativeTime));
+	// Stores the recorded output of the run in the cache, or compares it with the cached output if it is verified.
+	// The recording of a run that has not ended, e.g. one that has been cancelled, or whose outputs have failed to
+	// close is deleted.
+	private void cacheOutput(SimulationContext context, boolean closed) {
+		Path recording = ResultCache.recordingPath(context.getCacheRecording());
+		boolean same = true;
+		try {
+			if (!closed || !context.isEnded()) {
+				Files.deleteIfExists(recording);
+			} else if (cacheVerify == true) {
+				same = context.getCache().verify(context.getCacheKey(), recording);
+			} else {
+				context.getCache().store(context.getCacheKey(), recording);
+			}
+		} catch (IOException e) {
+			print("ERROR: the output could not be cached: " + e.getMessage());
+		}
+		if (!same) {
+			throw new IllegalStateException("the output of the run differs from the cached output of the same floorplan, input and seed");
 		}
-		
 	}
 	
-	private void triggerPassiveSensors(long time) throws InterruptedException, MqttPersistenceException, MqttException, JsonProcessingException {
-		LocalDateTime newTileTime = clock.plusNanos(time);
-		ArrayList<TriggerEvent> eventList = new ArrayList<TriggerEvent>();
-		for (SensorPassive sensor : passiveSensors) { 
-			if (sensor.updateState() == true) {
-				long i = 0;
-				if (sensor.getLastTriggerTime() != null && sensor.getLastTriggerTime().until(clock,ChronoUnit.NANOS) < sensor.getTriggerFrequency()) {
-					i = -sensor.getLastTriggerTime().until(clock,ChronoUnit.NANOS) + sensor.getTriggerFrequency();
-				}
-				for (; i < time; i = i + sensor.getTriggerFrequency()) {
-					eventList.add(new TriggerEvent(sensor,clock.plusNanos(i)));
-					sensor.setLastTriggerTime(clock.plusNanos(i));
-				}
-			}
+	// Waits until the last checkpoint of the run has been written. Earlier checkpoints that could not be written have
+	// been replaced by it.
+	private void awaitCheckpoint(SimulationContext context) throws InterruptedException {
+		try {
+			context.getCheckpointWrite().get();
+		} catch (ExecutionException e) {
+			print("ERROR: the checkpoint could not be written: " + e.getCause().getMessage());
 		}
-		eventList.sort(Comparator.comparing(TriggerEvent::getDateTime));
-		for (TriggerEvent triggerEvent : eventList) {
-			updateTime(clock.until(triggerEvent.getDateTime(),ChronoUnit.NANOS));
-			((SensorPassive) triggerEvent.getSensor()).outputSensorReading();
-		}
-		updateTime(clock.until(newTileTime,ChronoUnit.NANOS));
 	}
 	
 	// Prints to both console and WebSocket - meant for human consumption.
-	private void print(String message) {
+	void print(String message) {
 		System.out.println(message);
 		if (Main.isWebsocketOutput() == true) {
 			notification.notifyToClient(message);
@@ -362,6 +366,106 @@ public class Simulator {
 			return "ERROR: \"relativeTime\" has been defined as a negative integer";
 		}
 		
+		//--- jitterWindow ---//
+		if (jitterWindow < 0) {
+			return "ERROR: \"jitterWindow\" has been defined as a negative integer";
+		}
+		
+		//--- mqttMaxInflight ---//
+		if (mqttMaxInflight < 1) {
+			return "ERROR: \"mqttMaxInflight\" has not been defined as a positive integer";
+		}
+		
+		//--- mqttConnections ---//
+		if (mqttConnections < 1) {
+			return "ERROR: \"mqttConnections\" has not been defined as a positive integer";
+		}
+		
+		//--- outputBufferSize ---//
+		if (outputBufferSize < 1) {
+			return "ERROR: \"outputBufferSize\" has not been defined as a positive integer";
+		}
+		
+		//--- backpressure ---//
+		if (backpressure == null) {
+			return "ERROR: \"backpressure\" must be BLOCK, DROP or SAMPLE";
+		}
+		
+		//--- columnarRowGroupSize ---//
+		if (columnarRowGroupSize < 1) {
+			return "ERROR: \"columnarRowGroupSize\" has not been defined as a positive integer";
+		}
+		
+		//--- XES ---//
+		if (xesCase == null) {
+			return "ERROR: \"xesCase\" must be AGENT or SENSOR";
+		}
+		if (xesSpillEvents < 1) {
+			return "ERROR: \"xesSpillEvents\" has not been defined as a positive integer";
+		}
+		
+		//--- database ---//
+		if (databaseBatchSize < 1) {
+			return "ERROR: \"databaseBatchSize\" has not been defined as a positive integer";
+		}
+		if (databaseIndexing == null) {
+			return "ERROR: \"databaseIndexing\" must be NONE, AFTER_LOAD or DURING_LOAD";
+		}
+		
+		//--- queueSegmentBytes ---//
+		if (queueSegmentBytes < 4096 || queueSegmentBytes > Integer.MAX_VALUE) {
+			return "ERROR: \"queueSegmentBytes\" must be between 4096 and " + Integer.MAX_VALUE;
+		}
+		
+		//--- replay ---//
+		if (replayFileName != null && !new File(replayFileName).isFile()) {
+			return "ERROR: the recording \"" + replayFileName + "\" does not exist";
+		}
+		if (replayFileName != null && recordOutput == true && new File(replayFileName).getAbsoluteFile().equals(new File(csvFileName + RecordingSink.FILE_EXTENSION).getAbsoluteFile())) {
+			return "ERROR: a recording cannot be replayed while it is recorded";
+		}
+		
+		//--- cache ---//
+		if (cacheMaxBytes < 1) {
+			return "ERROR: \"cacheMaxBytes\" has not been defined as a positive integer";
+		}
+		
+		//--- planning ---//
+		if (planCacheEvents < 1) {
+			return "ERROR: \"planCacheEvents\" has not been defined as a positive integer";
+		}
+		
+		//--- checkpoints ---//
+		if (checkpointSeconds < 0) {
+			return "ERROR: \"checkpointSeconds\" must not be negative";
+		}
+		if (resumeFileName != null && !new File(resumeFileName).isFile()) {
+			return "ERROR: the checkpoint \"" + resumeFileName + "\" does not exist";
+		}
+		if (resumeFileName != null && replayFileName != null) {
+			return "ERROR: a run cannot be resumed from a checkpoint and replayed at the same time";
+		}
+		if ((resumeFileName != null || checkpointSeconds > 0) && incrementalPlanning == true) {
+			return "ERROR: runs with \"incrementalPlanning\" cannot be checkpointed or resumed";
+		}
+		
+		//--- outputEncoding ---//
+		if (outputEncoding == null) {
+			return "ERROR: \"outputEncoding\" must be JSON, CBOR or MESSAGEPACK";
+		}
+		
+		//--- outputDictionary ---//
+		// ids are defined in the first reading that uses them, which subscribers of other topics, late subscribers and
+		// lost QoS 0 messages do not see
+		if (outputDictionary == true && mqttOutput == true) {
+			return "ERROR: \"outputDictionary\" cannot be used with MQTT output";
+		}
+		
+		//--- outputKeyframeInterval ---//
+		if (outputKeyframeInterval < 0) {
+			return "ERROR: \"outputKeyframeInterval\" must not be negative";
+		}
+		
 		//--- qualityOfService ---//
 		if (qualityOfService < 0 || qualityOfService > 2) {
 			return "ERROR: \"qualityOfService\" has not been defined as either 0, 1, or 2";
@@ -372,6 +476,12 @@ public class Simulator {
 		if (csvFileName == null || csvFileName == "") {
 			return "ERROR: no filename for the CSV output has been set";
 		}
+		if (csvCompression == null) {
+			return "ERROR: \"csvCompression\" must be NONE or GZIP";
+		}
+		if (csvRotateBytes < 0 || csvRotateSeconds < 0) {
+			return "ERROR: \"csvRotateBytes\" and \"csvRotateSeconds\" must not be negative";
+		}
 		
 		return "consumed";
 	}
@@ -401,6 +511,14 @@ public class Simulator {
 		this.relativeTime = timeFactor;
 	}
 
+	public long getJitterWindow() {
+		return jitterWindow;
+	}
+
+	public void setJitterWindow(long jitterWindow) {
+		this.jitterWindow = jitterWindow;
+	}
+
 	public boolean getMqttOutput() {
 		return mqttOutput;
 	}
@@ -449,6 +567,38 @@ public class Simulator {
 		this.rootTopic = rootTopic;
 	}
 
+	public int getMqttMaxInflight() {
+		return mqttMaxInflight;
+	}
+
+	public void setMqttMaxInflight(int mqttMaxInflight) {
+		this.mqttMaxInflight = mqttMaxInflight;
+	}
+
+	public String getMqttPersistenceDirectory() {
+		return mqttPersistenceDirectory;
+	}
+
+	public void setMqttPersistenceDirectory(String mqttPersistenceDirectory) {
+		this.mqttPersistenceDirectory = mqttPersistenceDirectory;
+	}
+
+	public boolean getMqttTopicPerSensor() {
+		return mqttTopicPerSensor;
+	}
+
+	public void setMqttTopicPerSensor(boolean mqttTopicPerSensor) {
+		this.mqttTopicPerSensor = mqttTopicPerSensor;
+	}
+
+	public int getMqttConnections() {
+		return mqttConnections;
+	}
+
+	public void setMqttConnections(int mqttConnections) {
+		this.mqttConnections = mqttConnections;
+	}
+
 	public Long getSeed() {
 		return seed;
 	}
@@ -457,6 +607,222 @@ public class Simulator {
 		this.seed = seed;
 	}
 
+	public Encoding getOutputEncoding() {
+		return outputEncoding;
+	}
+
+	public void setOutputEncoding(Encoding outputEncoding) {
+		this.outputEncoding = outputEncoding;
+	}
+
+	public boolean getOutputDictionary() {
+		return outputDictionary;
+	}
+
+	public void setOutputDictionary(boolean outputDictionary) {
+		this.outputDictionary = outputDictionary;
+	}
+
+	public boolean getColumnarOutput() {
+		return columnarOutput;
+	}
+
+	public void setColumnarOutput(boolean columnarOutput) {
+		this.columnarOutput = columnarOutput;
+	}
+
+	public int getColumnarRowGroupSize() {
+		return columnarRowGroupSize;
+	}
+
+	public void setColumnarRowGroupSize(int columnarRowGroupSize) {
+		this.columnarRowGroupSize = columnarRowGroupSize;
+	}
+
+	public boolean getXesOutput() {
+		return xesOutput;
+	}
+
+	public void setXesOutput(boolean xesOutput) {
+		this.xesOutput = xesOutput;
+	}
+
+	public EventLogCase getXesCase() {
+		return xesCase;
+	}
+
+	public void setXesCase(EventLogCase xesCase) {
+		this.xesCase = xesCase;
+	}
+
+	public int getXesSpillEvents() {
+		return xesSpillEvents;
+	}
+
+	public void setXesSpillEvents(int xesSpillEvents) {
+		this.xesSpillEvents = xesSpillEvents;
+	}
+
+	public boolean getOcelOutput() {
+		return ocelOutput;
+	}
+
+	public void setOcelOutput(boolean ocelOutput) {
+		this.ocelOutput = ocelOutput;
+	}
+
+	public boolean getDatabaseOutput() {
+		return databaseOutput;
+	}
+
+	public void setDatabaseOutput(boolean databaseOutput) {
+		this.databaseOutput = databaseOutput;
+	}
+
+	public int getDatabaseBatchSize() {
+		return databaseBatchSize;
+	}
+
+	public void setDatabaseBatchSize(int databaseBatchSize) {
+		this.databaseBatchSize = databaseBatchSize;
+	}
+
+	public boolean getQueueOutput() {
+		return queueOutput;
+	}
+
+	public void setQueueOutput(boolean queueOutput) {
+		this.queueOutput = queueOutput;
+	}
+
+	public long getQueueSegmentBytes() {
+		return queueSegmentBytes;
+	}
+
+	public void setQueueSegmentBytes(long queueSegmentBytes) {
+		this.queueSegmentBytes = queueSegmentBytes;
+	}
+
+	public boolean getRecordOutput() {
+		return recordOutput;
+	}
+
+	public void setRecordOutput(boolean recordOutput) {
+		this.recordOutput = recordOutput;
+	}
+
+	public String getReplayFileName() {
+		return replayFileName;
+	}
+
+	public void setReplayFileName(String replayFileName) {
+		this.replayFileName = replayFileName;
+	}
+
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public long getCacheMaxBytes() {
+		return cacheMaxBytes;
+	}
+
+	public void setCacheMaxBytes(long cacheMaxBytes) {
+		this.cacheMaxBytes = cacheMaxBytes;
+	}
+
+	public boolean getCacheVerify() {
+		return cacheVerify;
+	}
+
+	public void setCacheVerify(boolean cacheVerify) {
+		this.cacheVerify = cacheVerify;
+	}
+
+	public boolean getIncrementalPlanning() {
+		return incrementalPlanning;
+	}
+
+	public void setIncrementalPlanning(boolean incrementalPlanning) {
+		this.incrementalPlanning = incrementalPlanning;
+	}
+
+	public long getPlanCacheEvents() {
+		return planCacheEvents;
+	}
+
+	public void setPlanCacheEvents(long planCacheEvents) {
+		this.planCacheEvents = planCacheEvents;
+	}
+
+	public long getCheckpointSeconds() {
+		return checkpointSeconds;
+	}
+
+	public void setCheckpointSeconds(long checkpointSeconds) {
+		this.checkpointSeconds = checkpointSeconds;
+	}
+
+	public String getResumeFileName() {
+		return resumeFileName;
+	}
+
+	public void setResumeFileName(String resumeFileName) {
+		this.resumeFileName = resumeFileName;
+	}
+
+	public Long getForkSeed() {
+		return forkSeed;
+	}
+
+	public void setForkSeed(Long forkSeed) {
+		this.forkSeed = forkSeed;
+	}
+
+	public DatabaseIndexing getDatabaseIndexing() {
+		return databaseIndexing;
+	}
+
+	public void setDatabaseIndexing(DatabaseIndexing databaseIndexing) {
+		this.databaseIndexing = databaseIndexing;
+	}
+
+	public int getOutputKeyframeInterval() {
+		return outputKeyframeInterval;
+	}
+
+	public void setOutputKeyframeInterval(int outputKeyframeInterval) {
+		this.outputKeyframeInterval = outputKeyframeInterval;
+	}
+
+	public boolean getEncodedFileOutput() {
+		return encodedFileOutput;
+	}
+
+	public void setEncodedFileOutput(boolean encodedFileOutput) {
+		this.encodedFileOutput = encodedFileOutput;
+	}
+
+	public int getOutputBufferSize() {
+		return outputBufferSize;
+	}
+
+	public void setOutputBufferSize(int outputBufferSize) {
+		this.outputBufferSize = outputBufferSize;
+	}
+
+	public Backpressure getBackpressure() {
+		return backpressure;
+	}
+
+	public void setBackpressure(Backpressure backpressure) {
+		this.backpressure = backpressure;
+	}
+
 	public boolean getCsvOutput() {
 		return csvOutput;
 	}
@@ -472,6 +838,38 @@ public class Simulator {
 	public void setCsvFileName(String csvFileName) {
 		this.csvFileName = csvFileName;
 	}
+
+	public boolean getCsvTypedColumns() {
+		return csvTypedColumns;
+	}
+
+	public void setCsvTypedColumns(boolean csvTypedColumns) {
+		this.csvTypedColumns = csvTypedColumns;
+	}
+
+	public Compression getCsvCompression() {
+		return csvCompression;
+	}
+
+	public void setCsvCompression(Compression csvCompression) {
+		this.csvCompression = csvCompression;
+	}
+
+	public long getCsvRotateBytes() {
+		return csvRotateBytes;
+	}
+
+	public void setCsvRotateBytes(long csvRotateBytes) {
+		this.csvRotateBytes = csvRotateBytes;
+	}
+
+	public long getCsvRotateSeconds() {
+		return csvRotateSeconds;
+	}
+
+	public void setCsvRotateSeconds(long csvRotateSeconds) {
+		this.csvRotateSeconds = csvRotateSeconds;
+	}
 	
 	
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package logic;
+
+import java.io.IOException;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * A run that executes its events in steps, so a real-time run can wait for its next event without holding a thread.
+ */
+interface SteppedRun {
+
+	long ENDED = -1;
+
+	// Executes the events that are due. Returns the simulated nanoseconds since the start of the run of the next event
+	// when it is not due yet, or ENDED when all events have been executed.
+	long advance() throws InterruptedException, MqttException, IOException;
+}
@@ -0,0 +1,154 @@
+package main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+
+/**
+ * MQTT client that pipelines publishes instead of waiting for the broker to acknowledge each of them.
+ * At most "maxInflight" publishes wait for their delivery token at a time, further publishes wait for a free slot.
+ * With QoS 1 or 2 and a persistence directory, unacknowledged messages are kept on disk instead of in memory.
+ */
+public class MqttPahoAsync {
+
+	private static final long FLUSH_TIMEOUT = 60; // seconds
+
+	private final MqttAsyncClient client;
+	private final String rootTopic;
+	private final int qualityOfService;
+	private final int maxInflight;
+	private final Semaphore window; // a permit per publish that may be in flight
+
+	private final AtomicLong published = new AtomicLong(); // acknowledged by the broker, or sent for QoS 0
+	private final AtomicLong latencyNanos = new AtomicLong(); // total of the published messages
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+	private volatile Throwable error; // first failed publish
+
+	public MqttPahoAsync(String host, String port, String rootTopic, int qualityOfService, int maxInflight, String persistenceDirectory) throws MqttException {
+		if (maxInflight < 1) {
+			throw new IllegalArgumentException("maxInflight must be positive");
+		}
+		this.rootTopic = rootTopic;
+		this.qualityOfService = qualityOfService;
+		this.maxInflight = maxInflight;
+		this.window = new Semaphore(maxInflight);
+
+		boolean persistent = qualityOfService > 0 && persistenceDirectory != null && !persistenceDirectory.isEmpty();
+		MqttClientPersistence persistence = persistent ? new MqttDefaultFilePersistence(persistenceDirectory) : new MemoryPersistence();
+		client = new MqttAsyncClient("tcp://"+host+":"+port, MqttAsyncClient.generateClientId(), persistence);
+
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setAutomaticReconnect(true);
+		options.setCleanSession(!persistent); // a persistent session resumes the unacknowledged messages after a reconnect
+		options.setConnectionTimeout(0);
+		options.setKeepAliveInterval(0);
+		// the window releases a slot when the delivery is reported, which can be before the client has released its own
+		options.setMaxInflight(maxInflight * 2);
+		client.connect(options).waitForCompletion();
+	}
+
+	// Publishes the payload to the root topic without waiting for the broker, once a slot of the window is free
+	public void publish(String payload) throws MqttException, InterruptedException {
+		publish(rootTopic, payload.getBytes());
+	}
+
+	public void publish(String topic, byte[] payload) throws MqttException, InterruptedException {
+		Throwable failure = error;
+		if (failure != null) {
+			throw failure instanceof MqttException ? (MqttException) failure : new MqttException(failure);
+		}
+		window.acquire();
+		long sent = System.nanoTime();
+		try {
+			client.publish(topic, payload, qualityOfService, false, null, new IMqttActionListener() {
+				@Override
+				public void onSuccess(IMqttToken token) {
+					long latency = System.nanoTime() - sent;
+					published.incrementAndGet();
+					latencyNanos.addAndGet(latency);
+					maxLatencyNanos.accumulateAndGet(latency, Math::max);
+					window.release();
+				}
+
+				@Override
+				public void onFailure(IMqttToken token, Throwable exception) {
+					if (error == null) {
+						error = exception;
+					}
+					window.release();
+				}
+			});
+		} catch (MqttException e) {
+			window.release();
+			throw e;
+		}
+	}
+
+	// Waits until every publish has been acknowledged
+	public void flush() throws MqttException, InterruptedException {
+		if (!window.tryAcquire(maxInflight, FLUSH_TIMEOUT, TimeUnit.SECONDS)) {
+			throw new MqttException(MqttException.REASON_CODE_CLIENT_TIMEOUT);
+		}
+		window.release(maxInflight);
+		Throwable failure = error;
+		if (failure != null) {
+			throw failure instanceof MqttException ? (MqttException) failure : new MqttException(failure);
+		}
+	}
+
+	// Flushes and disconnects
+	public void disconnectMqtt() throws MqttException, InterruptedException {
+		try {
+			flush();
+		} finally {
+			client.disconnect().waitForCompletion();
+			client.close();
+		}
+	}
+
+	public String getRootTopic() {
+		return rootTopic;
+	}
+
+	public boolean isConnected() {
+		return client.isConnected();
+	}
+
+	// Publishes waiting for their delivery token
+	public int getBacklog() {
+		return maxInflight - window.availablePermits();
+	}
+
+	public long getPublished() {
+		return published.get();
+	}
+
+	public double getMeanLatencyMillis() {
+		long count = published.get();
+		return count == 0 ? 0 : latencyNanos.get() / 1e6 / count;
+	}
+
+	public double getMaxLatencyMillis() {
+		return maxLatencyNanos.get() / 1e6;
+	}
+
+	public Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("published", getPublished());
+		metrics.put("backlog", getBacklog());
+		metrics.put("meanLatencyMillis", getMeanLatencyMillis());
+		metrics.put("maxLatencyMillis", getMaxLatencyMillis());
+		return metrics;
+	}
+}
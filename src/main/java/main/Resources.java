@@ -1,30 +1,18 @@
 package main;
 
-import java.util.Random;
-
 import entities.Floorplan;
 import logic.Input;
 import logic.Simulator;
 import pathfinding.AStarGrid;
-import utils.Log;
 
 public class Resources {
-	private static MqttPaho mqtt;
-	private static Log log;
 	private static Simulator simulator;
 	private static Input input;
 	private static AStarGrid aStarGrid;
 	private static Floorplan floorplan;
-	private static Random random;
 	
 
 	//Accessors and Mutators
-	public static Log getLog() {
-		return log;
-	}
-	public static void setLog(Log log) {
-		Resources.log = log;
-	}
 	public static Simulator getSimulator() {
 		return simulator;
 	}
@@ -49,18 +37,6 @@ public class Resources {
 	public static void setFloorplan(Floorplan floorplan) {
 		Resources.floorplan = floorplan;
 	}
-	public static MqttPaho getMqtt() {
-		return mqtt;
-	}
-	public static void setMqtt(MqttPaho mqtt) {
-		Resources.mqtt = mqtt;
-	}
-	public static Random getRandom() {
-		return random;
-	}
-	public static void setRandom(Random random) {
-		Resources.random = random;
-	}
 	
 	
 	
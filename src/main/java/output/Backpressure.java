@@ -0,0 +1,10 @@
+package output;
+
+/**
+ * What a run does when the buffer of a sink is full.
+ */
+public enum Backpressure {
+	BLOCK, // waits for the sink, so no reading is lost
+	DROP, // drops the reading
+	SAMPLE // keeps every n-th reading once the buffer is half full, and drops the reading when it is full
+}
@@ -0,0 +1,252 @@
+package output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import entities.StateField;
+
+/**
+ * Reads a log written by ColumnarLogSink. Row groups are memory-mapped when they are opened, and their columns
+ * are read in place, except for the time column, which is decoded from its deltas.
+ */
+public class ColumnarLogReader implements Closeable {
+
+	private final FileChannel channel;
+	private final List<String> types;
+	private final List<String> names;
+	private final List<String> keys;
+	private final long[] groupOffsets; // followed by the offset of the footer
+
+	public ColumnarLogReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		long size = channel.size();
+		ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - 8 - ColumnarLogSink.MAGIC.length, 8 + ColumnarLogSink.MAGIC.length).order(ByteOrder.LITTLE_ENDIAN);
+		long footerOffset = trailer.getLong();
+		byte[] magic = new byte[ColumnarLogSink.MAGIC.length];
+		trailer.get(magic);
+		if (!Arrays.equals(magic, ColumnarLogSink.MAGIC)) {
+			channel.close();
+			throw new IOException("not a columnar log: " + file);
+		}
+		ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, size - footerOffset).order(ByteOrder.LITTLE_ENDIAN);
+		types = readStrings(footer);
+		names = readStrings(footer);
+		keys = readStrings(footer);
+		groupOffsets = new long[footer.getInt() + 1];
+		for (int i = 0; i < groupOffsets.length - 1; i++) {
+			groupOffsets[i] = footer.getLong();
+		}
+		groupOffsets[groupOffsets.length - 1] = footerOffset;
+	}
+
+	private static List<String> readStrings(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		ArrayList<String> strings = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			byte[] utf8 = new byte[buffer.getInt()];
+			buffer.get(utf8);
+			strings.add(new String(utf8, StandardCharsets.UTF_8));
+		}
+		return strings;
+	}
+
+	public int getRowGroupCount() {
+		return groupOffsets.length - 1;
+	}
+
+	// Maps the row group with the given index, in order of writing
+	public RowGroup getRowGroup(int index) throws IOException {
+		long offset = groupOffsets[index];
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, groupOffsets[index + 1] - offset).order(ByteOrder.LITTLE_ENDIAN);
+		return new RowGroup(buffer);
+	}
+
+	// Reads all rows as readings, for small logs and tests
+	public List<Reading> readAll() throws IOException {
+		ArrayList<Reading> readings = new ArrayList<Reading>();
+		for (int i = 0; i < getRowGroupCount(); i++) {
+			RowGroup group = getRowGroup(i);
+			for (int row = 0; row < group.getRowCount(); row++) {
+				readings.add(group.getReading(row));
+			}
+		}
+		return readings;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// Rows of one sensor type
+	public class RowGroup {
+
+		private final int rows;
+		private final String type;
+		private final long[] times;
+		private final int namesOffset;
+		private final ByteBuffer buffer;
+		private final String[] columnNames;
+		private final StateField.Type[] columnTypes;
+		private final int[] validOffsets;
+		private final int[] valueOffsets;
+		private final int[] bytesOffsets; // of strings
+
+		RowGroup(ByteBuffer buffer) {
+			this.buffer = buffer;
+			rows = buffer.getInt();
+			type = types.get(buffer.getInt());
+			int columns = buffer.getInt();
+			int timeWidth = buffer.getInt();
+			times = new long[rows];
+			long time = buffer.getLong();
+			for (int i = 0; i < rows; i++) {
+				time += timeWidth == 8 ? buffer.getLong() : buffer.getInt();
+				times[i] = time;
+			}
+			align(buffer);
+			namesOffset = buffer.position();
+			buffer.position(namesOffset + rows * 4);
+			align(buffer);
+
+			columnNames = new String[columns];
+			columnTypes = new StateField.Type[columns];
+			validOffsets = new int[columns];
+			valueOffsets = new int[columns];
+			bytesOffsets = new int[columns];
+			int bitmap = (rows + 63) / 64 * 8;
+			for (int c = 0; c < columns; c++) {
+				columnNames[c] = keys.get(buffer.getInt());
+				columnTypes[c] = StateField.Type.values()[buffer.getInt()];
+				validOffsets[c] = buffer.position();
+				valueOffsets[c] = validOffsets[c] + bitmap;
+				switch (columnTypes[c]) {
+				case BOOLEAN:
+					buffer.position(valueOffsets[c] + bitmap);
+					break;
+				case INT:
+					buffer.position(valueOffsets[c] + rows * 4);
+					break;
+				case LONG:
+				case DOUBLE:
+					buffer.position(valueOffsets[c] + rows * 8);
+					break;
+				default:
+					buffer.position(valueOffsets[c] + (rows + 1) * 4);
+					align(buffer);
+					bytesOffsets[c] = buffer.position();
+					buffer.position(bytesOffsets[c] + buffer.getInt(valueOffsets[c] + rows * 4));
+				}
+				align(buffer);
+			}
+		}
+
+		private void align(ByteBuffer buffer) {
+			buffer.position((buffer.position() + 7) & ~7);
+		}
+
+		public int getRowCount() {
+			return rows;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public int getColumnCount() {
+			return columnNames.length;
+		}
+
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		public StateField.Type getColumnType(int column) {
+			return columnTypes[column];
+		}
+
+		// Epoch nanoseconds of the reading, in UTC like the simulated clock
+		public long getTimeNanos(int row) {
+			return times[row];
+		}
+
+		public LocalDateTime getTime(int row) {
+			return LocalDateTime.ofEpochSecond(Math.floorDiv(times[row], 1000000000L), (int) Math.floorMod(times[row], 1000000000L), ZoneOffset.UTC);
+		}
+
+		public String getName(int row) {
+			return names.get(buffer.getInt(namesOffset + row * 4));
+		}
+
+		public boolean isNull(int column, int row) {
+			return (buffer.getLong(validOffsets[column] + row / 64 * 8) & (1L << row)) == 0;
+		}
+
+		public boolean getBoolean(int column, int row) {
+			return (buffer.getLong(valueOffsets[column] + row / 64 * 8) & (1L << row)) != 0;
+		}
+
+		public int getInt(int column, int row) {
+			return buffer.getInt(valueOffsets[column] + row * 4);
+		}
+
+		public long getLong(int column, int row) {
+			return buffer.getLong(valueOffsets[column] + row * 8);
+		}
+
+		public double getDouble(int column, int row) {
+			return buffer.getDouble(valueOffsets[column] + row * 8);
+		}
+
+		// The string, or the JSON text of a value of an OBJECT column that is not a string
+		public String getString(int column, int row) {
+			int start = buffer.getInt(valueOffsets[column] + row * 4);
+			int end = buffer.getInt(valueOffsets[column] + row * 4 + 4);
+			byte[] utf8 = new byte[end - start];
+			ByteBuffer bytes = buffer.duplicate();
+			bytes.position(bytesOffsets[column] + start);
+			bytes.get(utf8);
+			return new String(utf8, StandardCharsets.UTF_8);
+		}
+
+		// The value boxed, with OBJECT values other than strings as JSON text
+		public Object get(int column, int row) {
+			if (isNull(column, row)) {
+				return null;
+			}
+			switch (columnTypes[column]) {
+			case BOOLEAN:
+				return getBoolean(column, row);
+			case INT:
+				return getInt(column, row);
+			case LONG:
+				return getLong(column, row);
+			case DOUBLE:
+				return getDouble(column, row);
+			default:
+				return getString(column, row);
+			}
+		}
+
+		public Reading getReading(int row) {
+			Map<String, Object> state = new LinkedHashMap<String, Object>();
+			for (int c = 0; c < columnNames.length; c++) {
+				state.put(columnNames[c], get(c, row));
+			}
+			return new Reading(getTime(row), type, getName(row), state);
+		}
+	}
+}
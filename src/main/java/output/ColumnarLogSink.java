@@ -0,0 +1,451 @@
+package output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import entities.SensorState;
+import entities.StateField;
+
+/**
+ * Writes readings to a columnar binary log, which ColumnarLogReader reads by memory-mapping it.
+ *
+ * Readings are collected per sensor type into row groups of at most rowGroupSize rows, so the memory of the sink
+ * is bounded by the number of sensor types. A row group holds a time column of delta-encoded epoch nanoseconds,
+ * a dictionary-encoded name column, and a typed column per state field of the sensor type. Like Arrow buffers,
+ * every column has a validity bitmap and 8-byte aligned little-endian values; strings are stored as offsets into
+ * their UTF-8 bytes, also in OBJECT columns, and values that are neither strings nor primitives as JSON text.
+ *
+ * File layout:
+ *   "IOTCOL01"
+ *   row groups:  int rows, int type, int columns, int time width (4 or 8), long first time, time deltas, name ids,
+ *                then per column: int key, int value type, validity bitmap, values
+ *   footer:      the type, name and key dictionaries as int count and (int length, UTF-8) strings,
+ *                int row groups, long offset per row group
+ *   long footer offset, "IOTCOL01"
+ */
+public class ColumnarLogSink implements OutputSink {
+
+	static final byte[] MAGIC = "IOTCOL01".getBytes(StandardCharsets.US_ASCII);
+	public static final String FILE_EXTENSION = ".iotc";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final int MAX_GROUP_BYTES = 16 << 20; // a group with more string bytes is written early
+
+	private final FileChannel channel;
+	private final int rowGroupSize;
+	private ByteBuffer out = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	private long position = 0; // bytes written to the file
+
+	private final HashMap<String, RowGroup> groups = new HashMap<String, RowGroup>(); // by sensor type
+	private final Dictionary types = new Dictionary();
+	private final Dictionary names = new Dictionary();
+	private final Dictionary keys = new Dictionary();
+	private final ArrayList<Long> groupOffsets = new ArrayList<Long>();
+	private long rows = 0;
+
+	// Creates or replaces the file named fileName plus FILE_EXTENSION
+	public ColumnarLogSink(String fileName, int rowGroupSize) throws IOException {
+		this.rowGroupSize = rowGroupSize;
+		this.channel = FileChannel.open(Paths.get(fileName + FILE_EXTENSION), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		ensure(MAGIC.length);
+		out.put(MAGIC);
+		drain();
+	}
+
+	@Override
+	public void write(Reading reading) throws IOException {
+		RowGroup group = groups.get(reading.getType());
+		if (group != null && !group.fits(reading)) {
+			writeGroup(group);
+			group = null;
+		}
+		if (group == null) {
+			group = new RowGroup(reading);
+			groups.put(reading.getType(), group);
+		}
+		group.add(reading);
+		rows++;
+		if (group.rows == rowGroupSize || group.bytes() > MAX_GROUP_BYTES) {
+			writeGroup(group);
+			groups.remove(reading.getType());
+		}
+	}
+
+	private void writeGroup(RowGroup group) throws IOException {
+		groupOffsets.add(offset());
+		group.write();
+	}
+
+	@Override
+	public Map<String, Object> getMetrics() {
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("rows", rows);
+		metrics.put("rowGroups", groupOffsets.size());
+		return metrics;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			for (RowGroup group : groups.values()) {
+				writeGroup(group);
+			}
+			groups.clear();
+
+			long footer = offset();
+			types.write();
+			names.write();
+			keys.write();
+			ensure(4 + groupOffsets.size() * 8 + 8 + MAGIC.length);
+			out.putInt(groupOffsets.size());
+			for (long offset : groupOffsets) {
+				out.putLong(offset);
+			}
+			out.putLong(footer);
+			out.put(MAGIC);
+			drain();
+		} finally {
+			channel.close();
+		}
+	}
+
+	// Makes room for the given number of bytes in the output buffer
+	private void ensure(int bytes) throws IOException {
+		if (out.remaining() < bytes) {
+			drain();
+			if (out.capacity() < bytes) {
+				out = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+
+	private void drain() throws IOException {
+		out.flip();
+		position += out.remaining();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	// Position in the file of the next byte put into the output buffer
+	private long offset() {
+		return position + out.position();
+	}
+
+	// Pads the output to a multiple of 8 bytes
+	private void align() throws IOException {
+		int padding = (int) (-offset() & 7);
+		ensure(padding);
+		for (int i = 0; i < padding; i++) {
+			out.put((byte) 0);
+		}
+	}
+
+	private static int bitmapBytes(int rows) {
+		return (rows + 63) / 64 * 8;
+	}
+
+	private void writeBitmap(long[] bits, int rows) throws IOException {
+		ensure(bitmapBytes(rows));
+		for (int i = 0; i < bitmapBytes(rows) / 8; i++) {
+			out.putLong(bits[i]);
+		}
+	}
+
+	// Rows of a sensor type that have not been written yet
+	private class RowGroup {
+
+		private final int type;
+		private final StateField[] fields; // of typed readings, null for readings created from a map
+		private final String[] columnNames;
+		private final Column[] columns;
+		private long[] times = new long[64];
+		private int[] nameIds = new int[64];
+		private int rows = 0;
+
+		RowGroup(Reading reading) {
+			type = types.id(reading.getType());
+			SensorState state = reading.getSensorState();
+			if (state != null) {
+				fields = new StateField[state.size()];
+				columnNames = new String[state.size()];
+				for (int i = 0; i < fields.length; i++) {
+					fields[i] = state.getField(i);
+					columnNames[i] = fields[i].getName();
+				}
+			} else {
+				fields = null;
+				columnNames = reading.getState().keySet().toArray(new String[0]);
+			}
+			columns = new Column[columnNames.length];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = new Column(keys.id(columnNames[i]), fields == null ? StateField.Type.OBJECT : fields[i].getType());
+			}
+		}
+
+		// Whether the reading has the columns of the group
+		boolean fits(Reading reading) {
+			SensorState state = reading.getSensorState();
+			if ((state == null) != (fields == null)) {
+				return false;
+			}
+			if (state != null) {
+				if (state.size() != fields.length) {
+					return false;
+				}
+				for (int i = 0; i < fields.length; i++) {
+					StateField field = state.getField(i);
+					if (!field.getName().equals(fields[i].getName()) || field.getType() != fields[i].getType()) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return reading.getState().size() == columnNames.length && reading.getState().keySet().containsAll(Arrays.asList(columnNames));
+		}
+
+		void add(Reading reading) throws IOException {
+			if (rows == times.length) {
+				times = Arrays.copyOf(times, rows * 2);
+				nameIds = Arrays.copyOf(nameIds, rows * 2);
+			}
+			times[rows] = reading.getTime().toEpochSecond(ZoneOffset.UTC) * 1000000000L + reading.getTime().getNano();
+			nameIds[rows] = names.id(reading.getName());
+			SensorState state = reading.getSensorState();
+			for (int i = 0; i < columns.length; i++) {
+				if (state != null) {
+					columns[i].add(rows, state, fields[i]);
+				} else {
+					columns[i].addObject(rows, reading.getState().get(columnNames[i]));
+				}
+			}
+			rows++;
+		}
+
+		long bytes() {
+			long bytes = 0;
+			for (Column column : columns) {
+				bytes += column.length;
+			}
+			return bytes;
+		}
+
+		void write() throws IOException {
+			boolean wide = false;
+			for (int i = 1; i < rows; i++) {
+				long delta = times[i] - times[i - 1];
+				wide |= delta != (int) delta;
+			}
+			ensure(24);
+			out.putInt(rows);
+			out.putInt(type);
+			out.putInt(columns.length);
+			out.putInt(wide ? 8 : 4);
+			out.putLong(times[0]);
+			for (int i = 0; i < rows; i++) {
+				long delta = i == 0 ? 0 : times[i] - times[i - 1];
+				ensure(8);
+				if (wide) {
+					out.putLong(delta);
+				} else {
+					out.putInt((int) delta);
+				}
+			}
+			align();
+			for (int i = 0; i < rows; i++) {
+				ensure(4);
+				out.putInt(nameIds[i]);
+			}
+			align();
+			for (Column column : columns) {
+				column.write(rows);
+			}
+		}
+	}
+
+	// Values of a state field
+	private class Column {
+
+		private final int key;
+		private final StateField.Type type;
+		private long[] valid = new long[1];
+		private long[] values; // primitives, doubles as their bits and booleans as a bitmap
+		private int[] offsets; // strings
+		private byte[] bytes;
+		private int length = 0;
+
+		Column(int key, StateField.Type type) {
+			this.key = key;
+			this.type = type;
+			if (type == StateField.Type.STRING || type == StateField.Type.OBJECT) {
+				offsets = new int[65];
+				bytes = new byte[1024];
+			} else {
+				values = new long[type == StateField.Type.BOOLEAN ? 1 : 64];
+			}
+		}
+
+		void add(int row, SensorState state, StateField field) throws IOException {
+			if (state.isNull(field)) {
+				addNull(row);
+				return;
+			}
+			switch (type) {
+			case BOOLEAN:
+				addBits(row, state.getBoolean(field));
+				break;
+			case INT:
+				addValue(row, state.getInt(field));
+				break;
+			case LONG:
+				addValue(row, state.getLong(field));
+				break;
+			case DOUBLE:
+				addValue(row, Double.doubleToRawLongBits(state.getDouble(field)));
+				break;
+			case STRING:
+				addBytes(row, state.getString(field).getBytes(StandardCharsets.UTF_8));
+				break;
+			default:
+				addObject(row, state.getObject(field));
+			}
+		}
+
+		void addObject(int row, Object value) throws IOException {
+			if (value == null) {
+				addNull(row);
+			} else if (value instanceof String) {
+				addBytes(row, ((String) value).getBytes(StandardCharsets.UTF_8));
+			} else {
+				addBytes(row, mapper.writeValueAsBytes(value));
+			}
+		}
+
+		private void addNull(int row) {
+			valid = grow(valid, row / 64 + 1);
+			if (type == StateField.Type.BOOLEAN) {
+				addBits(row, false);
+			} else if (values != null) {
+				addValue(row, 0);
+			} else {
+				addBytes(row, new byte[0]);
+			}
+			valid[row / 64] &= ~(1L << row);
+		}
+
+		private void setValid(int row) {
+			valid = grow(valid, row / 64 + 1);
+			valid[row / 64] |= 1L << row;
+		}
+
+		private void addBits(int row, boolean value) {
+			setValid(row);
+			values = grow(values, row / 64 + 1);
+			if (value) {
+				values[row / 64] |= 1L << row;
+			}
+		}
+
+		private void addValue(int row, long value) {
+			setValid(row);
+			values = grow(values, row + 1);
+			values[row] = value;
+		}
+
+		private void addBytes(int row, byte[] value) {
+			setValid(row);
+			if (offsets.length < row + 2) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+			if (bytes.length < length + value.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + value.length));
+			}
+			System.arraycopy(value, 0, bytes, length, value.length);
+			length += value.length;
+			offsets[row + 1] = length;
+		}
+
+		private long[] grow(long[] array, int size) {
+			return array.length >= size ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+		}
+
+		void write(int rows) throws IOException {
+			ensure(8);
+			out.putInt(key);
+			out.putInt(type.ordinal());
+			writeBitmap(grow(valid, bitmapBytes(rows) / 8), rows);
+			switch (type) {
+			case BOOLEAN:
+				writeBitmap(grow(values, bitmapBytes(rows) / 8), rows);
+				break;
+			case INT:
+				for (int i = 0; i < rows; i++) {
+					ensure(4);
+					out.putInt((int) values[i]);
+				}
+				break;
+			case LONG:
+			case DOUBLE:
+				for (int i = 0; i < rows; i++) {
+					ensure(8);
+					out.putLong(values[i]);
+				}
+				break;
+			default:
+				for (int i = 0; i <= rows; i++) {
+					ensure(4);
+					out.putInt(offsets[i]);
+				}
+				align();
+				for (int i = 0; i < length; i += 65536) {
+					int chunk = Math.min(65536, length - i);
+					ensure(chunk);
+					out.put(bytes, i, chunk);
+				}
+			}
+			align();
+		}
+	}
+
+	// Strings numbered in order of their first use
+	private class Dictionary {
+
+		private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		private final ArrayList<String> strings = new ArrayList<String>();
+
+		int id(String string) {
+			Integer id = ids.get(string);
+			if (id == null) {
+				id = strings.size();
+				ids.put(string, id);
+				strings.add(string);
+			}
+			return id;
+		}
+
+		void write() throws IOException {
+			ensure(4);
+			out.putInt(strings.size());
+			for (String string : strings) {
+				byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+				ensure(4 + utf8.length);
+				out.putInt(utf8.length);
+				out.put(utf8);
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package output;
+
+/**
+ * Compression of output files.
+ */
+public enum Compression {
+	NONE(""),
+	GZIP(".gz");
+
+	private final String fileExtension;
+
+	Compression(String fileExtension) {
+		this.fileExtension = fileExtension;
+	}
+
+	public String getFileExtension() {
+		return fileExtension;
+	}
+}
@@ -0,0 +1,43 @@
+package output;
+
+import controllers.NotificationController;
+import utils.IsoTimestamp;
+
+/**
+ * Human-readable output on the console, and on the WebSocket if a notification controller is given.
+ */
+public class ConsoleSink implements OutputSink {
+
+	private final NotificationController notification; // null without WebSocket output
+	private final StringBuilder line = new StringBuilder();
+
+	public ConsoleSink(NotificationController notification) {
+		this.notification = notification;
+	}
+
+	@Override
+	public void write(Reading reading) {
+		line.setLength(0);
+		IsoTimestamp.append(reading.getTime(), line);
+		line.append(" : ").append(reading.getType()).append(" : ").append(reading.getName()).append(" : ");
+		reading.appendState(line);
+		print(line.toString());
+	}
+
+	@Override
+	public void print(String message) {
+		System.out.println(message);
+		if (notification != null) {
+			notification.notifyToClient(message);
+		}
+	}
+
+	@Override
+	public boolean printsMessages() {
+		return true;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,371 @@
+package output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import entities.SensorState;
+import entities.StateField;
+import utils.IsoTimestamp;
+
+/**
+ * Writes readings as RFC 4180 CSV through a direct buffer to a file channel. The sink runs on the consumer of its
+ * output channel, so the simulation does not wait for the disk, and the buffer is only written when it is full.
+ *
+ * With typed columns, the readings of each sensor type go to their own file, fileName.Type.csv, with a column per
+ * state field: time,name,field1,field2,... Otherwise all readings go to fileName.csv as time,type,name,state.
+ * A file is rotated to a new part, fileName[.Type].N.csv, when it has reached the rotation size or the simulated
+ * time of its first reading is the rotation period ago. Readings of a type with other state fields than its open
+ * file, e.g. of a sensor that has been put a field by name, go to a part of their own with their own header, which
+ * stays open next to the other parts of the type. Parts are numbered per type and never reopened.
+ * Files can be compressed with gzip while they are written.
+ */
+public class CsvFileSink implements OutputSink {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final byte[] NO_INPUT = new byte[0];
+
+	private final String fileName;
+	private final boolean typedColumns;
+	private final Compression compression;
+	private final long rotateBytes; // 0 for no size-based rotation
+	private final long rotateNanos; // of simulated time, 0 for no time-based rotation
+
+	private final HashMap<String, ArrayList<CsvFile>> files = new HashMap<String, ArrayList<CsvFile>>(); // open parts by sensor type, or "" for a single file
+	private final HashMap<String, Integer> parts = new HashMap<String, Integer>();
+	private final StringBuilder line = new StringBuilder();
+	private final StringBuilder cell = new StringBuilder();
+	private long bytesWritten = 0;
+	private long filesWritten = 0;
+
+	public CsvFileSink(String fileName, boolean typedColumns, Compression compression, long rotateBytes, long rotateNanos) {
+		this.fileName = fileName;
+		this.typedColumns = typedColumns;
+		this.compression = compression;
+		this.rotateBytes = rotateBytes;
+		this.rotateNanos = rotateNanos;
+	}
+
+	@Override
+	public void write(Reading reading) throws IOException {
+		String key = typedColumns ? reading.getType() : "";
+		ArrayList<CsvFile> open = files.computeIfAbsent(key, k -> new ArrayList<CsvFile>());
+		int index = 0;
+		while (index < open.size() && !open.get(index).fits(reading)) {
+			index++;
+		}
+		CsvFile file;
+		if (index == open.size()) {
+			file = open(key, reading);
+			open.add(file);
+		} else {
+			file = open.get(index);
+			if (file.isDue(reading)) {
+				close(file);
+				file = open(key, reading);
+				open.set(index, file);
+			}
+		}
+
+		line.setLength(0);
+		IsoTimestamp.append(reading.getTime(), line);
+		if (!typedColumns) {
+			line.append(',');
+			appendEscaped(reading.getType(), line);
+			line.append(',');
+			appendEscaped(reading.getName(), line);
+			line.append(',');
+			cell.setLength(0);
+			reading.appendState(cell);
+			appendEscaped(cell, line);
+		} else {
+			line.append(',');
+			appendEscaped(reading.getName(), line);
+			SensorState state = reading.getSensorState();
+			if (state != null) {
+				for (int i = 0; i < state.size(); i++) {
+					line.append(',');
+					appendCell(state, state.getField(i));
+				}
+			} else {
+				for (String column : file.columns) {
+					line.append(',');
+					appendCell(reading.getState().get(column));
+				}
+			}
+		}
+		line.append("\r\n");
+		file.write(line);
+	}
+
+	private CsvFile open(String key, Reading reading) throws IOException {
+		String name = fileName + (key.isEmpty() ? "" : "." + key);
+		int part = parts.merge(key, 1, Integer::sum) - 1;
+		if (rotateBytes > 0 || rotateNanos > 0 || part > 0) {
+			name += "." + part;
+		}
+		ArrayList<String> columns = new ArrayList<String>();
+		line.setLength(0);
+		if (typedColumns) {
+			line.append("time,name");
+			SensorState state = reading.getSensorState();
+			if (state != null) {
+				for (int i = 0; i < state.size(); i++) {
+					columns.add(state.getField(i).getName());
+				}
+			} else {
+				columns.addAll(reading.getState().keySet());
+			}
+			for (String column : columns) {
+				line.append(',');
+				appendEscaped(column, line);
+			}
+		} else {
+			line.append("time,type,name,state");
+		}
+		line.append("\r\n");
+		CsvFile file = new CsvFile(name + ".csv" + compression.getFileExtension(), columns, reading.getTime());
+		file.write(line);
+		filesWritten++;
+		return file;
+	}
+
+	private void close(CsvFile file) throws IOException {
+		file.close();
+		bytesWritten += file.bytes;
+	}
+
+	private void appendCell(SensorState state, StateField field) {
+		if (state.isNull(field)) {
+			return;
+		}
+		switch (field.getType()) {
+		case BOOLEAN:
+			line.append(state.getBoolean(field));
+			break;
+		case INT:
+			line.append(state.getInt(field));
+			break;
+		case LONG:
+			line.append(state.getLong(field));
+			break;
+		case DOUBLE:
+			line.append(state.getDouble(field));
+			break;
+		case STRING:
+			appendEscaped(state.getString(field), line);
+			break;
+		default:
+			appendCell(state.getObject(field));
+		}
+	}
+
+	private void appendCell(Object value) {
+		if (value == null) {
+			return;
+		}
+		if (value instanceof Number || value instanceof Boolean) {
+			line.append(value);
+		} else {
+			appendEscaped(value.toString(), line);
+		}
+	}
+
+	// Quotes a value that holds a separator, quote or line break, and doubles its quotes
+	static void appendEscaped(CharSequence value, StringBuilder line) {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			line.append(value);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				line.append('"');
+			}
+			line.append(c);
+		}
+		line.append('"');
+	}
+
+	@Override
+	public Map<String, Object> getMetrics() {
+		long bytes = bytesWritten;
+		for (ArrayList<CsvFile> open : files.values()) {
+			for (CsvFile file : open) {
+				bytes += file.bytes;
+			}
+		}
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("bytes", bytes); // before compression
+		metrics.put("files", filesWritten);
+		return metrics;
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		for (ArrayList<CsvFile> open : files.values()) {
+			for (CsvFile file : open) {
+				try {
+					close(file);
+				} catch (IOException e) {
+					error = e;
+				}
+			}
+		}
+		files.clear();
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	// Part of the output, written through a direct buffer and compressed when the buffer is full
+	private class CsvFile {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final ArrayList<String> columns;
+		private final LocalDateTime end; // simulated time at which the file is rotated, null for none
+		private long bytes = 0; // written before compression
+
+		// gzip
+		private final Deflater deflater;
+		private final CRC32 crc;
+		private final ByteBuffer compressed;
+
+		CsvFile(String name, ArrayList<String> columns, LocalDateTime start) throws IOException {
+			this.channel = FileChannel.open(Paths.get(name), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			this.columns = columns;
+			this.end = rotateNanos > 0 ? start.plusNanos(rotateNanos) : null;
+			if (compression == Compression.GZIP) {
+				deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+				crc = new CRC32();
+				compressed = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				// header of a gzip member without a file name, see RFC 1952
+				compressed.put(new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+			} else {
+				deflater = null;
+				crc = null;
+				compressed = null;
+			}
+		}
+
+		// Whether the reading has the columns of the file, in their order for readings of sensors
+		boolean fits(Reading reading) {
+			if (!typedColumns) {
+				return true;
+			}
+			SensorState state = reading.getSensorState();
+			if (state == null) {
+				return columns.containsAll(reading.getState().keySet());
+			}
+			if (state.size() != columns.size()) {
+				return false;
+			}
+			for (int i = 0; i < columns.size(); i++) {
+				if (!state.getField(i).getName().equals(columns.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// Whether the reading goes to a new part of the file
+		boolean isDue(Reading reading) {
+			return (rotateBytes > 0 && bytes >= rotateBytes) || (end != null && !reading.getTime().isBefore(end));
+		}
+
+		// Encodes the characters as UTF-8 into the buffer
+		void write(CharSequence chars) throws IOException {
+			for (int i = 0; i < chars.length(); i++) {
+				if (buffer.remaining() < 4) {
+					drain();
+				}
+				char c = chars.charAt(i);
+				if (c < 0x80) {
+					buffer.put((byte) c);
+				} else if (c < 0x800) {
+					buffer.put((byte) (0xc0 | c >> 6));
+					buffer.put((byte) (0x80 | c & 0x3f));
+				} else if (Character.isHighSurrogate(c) && i + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+					buffer.put((byte) (0xf0 | codePoint >> 18));
+					buffer.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+					buffer.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+					buffer.put((byte) (0x80 | codePoint & 0x3f));
+				} else {
+					buffer.put((byte) (0xe0 | c >> 12));
+					buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+					buffer.put((byte) (0x80 | c & 0x3f));
+				}
+			}
+		}
+
+		// Writes the buffer to the file, compressed if enabled
+		private void drain() throws IOException {
+			buffer.flip();
+			bytes += buffer.remaining();
+			if (deflater == null) {
+				writeFully(buffer);
+			} else {
+				crc.update(buffer.duplicate());
+				deflater.setInput(buffer);
+				while (!deflater.needsInput()) {
+					deflate();
+				}
+				deflater.setInput(NO_INPUT); // the deflater must not see the buffer again once it is cleared
+			}
+			buffer.clear();
+		}
+
+		private void deflate() throws IOException {
+			deflater.deflate(compressed);
+			if (!compressed.hasRemaining() || deflater.finished()) {
+				compressed.flip();
+				writeFully(compressed);
+				compressed.clear();
+			}
+		}
+
+		private void writeFully(ByteBuffer bytes) throws IOException {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+
+		void close() throws IOException {
+			try {
+				drain();
+				if (deflater != null) {
+					deflater.finish();
+					while (!deflater.finished()) {
+						deflate();
+					}
+					compressed.putInt((int) crc.getValue());
+					compressed.putInt((int) bytes); // size modulo 2^32
+					compressed.flip();
+					writeFully(compressed);
+					deflater.end();
+				}
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package output;
+
+/**
+ * When DatabaseSink creates the indexes of its tables
+ */
+public enum DatabaseIndexing {
+	NONE, // no indexes
+	AFTER_LOAD, // once all readings have been inserted, which keeps inserts fast
+	DURING_LOAD // with the tables, so the database can be queried efficiently while the simulation runs
+}
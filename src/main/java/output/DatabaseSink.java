@@ -0,0 +1,326 @@
+package output;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import entities.SensorState;
+import entities.StateField;
+
+/**
+ * Writes readings into an embedded H2 database, fileName.mv.db, which can be queried with SQL after the run.
+ *
+ * The readings of each sensor type go to a table named after the type, with the columns time, name and a typed
+ * column per state field. Values that are neither strings nor primitives are stored as JSON text. A table gains
+ * a column when its sensor type gains a state field.
+ *
+ * Readings are inserted with a prepared statement per table in JDBC batches, and committed every batchSize
+ * readings, so the sink keeps up with instant simulations. Indexes on (name, time) and time are created
+ * once all readings have been inserted, with the tables, or not at all.
+ */
+public class DatabaseSink implements OutputSink {
+
+	public static final String FILE_EXTENSION = ".mv.db";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final Connection connection;
+	private final int batchSize;
+	private final DatabaseIndexing indexing;
+
+	private final HashMap<String, Table> tables = new HashMap<String, Table>(); // by sensor type
+	private int pending = 0; // readings inserted since the last commit
+	private long rows = 0;
+	private long commits = 0;
+
+	// Creates or replaces the database named fileName plus FILE_EXTENSION
+	public DatabaseSink(String fileName, int batchSize, DatabaseIndexing indexing) throws IOException {
+		this.batchSize = batchSize;
+		this.indexing = indexing;
+		Path path = Paths.get(fileName).toAbsolutePath();
+		Files.deleteIfExists(Paths.get(path + FILE_EXTENSION));
+		Files.deleteIfExists(Paths.get(path + ".trace.db"));
+		try {
+			connection = DriverManager.getConnection("jdbc:h2:" + path);
+			connection.setAutoCommit(false);
+		} catch (SQLException e) {
+			throw new IOException("the database " + path + FILE_EXTENSION + " cannot be opened", e);
+		}
+	}
+
+	@Override
+	public void write(Reading reading) throws SQLException, IOException {
+		Table table = tables.get(reading.getType());
+		if (table == null) {
+			table = new Table(reading);
+			tables.put(reading.getType(), table);
+		}
+		table.insert(reading);
+		rows++;
+		if (++pending == batchSize) {
+			commit();
+		}
+	}
+
+	private void commit() throws SQLException {
+		for (Table table : tables.values()) {
+			table.executeBatch();
+		}
+		connection.commit();
+		commits++;
+		pending = 0;
+	}
+
+	@Override
+	public Map<String, Object> getMetrics() {
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("rows", rows);
+		metrics.put("commits", commits);
+		metrics.put("tables", tables.size());
+		return metrics;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			if (pending > 0) {
+				commit();
+			}
+			for (Table table : tables.values()) {
+				table.insert.close();
+				if (indexing == DatabaseIndexing.AFTER_LOAD) {
+					table.createIndexes();
+				}
+			}
+			connection.commit();
+		} finally {
+			connection.close();
+		}
+	}
+
+	// Quotes an SQL identifier, so sensor types and state fields keep their case
+	private static String quote(String identifier) {
+		return '"' + identifier.replace("\"", "\"\"") + '"';
+	}
+
+	private static String sqlType(StateField.Type type) {
+		switch (type) {
+		case BOOLEAN:
+			return "BOOLEAN";
+		case INT:
+			return "INTEGER";
+		case LONG:
+			return "BIGINT";
+		case DOUBLE:
+			return "DOUBLE";
+		default:
+			return "VARCHAR";
+		}
+	}
+
+	private static int jdbcType(StateField.Type type) {
+		switch (type) {
+		case BOOLEAN:
+			return Types.BOOLEAN;
+		case INT:
+			return Types.INTEGER;
+		case LONG:
+			return Types.BIGINT;
+		case DOUBLE:
+			return Types.DOUBLE;
+		default:
+			return Types.VARCHAR;
+		}
+	}
+
+	// Table of a sensor type and its insert statement
+	private class Table {
+
+		private final String type;
+		private final ArrayList<String> columnNames = new ArrayList<String>(); // of the state fields
+		private final ArrayList<StateField.Type> columnTypes = new ArrayList<StateField.Type>();
+		private final HashMap<String, Integer> columnIndexes = new HashMap<String, Integer>();
+		private PreparedStatement insert;
+		private int batched = 0;
+
+		Table(Reading reading) throws SQLException {
+			this.type = reading.getType();
+			StringBuilder sql = new StringBuilder();
+			sql.append("CREATE TABLE ").append(quote(type)).append(" (\"time\" TIMESTAMP(9) NOT NULL, \"name\" VARCHAR NOT NULL");
+			SensorState state = reading.getSensorState();
+			if (state != null) {
+				for (int i = 0; i < state.size(); i++) {
+					StateField field = state.getField(i);
+					addColumn(field.getName(), field.getType());
+					sql.append(", ").append(quote(field.getName())).append(' ').append(sqlType(field.getType()));
+				}
+			} else {
+				for (String key : reading.getState().keySet()) {
+					addColumn(key, StateField.Type.OBJECT);
+					sql.append(", ").append(quote(key)).append(' ').append(sqlType(StateField.Type.OBJECT));
+				}
+			}
+			sql.append(')');
+			try (Statement statement = connection.createStatement()) {
+				statement.execute(sql.toString());
+			}
+			if (indexing == DatabaseIndexing.DURING_LOAD) {
+				createIndexes();
+			}
+			prepare();
+		}
+
+		private void addColumn(String name, StateField.Type type) {
+			columnIndexes.put(name, columnNames.size());
+			columnNames.add(name);
+			columnTypes.add(type);
+		}
+
+		private void prepare() throws SQLException {
+			StringBuilder sql = new StringBuilder();
+			sql.append("INSERT INTO ").append(quote(type)).append(" VALUES (?, ?");
+			for (int i = 0; i < columnNames.size(); i++) {
+				sql.append(", ?");
+			}
+			sql.append(')');
+			insert = connection.prepareStatement(sql.toString());
+		}
+
+		// Adds a column for a state field the table does not have yet
+		private int alter(String name, StateField.Type type) throws SQLException {
+			executeBatch();
+			insert.close();
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("ALTER TABLE " + quote(this.type) + " ADD COLUMN " + quote(name) + " " + sqlType(type));
+			}
+			addColumn(name, type);
+			prepare();
+			return columnNames.size() - 1;
+		}
+
+		void insert(Reading reading) throws SQLException, IOException {
+			SensorState state = reading.getSensorState();
+			if (state != null && !matches(state)) {
+				for (int i = 0; i < state.size(); i++) {
+					StateField field = state.getField(i);
+					if (!columnIndexes.containsKey(field.getName())) {
+						alter(field.getName(), field.getType());
+					}
+				}
+			} else if (state == null) {
+				for (String key : reading.getState().keySet()) {
+					if (!columnIndexes.containsKey(key)) {
+						alter(key, StateField.Type.OBJECT);
+					}
+				}
+			}
+
+			insert.setObject(1, reading.getTime());
+			insert.setString(2, reading.getName());
+			if (state != null && matches(state)) {
+				// the fields of the sensor type are the columns of the table, in the same order
+				for (int i = 0; i < state.size(); i++) {
+					bind(3 + i, columnTypes.get(i), state, state.getField(i));
+				}
+			} else {
+				for (int i = 0; i < columnNames.size(); i++) {
+					insert.setNull(3 + i, jdbcType(columnTypes.get(i)));
+				}
+				if (state != null) {
+					for (int i = 0; i < state.size(); i++) {
+						StateField field = state.getField(i);
+						int column = columnIndexes.get(field.getName());
+						bind(3 + column, columnTypes.get(column), state, field);
+					}
+				} else {
+					for (Map.Entry<String, Object> entry : reading.getState().entrySet()) {
+						bindObject(3 + columnIndexes.get(entry.getKey()), entry.getValue());
+					}
+				}
+			}
+			insert.addBatch();
+			batched++;
+		}
+
+		private boolean matches(SensorState state) {
+			if (state.size() != columnNames.size()) {
+				return false;
+			}
+			for (int i = 0; i < state.size(); i++) {
+				StateField field = state.getField(i);
+				if (!field.getName().equals(columnNames.get(i)) || field.getType() != columnTypes.get(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void bind(int parameter, StateField.Type columnType, SensorState state, StateField field) throws SQLException, IOException {
+			if (state.isNull(field)) {
+				insert.setNull(parameter, jdbcType(columnType));
+				return;
+			}
+			if (columnType != field.getType()) {
+				// a field that has changed its type since the column was added
+				bindObject(parameter, state.get(field));
+				return;
+			}
+			switch (columnType) {
+			case BOOLEAN:
+				insert.setBoolean(parameter, state.getBoolean(field));
+				break;
+			case INT:
+				insert.setInt(parameter, state.getInt(field));
+				break;
+			case LONG:
+				insert.setLong(parameter, state.getLong(field));
+				break;
+			case DOUBLE:
+				insert.setDouble(parameter, state.getDouble(field));
+				break;
+			case STRING:
+				insert.setString(parameter, state.getString(field));
+				break;
+			default:
+				bindObject(parameter, state.getObject(field));
+			}
+		}
+
+		private void bindObject(int parameter, Object value) throws SQLException, IOException {
+			if (value == null) {
+				insert.setNull(parameter, Types.VARCHAR);
+			} else if (value instanceof String) {
+				insert.setString(parameter, (String) value);
+			} else {
+				insert.setString(parameter, mapper.writeValueAsString(value));
+			}
+		}
+
+		void executeBatch() throws SQLException {
+			if (batched > 0) {
+				insert.executeBatch();
+				batched = 0;
+			}
+		}
+
+		void createIndexes() throws SQLException {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE INDEX " + quote(type + "_name_time") + " ON " + quote(type) + " (\"name\", \"time\")");
+				statement.execute("CREATE INDEX " + quote(type + "_time") + " ON " + quote(type) + " (\"time\")");
+			}
+		}
+	}
+}
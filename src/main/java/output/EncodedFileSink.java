@@ -0,0 +1,36 @@
+package output;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes encoded readings to a file, one after the other. JSON readings are separated by new lines, while CBOR
+ * and MessagePack values follow each other directly, as both can be read as a sequence of values.
+ */
+public class EncodedFileSink implements OutputSink {
+
+	private final ReadingEncoder encoder;
+	private final OutputStream out;
+
+	// Creates or replaces the file named fileName plus the extension of the encoding
+	public EncodedFileSink(String fileName, ReadingEncoder encoder) throws IOException {
+		this.encoder = encoder;
+		this.out = new BufferedOutputStream(new FileOutputStream(fileName + encoder.getEncoding().getFileExtension()), 65536);
+	}
+
+	@Override
+	public void write(Reading reading) throws IOException {
+		int length = encoder.encode(reading);
+		out.write(encoder.getBuffer(), 0, length);
+		if (encoder.getEncoding() == Encoding.JSON) {
+			out.write('\n');
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
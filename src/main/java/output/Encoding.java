@@ -0,0 +1,22 @@
+package output;
+
+/**
+ * Encoding of the readings published to MQTT and written to encoded files.
+ */
+public enum Encoding {
+	JSON,
+	CBOR,
+	MESSAGEPACK;
+
+	// Extension of files holding readings in the encoding, one after the other
+	public String getFileExtension() {
+		switch (this) {
+		case CBOR:
+			return ".cbor";
+		case MESSAGEPACK:
+			return ".msgpack";
+		default:
+			return ".jsonl";
+		}
+	}
+}
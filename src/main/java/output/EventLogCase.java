@@ -0,0 +1,9 @@
+package output;
+
+/**
+ * What the traces of an XES event log are.
+ */
+public enum EventLogCase {
+	AGENT, // the readings an agent relates to, e.g. by interacting with a sensor or standing in its interact area
+	SENSOR // the readings of a sensor
+}
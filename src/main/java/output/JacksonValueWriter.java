@@ -0,0 +1,114 @@
+package output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Writes JSON or CBOR with a Jackson generator, which is kept for all readings written to the stream.
+ */
+class JacksonValueWriter implements ValueWriter {
+
+	private static final ObjectMapper jsonMapper = new ObjectMapper();
+	private static final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+	// shared, for values of other than the common types
+	private static final ObjectWriter jsonWriter = jsonMapper.writer();
+	private static final ObjectWriter cborWriter = cborMapper.writer();
+
+	static {
+		jsonMapper.getFactory().setRootValueSeparator(null); // the generator writes one reading after the other into the buffer
+	}
+
+	private final JsonGenerator generator;
+	private final ObjectWriter writer;
+
+	JacksonValueWriter(Encoding encoding, OutputStream out) throws IOException {
+		if (encoding == Encoding.CBOR) {
+			generator = cborMapper.getFactory().createGenerator(out);
+			writer = cborWriter;
+		} else {
+			generator = jsonMapper.getFactory().createGenerator(out);
+			writer = jsonWriter;
+		}
+	}
+
+	@Override
+	public void startObject(int size) throws IOException {
+		generator.writeStartObject();
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		generator.writeEndObject();
+	}
+
+	@Override
+	public void startArray(int size) throws IOException {
+		generator.writeStartArray();
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		generator.writeEndArray();
+	}
+
+	@Override
+	public void writeKey(SerializedString key) throws IOException {
+		generator.writeFieldName(key);
+	}
+
+	@Override
+	public void writeKey(String key) throws IOException {
+		generator.writeFieldName(key);
+	}
+
+	@Override
+	public void writeString(SerializedString value) throws IOException {
+		generator.writeString(value);
+	}
+
+	@Override
+	public void writeString(String value) throws IOException {
+		generator.writeString(value);
+	}
+
+	@Override
+	public void writeString(char[] value, int offset, int length) throws IOException {
+		generator.writeString(value, offset, length);
+	}
+
+	@Override
+	public void writeNumber(long value) throws IOException {
+		generator.writeNumber(value);
+	}
+
+	@Override
+	public void writeNumber(double value) throws IOException {
+		generator.writeNumber(value);
+	}
+
+	@Override
+	public void writeBoolean(boolean value) throws IOException {
+		generator.writeBoolean(value);
+	}
+
+	@Override
+	public void writeNull() throws IOException {
+		generator.writeNull();
+	}
+
+	@Override
+	public void writeObject(Object value) throws IOException {
+		writer.writeValue(generator, value);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		generator.flush();
+	}
+}
@@ -0,0 +1,206 @@
+package output;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Writes MessagePack (https://msgpack.org) into a byte stream. Numbers use the smallest format that holds them,
+ * maps and collections are written recursively and values of other types as their string representation.
+ */
+class MessagePackWriter implements ValueWriter {
+
+	private final ByteArrayOutputStream out;
+
+	MessagePackWriter(ByteArrayOutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void startObject(int size) {
+		if (size < 16) {
+			out.write(0x80 | size);
+		} else if (size < 65536) {
+			out.write(0xde);
+			writeShort(size);
+		} else {
+			out.write(0xdf);
+			writeInt(size);
+		}
+	}
+
+	@Override
+	public void endObject() {
+	}
+
+	@Override
+	public void startArray(int size) {
+		if (size < 16) {
+			out.write(0x90 | size);
+		} else if (size < 65536) {
+			out.write(0xdc);
+			writeShort(size);
+		} else {
+			out.write(0xdd);
+			writeInt(size);
+		}
+	}
+
+	@Override
+	public void endArray() {
+	}
+
+	@Override
+	public void writeKey(SerializedString key) {
+		writeString(key);
+	}
+
+	@Override
+	public void writeKey(String key) {
+		writeString(key);
+	}
+
+	@Override
+	public void writeString(SerializedString value) {
+		byte[] bytes = value.asUnquotedUTF8(); // cached by the SerializedString
+		writeStringHeader(bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public void writeString(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeStringHeader(bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public void writeString(char[] value, int offset, int length) {
+		writeStringHeader(length);
+		for (int i = offset; i < offset + length; i++) {
+			out.write(value[i]);
+		}
+	}
+
+	private void writeStringHeader(int length) {
+		if (length < 32) {
+			out.write(0xa0 | length);
+		} else if (length < 256) {
+			out.write(0xd9);
+			out.write(length);
+		} else if (length < 65536) {
+			out.write(0xda);
+			writeShort(length);
+		} else {
+			out.write(0xdb);
+			writeInt(length);
+		}
+	}
+
+	@Override
+	public void writeNumber(long value) {
+		if (value >= 0) {
+			if (value < 128) {
+				out.write((int) value);
+			} else if (value < 256) {
+				out.write(0xcc);
+				out.write((int) value);
+			} else if (value < 65536) {
+				out.write(0xcd);
+				writeShort((int) value);
+			} else if (value <= 0xffffffffL) {
+				out.write(0xce);
+				writeInt((int) value);
+			} else {
+				out.write(0xcf);
+				writeLong(value);
+			}
+		} else {
+			if (value >= -32) {
+				out.write((int) value & 0xff);
+			} else if (value >= Byte.MIN_VALUE) {
+				out.write(0xd0);
+				out.write((int) value);
+			} else if (value >= Short.MIN_VALUE) {
+				out.write(0xd1);
+				writeShort((int) value);
+			} else if (value >= Integer.MIN_VALUE) {
+				out.write(0xd2);
+				writeInt((int) value);
+			} else {
+				out.write(0xd3);
+				writeLong(value);
+			}
+		}
+	}
+
+	@Override
+	public void writeNumber(double value) {
+		out.write(0xcb);
+		writeLong(Double.doubleToLongBits(value));
+	}
+
+	@Override
+	public void writeBoolean(boolean value) {
+		out.write(value ? 0xc3 : 0xc2);
+	}
+
+	@Override
+	public void writeNull() {
+		out.write(0xc0);
+	}
+
+	@Override
+	public void writeObject(Object value) {
+		if (value == null) {
+			writeNull();
+		} else if (value instanceof String) {
+			writeString((String) value);
+		} else if (value instanceof Boolean) {
+			writeBoolean((Boolean) value);
+		} else if (value instanceof Double || value instanceof Float) {
+			writeNumber(((Number) value).doubleValue());
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			writeNumber(((Number) value).longValue());
+		} else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			startObject(map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				writeString(String.valueOf(entry.getKey()));
+				writeObject(entry.getValue());
+			}
+		} else if (value instanceof Collection) {
+			Collection<?> collection = (Collection<?>) value;
+			startArray(collection.size());
+			for (Object element : collection) {
+				writeObject(element);
+			}
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	private void writeShort(int value) {
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private void writeInt(int value) {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private void writeLong(long value) {
+		writeInt((int) (value >>> 32));
+		writeInt((int) value);
+	}
+}
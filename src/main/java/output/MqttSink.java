@@ -0,0 +1,48 @@
+package output;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import main.MqttPahoAsync;
+
+/**
+ * Publishes encoded readings to the root topic of an MQTT client without waiting for the broker, or to a topic
+ * per sensor, rootTopic/<type>/<name>, so that consumers can subscribe to the sensors they need.
+ * The client is flushed and disconnected when the sink is closed.
+ */
+public class MqttSink implements OutputSink {
+
+	private final ReadingEncoder encoder;
+	private final MqttPahoAsync mqtt;
+	private final boolean topicPerSensor;
+	private final HashMap<String, String> topics = new HashMap<String, String>(); // topic by sensor name, built once per sensor
+
+	public MqttSink(MqttPahoAsync mqtt) {
+		this(mqtt, false, new ReadingEncoder());
+	}
+
+	public MqttSink(MqttPahoAsync mqtt, boolean topicPerSensor, ReadingEncoder encoder) {
+		this.mqtt = mqtt;
+		this.topicPerSensor = topicPerSensor;
+		this.encoder = encoder;
+	}
+
+	@Override
+	public void write(Reading reading) throws Exception {
+		String topic = mqtt.getRootTopic();
+		if (topicPerSensor) {
+			topic = topics.computeIfAbsent(reading.getName(), name -> mqtt.getRootTopic()+"/"+reading.getType()+"/"+name);
+		}
+		mqtt.publish(topic, encoder.encodeToArray(reading)); // the client keeps the payload until it has been delivered
+	}
+
+	@Override
+	public Map<String, Object> getMetrics() {
+		return mqtt.getMetrics();
+	}
+
+	@Override
+	public void close() throws Exception {
+		mqtt.disconnectMqtt();
+	}
+}
@@ -0,0 +1,199 @@
+package output;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import entities.SensorState;
+import entities.StateField;
+import utils.IsoTimestamp;
+
+/**
+ * Writes readings as an OCEL 2.0 object-centric event log in JSON, fileName.ocel.json.
+ *
+ * A reading is an event of the type of its sensor, with the state fields as attributes, related to the sensor
+ * object and the objects of the agents it relates to. Events are streamed to the file as they arrive, and the
+ * object types, event types and objects, which only grow with the number of sensors and agents, are written
+ * after them when the sink is closed, so the memory of the sink does not grow with the number of events.
+ */
+public class OcelSink implements OutputSink {
+
+	public static final String FILE_EXTENSION = ".ocel.json";
+	private static final String AGENT_TYPE = "Agent";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final JsonGenerator generator;
+	private final StringBuilder time = new StringBuilder();
+	private long events = 0;
+
+	// types and objects seen in the events
+	private final LinkedHashMap<String, LinkedHashMap<String, String>> eventTypes = new LinkedHashMap<String, LinkedHashMap<String, String>>(); // attribute types by name
+	private final LinkedHashMap<String, String> objects = new LinkedHashMap<String, String>(); // types by id
+
+	// Creates or replaces the file named fileName plus FILE_EXTENSION
+	public OcelSink(String fileName) throws IOException {
+		generator = mapper.getFactory().createGenerator(new BufferedOutputStream(new FileOutputStream(fileName + FILE_EXTENSION), 65536), JsonEncoding.UTF8);
+		generator.writeStartObject();
+		generator.writeArrayFieldStart("events");
+	}
+
+	@Override
+	public void write(Reading reading) throws IOException {
+		LinkedHashMap<String, String> attributes = eventTypes.computeIfAbsent(reading.getType(), type -> new LinkedHashMap<String, String>());
+		objects.putIfAbsent(reading.getName(), reading.getType());
+
+		generator.writeStartObject();
+		generator.writeStringField("id", "e" + (++events));
+		generator.writeStringField("type", reading.getType());
+		time.setLength(0);
+		IsoTimestamp.appendUtcMillis(reading.getTime(), time);
+		generator.writeStringField("time", time.toString());
+
+		generator.writeArrayFieldStart("attributes");
+		SensorState state = reading.getSensorState();
+		if (state != null) {
+			for (int i = 0; i < state.size(); i++) {
+				StateField field = state.getField(i);
+				attributes.putIfAbsent(field.getName(), ocelType(field.getType()));
+				if (state.isNull(field)) {
+					continue;
+				}
+				generator.writeStartObject();
+				generator.writeStringField("name", field.getName());
+				generator.writeFieldName("value");
+				switch (field.getType()) {
+				case BOOLEAN:
+					generator.writeBoolean(state.getBoolean(field));
+					break;
+				case INT:
+					generator.writeNumber(state.getInt(field));
+					break;
+				case LONG:
+					generator.writeNumber(state.getLong(field));
+					break;
+				case DOUBLE:
+					generator.writeNumber(state.getDouble(field));
+					break;
+				case STRING:
+					generator.writeString(state.getString(field));
+					break;
+				default:
+					generator.writeString(mapper.writeValueAsString(state.getObject(field)));
+				}
+				generator.writeEndObject();
+			}
+		} else {
+			for (Map.Entry<String, Object> entry : reading.getState().entrySet()) {
+				Object value = entry.getValue();
+				if (value == null) {
+					continue;
+				}
+				generator.writeStartObject();
+				generator.writeStringField("name", entry.getKey());
+				if (value instanceof Boolean || value instanceof Number) {
+					attributes.putIfAbsent(entry.getKey(), value instanceof Boolean ? "boolean" : value instanceof Double || value instanceof Float ? "float" : "integer");
+					generator.writeObjectField("value", value);
+				} else {
+					attributes.putIfAbsent(entry.getKey(), "string");
+					generator.writeStringField("value", value instanceof String ? (String) value : mapper.writeValueAsString(value));
+				}
+				generator.writeEndObject();
+			}
+		}
+		generator.writeEndArray();
+
+		generator.writeArrayFieldStart("relationships");
+		relationship(reading.getName(), "sensor");
+		for (String agent : reading.getAgents()) {
+			objects.putIfAbsent(agent, AGENT_TYPE);
+			relationship(agent, "agent");
+		}
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+
+	private void relationship(String objectId, String qualifier) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("objectId", objectId);
+		generator.writeStringField("qualifier", qualifier);
+		generator.writeEndObject();
+	}
+
+	private static String ocelType(StateField.Type type) {
+		switch (type) {
+		case BOOLEAN:
+			return "boolean";
+		case INT:
+		case LONG:
+			return "integer";
+		case DOUBLE:
+			return "float";
+		default:
+			return "string";
+		}
+	}
+
+	@Override
+	public Map<String, Object> getMetrics() {
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("events", events);
+		metrics.put("objects", objects.size());
+		return metrics;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			generator.writeEndArray();
+
+			generator.writeArrayFieldStart("eventTypes");
+			for (Map.Entry<String, LinkedHashMap<String, String>> eventType : eventTypes.entrySet()) {
+				generator.writeStartObject();
+				generator.writeStringField("name", eventType.getKey());
+				generator.writeArrayFieldStart("attributes");
+				for (Map.Entry<String, String> attribute : eventType.getValue().entrySet()) {
+					generator.writeStartObject();
+					generator.writeStringField("name", attribute.getKey());
+					generator.writeStringField("type", attribute.getValue());
+					generator.writeEndObject();
+				}
+				generator.writeEndArray();
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+
+			List<String> objectTypes = new ArrayList<String>(new LinkedHashSet<String>(objects.values()));
+			generator.writeArrayFieldStart("objectTypes");
+			for (String objectType : objectTypes) {
+				generator.writeStartObject();
+				generator.writeStringField("name", objectType);
+				generator.writeArrayFieldStart("attributes");
+				generator.writeEndArray();
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+
+			generator.writeArrayFieldStart("objects");
+			for (Map.Entry<String, String> object : objects.entrySet()) {
+				generator.writeStartObject();
+				generator.writeStringField("id", object.getKey());
+				generator.writeStringField("type", object.getValue());
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		} finally {
+			generator.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package output;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Publishes the readings of a run to its sinks without waiting for them to be written.
+ * Every sink has its own bounded buffer and consumer, so a slow sink only holds back the run as far as
+ * its backpressure policy allows, and never the other sinks.
+ *
+ * Partitioned sinks share the readings by a hash of the sensor name, so every reading is written by one of them
+ * and the readings of a sensor are always written in order by the same one.
+ */
+public class OutputBus {
+
+	private final int bufferSize;
+	private final Backpressure backpressure;
+	private final Executor sharedExecutor; // null for a consumer thread per sink
+	private final ArrayList<OutputChannel> channels = new ArrayList<OutputChannel>();
+	private final ArrayList<OutputChannel[]> partitions = new ArrayList<OutputChannel[]>(); // a reading goes to one channel of each
+	private final ArrayList<OutputChannel> messageChannels = new ArrayList<OutputChannel>();
+
+	public OutputBus(int bufferSize, Backpressure backpressure, Executor sharedExecutor) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("bufferSize must be positive");
+		}
+		this.bufferSize = bufferSize;
+		this.backpressure = backpressure;
+		this.sharedExecutor = sharedExecutor;
+	}
+
+	public void addSink(String name, OutputSink sink) {
+		addPartitionedSinks(name, Collections.singletonList(sink), backpressure);
+	}
+
+	// Adds a sink with its own backpressure policy, e.g. BLOCK for a sink that must not miss a reading
+	public void addSink(String name, OutputSink sink, Backpressure backpressure) {
+		addPartitionedSinks(name, Collections.singletonList(sink), backpressure);
+	}
+
+	// Adds sinks that each write the readings of a share of the sensors. They are named name-0, name-1, ...
+	public void addPartitionedSinks(String name, List<? extends OutputSink> sinks) {
+		addPartitionedSinks(name, sinks, backpressure);
+	}
+
+	private void addPartitionedSinks(String name, List<? extends OutputSink> sinks, Backpressure backpressure) {
+		OutputChannel[] partition = new OutputChannel[sinks.size()];
+		for (int i = 0; i < partition.length; i++) {
+			partition[i] = new OutputChannel(partition.length == 1 ? name : name + "-" + i, sinks.get(i), backpressure, bufferSize, sharedExecutor);
+			channels.add(partition[i]);
+			if (partition[i].printsMessages()) {
+				messageChannels.add(partition[i]);
+			}
+		}
+		partitions.add(partition);
+	}
+
+	// Publishes a reading to all sinks. Throws OutputException if a sink has failed.
+	public void publish(Reading reading) throws InterruptedException {
+		for (OutputChannel[] partition : partitions) {
+			if (partition.length == 1) {
+				partition[0].publish(reading);
+			} else {
+				partition[Math.floorMod(reading.getName().hashCode(), partition.length)].publish(reading);
+			}
+		}
+	}
+
+	// Publishes a human-readable message to the sinks that print messages
+	public void print(String message) throws InterruptedException {
+		for (OutputChannel channel : messageChannels) {
+			channel.publish(message);
+		}
+	}
+
+	// Waits until all published readings have been written and closes the sinks.
+	// Throws OutputException if a sink has failed.
+	public void close() throws InterruptedException {
+		for (OutputChannel channel : channels) {
+			channel.close();
+		}
+		for (OutputChannel channel : channels) {
+			if (channel.getError() != null) {
+				throw new OutputException("the " + channel.getName() + " output has failed: " + channel.getError(), channel.getError());
+			}
+		}
+	}
+
+	// Statistics of every sink by name
+	public Map<String, Map<String, Object>> getMetrics() {
+		Map<String, Map<String, Object>> metrics = new LinkedHashMap<String, Map<String, Object>>();
+		for (OutputChannel channel : channels) {
+			metrics.put(channel.getName(), channel.getMetrics());
+		}
+		return metrics;
+	}
+
+	// Readings and messages dropped by the backpressure policy or after a sink has failed
+	public long getDropped() {
+		long dropped = 0;
+		for (OutputChannel channel : channels) {
+			dropped += channel.getDropped();
+		}
+		return dropped;
+	}
+}
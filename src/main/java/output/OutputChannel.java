@@ -0,0 +1,173 @@
+package output;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded ring buffer in front of a sink, drained by one consumer at a time so the sink receives the readings in order.
+ * The consumer is a thread of the channel, or a task on a shared executor when many runs share a few threads.
+ */
+class OutputChannel {
+
+	private static final int BATCH_SIZE = 256; // readings written before the sink is flushed
+	private static final int BATCHES_PER_TASK = 16; // a busy channel gives way to other channels of a shared executor
+	private static final int SAMPLE_INTERVAL = 8;
+	private static final AtomicInteger threadNumber = new AtomicInteger(1);
+
+	private final String name;
+	private final OutputSink sink;
+	private final Backpressure backpressure;
+	private final int capacity;
+	private final ArrayBlockingQueue<Object> buffer; // readings and messages
+	private final Executor executor;
+	private final ExecutorService ownExecutor; // null if the executor is shared
+
+	private final AtomicBoolean draining = new AtomicBoolean(false); // a consumer task has been submitted
+	private long sampled = 0; // written by the publishing run only
+	private final LongAdder dropped = new LongAdder(); // counted by the run and the consumer
+	private volatile Exception error;
+
+	OutputChannel(String name, OutputSink sink, Backpressure backpressure, int capacity, Executor sharedExecutor) {
+		this.name = name;
+		this.sink = sink;
+		this.backpressure = backpressure;
+		this.capacity = capacity;
+		this.buffer = new ArrayBlockingQueue<Object>(capacity);
+		if (sharedExecutor == null) {
+			ownExecutor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "output-" + name + "-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor = ownExecutor;
+		} else {
+			ownExecutor = null;
+			executor = sharedExecutor;
+		}
+	}
+
+	// Buffers a reading or message for the sink, applying the backpressure policy when the buffer is full
+	void publish(Object item) throws InterruptedException {
+		if (error != null) {
+			throw new OutputException("the " + name + " output has failed: " + error, error);
+		}
+		if (backpressure == Backpressure.BLOCK) {
+			buffer.put(item);
+		} else if (backpressure == Backpressure.SAMPLE && buffer.size() >= capacity / 2 && sampled++ % SAMPLE_INTERVAL != 0) {
+			dropped.increment();
+			return;
+		} else if (!buffer.offer(item)) {
+			dropped.increment();
+			return;
+		}
+		if (draining.compareAndSet(false, true)) {
+			submitDrain();
+		}
+	}
+
+	private void submitDrain() {
+		try {
+			executor.execute(this::drain);
+		} catch (RejectedExecutionException e) {
+			// the executor has been shut down, nothing will be written anymore
+			dropped.add(buffer.size());
+			buffer.clear();
+			idle();
+		}
+	}
+
+	private void drain() {
+		ArrayList<Object> batch = new ArrayList<Object>(BATCH_SIZE);
+		for (int batches = 0; batches < BATCHES_PER_TASK; batches++) {
+			buffer.drainTo(batch, BATCH_SIZE);
+			if (batch.isEmpty()) {
+				draining.set(false);
+				// a reading published after drainTo() has not submitted a consumer, as this one was still draining
+				if (buffer.isEmpty() || !draining.compareAndSet(false, true)) {
+					idle();
+					return;
+				}
+				continue;
+			}
+			write(batch);
+			batch.clear();
+		}
+		submitDrain(); // continues after the tasks of other channels
+	}
+
+	private void write(ArrayList<Object> batch) {
+		if (error != null) {
+			dropped.add(batch.size());
+			return;
+		}
+		try {
+			for (Object item : batch) {
+				if (item instanceof Reading) {
+					sink.write((Reading) item);
+				} else {
+					sink.print((String) item);
+				}
+			}
+			sink.flush();
+		} catch (Exception e) {
+			error = e;
+			System.out.println("ERROR: the " + name + " output has failed: " + e);
+		}
+	}
+
+	private synchronized void idle() {
+		notifyAll();
+	}
+
+	// Waits until the buffered readings have been written, then closes the sink
+	void close() throws InterruptedException {
+		synchronized (this) {
+			while (draining.get() || !buffer.isEmpty()) {
+				wait(10);
+			}
+		}
+		try {
+			sink.close();
+		} catch (Exception e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+		if (ownExecutor != null) {
+			ownExecutor.shutdown();
+		}
+	}
+
+	//Accessors
+	String getName() {
+		return name;
+	}
+
+	Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<String, Object>(sink.getMetrics());
+		metrics.put("buffered", buffer.size());
+		metrics.put("dropped", dropped.sum());
+		return metrics;
+	}
+
+	boolean printsMessages() {
+		return sink.printsMessages();
+	}
+
+	long getDropped() {
+		return dropped.sum();
+	}
+
+	Exception getError() {
+		return error;
+	}
+}
@@ -0,0 +1,13 @@
+package output;
+
+/**
+ * Thrown to the simulation when a sink has failed to write its readings.
+ */
+public class OutputException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public OutputException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,32 @@
+package output;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Destination of the readings of a run. A sink is written by a single consumer at a time, in order of publication.
+ */
+public interface OutputSink {
+
+	void write(Reading reading) throws Exception;
+
+	// Called after a batch of readings has been written
+	default void flush() throws Exception {
+	}
+
+	// Writes a human-readable message of the simulation, only called if printsMessages() is true
+	default void print(String message) throws Exception {
+	}
+
+	default boolean printsMessages() {
+		return false;
+	}
+
+	// Statistics of the sink, e.g. latency and backlog
+	default Map<String, Object> getMetrics() {
+		return Collections.emptyMap();
+	}
+
+	// Called once all published readings have been written
+	void close() throws Exception;
+}
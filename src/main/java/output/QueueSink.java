@@ -0,0 +1,137 @@
+package output;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Appends encoded readings to a memory-mapped queue, which consumers on the same host read with QueueTailer
+ * without a broker or network stack in between.
+ *
+ * The queue is a series of segment files of segmentBytes each, fileName.0.iotq, fileName.1.iotq, ... which
+ * are mapped into memory, so a record is visible to the tailers as soon as it has been appended. A segment only
+ * appears under its name once its header has been written. There is a single writer and every tailer has its
+ * own cursor, so neither side takes a lock: the writer puts the payload of a record before it publishes its
+ * length with release semantics, and a tailer reads the length with acquire semantics before its payload.
+ *
+ * Segment layout, little-endian:
+ *   header (64 bytes):  "IOTQUE01", byte encoding, byte dictionary (0 or 1), short reserved, int keyframe interval,
+ *                       long segment index, long segment bytes, zero padding
+ *   records:            int length, payload of the encoded reading, zero padding to a multiple of 8 bytes
+ * A length of 0 is a record that has not been appended yet, END_OF_SEGMENT continues the queue in the next
+ * segment, and END_OF_QUEUE ends it. A full segment without a marker continues in the next segment as well.
+ *
+ * Readings encoded with a dictionary or as deltas refer to earlier readings, so their tailers start at the
+ * first record of the queue.
+ */
+public class QueueSink implements OutputSink {
+
+	static final byte[] MAGIC = "IOTQUE01".getBytes(StandardCharsets.US_ASCII);
+	public static final String FILE_EXTENSION = ".iotq";
+	static final int HEADER_BYTES = 64;
+	static final int END_OF_SEGMENT = -1;
+	static final int END_OF_QUEUE = -2;
+
+	// ordered access to the record lengths in the mapped segments
+	static final VarHandle LENGTH = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final String fileName;
+	private final ReadingEncoder encoder;
+	private final long segmentBytes;
+
+	private MappedByteBuffer segment;
+	private long segmentIndex = -1;
+	private int position; // of the next record in the segment
+	private long readings = 0;
+	private long bytes = 0;
+
+	// Creates or replaces the queue of segments named fileName.N plus FILE_EXTENSION
+	public QueueSink(String fileName, ReadingEncoder encoder, long segmentBytes) throws IOException {
+		this.fileName = fileName;
+		this.encoder = encoder;
+		this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE) & ~7L;
+		if (this.segmentBytes <= HEADER_BYTES + 8) {
+			throw new IllegalArgumentException("a segment must be larger than " + (HEADER_BYTES + 8) + " bytes");
+		}
+		for (long index = 0; Files.deleteIfExists(segmentPath(fileName, index)); index++) {
+			// removes the segments of an earlier queue
+		}
+		roll();
+	}
+
+	static Path segmentPath(String fileName, long index) {
+		return Paths.get(fileName + "." + index + FILE_EXTENSION);
+	}
+
+	// Maps the next segment. It is created under a temporary name and moved in place once its header is complete.
+	private void roll() throws IOException {
+		segmentIndex++;
+		Path path = segmentPath(fileName, segmentIndex);
+		Path temporary = Paths.get(path + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+		}
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		segment.put(MAGIC);
+		segment.put((byte) encoder.getEncoding().ordinal());
+		segment.put((byte) (encoder.isDictionary() ? 1 : 0));
+		segment.putShort((short) 0);
+		segment.putInt(encoder.getKeyframeInterval());
+		segment.putLong(segmentIndex);
+		segment.putLong(segmentBytes);
+		Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+		position = HEADER_BYTES;
+	}
+
+	@Override
+	public void write(Reading reading) throws IOException {
+		int length = encoder.encode(reading);
+		int recordBytes = (4 + length + 7) & ~7;
+		if (position + recordBytes > segmentBytes) {
+			if (HEADER_BYTES + recordBytes > segmentBytes) {
+				throw new IOException("a reading of " + length + " bytes does not fit in a segment of " + segmentBytes + " bytes");
+			}
+			MappedByteBuffer full = segment;
+			int end = position;
+			roll(); // the next segment exists before the tailers are sent to it
+			if (end < segmentBytes) {
+				LENGTH.setRelease(full, end, END_OF_SEGMENT);
+			}
+		}
+		segment.position(position + 4);
+		segment.put(encoder.getBuffer(), 0, length);
+		LENGTH.setRelease(segment, position, length);
+		position += recordBytes;
+		readings++;
+		bytes += recordBytes;
+	}
+
+	@Override
+	public Map<String, Object> getMetrics() {
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("readings", readings);
+		metrics.put("bytes", bytes);
+		metrics.put("segments", segmentIndex + 1);
+		return metrics;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (position == segmentBytes) {
+			roll();
+		}
+		LENGTH.setRelease(segment, position, END_OF_QUEUE);
+		segment.force();
+	}
+}
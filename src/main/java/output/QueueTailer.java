@@ -0,0 +1,141 @@
+package output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the encoded readings of a queue written by QueueSink, from its first record on, while it is written.
+ * A tailer is a cursor of its own, so any number of them can read a queue without coordinating with each other
+ * or with the writer. poll() does not block; a consumer decides whether to spin, yield or park when it returns null.
+ */
+public class QueueTailer implements Closeable {
+
+	private final String fileName;
+
+	private MappedByteBuffer segment; // null until the first segment exists
+	private long segmentIndex = 0;
+	private long segmentBytes;
+	private int position = QueueSink.HEADER_BYTES;
+	private boolean ended = false;
+
+	private Encoding encoding;
+	private boolean dictionary;
+	private int keyframeInterval;
+
+	// Tails the queue of segments named fileName.N plus QueueSink.FILE_EXTENSION, which does not have to exist yet
+	public QueueTailer(String fileName) throws IOException {
+		this.fileName = fileName;
+		segment = map(0);
+	}
+
+	// Maps the segment with the given index, or returns null if it has not been created yet
+	private MappedByteBuffer map(long index) throws IOException {
+		Path path = QueueSink.segmentPath(fileName, index);
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		byte[] magic = new byte[QueueSink.MAGIC.length];
+		buffer.get(magic);
+		if (!Arrays.equals(magic, QueueSink.MAGIC)) {
+			throw new IOException("not a queue segment: " + path);
+		}
+		encoding = Encoding.values()[buffer.get()];
+		dictionary = buffer.get() == 1;
+		buffer.getShort();
+		keyframeInterval = buffer.getInt();
+		if (buffer.getLong() != index) {
+			throw new IOException("segment " + path + " does not have index " + index);
+		}
+		segmentBytes = buffer.getLong();
+		return buffer;
+	}
+
+	// Returns the payload of the next reading, which is valid until the next poll, or null if it has not been
+	// appended yet or the queue has ended
+	public ByteBuffer poll() throws IOException {
+		while (!ended) {
+			if (segment == null) {
+				segment = map(segmentIndex);
+				if (segment == null) {
+					return null;
+				}
+				position = QueueSink.HEADER_BYTES;
+			}
+			int length = position + 4 <= segmentBytes ? (int) QueueSink.LENGTH.getAcquire(segment, position) : QueueSink.END_OF_SEGMENT;
+			if (length == 0) {
+				return null;
+			} else if (length == QueueSink.END_OF_QUEUE) {
+				ended = true;
+			} else if (length == QueueSink.END_OF_SEGMENT) {
+				segment = null;
+				segmentIndex++;
+			} else {
+				ByteBuffer payload = segment.duplicate();
+				payload.limit(position + 4 + length).position(position + 4);
+				position += (4 + length + 7) & ~7;
+				return payload.slice();
+			}
+		}
+		return null;
+	}
+
+	// Returns the next reading as a new array, or null if there is none yet
+	public byte[] pollBytes() throws IOException {
+		ByteBuffer payload = poll();
+		if (payload == null) {
+			return null;
+		}
+		byte[] bytes = new byte[payload.remaining()];
+		payload.get(bytes);
+		return bytes;
+	}
+
+	// Whether the writer has closed the queue and all its readings have been polled
+	public boolean isEnded() {
+		return ended;
+	}
+
+	// Whether the first segment exists, before which the encoding of the queue is not known
+	public boolean isStarted() throws IOException {
+		if (segment == null && segmentIndex == 0) {
+			segment = map(0);
+		}
+		return segment != null || segmentIndex > 0;
+	}
+
+	@Override
+	public void close() {
+		// the mapped segments are released with the tailer
+		segment = null;
+		ended = true;
+	}
+
+	//Accessors
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	public boolean isDictionary() {
+		return dictionary;
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	public long getSegmentIndex() {
+		return segmentIndex;
+	}
+}
@@ -0,0 +1,86 @@
+package output;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import entities.SensorState;
+
+/**
+ * Reading of a sensor at a simulated time, published to the sinks of a run.
+ * The state is copied, so the sensor can change while the reading waits to be written.
+ * Readings of sensors hold a copy of their typed state, which encoders write field by field without boxing,
+ * and the ids of the agents they relate to, e.g. the agent that interacted with the sensor.
+ */
+public final class Reading {
+
+	private final LocalDateTime time;
+	private final String type;
+	private final String name;
+	private final SensorState sensorState; // null for a reading created from a map
+	private volatile Map<String, Object> state; // created from the typed state when it is first needed
+	private final List<String> agents;
+
+	public Reading(LocalDateTime time, String type, String name, Map<String, Object> state) {
+		this.time = time;
+		this.type = type;
+		this.name = name;
+		this.sensorState = null;
+		this.state = new HashMap<String, Object>(state);
+		this.agents = Collections.emptyList();
+	}
+
+	public Reading(LocalDateTime time, String type, String name, SensorState state) {
+		this(time, type, name, state, Collections.emptyList());
+	}
+
+	public Reading(LocalDateTime time, String type, String name, SensorState state, List<String> agents) {
+		this.time = time;
+		this.type = type;
+		this.name = name;
+		this.sensorState = state.copy();
+		this.agents = agents;
+	}
+
+	//Accessors
+	public LocalDateTime getTime() {
+		return time;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	// The state by field name, in the order of the schema for readings of sensors
+	public Map<String, Object> getState() {
+		Map<String, Object> map = state;
+		if (map == null) {
+			map = sensorState.toMap();
+			state = map;
+		}
+		return map;
+	}
+
+	// Appends the state like Map.toString(), without creating the map for readings of sensors
+	public void appendState(StringBuilder builder) {
+		if (sensorState != null) {
+			sensorState.appendTo(builder);
+		} else {
+			builder.append(state);
+		}
+	}
+
+	public SensorState getSensorState() {
+		return sensorState;
+	}
+
+	public List<String> getAgents() {
+		return agents;
+	}
+}
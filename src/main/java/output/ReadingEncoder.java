@@ -0,0 +1,306 @@
+package output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import entities.SensorState;
+import entities.StateField;
+
+import utils.IsoTimestamp;
+
+/**
+ * Encodes readings as JSON, CBOR or MessagePack into a buffer that is reused for every reading.
+ *
+ * By default a reading is an object {"time":...,"type":...,"name":...,"state":{...}}, like entities.Output is
+ * serialized to JSON. In dictionary mode, sensors and state keys are numbered by the encoder and a reading is an
+ * array [time, sensor, [key, value, key, value, ...]], where the time is in nanoseconds since 1970-01-01T00:00.
+ * The first reading that uses a new sensor or key defines it with two more elements,
+ * [sensor, type, name, ...] for the new sensors and [key, name, ...] for the new keys.
+ * A consumer therefore has to receive the readings of an encoder in order, from its first one, which is why the
+ * simulator does not allow dictionary mode for MQTT output.
+ *
+ * With a keyframe interval, the state of a sensor is written in full in its first reading and every keyframe
+ * interval readings after it, and otherwise only the fields that have changed since its previous reading,
+ * under the key "delta" instead of "state". A consumer rebuilds the full state by merging the fields of every
+ * reading of the sensor into the state it holds, which is also how dictionary-mode readings are merged.
+ * Readings created from a map, rather than from the typed state of a sensor, are always written in full.
+ *
+ * An encoder is used by one sink at a time.
+ */
+public class ReadingEncoder {
+
+	private static final Map<String, SerializedString> strings = new ConcurrentHashMap<String, SerializedString>(); // type names and state keys, escaped once
+
+	private static final SerializedString TIME = new SerializedString("time");
+	private static final SerializedString TYPE = new SerializedString("type");
+	private static final SerializedString NAME = new SerializedString("name");
+	private static final SerializedString STATE = new SerializedString("state");
+	private static final SerializedString DELTA = new SerializedString("delta");
+
+	private final Encoding encoding;
+	private final boolean dictionary;
+	private final int keyframeInterval; // 0 to write every state in full
+	private final Buffer buffer = new Buffer();
+	private final ValueWriter writer;
+	private final char[] time = new char[IsoTimestamp.LENGTH];
+
+	// dictionary mode
+	private final HashMap<String, Integer> sensorIds = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> keyIds = new HashMap<String, Integer>();
+	private final ArrayList<String> newKeys = new ArrayList<String>();
+
+	// delta mode
+	private final HashMap<String, Emitted> emitted = new HashMap<String, Emitted>();
+
+	public ReadingEncoder() {
+		this(Encoding.JSON, false);
+	}
+
+	public ReadingEncoder(Encoding encoding, boolean dictionary) {
+		this(encoding, dictionary, 0);
+	}
+
+	public ReadingEncoder(Encoding encoding, boolean dictionary, int keyframeInterval) {
+		this.encoding = encoding;
+		this.dictionary = dictionary;
+		this.keyframeInterval = keyframeInterval;
+		if (encoding == Encoding.MESSAGEPACK) {
+			writer = new MessagePackWriter(buffer);
+		} else {
+			try {
+				writer = new JacksonValueWriter(encoding, buffer);
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // not thrown for an in-memory buffer
+			}
+		}
+	}
+
+	// Encodes the reading into the buffer of the encoder, which is overwritten by the next reading. Returns the length.
+	public int encode(Reading reading) throws IOException {
+		buffer.reset();
+		long fields = changedFields(reading);
+		if (dictionary) {
+			writeWithDictionary(reading, fields);
+		} else {
+			writeObject(reading, fields);
+		}
+		writer.flush();
+		return buffer.size();
+	}
+
+	// Returns a bit per field of the typed state to write, which are all fields unless the reading is a delta
+	private long changedFields(Reading reading) {
+		SensorState state = reading.getSensorState();
+		if (keyframeInterval == 0 || state == null) {
+			return -1L;
+		}
+		Emitted last = emitted.get(reading.getName());
+		if (last == null) {
+			last = new Emitted();
+			emitted.put(reading.getName(), last);
+		}
+		long fields = last.readings % keyframeInterval == 0 ? -1L : state.changedSince(last.state);
+		last.state = state; // the state of a reading is not changed after it has been created
+		last.readings++;
+		return fields;
+	}
+
+	private void writeObject(Reading reading, long fields) throws IOException {
+		writer.startObject(4);
+		writer.writeKey(TIME);
+		if (IsoTimestamp.isFourDigitYear(reading.getTime())) {
+			IsoTimestamp.format(reading.getTime(), time, 0);
+			writer.writeString(time, 0, time.length);
+		} else {
+			writer.writeString(IsoTimestamp.format(reading.getTime()));
+		}
+		writer.writeKey(TYPE);
+		writer.writeString(strings.computeIfAbsent(reading.getType(), SerializedString::new));
+		writer.writeKey(NAME);
+		writer.writeString(reading.getName());
+		writer.writeKey(fields == -1L ? STATE : DELTA);
+		SensorState state = reading.getSensorState();
+		if (state != null) {
+			writer.startObject(count(state, fields));
+			for (int i = 0; i < state.size(); i++) {
+				if ((fields & (1L << i)) != 0) {
+					StateField field = state.getField(i);
+					writer.writeKey(field.getSerializedName());
+					writeField(state, field);
+				}
+			}
+		} else {
+			writer.startObject(reading.getState().size());
+			for (Map.Entry<String, Object> entry : reading.getState().entrySet()) {
+				writer.writeKey(strings.computeIfAbsent(entry.getKey(), SerializedString::new));
+				writeValue(entry.getValue());
+			}
+		}
+		writer.endObject();
+		writer.endObject();
+	}
+
+	private void writeWithDictionary(Reading reading, long fields) throws IOException {
+		Integer sensorId = sensorIds.get(reading.getName());
+		boolean newSensor = sensorId == null;
+		if (newSensor) {
+			sensorId = sensorIds.size();
+			sensorIds.put(reading.getName(), sensorId);
+		}
+		SensorState state = reading.getSensorState();
+		newKeys.clear();
+		if (state != null) {
+			for (int i = 0; i < state.size(); i++) {
+				addKey(state.getField(i).getName());
+			}
+		} else {
+			for (String key : reading.getState().keySet()) {
+				addKey(key);
+			}
+		}
+		boolean definitions = newSensor || !newKeys.isEmpty();
+
+		writer.startArray(definitions ? 5 : 3);
+		writer.writeNumber(epochNanos(reading.getTime()));
+		writer.writeNumber(sensorId);
+		if (state != null) {
+			writer.startArray(count(state, fields) * 2);
+			for (int i = 0; i < state.size(); i++) {
+				if ((fields & (1L << i)) != 0) {
+					StateField field = state.getField(i);
+					writer.writeNumber(keyIds.get(field.getName()));
+					writeField(state, field);
+				}
+			}
+		} else {
+			writer.startArray(reading.getState().size() * 2);
+			for (Map.Entry<String, Object> entry : reading.getState().entrySet()) {
+				writer.writeNumber(keyIds.get(entry.getKey()));
+				writeValue(entry.getValue());
+			}
+		}
+		writer.endArray();
+		if (definitions) {
+			writer.startArray(newSensor ? 3 : 0);
+			if (newSensor) {
+				writer.writeNumber(sensorId);
+				writer.writeString(strings.computeIfAbsent(reading.getType(), SerializedString::new));
+				writer.writeString(reading.getName());
+			}
+			writer.endArray();
+			writer.startArray(newKeys.size() * 2);
+			for (String key : newKeys) {
+				writer.writeNumber(keyIds.get(key));
+				writer.writeString(strings.computeIfAbsent(key, SerializedString::new));
+			}
+			writer.endArray();
+		}
+		writer.endArray();
+	}
+
+	private static int count(SensorState state, long fields) {
+		return state.size() == 64 ? Long.bitCount(fields) : Long.bitCount(fields & ((1L << state.size()) - 1));
+	}
+
+	private void addKey(String key) {
+		if (!keyIds.containsKey(key)) {
+			keyIds.put(key, keyIds.size());
+			newKeys.add(key);
+		}
+	}
+
+	private static long epochNanos(LocalDateTime time) {
+		return time.toEpochSecond(ZoneOffset.UTC) * 1000000000L + time.getNano();
+	}
+
+	private void writeValue(Object value) throws IOException {
+		if (value == null) {
+			writer.writeNull();
+		} else if (value instanceof String) {
+			writer.writeString((String) value);
+		} else if (value instanceof Boolean) {
+			writer.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer || value instanceof Long) {
+			writer.writeNumber(((Number) value).longValue());
+		} else if (value instanceof Double) {
+			writer.writeNumber((Double) value);
+		} else {
+			writer.writeObject(value);
+		}
+	}
+
+	// Writes a field of a typed state without boxing primitive values
+	private void writeField(SensorState state, StateField field) throws IOException {
+		if (state.isNull(field)) {
+			writer.writeNull();
+			return;
+		}
+		switch (field.getType()) {
+		case BOOLEAN:
+			writer.writeBoolean(state.getBoolean(field));
+			break;
+		case INT:
+			writer.writeNumber(state.getInt(field));
+			break;
+		case LONG:
+			writer.writeNumber(state.getLong(field));
+			break;
+		case DOUBLE:
+			writer.writeNumber(state.getDouble(field));
+			break;
+		case STRING:
+			writer.writeString(state.getString(field));
+			break;
+		default:
+			writeValue(state.getObject(field));
+		}
+	}
+
+	// Returns a copy of the encoded reading, for clients that keep the payload after the call
+	public byte[] encodeToArray(Reading reading) throws IOException {
+		int length = encode(reading);
+		return Arrays.copyOf(buffer.array(), length);
+	}
+
+	// The buffer holding the last encoded reading
+	public byte[] getBuffer() {
+		return buffer.array();
+	}
+
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	public boolean isDictionary() {
+		return dictionary;
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	// Last reading written of a sensor in delta mode
+	private static class Emitted {
+		SensorState state;
+		long readings = 0;
+	}
+
+	private static class Buffer extends ByteArrayOutputStream {
+		Buffer() {
+			super(256);
+		}
+
+		byte[] array() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package output;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import entities.SensorState;
+import entities.StateField;
+import entities.StateSchema;
+
+/**
+ * Reads a recording written by RecordingSink, one reading or message at a time, through a buffer that is refilled
+ * from the file channel, so the memory of a replay does not grow with the length of the recording.
+ */
+public class RecordingReader implements Closeable {
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final FileChannel channel;
+	private final long size;
+	private long position = 0; // of the start of the buffer in the file
+	private ByteBuffer in = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+	private boolean ended = false;
+
+	private final LocalDateTime start;
+	private long previousNanos;
+
+	private final ArrayList<Type> types = new ArrayList<Type>();
+	private final ArrayList<String> sensorNames = new ArrayList<String>();
+	private final ArrayList<Type> sensorTypes = new ArrayList<Type>();
+	private final ArrayList<String> agents = new ArrayList<String>();
+
+	// current record
+	private Reading reading;
+	private String message;
+
+	public RecordingReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		size = channel.size();
+		in.flip();
+		try {
+			require(RecordingSink.MAGIC.length + 12);
+			byte[] magic = new byte[RecordingSink.MAGIC.length];
+			in.get(magic);
+			if (!Arrays.equals(magic, RecordingSink.MAGIC)) {
+				throw new IOException("not a recording: " + file);
+			}
+			start = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		previousNanos = RecordingSink.epochNanos(start);
+	}
+
+	// Advances to the next reading or message. Returns false at the end of the recording.
+	public boolean next() throws IOException {
+		reading = null;
+		message = null;
+		while (!ended) {
+			require(1);
+			byte tag = in.get();
+			switch (tag) {
+			case RecordingSink.END:
+				ended = true;
+				break;
+			case RecordingSink.TYPE:
+				types.add(new Type(getString()));
+				break;
+			case RecordingSink.FIELD:
+				Type type = types.get((int) getVarLong());
+				String name = getString();
+				require(1);
+				type.add(name, StateField.Type.values()[in.get()]);
+				break;
+			case RecordingSink.SENSOR:
+				sensorNames.add(getString());
+				sensorTypes.add(types.get((int) getVarLong()));
+				break;
+			case RecordingSink.AGENT:
+				agents.add(getString());
+				break;
+			case RecordingSink.READING:
+				reading = readReading();
+				return true;
+			case RecordingSink.MESSAGE:
+				message = getString();
+				return true;
+			default:
+				throw new IOException("the recording is corrupt at byte " + (position + in.position() - 1));
+			}
+		}
+		return false;
+	}
+
+	private Reading readReading() throws IOException {
+		int sensor = (int) getVarLong();
+		long nanos = previousNanos + unzigzag(getVarLong());
+		previousNanos = nanos;
+		Type type = sensorTypes.get(sensor);
+		SensorState state = type.state;
+		long nulls = getVarLong();
+		for (int i = 0; i < type.fields.size(); i++) {
+			StateField field = type.fields.get(i);
+			if ((nulls & (1L << i)) != 0) {
+				state.setNull(field);
+				continue;
+			}
+			switch (field.getType()) {
+			case BOOLEAN:
+				require(1);
+				state.setBoolean(field, in.get() != 0);
+				break;
+			case INT:
+				state.setInt(field, (int) unzigzag(getVarLong()));
+				break;
+			case LONG:
+				state.setLong(field, unzigzag(getVarLong()));
+				break;
+			case DOUBLE:
+				require(8);
+				state.setDouble(field, in.getDouble());
+				break;
+			case STRING:
+				state.setString(field, getString());
+				break;
+			default:
+				state.setObject(field, mapper.readValue(getString(), Object.class));
+			}
+		}
+		int agentCount = (int) getVarLong();
+		List<String> readingAgents = Collections.emptyList();
+		if (agentCount > 0) {
+			readingAgents = new ArrayList<String>(agentCount);
+			for (int i = 0; i < agentCount; i++) {
+				readingAgents.add(agents.get((int) getVarLong()));
+			}
+		}
+		return new Reading(toTime(nanos), type.name, sensorNames.get(sensor), state, readingAgents);
+	}
+
+	private static LocalDateTime toTime(long epochNanos) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(epochNanos, 1000000000L), (int) Math.floorMod(epochNanos, 1000000000L), ZoneOffset.UTC);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private long getVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			require(1);
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("the recording is corrupt at byte " + (position + in.position()));
+	}
+
+	private String getString() throws IOException {
+		int length = (int) getVarLong();
+		require(length);
+		String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return value;
+	}
+
+	// Makes the given number of bytes available in the buffer
+	private void require(int bytes) throws IOException {
+		if (in.remaining() >= bytes) {
+			return;
+		}
+		position += in.position();
+		in.compact();
+		if (in.capacity() < bytes) {
+			in.flip();
+			in = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN).put(in);
+		}
+		while (in.position() < bytes) {
+			if (channel.read(in) < 0) {
+				throw new EOFException("the recording ends unexpectedly");
+			}
+		}
+		in.flip();
+	}
+
+	// Share of the recording that has been read, between 0 and 1
+	public double getProgress() {
+		return size == 0 ? 1 : Math.min(1, (double) (position + in.position()) / size);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	//Accessors
+	// Time of the start of the recorded run
+	public LocalDateTime getStart() {
+		return start;
+	}
+
+	// The current reading, or null if the current record is a message
+	public Reading getReading() {
+		return reading;
+	}
+
+	// The current message, or null if the current record is a reading
+	public String getMessage() {
+		return message;
+	}
+
+	// Time of the current reading, or of the last reading before the current message
+	public LocalDateTime getTime() {
+		return reading != null ? reading.getTime() : toTime(previousNanos);
+	}
+
+	// Fields of a recorded sensor type and the state its readings are read into
+	private static class Type {
+
+		private final String name;
+		private final StateSchema schema = StateSchema.create();
+		private final ArrayList<StateField> fields = new ArrayList<StateField>();
+		private SensorState state = new SensorState(schema);
+
+		Type(String name) {
+			this.name = name;
+		}
+
+		void add(String name, StateField.Type type) {
+			fields.add(schema.add(name, type));
+			state = new SensorState(schema); // sized for the new field
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import entities.SensorState;
+import entities.StateField;
+import entities.StateSchema;
+
+/**
+ * Records the output stream of a run, the readings and the messages in order of publication, to a compact binary
+ * file that RecordingReader replays without simulating the floorplan and input again.
+ *
+ * Sensor types, sensors and agents are defined once and referred to by number. A reading holds the number of its
+ * sensor, the nanoseconds since the previous reading, the null fields of its sensor type as a bit mask and the
+ * values of the other fields. Integers are written as variable-length zigzag integers, so a reading of a
+ * sensor with a few small fields takes about a dozen bytes.
+ *
+ * File layout, little-endian:
+ *   "IOTREC01", long epoch seconds and int nanoseconds of the start of the run
+ *   records, each a tag byte followed by:
+ *     TYPE      string type
+ *     FIELD     varint type, string name, byte StateField.Type ordinal, appended to the fields of the type
+ *     SENSOR    string name, varint type
+ *     AGENT     string id
+ *     READING   varint sensor, zigzag varint nanoseconds since the previous reading, varint null mask,
+ *               the values of the fields that are not null, varint agents, varint agent per agent
+ *     MESSAGE   string
+ *   END
+ * Types, sensors and agents are numbered from 0 in order of definition. Strings are a varint length and UTF-8
+ * bytes; booleans are a byte, ints and longs zigzag varints, doubles 8 bytes, and OBJECT values JSON text.
+ */
+public class RecordingSink implements OutputSink {
+
+	static final byte[] MAGIC = "IOTREC01".getBytes(StandardCharsets.US_ASCII);
+	public static final String FILE_EXTENSION = ".iotr";
+
+	static final byte END = 0;
+	static final byte TYPE = 1;
+	static final byte FIELD = 2;
+	static final byte SENSOR = 3;
+	static final byte AGENT = 4;
+	static final byte READING = 5;
+	static final byte MESSAGE = 6;
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final FileChannel channel;
+	private ByteBuffer out = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+	private final HashMap<String, Type> types = new HashMap<String, Type>();
+	private final HashMap<String, Integer> sensors = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> agents = new HashMap<String, Integer>();
+	private long previousNanos; // epoch nanoseconds of the previous reading
+	private long readings = 0;
+	private long bytes = 0;
+
+	// Creates or replaces the file named fileName plus FILE_EXTENSION, for a run that starts at the given time
+	public RecordingSink(String fileName, LocalDateTime start) throws IOException {
+		this.channel = FileChannel.open(Paths.get(fileName + FILE_EXTENSION), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		out.put(MAGIC);
+		out.putLong(start.toEpochSecond(ZoneOffset.UTC));
+		out.putInt(start.getNano());
+		previousNanos = epochNanos(start);
+	}
+
+	static long epochNanos(LocalDateTime time) {
+		return time.toEpochSecond(ZoneOffset.UTC) * 1000000000 + time.getNano();
+	}
+
+	@Override
+	public void write(Reading reading) throws IOException {
+		Type type = types.get(reading.getType());
+		if (type == null) {
+			type = new Type(types.size());
+			types.put(reading.getType(), type);
+			ensure(1);
+			out.put(TYPE);
+			putString(reading.getType());
+		}
+		Integer sensor = sensors.get(reading.getName());
+		if (sensor == null) {
+			sensor = sensors.size();
+			sensors.put(reading.getName(), sensor);
+			ensure(1);
+			out.put(SENSOR);
+			putString(reading.getName());
+			putVarLong(type.id);
+		}
+		List<String> readingAgents = reading.getAgents();
+		int[] agentIds = new int[readingAgents.size()];
+		for (int i = 0; i < agentIds.length; i++) {
+			Integer agent = agents.get(readingAgents.get(i));
+			if (agent == null) {
+				agent = agents.size();
+				agents.put(readingAgents.get(i), agent);
+				ensure(1);
+				out.put(AGENT);
+				putString(readingAgents.get(i));
+			}
+			agentIds[i] = agent;
+		}
+
+		// the values in order of the fields of the type, which gains the fields it does not have yet
+		SensorState state = reading.getSensorState();
+		if (state != null) {
+			for (int i = 0; i < state.size(); i++) {
+				StateField field = state.getField(i);
+				int index = type.indexOf(field.getName(), field.getType(), i);
+				type.values[index] = state.get(field);
+			}
+		} else {
+			for (Map.Entry<String, Object> entry : reading.getState().entrySet()) {
+				int index = type.indexOf(entry.getKey(), StateField.Type.OBJECT, -1);
+				type.values[index] = entry.getValue();
+			}
+		}
+		Object[] values = type.values;
+
+		long nanos = epochNanos(reading.getTime());
+		ensure(1);
+		out.put(READING);
+		putVarLong(sensor);
+		putVarLong(zigzag(nanos - previousNanos));
+		previousNanos = nanos;
+		long nulls = 0;
+		for (int i = 0; i < type.fieldTypes.size(); i++) {
+			if (values[i] == null) {
+				nulls |= 1L << i;
+			}
+		}
+		putVarLong(nulls);
+		for (int i = 0; i < type.fieldTypes.size(); i++) {
+			if (values[i] != null) {
+				putValue(type.fieldTypes.get(i), values[i]);
+			}
+			values[i] = null;
+		}
+		putVarLong(agentIds.length);
+		for (int agent : agentIds) {
+			putVarLong(agent);
+		}
+		readings++;
+	}
+
+	private void putValue(StateField.Type type, Object value) throws IOException {
+		switch (type) {
+		case BOOLEAN:
+			ensure(1);
+			out.put((byte) ((Boolean) value ? 1 : 0));
+			break;
+		case INT:
+		case LONG:
+			putVarLong(zigzag(((Number) value).longValue()));
+			break;
+		case DOUBLE:
+			ensure(8);
+			out.putDouble(((Number) value).doubleValue());
+			break;
+		case STRING:
+			putString((String) value);
+			break;
+		default:
+			putString(mapper.writeValueAsString(value));
+		}
+	}
+
+	@Override
+	public void print(String message) throws IOException {
+		ensure(1);
+		out.put(MESSAGE);
+		putString(message);
+	}
+
+	@Override
+	public boolean printsMessages() {
+		return true;
+	}
+
+	@Override
+	public Map<String, Object> getMetrics() {
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("readings", readings);
+		metrics.put("bytes", bytes); // written to the file so far
+		return metrics;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			ensure(1);
+			out.put(END);
+			drain();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private void putVarLong(long value) throws IOException {
+		ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	private void putString(String value) throws IOException {
+		byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+		putVarLong(utf8.length);
+		ensure(utf8.length);
+		out.put(utf8);
+	}
+
+	// Makes room for the given number of bytes in the output buffer
+	private void ensure(int bytes) throws IOException {
+		if (out.remaining() < bytes) {
+			drain();
+			if (out.capacity() < bytes) {
+				out = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+
+	private void drain() throws IOException {
+		out.flip();
+		bytes += out.remaining();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	// Fields of a sensor type in the order they have been defined in the recording
+	private class Type {
+
+		private final int id;
+		private final ArrayList<String> fieldNames = new ArrayList<String>();
+		private final ArrayList<StateField.Type> fieldTypes = new ArrayList<StateField.Type>();
+		private final HashMap<String, Integer> fieldIndexes = new HashMap<String, Integer>();
+		private Object[] values = new Object[0]; // of the reading being recorded
+
+		Type(int id) {
+			this.id = id;
+		}
+
+		// Returns the index of the field, which is usually at the index of the state field, and defines it if it is new
+		int indexOf(String name, StateField.Type fieldType, int hint) throws IOException {
+			if (hint >= 0 && hint < fieldNames.size() && fieldNames.get(hint).equals(name)) {
+				return hint;
+			}
+			Integer index = fieldIndexes.get(name);
+			if (index != null) {
+				return index;
+			}
+			if (fieldNames.size() == StateSchema.MAX_FIELDS) {
+				throw new IOException("a sensor type of a recording has at most " + StateSchema.MAX_FIELDS + " fields");
+			}
+			index = fieldNames.size();
+			fieldIndexes.put(name, index);
+			fieldNames.add(name);
+			fieldTypes.add(fieldType);
+			values = Arrays.copyOf(values, fieldNames.size());
+			ensure(1);
+			out.put(FIELD);
+			putVarLong(id);
+			putString(name);
+			ensure(1);
+			out.put((byte) fieldType.ordinal());
+			return index;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package output;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Writes the values of an encoding. Sizes of objects and arrays are only used by encodings that need them up front.
+ */
+interface ValueWriter {
+
+	void startObject(int size) throws IOException;
+
+	void endObject() throws IOException;
+
+	void startArray(int size) throws IOException;
+
+	void endArray() throws IOException;
+
+	void writeKey(SerializedString key) throws IOException;
+
+	void writeKey(String key) throws IOException;
+
+	void writeString(SerializedString value) throws IOException;
+
+	void writeString(String value) throws IOException;
+
+	// Writes ASCII characters as a string
+	void writeString(char[] value, int offset, int length) throws IOException;
+
+	void writeNumber(long value) throws IOException;
+
+	void writeNumber(double value) throws IOException;
+
+	void writeBoolean(boolean value) throws IOException;
+
+	void writeNull() throws IOException;
+
+	// Writes a value of any other type
+	void writeObject(Object value) throws IOException;
+
+	void flush() throws IOException;
+}
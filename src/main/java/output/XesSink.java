@@ -0,0 +1,396 @@
+package output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import entities.SensorState;
+import entities.StateField;
+import utils.IsoTimestamp;
+
+/**
+ * Writes readings as an XES event log for process mining, fileName.xes, with a trace per agent or per sensor.
+ *
+ * A reading is an event named after the sensor, with its type and state fields as attributes. Readings arrive in
+ * order of time but interleaved between cases, while XES groups the events of a case in its trace. The sink
+ * therefore keeps at most spillEvents rendered events in memory, and writes them sorted by case to a temporary
+ * chunk file when it is full. When the sink is closed, the chunks are merged into the traces of the log. At most
+ * MERGE_INPUTS chunks are read at once, more are first merged into larger chunks in passes, so neither the memory
+ * nor the open files of the sink grow with the size of the log. Readings that relate to no agent are not part of agent traces.
+ */
+public class XesSink implements OutputSink {
+
+	public static final String FILE_EXTENSION = ".xes";
+	public static final int MERGE_INPUTS = 64; // chunks read at once, each through its own buffer
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final Comparator<Event> order = Comparator.comparing((Event event) -> event.caseId).thenComparingLong(event -> event.sequence);
+
+	private final File file;
+	private final EventLogCase caseNotion;
+	private final int spillEvents;
+
+	private final Event[] events;
+	private int size = 0;
+	private long sequence = 0;
+	private final ArrayList<File> chunks = new ArrayList<File>();
+	private final StringBuilder fragment = new StringBuilder();
+	private long unattributed = 0; // readings that relate to no agent
+
+	public XesSink(String fileName, EventLogCase caseNotion, int spillEvents) {
+		this.file = new File(fileName + FILE_EXTENSION);
+		this.caseNotion = caseNotion;
+		this.spillEvents = spillEvents;
+		this.events = new Event[spillEvents];
+	}
+
+	@Override
+	public void write(Reading reading) throws IOException {
+		List<String> cases = caseNotion == EventLogCase.SENSOR ? Collections.singletonList(reading.getName()) : reading.getAgents();
+		if (cases.isEmpty()) {
+			unattributed++;
+			return;
+		}
+		String event = render(reading);
+		for (String caseId : cases) {
+			if (size == spillEvents) {
+				spill();
+			}
+			events[size++] = new Event(caseId, sequence++, event);
+		}
+	}
+
+	// Renders the event of the reading
+	private String render(Reading reading) throws IOException {
+		fragment.setLength(0);
+		fragment.append("\t\t<event>\n");
+		attribute("string", "concept:name", reading.getName());
+		fragment.append("\t\t\t<date key=\"time:timestamp\" value=\"");
+		IsoTimestamp.appendUtcMillis(reading.getTime(), fragment);
+		fragment.append("\"/>\n");
+		attribute("string", "sensor:type", reading.getType());
+		if (caseNotion == EventLogCase.SENSOR && !reading.getAgents().isEmpty()) {
+			attribute("string", "org:resource", String.join(",", reading.getAgents()));
+		}
+		SensorState state = reading.getSensorState();
+		if (state != null) {
+			for (int i = 0; i < state.size(); i++) {
+				StateField field = state.getField(i);
+				if (state.isNull(field)) {
+					continue;
+				}
+				switch (field.getType()) {
+				case BOOLEAN:
+					attribute("boolean", field.getName(), String.valueOf(state.getBoolean(field)));
+					break;
+				case INT:
+					attribute("int", field.getName(), String.valueOf(state.getInt(field)));
+					break;
+				case LONG:
+					attribute("int", field.getName(), String.valueOf(state.getLong(field)));
+					break;
+				case DOUBLE:
+					attribute("float", field.getName(), String.valueOf(state.getDouble(field)));
+					break;
+				case STRING:
+					attribute("string", field.getName(), state.getString(field));
+					break;
+				default:
+					attribute("string", field.getName(), mapper.writeValueAsString(state.getObject(field)));
+				}
+			}
+		} else {
+			for (Map.Entry<String, Object> entry : reading.getState().entrySet()) {
+				Object value = entry.getValue();
+				if (value instanceof Boolean) {
+					attribute("boolean", entry.getKey(), value.toString());
+				} else if (value instanceof Integer || value instanceof Long) {
+					attribute("int", entry.getKey(), value.toString());
+				} else if (value instanceof Double || value instanceof Float) {
+					attribute("float", entry.getKey(), value.toString());
+				} else if (value instanceof String) {
+					attribute("string", entry.getKey(), (String) value);
+				} else if (value != null) {
+					attribute("string", entry.getKey(), mapper.writeValueAsString(value));
+				}
+			}
+		}
+		fragment.append("\t\t</event>\n");
+		return fragment.toString();
+	}
+
+	private void attribute(String type, String key, String value) {
+		fragment.append("\t\t\t<").append(type).append(" key=\"");
+		appendEscaped(key, fragment);
+		fragment.append("\" value=\"");
+		appendEscaped(value, fragment);
+		fragment.append("\"/>\n");
+	}
+
+	// Escapes the markup characters of an attribute value and leaves out characters XML does not allow
+	static void appendEscaped(String value, StringBuilder builder) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				builder.append("&amp;");
+				break;
+			case '<':
+				builder.append("&lt;");
+				break;
+			case '>':
+				builder.append("&gt;");
+				break;
+			case '"':
+				builder.append("&quot;");
+				break;
+			case '\n':
+				builder.append("&#10;");
+				break;
+			case '\r':
+				builder.append("&#13;");
+				break;
+			case '\t':
+				builder.append("&#9;");
+				break;
+			default:
+				if (c >= 0x20 && c != 0xfffe && c != 0xffff) {
+					builder.append(c);
+				}
+			}
+		}
+	}
+
+	// Writes the events in memory, sorted by case, to a new chunk file
+	private void spill() throws IOException {
+		Arrays.sort(events, 0, size, order);
+		File chunk = newChunk();
+		chunks.add(chunk);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(chunk), 65536))) {
+			for (int i = 0; i < size; i++) {
+				events[i].write(out);
+				events[i] = null;
+			}
+		}
+		size = 0;
+	}
+
+	private File newChunk() throws IOException {
+		File chunk = File.createTempFile("xes-chunk-", ".bin", file.getAbsoluteFile().getParentFile());
+		chunk.deleteOnExit();
+		return chunk;
+	}
+
+	// Merges every MERGE_INPUTS chunks into a new chunk and deletes them
+	private ArrayList<File> mergePass(List<File> inputs) throws IOException {
+		ArrayList<File> merged = new ArrayList<File>();
+		try {
+			for (int i = 0; i < inputs.size(); i += MERGE_INPUTS) {
+				List<File> group = inputs.subList(i, Math.min(i + MERGE_INPUTS, inputs.size()));
+				merged.add(group.size() == 1 ? group.get(0) : merge(group));
+			}
+		} catch (IOException e) {
+			for (File chunk : merged) {
+				chunk.delete();
+			}
+			throw e;
+		}
+		return merged;
+	}
+
+	private File merge(List<File> group) throws IOException {
+		File chunk = newChunk();
+		PriorityQueue<ChunkReader> readers = newReaders();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(chunk), 65536))) {
+			open(group, readers);
+			while (!readers.isEmpty()) {
+				ChunkReader reader = readers.poll();
+				reader.event.write(out);
+				advance(reader, readers);
+			}
+		} catch (IOException e) {
+			chunk.delete();
+			throw e;
+		} finally {
+			for (ChunkReader reader : readers) {
+				reader.close();
+			}
+		}
+		for (File input : group) {
+			input.delete();
+		}
+		return chunk;
+	}
+
+	private static PriorityQueue<ChunkReader> newReaders() {
+		return new PriorityQueue<ChunkReader>(Comparator.comparing((ChunkReader reader) -> reader.event, order));
+	}
+
+	// Opens the chunks and queues their readers by their first event
+	private static void open(List<File> chunks, PriorityQueue<ChunkReader> readers) throws IOException {
+		for (File chunk : chunks) {
+			advance(new ChunkReader(chunk), readers);
+		}
+	}
+
+	// Reads the next event of the reader and queues it again, or closes it at the end of its chunk
+	private static void advance(ChunkReader reader, PriorityQueue<ChunkReader> readers) throws IOException {
+		if (reader.next()) {
+			readers.add(reader);
+		} else {
+			reader.close();
+		}
+	}
+
+	@Override
+	public Map<String, Object> getMetrics() {
+		LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("events", sequence);
+		metrics.put("chunks", chunks.size());
+		metrics.put("unattributed", unattributed);
+		return metrics;
+	}
+
+	@Override
+	public void close() throws IOException {
+		List<File> inputs = chunks;
+		PriorityQueue<ChunkReader> readers = newReaders();
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 65536)) {
+			while (inputs.size() > MERGE_INPUTS) {
+				inputs = mergePass(inputs);
+			}
+			// the events still in memory are merged with the chunks
+			Arrays.sort(events, 0, size, order);
+			open(inputs, readers);
+
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			out.write("<log xes.version=\"1.0\" xes.features=\"\" xmlns=\"http://www.xes-standard.org/\">\n");
+			out.write("\t<extension name=\"Concept\" prefix=\"concept\" uri=\"http://www.xes-standard.org/concept.xesext\"/>\n");
+			out.write("\t<extension name=\"Time\" prefix=\"time\" uri=\"http://www.xes-standard.org/time.xesext\"/>\n");
+			out.write("\t<extension name=\"Organizational\" prefix=\"org\" uri=\"http://www.xes-standard.org/org.xesext\"/>\n");
+			out.write("\t<global scope=\"trace\">\n\t\t<string key=\"concept:name\" value=\"__INVALID__\"/>\n\t</global>\n");
+			out.write("\t<global scope=\"event\">\n\t\t<string key=\"concept:name\" value=\"__INVALID__\"/>\n");
+			out.write("\t\t<date key=\"time:timestamp\" value=\"1970-01-01T00:00:00.000Z\"/>\n\t</global>\n");
+			out.write("\t<classifier name=\"Activity\" keys=\"concept:name\"/>\n");
+			out.write("\t<string key=\"concept:name\" value=\"");
+			fragment.setLength(0);
+			appendEscaped(file.getName(), fragment);
+			out.write(fragment.toString());
+			out.write("\"/>\n");
+
+			String caseId = null;
+			int next = 0;
+			while (next < size || !readers.isEmpty()) {
+				Event event;
+				if (readers.isEmpty() || (next < size && order.compare(events[next], readers.peek().event) < 0)) {
+					event = events[next++];
+				} else {
+					ChunkReader reader = readers.poll();
+					event = reader.event;
+					advance(reader, readers);
+				}
+				if (!event.caseId.equals(caseId)) {
+					if (caseId != null) {
+						out.write("\t</trace>\n");
+					}
+					caseId = event.caseId;
+					fragment.setLength(0);
+					fragment.append("\t<trace>\n\t\t<string key=\"concept:name\" value=\"");
+					appendEscaped(caseId, fragment);
+					fragment.append("\"/>\n");
+					out.write(fragment.toString());
+				}
+				out.write(event.xml);
+			}
+			if (caseId != null) {
+				out.write("\t</trace>\n");
+			}
+			out.write("</log>\n");
+		} finally {
+			for (ChunkReader reader : readers) {
+				reader.close();
+			}
+			for (File chunk : chunks) {
+				chunk.delete();
+			}
+			for (File chunk : inputs) {
+				chunk.delete();
+			}
+		}
+	}
+
+	// Rendered event of a case
+	private static class Event {
+
+		private final String caseId;
+		private final long sequence; // order of the readings, which arrive in order of time
+		private final String xml;
+
+		Event(String caseId, long sequence, String xml) {
+			this.caseId = caseId;
+			this.sequence = sequence;
+			this.xml = xml;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			byte[] utf8 = xml.getBytes(StandardCharsets.UTF_8);
+			out.writeUTF(caseId);
+			out.writeLong(sequence);
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+
+		static Event read(DataInputStream in) throws IOException {
+			String caseId;
+			try {
+				caseId = in.readUTF();
+			} catch (EOFException e) {
+				return null;
+			}
+			long sequence = in.readLong();
+			byte[] utf8 = new byte[in.readInt()];
+			in.readFully(utf8);
+			return new Event(caseId, sequence, new String(utf8, StandardCharsets.UTF_8));
+		}
+	}
+
+	// Reads the events of a chunk one at a time
+	private static class ChunkReader {
+
+		private final DataInputStream in;
+		private Event event;
+
+		ChunkReader(File chunk) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(chunk), 65536));
+		}
+
+		boolean next() throws IOException {
+			event = Event.read(in);
+			return event != null;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -1,8 +1,12 @@
 package pathfinding;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
 
 import entities.Agent;
 import entities.Entity;
@@ -51,6 +55,18 @@ public class AStarGrid {
      * Constructs A* grid with A* nodes from a given Floorplan
      */
     public AStarGrid(Floorplan floorplan) {
+        this(floorplan, new Random());
+    }
+
+    /**
+     * Constructs A* grid with A* nodes from a given Floorplan, with paths randomized by the given Random object.
+     * Every simulation run constructs its own grid, as path searches modify the nodes.
+     *
+     * @param floorplan the floorplan
+     * @param random source of the randomness added to the path search
+     */
+    public AStarGrid(Floorplan floorplan, Random random) {
+    	logic = new AStarLogic(random);
     	// instantiate grid with specified width and height and insert walkable nodes for all tiles
     	grid = new AStarNode[floorplan.getWidth()][floorplan.getHeight()];
         for (int y = 0; y < floorplan.getHeight(); y++) {
@@ -182,7 +198,7 @@ public class AStarGrid {
     			exemptedAreasClone.add(area);
     		}
 	    	for (ArrayList<Position> area : exemptedAreasClone) {
-	    		if (!area.contains(agent.getPosition())) {
+	    		if (!area.contains(new Position(startX, startY))) {
 	    			for (Position position : area) {
 	    	    		setNodeState(position.getX(), position.getY(), NodeState.NOT_WALKABLE);
 	    	    	} 
@@ -208,6 +224,117 @@ public class AStarGrid {
     	return logic.getPath(grid, getNode(startX, startY), getNode(targetX, targetY));
     }
     
+    /**
+     * Returns a path like getPath(), except that the exempted areas of the agent are only walkable while its own path
+     * is searched, and that the randomness of the search is drawn from the given Random object. The paths of an agent
+     * then do not depend on the paths that have been searched for other agents before.
+     *
+     * @param random source of the randomness added to the heuristics of this search
+     * @return the path
+     */
+    public final List<AStarNode> getPath(int startX, int startY, int targetX, int targetY, ArrayList<Position> exempted, Agent agent, Random random) {
+    	//keeps the exempted areas the agent is still in, and adds the new one
+    	ArrayList<ArrayList<Position>> areas = exemptedAreas.computeIfAbsent(agent, key -> new ArrayList<ArrayList<Position>>());
+    	areas.removeIf(area -> !area.contains(new Position(startX, startY)));
+    	areas.add(exempted);
+    	
+    	//makes the exempted areas walkable during the search, then restores them
+    	ArrayList<AStarNode> exemptedNodes = new ArrayList<AStarNode>();
+    	ArrayList<NodeState> states = new ArrayList<NodeState>();
+    	for (ArrayList<Position> area : areas) {
+    		for (Position position : area) {
+    			AStarNode node = getNode(position.getX(), position.getY());
+    			if (node.getState() != NodeState.WALKABLE) {
+    				exemptedNodes.add(node);
+    				states.add(node.getState());
+    				node.setState(NodeState.WALKABLE);
+    			}
+    		}
+    	}
+    	try {
+    		return logic.getPath(grid, getNode(startX, startY), getNode(targetX, targetY), random);
+    	} finally {
+    		for (int i = 0; i < exemptedNodes.size(); i++) {
+    			exemptedNodes.get(i).setState(states.get(i));
+    		}
+    	}
+    }
+    
+    /**
+     * Writes the states of the nodes, run-length encoded, and the exempted areas of the agents to a checkpoint of a run.
+     *
+     * @param agents the agents of the run, in the order readCheckpoint() is given them
+     */
+    public void writeCheckpoint(DataOutput out, List<Agent> agents) throws IOException {
+    	NodeState state = null;
+    	int run = 0;
+    	for (int x = 0; x < grid.length; x++) {
+    		for (int y = 0; y < grid[0].length; y++) {
+    			if (grid[x][y].getState() != state) {
+    				if (run > 0) {
+    					out.writeByte(state.ordinal());
+    					out.writeInt(run);
+    				}
+    				state = grid[x][y].getState();
+    				run = 0;
+    			}
+    			run++;
+    		}
+    	}
+    	out.writeByte(state.ordinal());
+    	out.writeInt(run);
+    	for (Agent agent : agents) {
+    		ArrayList<ArrayList<Position>> areas = exemptedAreas.get(agent);
+    		out.writeInt(areas == null ? 0 : areas.size());
+    		if (areas != null) {
+    			for (ArrayList<Position> area : areas) {
+    				out.writeInt(area.size());
+    				for (Position position : area) {
+    					out.writeInt(position.getX());
+    					out.writeInt(position.getY());
+    				}
+    			}
+    		}
+    	}
+    }
+
+    // Restores the states of the nodes and the exempted areas written by writeCheckpoint()
+    public void readCheckpoint(DataInput in, List<Agent> agents) throws IOException {
+    	int nodes = 0;
+    	while (nodes < grid.length * grid[0].length) {
+    		NodeState state = NodeState.values()[in.readByte()];
+    		int end = nodes + in.readInt();
+    		for (; nodes < end; nodes++) {
+    			grid[nodes / grid[0].length][nodes % grid[0].length].setState(state);
+    		}
+    	}
+    	exemptedAreas.clear();
+    	for (Agent agent : agents) {
+    		int areaCount = in.readInt();
+    		if (areaCount > 0) {
+    			ArrayList<ArrayList<Position>> areas = new ArrayList<ArrayList<Position>>();
+    			for (int i = 0; i < areaCount; i++) {
+    				int size = in.readInt();
+    				ArrayList<Position> area = new ArrayList<Position>();
+    				for (int j = 0; j < size; j++) {
+    					area.add(new Position(in.readInt(), in.readInt()));
+    				}
+    				areas.add(area);
+    			}
+    			exemptedAreas.put(agent, areas);
+    		}
+    	}
+    }
+    
+    /**
+     * Replaces the source of the randomness added to the path search, e.g. by the random generator restored from a checkpoint.
+     *
+     * @param random source of the randomness added to the path search
+     */
+    public void setRandom(Random random) {
+    	logic = new AStarLogic(random);
+    }
+
     public void resetExemptedAreas() {
 		exemptedAreas.clear();
 	}
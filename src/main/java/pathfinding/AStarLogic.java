@@ -3,8 +3,7 @@ package pathfinding;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-
-import main.Resources;
+import java.util.Random;
 
 /**
  * A* search logic.
@@ -13,6 +12,19 @@ import main.Resources;
  */
 public class AStarLogic {
 
+    private final Random random;
+
+    /**
+     * @param random source of the randomness added to the heuristics
+     */
+    public AStarLogic(Random random) {
+        this.random = random;
+    }
+
+    public AStarLogic() {
+        this(new Random());
+    }
+
     /**
      * Since the equality check is based on references,
      * start and target must be elements of the array.
@@ -24,12 +36,21 @@ public class AStarLogic {
      * @return          path as list of nodes from start to target or empty list if no path found
      */
     public final List<AStarNode> getPath(AStarNode[][] grid, AStarNode start, AStarNode target, AStarNode... busyNodes) {
+        return getPath(grid, start, target, random, busyNodes);
+    }
+
+    /**
+     * Searches a path with the randomness of the heuristics drawn from the given Random object.
+     *
+     * @param random source of the randomness added to the heuristics of this search
+     */
+    public final List<AStarNode> getPath(AStarNode[][] grid, AStarNode start, AStarNode target, Random random, AStarNode... busyNodes) {
         if (target.getState() == NodeState.NOT_WALKABLE)
             return Collections.emptyList();
 
         for (int y = 0; y < grid[0].length; y++) {
             for (int x = 0; x < grid.length; x++) {
-                grid[x][y].setHCost(Math.abs(target.getX() - x) + Math.abs(target.getY() - y) + Resources.getRandom().nextInt(4)); // randomness added to heuristics
+                grid[x][y].setHCost(Math.abs(target.getX() - x) + Math.abs(target.getY() - y) + random.nextInt(4)); // randomness added to heuristics
             }
         }
 
@@ -0,0 +1,19 @@
+package script;
+
+import java.util.Collections;
+import java.util.List;
+
+// Immutable list of statements enclosed in braces
+public class Block {
+
+	private final List<Statement> statements;
+
+	public Block(List<Statement> statements) {
+		this.statements = Collections.unmodifiableList(statements);
+	}
+
+	//Accessors
+	public List<Statement> getStatements() {
+		return statements;
+	}
+}
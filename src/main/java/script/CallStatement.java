@@ -0,0 +1,22 @@
+package script;
+
+// macroName()
+public class CallStatement extends Statement {
+
+	private final String macroName;
+
+	public CallStatement(int index, int line, int column, String macroName) {
+		super(index, line, column);
+		this.macroName = macroName;
+	}
+
+	@Override
+	public String toString() {
+		return macroName + "()";
+	}
+
+	//Accessors
+	public String getMacroName() {
+		return macroName;
+	}
+}
@@ -0,0 +1,91 @@
+package script;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Walks the statements of an agent in execution order.
+ * Macro calls and repeat statements are followed as control flow, so the memory used
+ * is bounded by the nesting depth of the script and not by the number of executed statements.
+ */
+public class Cursor {
+
+	private final Script script;
+	private final ArrayDeque<Frame> stack = new ArrayDeque<Frame>();
+
+	public Cursor(Script script, Block block) {
+		this.script = script;
+		stack.push(new Frame(block, 1));
+	}
+
+	// Restores a cursor written by writeTo() for the same script and block
+	public Cursor(Script script, Block block, DataInput in) throws IOException {
+		this.script = script;
+		int depth = in.readInt();
+		for (int i = 0; i < depth; i++) {
+			Block frameBlock = block;
+			if (i > 0) {
+				Frame parent = stack.peek();
+				Statement statement = parent.block.getStatements().get(parent.position - 1);
+				if (statement instanceof CallStatement) {
+					frameBlock = script.getMacros().get(((CallStatement) statement).getMacroName());
+				} else {
+					frameBlock = ((RepeatStatement) statement).getBody();
+				}
+			}
+			Frame frame = new Frame(frameBlock, in.readLong());
+			frame.position = in.readInt();
+			stack.push(frame);
+		}
+	}
+
+	// Writes the position of the cursor. The block of a frame is the macro or repeat body of the statement its parent
+	// frame is at, so only the positions and remaining repetitions are written, from the outermost frame on.
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(stack.size());
+		for (Iterator<Frame> frames = stack.descendingIterator(); frames.hasNext();) {
+			Frame frame = frames.next();
+			out.writeLong(frame.remaining);
+			out.writeInt(frame.position);
+		}
+	}
+
+	// Returns the next goto, wait or interact statement, or null when all statements have been executed
+	public Statement next() {
+		while (!stack.isEmpty()) {
+			Frame frame = stack.peek();
+			if (frame.position < frame.block.getStatements().size()) {
+				Statement statement = frame.block.getStatements().get(frame.position++);
+				if (statement instanceof CallStatement) {
+					stack.push(new Frame(script.getMacros().get(((CallStatement) statement).getMacroName()), 1));
+				} else if (statement instanceof RepeatStatement) {
+					RepeatStatement repeatStatement = (RepeatStatement) statement;
+					if (repeatStatement.getCount() > 0) {
+						stack.push(new Frame(repeatStatement.getBody(), repeatStatement.getCount()));
+					}
+				} else {
+					return statement;
+				}
+			} else if (--frame.remaining > 0) {
+				frame.position = 0;
+			} else {
+				stack.pop();
+			}
+		}
+		return null;
+	}
+
+	private static class Frame {
+		private final Block block;
+		private int position = 0;
+		private long remaining; // number of times the block is still to be executed, including the current one
+
+		private Frame(Block block, long remaining) {
+			this.block = block;
+			this.remaining = remaining;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package script;
+
+// goto(entityName)
+public class GotoEntityStatement extends Statement {
+
+	private final String entityName;
+
+	public GotoEntityStatement(int index, int line, int column, String entityName) {
+		super(index, line, column);
+		this.entityName = entityName;
+	}
+
+	@Override
+	public String toString() {
+		return "goto(" + entityName + ")";
+	}
+
+	//Accessors
+	public String getEntityName() {
+		return entityName;
+	}
+}
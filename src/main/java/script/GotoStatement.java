@@ -0,0 +1,28 @@
+package script;
+
+// goto(x,y)
+public class GotoStatement extends Statement {
+
+	private final int x;
+	private final int y;
+
+	public GotoStatement(int index, int line, int column, int x, int y) {
+		super(index, line, column);
+		this.x = x;
+		this.y = y;
+	}
+
+	@Override
+	public String toString() {
+		return "goto(" + x + "," + y + ")";
+	}
+
+	//Accessors
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+}
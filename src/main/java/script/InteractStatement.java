@@ -0,0 +1,28 @@
+package script;
+
+// interact(sensorName,command)
+public class InteractStatement extends Statement {
+
+	private final String sensorName;
+	private final String command;
+
+	public InteractStatement(int index, int line, int column, String sensorName, String command) {
+		super(index, line, column);
+		this.sensorName = sensorName;
+		this.command = command;
+	}
+
+	@Override
+	public String toString() {
+		return "interact(" + sensorName + "," + command + ")";
+	}
+
+	//Accessors
+	public String getSensorName() {
+		return sensorName;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+}
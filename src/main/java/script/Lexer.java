@@ -0,0 +1,149 @@
+package script;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Single-pass tokenizer for the agent scripting language.
+ * Reads the input through a fixed size buffer, so the input is never held in memory as a whole.
+ * Comments and whitespace are skipped, and illegal characters are reported to the error list.
+ */
+public class Lexer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Reader reader;
+	private final List<ScriptError> errors;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int bufferStart = 0;
+	private int bufferEnd = 0;
+	private boolean endOfInput = false;
+
+	private int line = 1;
+	private int column = 1;
+	private final StringBuilder text = new StringBuilder();
+
+	public Lexer(Reader reader, List<ScriptError> errors) {
+		this.reader = reader;
+		this.errors = errors;
+	}
+
+	public Token next() throws IOException {
+		while (true) {
+			skipWhitespaceAndComments();
+			int tokenLine = line;
+			int tokenColumn = column;
+			int c = peek(0);
+
+			if (c == -1) {
+				return new Token(TokenType.EOF, "", tokenLine, tokenColumn);
+			}
+
+			// identifiers and numbers share the character class \w, numbers only contain digits
+			if (isWordCharacter(c)) {
+				text.setLength(0);
+				boolean number = true;
+				while (isWordCharacter(peek(0))) {
+					char character = read();
+					number = number && character >= '0' && character <= '9';
+					text.append(character);
+				}
+				return new Token(number ? TokenType.NUMBER : TokenType.IDENTIFIER, text.toString(), tokenLine, tokenColumn);
+			}
+
+			char character = read();
+			switch (character) {
+			case '(':
+				return new Token(TokenType.LEFT_PARENTHESIS, "(", tokenLine, tokenColumn);
+			case ')':
+				return new Token(TokenType.RIGHT_PARENTHESIS, ")", tokenLine, tokenColumn);
+			case '{':
+				return new Token(TokenType.LEFT_BRACE, "{", tokenLine, tokenColumn);
+			case '}':
+				return new Token(TokenType.RIGHT_BRACE, "}", tokenLine, tokenColumn);
+			case ',':
+				return new Token(TokenType.COMMA, ",", tokenLine, tokenColumn);
+			case ';':
+				return new Token(TokenType.SEMICOLON, ";", tokenLine, tokenColumn);
+			default:
+				errors.add(new ScriptError("unexpected character '" + character + "'", tokenLine, tokenColumn));
+			}
+		}
+	}
+
+	private void skipWhitespaceAndComments() throws IOException {
+		while (true) {
+			int c = peek(0);
+			if (c == -1) {
+				return;
+			}
+			if (Character.isWhitespace(c)) {
+				read();
+			} else if (c == '/' && peek(1) == '/') {
+				// line comment
+				while (peek(0) != -1 && peek(0) != '\n') {
+					read();
+				}
+			} else if (c == '/' && peek(1) == '*') {
+				// block comment
+				int commentLine = line;
+				int commentColumn = column;
+				read();
+				read();
+				while (!(peek(0) == '*' && peek(1) == '/')) {
+					if (peek(0) == -1) {
+						errors.add(new ScriptError("unterminated block comment", commentLine, commentColumn));
+						return;
+					}
+					read();
+				}
+				read();
+				read();
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static boolean isWordCharacter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	// Returns the character at the given offset from the current position without consuming it, or -1 at the end of the input
+	private int peek(int offset) throws IOException {
+		while (bufferStart + offset >= bufferEnd) {
+			if (endOfInput) {
+				return -1;
+			}
+			fill();
+		}
+		return buffer[bufferStart + offset];
+	}
+
+	private char read() throws IOException {
+		peek(0);
+		char c = buffer[bufferStart++];
+		if (c == '\n') {
+			line++;
+			column = 1;
+		} else {
+			column++;
+		}
+		return c;
+	}
+
+	// Moves the unread characters to the start of the buffer and reads as many characters as fit after them
+	private void fill() throws IOException {
+		int remaining = bufferEnd - bufferStart;
+		System.arraycopy(buffer, bufferStart, buffer, 0, remaining);
+		bufferStart = 0;
+		bufferEnd = remaining;
+		int count = reader.read(buffer, bufferEnd, buffer.length - bufferEnd);
+		if (count == -1) {
+			endOfInput = true;
+		} else {
+			bufferEnd += count;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package script;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive-descent parser for the agent scripting language:
+ *
+ * <pre>
+ * script      := { definition } EOF
+ * definition  := ("agent" | "macro" | "population") "(" name ")" block
+ * block       := "{" [ statement ] { ";" [ statement ] } "}"
+ * statement   := "goto" "(" NUMBER "," NUMBER ")"
+ *              | "goto" "(" name ")"
+ *              | "wait" "(" NUMBER ")"
+ *              | "interact" "(" name "," name ")"
+ *              | "repeat" "(" NUMBER ")" block
+ *              | IDENTIFIER "(" ")"
+ * </pre>
+ *
+ * A repeat statement ends with its block, so the ";" following it is optional.
+ *
+ * The parser recovers from syntax errors at the end of the failing statement or definition,
+ * so that all errors of the input are reported in a single pass.
+ */
+public class Parser {
+
+	private final Lexer lexer;
+	private final List<ScriptError> errors;
+	private Token current;
+	private Token lookahead;
+
+	// source text of the statement being parsed, used in error messages
+	private final StringBuilder statementText = new StringBuilder();
+	private boolean recording = false;
+
+	private final Map<String, Block> agents = new LinkedHashMap<String, Block>();
+	private final Map<String, Block> macros = new LinkedHashMap<String, Block>();
+	private final Map<String, Block> populations = new LinkedHashMap<String, Block>();
+
+	public Parser(Lexer lexer, List<ScriptError> errors) {
+		this.lexer = lexer;
+		this.errors = errors;
+	}
+
+	public Script parse() throws IOException {
+		current = lexer.next();
+		lookahead = lexer.next();
+		while (current.getType() != TokenType.EOF) {
+			parseDefinition();
+		}
+		return new Script(agents, macros, populations);
+	}
+
+	private void parseDefinition() throws IOException {
+		Token keyword = current;
+		if (!isDefinitionStart()) {
+			error("expected an agent, macro or population definition but found " + current, current);
+			skipDefinition();
+			return;
+		}
+		advance();
+		advance();
+
+		Token name = acceptName();
+		if (name == null) {
+			error("expected a name but found " + current, current);
+			skipDefinition();
+			return;
+		}
+		if (accept(TokenType.RIGHT_PARENTHESIS) == null) {
+			error("expected ')' but found " + current, current);
+			skipDefinition();
+			return;
+		}
+		if (current.getType() != TokenType.LEFT_BRACE) {
+			error("expected '{' but found " + current, current);
+			skipDefinition();
+			return;
+		}
+		Block block = parseBlock();
+
+		// test if instructions for agent, population or macro has been defined twice
+		if (keyword.getText().equals("agent")) {
+			if (agents.containsKey(name.getText())) {
+				error("instructions have been defined more than once for agent " + name.getText(), name);
+			} else {
+				agents.put(name.getText(), block);
+			}
+		} else if (keyword.getText().equals("population")) {
+			if (populations.containsKey(name.getText())) {
+				error("instructions have been defined more than once for population " + name.getText(), name);
+			} else {
+				populations.put(name.getText(), block);
+			}
+		} else {
+			if (macros.containsKey(name.getText())) {
+				error("macro " + name.getText() + " has been defined more than once", name);
+			} else {
+				macros.put(name.getText(), block);
+			}
+		}
+	}
+
+	// Parses "{ ... }" starting at the left brace
+	private Block parseBlock() throws IOException {
+		advance();
+		List<Statement> statements = new ArrayList<Statement>();
+		int index = 1;
+		while (true) {
+			switch (current.getType()) {
+			case RIGHT_BRACE:
+				advance();
+				return new Block(statements);
+			case EOF:
+				error("missing '}' at end of input", current);
+				return new Block(statements);
+			case SEMICOLON: // empty statement
+				advance();
+				index++;
+				break;
+			default:
+				Statement statement = parseStatement(index);
+				if (statement != null) {
+					statements.add(statement);
+				}
+				if (current.getType() == TokenType.SEMICOLON) {
+					advance();
+					index++;
+				} else if (statement instanceof RepeatStatement && current.getType() != TokenType.RIGHT_BRACE) {
+					index++;
+				}
+			}
+		}
+	}
+
+	private Statement parseStatement(int index) throws IOException {
+		int line = current.getLine();
+		int column = current.getColumn();
+		statementText.setLength(0);
+		recording = true;
+
+		Statement statement = parseStatementForm(index, line, column);
+		if (statement == null || (!(statement instanceof RepeatStatement) && !isStatementEnd())) {
+			skipStatement();
+			errors.add(new ScriptError("syntax error", line, column, index, statementText.toString()));
+			statement = null;
+		}
+
+		recording = false;
+		return statement;
+	}
+
+	// Returns null if the tokens do not form a statement
+	private Statement parseStatementForm(int index, int line, int column) throws IOException {
+		if (current.getType() != TokenType.IDENTIFIER || lookahead.getType() != TokenType.LEFT_PARENTHESIS) {
+			return null;
+		}
+		String keyword = current.getText();
+		advance();
+		advance();
+
+		switch (keyword) {
+		case "goto": {
+			Token target = acceptName();
+			if (target == null) {
+				return null;
+			}
+			if (target.getType() == TokenType.NUMBER && accept(TokenType.COMMA) != null) {
+				Token y = accept(TokenType.NUMBER);
+				if (y == null || accept(TokenType.RIGHT_PARENTHESIS) == null) {
+					return null;
+				}
+				long xValue = parseNumber(target, Integer.MAX_VALUE);
+				long yValue = parseNumber(y, Integer.MAX_VALUE);
+				if (xValue < 0 || yValue < 0) {
+					return null;
+				}
+				return new GotoStatement(index, line, column, (int) xValue, (int) yValue);
+			}
+			if (accept(TokenType.RIGHT_PARENTHESIS) == null) {
+				return null;
+			}
+			return new GotoEntityStatement(index, line, column, target.getText());
+		}
+		case "wait": {
+			Token seconds = accept(TokenType.NUMBER);
+			if (seconds == null || accept(TokenType.RIGHT_PARENTHESIS) == null) {
+				return null;
+			}
+			long value = parseNumber(seconds, Long.MAX_VALUE / 1000000000); // must be convertible to nanoseconds
+			if (value < 0) {
+				return null;
+			}
+			return new WaitStatement(index, line, column, value);
+		}
+		case "interact": {
+			Token sensorName = acceptName();
+			if (sensorName == null || accept(TokenType.COMMA) == null) {
+				return null;
+			}
+			Token command = acceptName();
+			if (command == null || accept(TokenType.RIGHT_PARENTHESIS) == null) {
+				return null;
+			}
+			return new InteractStatement(index, line, column, sensorName.getText(), command.getText());
+		}
+		case "repeat": {
+			Token count = accept(TokenType.NUMBER);
+			if (count == null || accept(TokenType.RIGHT_PARENTHESIS) == null || current.getType() != TokenType.LEFT_BRACE) {
+				return null;
+			}
+			long value = parseNumber(count, Integer.MAX_VALUE);
+			if (value < 0) {
+				return null;
+			}
+			recording = false; // statements of the body are recorded separately
+			return new RepeatStatement(index, line, column, (int) value, parseBlock());
+		}
+		default: // macro call
+			if (accept(TokenType.RIGHT_PARENTHESIS) == null) {
+				return null;
+			}
+			return new CallStatement(index, line, column, keyword);
+		}
+	}
+
+	// Skips to the end of the current statement, i.e. the next ';' or '}' outside of nested braces
+	private void skipStatement() throws IOException {
+		int depth = 0;
+		while (current.getType() != TokenType.EOF) {
+			if (depth == 0 && isStatementEnd()) {
+				return;
+			}
+			if (current.getType() == TokenType.LEFT_BRACE) {
+				depth++;
+			} else if (current.getType() == TokenType.RIGHT_BRACE) {
+				depth--;
+			}
+			advance();
+		}
+	}
+
+	// Skips to the start of the next definition outside of braces
+	private void skipDefinition() throws IOException {
+		int depth = 0;
+		do {
+			if (current.getType() == TokenType.LEFT_BRACE) {
+				depth++;
+			} else if (current.getType() == TokenType.RIGHT_BRACE && depth > 0) {
+				depth--;
+			}
+			advance();
+		} while (current.getType() != TokenType.EOF && !(depth == 0 && isDefinitionStart()));
+	}
+
+	private boolean isDefinitionStart() {
+		return (current.is(TokenType.IDENTIFIER, "agent") || current.is(TokenType.IDENTIFIER, "macro") || current.is(TokenType.IDENTIFIER, "population"))
+				&& lookahead.getType() == TokenType.LEFT_PARENTHESIS;
+	}
+
+	private boolean isStatementEnd() {
+		return current.getType() == TokenType.SEMICOLON || current.getType() == TokenType.RIGHT_BRACE || current.getType() == TokenType.EOF;
+	}
+
+	// Names follow the character class \w, so names consisting of digits only are accepted as well
+	private Token acceptName() throws IOException {
+		if (current.getType() == TokenType.IDENTIFIER || current.getType() == TokenType.NUMBER) {
+			Token token = current;
+			advance();
+			return token;
+		}
+		return null;
+	}
+
+	private Token accept(TokenType type) throws IOException {
+		if (current.getType() == type) {
+			Token token = current;
+			advance();
+			return token;
+		}
+		return null;
+	}
+
+	private void advance() throws IOException {
+		if (recording) {
+			statementText.append(current.getText());
+		}
+		current = lookahead;
+		lookahead = lexer.next();
+	}
+
+	// Returns the value of a number token, or -1 if it exceeds max
+	private static long parseNumber(Token token, long max) {
+		String digits = token.getText();
+		if (digits.length() > 18) {
+			return -1;
+		}
+		long value = Long.parseLong(digits);
+		return value > max ? -1 : value;
+	}
+
+	private void error(String description, Token token) {
+		errors.add(new ScriptError(description, token.getLine(), token.getColumn()));
+	}
+}
@@ -0,0 +1,28 @@
+package script;
+
+// repeat(count){...}
+public class RepeatStatement extends Statement {
+
+	private final int count;
+	private final Block body;
+
+	public RepeatStatement(int index, int line, int column, int count, Block body) {
+		super(index, line, column);
+		this.count = count;
+		this.body = body;
+	}
+
+	@Override
+	public String toString() {
+		return "repeat(" + count + ")";
+	}
+
+	//Accessors
+	public int getCount() {
+		return count;
+	}
+
+	public Block getBody() {
+		return body;
+	}
+}
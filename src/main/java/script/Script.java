@@ -0,0 +1,54 @@
+package script;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Parsed agent script: the instruction block of every agent and population, and the macros they may call.
+ * The block of a population is shared by all of its members.
+ */
+public class Script {
+
+	private final Map<String, Block> agents;
+	private final Map<String, Block> macros;
+	private final Map<String, Block> populations;
+
+	public Script(Map<String, Block> agents, Map<String, Block> macros, Map<String, Block> populations) {
+		this.agents = Collections.unmodifiableMap(agents);
+		this.macros = Collections.unmodifiableMap(macros);
+		this.populations = Collections.unmodifiableMap(populations);
+	}
+
+	// Returns the number of goto, wait and interact statements that are executed for the block, i.e. the number
+	// of statements a Cursor returns, without walking them. Saturates at Long.MAX_VALUE.
+	public long countStatements(Block block) {
+		long count = 0;
+		for (Statement statement : block.getStatements()) {
+			long statementCount;
+			if (statement instanceof CallStatement) {
+				statementCount = countStatements(macros.get(((CallStatement) statement).getMacroName()));
+			} else if (statement instanceof RepeatStatement) {
+				RepeatStatement repeatStatement = (RepeatStatement) statement;
+				long bodyCount = countStatements(repeatStatement.getBody());
+				statementCount = bodyCount > Long.MAX_VALUE / Math.max(1, repeatStatement.getCount()) ? Long.MAX_VALUE : bodyCount * repeatStatement.getCount();
+			} else {
+				statementCount = 1;
+			}
+			count = count > Long.MAX_VALUE - statementCount ? Long.MAX_VALUE : count + statementCount;
+		}
+		return count;
+	}
+
+	//Accessors
+	public Map<String, Block> getAgents() {
+		return agents;
+	}
+
+	public Map<String, Block> getMacros() {
+		return macros;
+	}
+
+	public Map<String, Block> getPopulations() {
+		return populations;
+	}
+}
@@ -0,0 +1,65 @@
+package script;
+
+public class ScriptError {
+
+	private final String description;
+	private final int line;
+	private final int column;
+	private final int statementIndex; // 0 if the error is not related to a single statement
+	private final String statementText;
+
+	// Error that does not relate to a position in the input
+	public ScriptError(String description) {
+		this(description, 0, 0, 0, null);
+	}
+
+	// Error at a position in the input
+	public ScriptError(String description, int line, int column) {
+		this(description, line, column, 0, null);
+	}
+
+	// Error in a statement of an instruction block
+	public ScriptError(String description, Statement statement) {
+		this(description, statement.getLine(), statement.getColumn(), statement.getIndex(), statement.toString());
+	}
+
+	public ScriptError(String description, int line, int column, int statementIndex, String statementText) {
+		this.description = description;
+		this.line = line;
+		this.column = column;
+		this.statementIndex = statementIndex;
+		this.statementText = statementText;
+	}
+
+	@Override
+	public String toString() {
+		if (line == 0) {
+			return "ERROR: " + description;
+		}
+		if (statementIndex == 0) {
+			return "ERROR: " + description + " at line " + line + ", column " + column;
+		}
+		return "ERROR: " + description + " in statement " + statementIndex + " at line " + line + ", column " + column + ": " + statementText;
+	}
+
+	//Accessors
+	public String getDescription() {
+		return description;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+
+	public int getStatementIndex() {
+		return statementIndex;
+	}
+
+	public String getStatementText() {
+		return statementText;
+	}
+}
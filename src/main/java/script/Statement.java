@@ -0,0 +1,35 @@
+package script;
+
+/**
+ * Statement of an agent's instruction block.
+ * Statements are immutable, so a parsed block can be shared by every agent that executes it.
+ */
+public abstract class Statement {
+
+	private final int index; // position of the statement in its block, counted from 1
+	private final int line;
+	private final int column;
+
+	public Statement(int index, int line, int column) {
+		this.index = index;
+		this.line = line;
+		this.column = column;
+	}
+
+	// Source form of the statement without whitespace, e.g. goto(4,4)
+	@Override
+	public abstract String toString();
+
+	//Accessors
+	public int getIndex() {
+		return index;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+}
@@ -0,0 +1,5 @@
+package script;
+
+public enum TokenType {
+	IDENTIFIER, NUMBER, LEFT_PARENTHESIS, RIGHT_PARENTHESIS, LEFT_BRACE, RIGHT_BRACE, COMMA, SEMICOLON, EOF
+}
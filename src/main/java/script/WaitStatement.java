@@ -0,0 +1,22 @@
+package script;
+
+// wait(seconds)
+public class WaitStatement extends Statement {
+
+	private final long seconds;
+
+	public WaitStatement(int index, int line, int column, long seconds) {
+		super(index, line, column);
+		this.seconds = seconds;
+	}
+
+	@Override
+	public String toString() {
+		return "wait(" + seconds + ")";
+	}
+
+	//Accessors
+	public long getSeconds() {
+		return seconds;
+	}
+}
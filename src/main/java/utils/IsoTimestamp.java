@@ -0,0 +1,92 @@
+package utils;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formats times as yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn, the format of all outputs, by writing the digits directly
+ * instead of going through a DateTimeFormatter.
+ */
+public final class IsoTimestamp {
+
+	public static final int LENGTH = 29;
+
+	// years that do not have four digits are formatted like DateTimeFormatter does, with a sign
+	private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn");
+
+	private IsoTimestamp() {
+	}
+
+	public static String format(LocalDateTime time) {
+		if (!isFourDigitYear(time)) {
+			return time.format(formatter);
+		}
+		char[] buffer = new char[LENGTH];
+		format(time, buffer, 0);
+		return new String(buffer);
+	}
+
+	// Appends the time as yyyy-MM-dd'T'HH:mm:ss.SSS'Z', the xs:dateTime form read by process-mining tools
+	public static void appendUtcMillis(LocalDateTime time, StringBuilder builder) {
+		append(time, builder);
+		builder.setLength(builder.length() - 6);
+		builder.append('Z');
+	}
+
+	public static void append(LocalDateTime time, StringBuilder builder) {
+		if (!isFourDigitYear(time)) {
+			builder.append(time.format(formatter));
+			return;
+		}
+		int start = builder.length();
+		builder.setLength(start + LENGTH);
+		digits(builder, start, time.getYear(), 4);
+		builder.setCharAt(start + 4, '-');
+		digits(builder, start + 5, time.getMonthValue(), 2);
+		builder.setCharAt(start + 7, '-');
+		digits(builder, start + 8, time.getDayOfMonth(), 2);
+		builder.setCharAt(start + 10, 'T');
+		digits(builder, start + 11, time.getHour(), 2);
+		builder.setCharAt(start + 13, ':');
+		digits(builder, start + 14, time.getMinute(), 2);
+		builder.setCharAt(start + 16, ':');
+		digits(builder, start + 17, time.getSecond(), 2);
+		builder.setCharAt(start + 19, '.');
+		digits(builder, start + 20, time.getNano(), 9);
+	}
+
+	// Writes the LENGTH characters of a time with a four-digit year into the buffer
+	public static void format(LocalDateTime time, char[] buffer, int offset) {
+		digits(buffer, offset, time.getYear(), 4);
+		buffer[offset + 4] = '-';
+		digits(buffer, offset + 5, time.getMonthValue(), 2);
+		buffer[offset + 7] = '-';
+		digits(buffer, offset + 8, time.getDayOfMonth(), 2);
+		buffer[offset + 10] = 'T';
+		digits(buffer, offset + 11, time.getHour(), 2);
+		buffer[offset + 13] = ':';
+		digits(buffer, offset + 14, time.getMinute(), 2);
+		buffer[offset + 16] = ':';
+		digits(buffer, offset + 17, time.getSecond(), 2);
+		buffer[offset + 19] = '.';
+		digits(buffer, offset + 20, time.getNano(), 9);
+	}
+
+	public static boolean isFourDigitYear(LocalDateTime time) {
+		return time.getYear() >= 0 && time.getYear() <= 9999;
+	}
+
+	private static void digits(char[] buffer, int offset, int value, int count) {
+		for (int i = offset + count - 1; i >= offset; i--) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static void digits(StringBuilder builder, int offset, int value, int count) {
+		for (int i = offset + count - 1; i >= offset; i--) {
+			builder.setCharAt(i, (char) ('0' + value % 10));
+			value /= 10;
+		}
+	}
+}
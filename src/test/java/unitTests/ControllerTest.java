@@ -2,6 +2,7 @@ package unitTests;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.StringReader;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -24,6 +25,7 @@ import controllers.SystemController;
 import entities.Agent;
 import entities.Entity;
 import entities.Floorplan;
+import entities.Population;
 import entities.SensorActive;
 import entities.SensorPassive;
 import geo.Position;
@@ -45,9 +47,6 @@ class ControllerTest {
 		Resources.setaStarGrid(null);
 		Resources.setFloorplan(null);
 		Resources.setInput(null);
-		Resources.setLog(null);
-		Resources.setMqtt(null);
-		Resources.setRandom(null);
 		Resources.setSimulator(null);
 	}
 
@@ -159,7 +158,7 @@ class ControllerTest {
 		
 		String input = "agent(John_Doe){goto(5,5);}";
 		
-		assertEquals("ERROR: coordinate is out of bounds in statement 1: goto(5,5)",simulationController.postInput(input));
+		assertEquals("ERROR: coordinate is out of bounds in statement 1 at line 1, column 17: goto(5,5)",simulationController.postInput(input));
 	}
 	
 	@Test
@@ -336,6 +335,9 @@ class ControllerTest {
 		simulationController.postInput(input);
 		
 		assertEquals(input,simulationController.getInput());
+		
+		assertEquals("consumed",simulationController.postInputStream(new StringReader(input)));
+		assertEquals("the input has been posted as a stream and its text has not been retained",simulationController.getInput());
 	}
 	
 	@Test
@@ -360,6 +362,114 @@ class ControllerTest {
 		assertEquals(floorplan,roomConfigController.getFloorplan());
 	}
 	
+	@Test
+	void testPostFloorplanPopulationReturnError() {
+		
+		Floorplan floorplan = new Floorplan(
+				1,
+				5,
+				5,
+				new ArrayList<Agent>(Arrays.asList(new Agent("John_Doe", new Position(0,0), 1.0))),
+				new ArrayList<Position>(Arrays.asList(
+				)),
+				new ArrayList<SensorActive>(Arrays.asList(
+				)),
+				new ArrayList<SensorPassive>(Arrays.asList(
+				)),
+				new ArrayList<Entity>(Arrays.asList(
+				))
+			);
+		floorplan.setPopulations(new ArrayList<Population>(Arrays.asList(
+				new Population("visitors", 10, new ArrayList<Position>(Arrays.asList(new Position(5,0))), 0.8, 1.4, 0.2, 1, 7357L)
+			)));
+		
+		assertEquals("ERROR: the spawn area of the population visitors at Position [x=5, y=0] is not within the grid",roomConfigController.postFloorplan(floorplan));
+	}
+	
+	@Test
+	void testPostSimulationPopulationReturnSuccess() throws MqttPersistenceException, JsonProcessingException, InterruptedException, MqttException {
+		
+		Floorplan floorplan = new Floorplan(
+				1,
+				5,
+				5,
+				new ArrayList<Agent>(Arrays.asList(new Agent("John_Doe", new Position(0,0), 1.0))),
+				new ArrayList<Position>(Arrays.asList(
+				)),
+				new ArrayList<SensorActive>(Arrays.asList(
+				)),
+				new ArrayList<SensorPassive>(Arrays.asList(
+				)),
+				new ArrayList<Entity>(Arrays.asList(
+				))
+			);
+		floorplan.setPopulations(new ArrayList<Population>(Arrays.asList(
+				new Population("visitors", 200, new ArrayList<Position>(Arrays.asList(new Position(0,4), new Position(1,4))), 0.8, 1.4, 0.2, 1, 7357L)
+			)));
+		assertEquals("consumed",roomConfigController.postFloorplan(floorplan));
+		assertEquals(201,floorplan.getAllAgents().size());
+		
+		String input = "agent(John_Doe){goto(4,4);} population(visitors){goto(4,0);wait(10);goto(2,2)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		Simulator simulator = new Simulator(
+				LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+				true,
+				1.0,
+				false,
+				0,
+				"broker.hivemq.com",
+				"1883",
+				"smarthome",
+				false,
+				"test_simulation",
+				7357L
+				);
+		
+		assertEquals("consumed",simulationController.postSimulator(simulator));
+	}
+	
+	@Test
+	void testPopulationWithoutSeedIsSpawnedFromRunSeed() {
+		
+		Population population = new Population("visitors", 20, new ArrayList<Position>(Arrays.asList(new Position(0,4), new Position(1,4), new Position(2,4))), 0.8, 1.4, 0, 0, null);
+		ArrayList<Agent> members = population.getMembers(7357L);
+		ArrayList<Agent> sameRun = population.getMembers(7357L);
+		for (int i = 0; i < members.size(); i++) {
+			assertEquals(members.get(i).getId(),sameRun.get(i).getId());
+			assertEquals(members.get(i).getInitialPosition().toString(),sameRun.get(i).getInitialPosition().toString());
+			assertEquals(members.get(i).getSpeed(),sameRun.get(i).getSpeed());
+		}
+		assertNotEquals(members.get(0).getSpeed(),population.getMembers(7358L).get(0).getSpeed());
+	}
+	
+	@Test
+	void testPostInputPopulationLackingInstructions() {
+		
+		Floorplan floorplan = new Floorplan(
+				1,
+				5,
+				5,
+				new ArrayList<Agent>(Arrays.asList(new Agent("John_Doe", new Position(0,0), 1.0))),
+				new ArrayList<Position>(Arrays.asList(
+				)),
+				new ArrayList<SensorActive>(Arrays.asList(
+				)),
+				new ArrayList<SensorPassive>(Arrays.asList(
+				)),
+				new ArrayList<Entity>(Arrays.asList(
+				))
+			);
+		floorplan.setPopulations(new ArrayList<Population>(Arrays.asList(
+				new Population("visitors", 10, new ArrayList<Position>(Arrays.asList(new Position(0,4))), 0.8, 1.4, 0, 0, null)
+			)));
+		roomConfigController.postFloorplan(floorplan);
+		
+		String input = "agent(John_Doe){goto(4,4);}";
+		
+		assertEquals("ERROR: no population instructions have been defined for population: visitors",simulationController.postInput(input));
+	}
+	
 	@Test
 	void testPing() {
 		assertEquals("pong",systemController.ping());
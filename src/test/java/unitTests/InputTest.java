@@ -22,6 +22,8 @@ import entities.library.Television;
 import geo.Position;
 import logic.Input;
 import main.Resources;
+import script.Cursor;
+import script.Script;
 
 class InputTest {
 
@@ -100,7 +102,7 @@ class InputTest {
 		String input = "agent(John_Doe){goto(5,5);}";
 		Resources.setInput(new Input());
 		Resources.getInput().setInput(input);
-		assertEquals("ERROR: coordinate is out of bounds in statement 1: goto(5,5)",Resources.getInput().test());
+		assertEquals("ERROR: coordinate is out of bounds in statement 1 at line 1, column 17: goto(5,5)",Resources.getInput().test());
 	}
 	
 	@Test
@@ -108,7 +110,7 @@ class InputTest {
 		String input = "agent(John_Doe){goto(0,1);}";
 		Resources.setInput(new Input());
 		Resources.getInput().setInput(input);
-		assertEquals("ERROR: target coordinate is not walkable in statement 1: goto(0,1)",Resources.getInput().test());
+		assertEquals("ERROR: target coordinate is not walkable in statement 1 at line 1, column 17: goto(0,1)",Resources.getInput().test());
 	}
 	
 	@Test
@@ -116,7 +118,7 @@ class InputTest {
 		String input = "agent(John_Doe){interact(radio,TURN_ON);}";
 		Resources.setInput(new Input());
 		Resources.getInput().setInput(input);
-		assertEquals("ERROR: No active sensor exists with the name specified in statement 1: interact(radio,TURN_ON)",Resources.getInput().test());
+		assertEquals("ERROR: No active sensor exists with the name specified in statement 1 at line 1, column 17: interact(radio,TURN_ON)",Resources.getInput().test());
 	}
 	
 	@Test
@@ -124,7 +126,7 @@ class InputTest {
 		String input = "agent(John_Doe){interact(television,CHANNEL5);}";
 		Resources.setInput(new Input());
 		Resources.getInput().setInput(input);
-		assertEquals("ERROR: The specified type of sensor does not accept the command in statement 1: interact(television,CHANNEL5)",Resources.getInput().test());
+		assertEquals("ERROR: The specified type of sensor does not accept the command in statement 1 at line 1, column 17: interact(television,CHANNEL5)",Resources.getInput().test());
 	}
 	
 	@Test
@@ -132,7 +134,7 @@ class InputTest {
 		String input = "agent(John_Doe){goto(kitchen);}";
 		Resources.setInput(new Input());
 		Resources.getInput().setInput(input);
-		assertEquals("ERROR: No entity or active-sensor exists with the name specified in statement 1: goto(kitchen)",Resources.getInput().test());
+		assertEquals("ERROR: No entity or active-sensor exists with the name specified in statement 1 at line 1, column 17: goto(kitchen)",Resources.getInput().test());
 	}
 	
 	@Test
@@ -140,9 +142,62 @@ class InputTest {
 		String input = "agent(John_Doe){gote(2,2);}";
 		Resources.setInput(new Input());
 		Resources.getInput().setInput(input);
-		assertEquals("ERROR: syntax error in statement 1: gote(2,2)",Resources.getInput().test());
+		assertEquals("ERROR: syntax error in statement 1 at line 1, column 17: gote(2,2)",Resources.getInput().test());
 	}
-	
+
+	@Test
+	void testInputReportsAllErrors() {
+		String input = "agent(John_Doe){\n  goto(5,5);\n  gote(2,2);\n}";
+		Resources.setInput(new Input());
+		Resources.getInput().setInput(input);
+		assertEquals("ERROR: coordinate is out of bounds in statement 1 at line 2, column 3: goto(5,5)\n"
+				+ "ERROR: syntax error in statement 2 at line 3, column 3: gote(2,2)",Resources.getInput().test());
+	}
+
+	@Test
+	void testInputNestedMacrosAndComments() {
+		String input = "/* macros\n defined before use */ macro(makeTea){goto(4,4);} // comment\n macro(morning){makeTea();wait(1)} agent(John_Doe){morning();morning()}";
+		Resources.setInput(new Input());
+		Resources.getInput().setInput(input);
+		assertEquals("consumed",Resources.getInput().test());
+		assertEquals(4,countStatements("John_Doe"));
+	}
+
+	@Test
+	void testInputRepeat() {
+		String input = "macro(makeTea){goto(4,4);wait(60)} agent(John_Doe){repeat(30){repeat(2){makeTea()} goto(vestibule)};wait(5)}";
+		Resources.setInput(new Input());
+		Resources.getInput().setInput(input);
+		assertEquals("consumed",Resources.getInput().test());
+		assertEquals(30*(2*2+1)+1,countStatements("John_Doe"));
+	}
+
+	@Test
+	void testInputRepeatError() {
+		String input = "agent(John_Doe){repeat(2){goto(9,9)}}";
+		Resources.setInput(new Input());
+		Resources.getInput().setInput(input);
+		assertEquals("ERROR: coordinate is out of bounds in statement 1 at line 1, column 27: goto(9,9)",Resources.getInput().test());
+	}
+
+	@Test
+	void testInputRecursiveMacro() {
+		String input = "macro(a){b()} macro(b){a()} agent(John_Doe){a()}";
+		Resources.setInput(new Input());
+		Resources.getInput().setInput(input);
+		assertEquals("ERROR: macro a calls itself recursively in statement 1 at line 1, column 24: a()",Resources.getInput().test());
+	}
+
+	private int countStatements(String agentId) {
+		Script script = Resources.getInput().getScript();
+		Cursor cursor = new Cursor(script, script.getAgents().get(agentId));
+		int count = 0;
+		while (cursor.next() != null) {
+			count++;
+		}
+		return count;
+	}
+
 	
 	
 	
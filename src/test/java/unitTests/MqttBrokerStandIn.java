@@ -0,0 +1,149 @@
+package unitTests;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal MQTT 3.1.1 broker on a local port for tests. It acknowledges connections and publishes of any QoS
+ * after a fixed delay, which stands in for the round trip to a remote broker, and records what has been published.
+ * Acknowledgements can be held back until they are released, so tests can observe publishes in flight.
+ */
+class MqttBrokerStandIn implements AutoCloseable {
+
+	private final ServerSocket server;
+	private final long ackDelayMicros;
+	private final ScheduledExecutorService acks = Executors.newSingleThreadScheduledExecutor();
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicInteger connections = new AtomicInteger();
+	private final Set<String> topics = ConcurrentHashMap.newKeySet();
+	private volatile CountDownLatch held = new CountDownLatch(0); // acknowledgements wait for it
+
+	MqttBrokerStandIn(long ackDelayMicros) throws IOException {
+		this.server = new ServerSocket(0);
+		this.ackDelayMicros = ackDelayMicros;
+		Thread thread = new Thread(this::accept, "mqtt-broker-stand-in");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				Thread thread = new Thread(() -> serve(socket), "mqtt-broker-stand-in-client");
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket client = socket) {
+			DataInputStream in = new DataInputStream(client.getInputStream());
+			OutputStream out = client.getOutputStream();
+			while (true) {
+				int header = in.read();
+				if (header < 0) {
+					return;
+				}
+				int length = 0;
+				for (int multiplier = 1, digit = 128; (digit & 128) != 0; multiplier *= 128) {
+					digit = in.readUnsignedByte();
+					length += (digit & 127) * multiplier;
+				}
+				byte[] body = new byte[length];
+				in.readFully(body);
+
+				switch (header >> 4) {
+				case 1: // CONNECT
+					connections.incrementAndGet();
+					send(out, new byte[] {0x20, 2, 0, 0}, 0);
+					break;
+				case 3: // PUBLISH
+					published.incrementAndGet();
+					int topicLength = ((body[0] & 0xff) << 8) | (body[1] & 0xff);
+					topics.add(new String(body, 2, topicLength, StandardCharsets.UTF_8));
+					int qos = (header >> 1) & 3;
+					if (qos > 0) {
+						byte[] ack = {(byte) (qos == 1 ? 0x40 : 0x50), 2, body[2 + topicLength], body[3 + topicLength]}; // PUBACK or PUBREC
+						send(out, ack, ackDelayMicros);
+					}
+					break;
+				case 6: // PUBREL
+					send(out, new byte[] {0x70, 2, body[0], body[1]}, 0); // PUBCOMP
+					break;
+				case 12: // PINGREQ
+					send(out, new byte[] {(byte) 0xd0, 0}, 0);
+					break;
+				case 14: // DISCONNECT
+					return;
+				default:
+					break;
+				}
+			}
+		} catch (IOException e) {
+			// the client has disconnected
+		}
+	}
+
+	// Acknowledgements are sent in order by a single thread, so a delay does not stop the broker from reading
+	private void send(OutputStream out, byte[] packet, long delayMicros) {
+		CountDownLatch gate = held;
+		acks.schedule(() -> {
+			try {
+				gate.await();
+				out.write(packet);
+				out.flush();
+			} catch (IOException e) {
+				// the client has disconnected
+			} catch (InterruptedException e) {
+				// the broker has been closed
+			}
+		}, delayMicros, TimeUnit.MICROSECONDS);
+	}
+
+	// Holds back the acknowledgements of later packets until releaseAcks()
+	void holdAcks() {
+		held = new CountDownLatch(1);
+	}
+
+	void releaseAcks() {
+		held.countDown();
+	}
+
+	int getPort() {
+		return server.getLocalPort();
+	}
+
+	long getPublished() {
+		return published.get();
+	}
+
+	int getConnections() {
+		return connections.get();
+	}
+
+	Set<String> getTopics() {
+		return topics;
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		acks.shutdownNow();
+	}
+}
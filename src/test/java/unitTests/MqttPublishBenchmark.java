@@ -0,0 +1,39 @@
+package unitTests;
+
+import main.MqttPaho;
+import main.MqttPahoAsync;
+
+/**
+ * Compares the throughput of blocking and pipelined MQTT publishes to a broker that acknowledges after two
+ * milliseconds, like a remote one. It is not run by the build, as its timings depend on the load of the machine;
+ * run main() from the test classpath.
+ */
+public class MqttPublishBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		try (MqttBrokerStandIn broker = new MqttBrokerStandIn(2000)) {
+			String port = String.valueOf(broker.getPort());
+			
+			MqttPaho blocking = new MqttPaho("localhost", port, "smarthome", 1);
+			long start = System.nanoTime();
+			for (int i = 0; i < messages; i++) {
+				blocking.publish("{\"reading\":" + i + "}");
+			}
+			long blockingNanos = System.nanoTime() - start;
+			blocking.disconnectMqtt();
+			
+			MqttPahoAsync pipelined = new MqttPahoAsync("localhost", port, "smarthome", 1, 100, null);
+			start = System.nanoTime();
+			for (int i = 0; i < messages; i++) {
+				pipelined.publish("{\"reading\":" + i + "}");
+			}
+			pipelined.flush();
+			long pipelinedNanos = System.nanoTime() - start;
+			pipelined.disconnectMqtt();
+			
+			System.out.println(String.format("MQTT QoS 1: %.0f messages/s blocking, %.0f messages/s pipelined, %.1f ms mean latency",
+					messages / (blockingNanos / 1e9), messages / (pipelinedNanos / 1e9), pipelined.getMeanLatencyMillis()));
+		}
+	}
+}
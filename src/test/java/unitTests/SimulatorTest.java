@@ -2,13 +2,36 @@ package unitTests;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import javax.xml.parsers.DocumentBuilderFactory;
+
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -18,22 +41,64 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 import controllers.SimulationController;
 import entities.Agent;
+import entities.Emission;
 import entities.Entity;
 import entities.Floorplan;
+import entities.Output;
 import entities.SensorActive;
 import entities.SensorPassive;
+import entities.SensorState;
+import entities.StateField;
+import entities.library.FloorSensor;
+import entities.library.FloorSensorGlobal;
 import entities.library.PresenceSensor;
 import entities.library.Television;
 import geo.Position;
+import logic.Checkpoint;
+import logic.CostEstimate;
+import logic.CostEstimator;
+import logic.JobStatus;
+import logic.PlanCache;
+import logic.PlaybackClock;
+import logic.RealTimeMode;
+import logic.SimulationContext;
+import logic.SimulationExecutor;
+import logic.SimulationJob;
 import logic.Simulator;
 import main.Main;
+import main.MqttPahoAsync;
 import main.Resources;
+import output.Backpressure;
+import output.ColumnarLogReader;
+import output.ColumnarLogSink;
+import output.Compression;
+import output.CsvFileSink;
+import output.DatabaseIndexing;
+import output.DatabaseSink;
+import output.Encoding;
+import output.EventLogCase;
+import output.OutputBus;
+import output.OutputSink;
+import output.QueueSink;
+import output.QueueTailer;
+import output.Reading;
+import output.ReadingEncoder;
+import output.RecordingSink;
+import output.XesSink;
 import pathfinding.AStarGrid;
+import utils.IsoTimestamp;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = Main.class)
@@ -123,9 +188,6 @@ class SimulatorTest {
 	@AfterEach
 	void tearDown() throws Exception {
 		Resources.setInput(null);
-		Resources.setLog(null);
-		Resources.setMqtt(null);
-		Resources.setRandom(null);
 		Resources.setSimulator(null);
 	}
 
@@ -175,6 +237,1323 @@ class SimulatorTest {
 		simulationController.postSimulator(simulator);	
 	}
 	
+	@Test
+	void testSimulationRepeat() throws MqttPersistenceException, JsonProcessingException, InterruptedException, MqttException {
+		
+		String input = "macro(day){goto(4,4);wait(3600);goto(1,3);interact(television,ON);wait(3600);interact(television,OFF)} agent(John_Doe){repeat(30){day()}}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_simulation",
+			7357L
+		);
+		
+		assertEquals("consumed",simulationController.postSimulator(simulator));
+		
+		// a paced run has planned only the statements up to the first wait, not the 180 statements of all days
+		simulator.setInstantSimulation(false);
+		simulator.setRelativeTime(0.001);
+		CostEstimate estimate = CostEstimator.estimate(Resources.getFloorplan(), Resources.getInput().getScript());
+		SimulationExecutor executor = new SimulationExecutor(1, 0, 10, estimate.getMemoryBytes(), 0);
+		SimulationJob job = executor.submit(simulator, Resources.getFloorplan(), Resources.getInput().getScript());
+		for (int i = 0; i < 100 && (job.getContext() == null || job.getContext().getPlannedStatements() < 3); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(180,job.getContext().getTotalStatements());
+		assertEquals(3,job.getContext().getPlannedStatements()); // goto, wait and the goto after it
+		job.cancel();
+		job.await();
+		executor.shutdown();
+	}
+	
+	@Test
+	void testConcurrentSimulationsAreIsolated() throws InterruptedException {
+		
+		String input = "agent(John_Doe){goto(4,4);wait(60);goto(1,3);interact(television,ON);wait(60);interact(television,CHANNEL2);goto(0,0)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_simulation",
+			7357L
+		);
+		
+		SimulationContext[] contexts = new SimulationContext[4];
+		Thread[] threads = new Thread[contexts.length];
+		for (int i = 0; i < contexts.length; i++) {
+			SimulationContext context = new SimulationContext(simulator, Resources.getFloorplan(), Resources.getInput().getScript());
+			contexts[i] = context;
+			threads[i] = new Thread(() -> {
+				try {
+					simulator.startSimulator(context);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		// runs with the same seed end at the same time and position, without changing the shared floorplan
+		for (SimulationContext context : contexts) {
+			assertEquals(contexts[0].getClock(),context.getClock());
+			assertEquals(new Position(0,0),context.getAgents().get(0).getPosition());
+			assertNotSame(Resources.getFloorplan().getActiveSensors().get(1),context.getActiveSensor("television"));
+		}
+		assertNull(Resources.getFloorplan().getAgents().get(0).getPosition());
+		assertNull(Resources.getFloorplan().getPassiveSensors().get(0).getLastTriggerTime());
+	}
+	
+	@Test
+	void testSimulationJob() throws InterruptedException {
+		
+		String input = "agent(John_Doe){repeat(10){goto(4,4);wait(60);goto(1,3)}}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_simulation",
+			7357L
+		);
+		
+		long id = Long.parseLong(simulationController.postJob(simulator));
+		SimulationJob job = simulationController.getJob(id);
+		for (int i = 0; i < 100 && !job.isDone(); i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(JobStatus.COMPLETED,job.getStatus());
+		assertEquals(1.0,job.getProgress());
+		assertEquals(0.0,job.getEtaSeconds());
+		assertTrue(job.getProcessedEvents() > 0);
+		assertTrue(job.getSimulatedSeconds() >= 600);
+	}
+	
+	@Test
+	void testSimulationJobCancel() throws InterruptedException {
+		
+		String input = "agent(John_Doe){goto(4,4);wait(3600);goto(1,3)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			false,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_simulation",
+			7357L
+		);
+		
+		long id = Long.parseLong(simulationController.postJob(simulator));
+		SimulationJob job = simulationController.getJob(id);
+		for (int i = 0; i < 100 && job.getStatus() != JobStatus.RUNNING; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals("cancelled",simulationController.deleteJob(id));
+		for (int i = 0; i < 100 && !job.isDone(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(JobStatus.CANCELLED,job.getStatus());
+		assertEquals("ERROR: no queued or running job exists with the ID specified",simulationController.deleteJob(id));
+	}
+	
+	@Test
+	void testSimulationAdmission() throws InterruptedException {
+		
+		String input = "agent(John_Doe){goto(4,4);wait(3600);goto(1,3)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			false,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_simulation",
+			7357L
+		);
+		
+		CostEstimate estimate = CostEstimator.estimate(Resources.getFloorplan(), Resources.getInput().getScript());
+		assertTrue(estimate.getSimulatedSeconds() >= 3600);
+		assertTrue(estimate.getEvents() > 3);
+		
+		// rejected if the estimate exceeds the budget
+		SimulationExecutor smallExecutor = new SimulationExecutor(1, 1, 10, estimate.getMemoryBytes() - 1, 0);
+		RejectedExecutionException exception = assertThrows(RejectedExecutionException.class, () -> smallExecutor.submit(simulator, Resources.getFloorplan(), Resources.getInput().getScript()));
+		assertTrue(exception.getMessage().startsWith("the simulation is estimated to need"));
+		smallExecutor.shutdown();
+		
+		// queued while a running job reserves the memory
+		SimulationExecutor executor = new SimulationExecutor(2, 1, 10, estimate.getMemoryBytes() * 3 / 2, 0);
+		SimulationJob first = executor.submit(simulator, Resources.getFloorplan(), Resources.getInput().getScript());
+		SimulationJob second = executor.submit(simulator, Resources.getFloorplan(), Resources.getInput().getScript());
+		assertEquals(JobStatus.QUEUED,second.getStatus());
+		assertThrows(RejectedExecutionException.class, () -> executor.submit(simulator, Resources.getFloorplan(), Resources.getInput().getScript()));
+		
+		// started when the memory has been released
+		assertTrue(executor.cancel(first.getId()));
+		first.await();
+		for (int i = 0; i < 100 && second.getStatus() == JobStatus.QUEUED; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(JobStatus.RUNNING,second.getStatus());
+		executor.shutdown();
+	}
+	
+	@Test
+	void testRealTimeSimulationsOnTimer() throws InterruptedException {
+		
+		String input = "agent(John_Doe){goto(4,4);wait(2);goto(1,3)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			false,
+			0.02,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_simulation",
+			7357L
+		);
+		
+		// 1000 paced simulations share two timer threads
+		CostEstimate estimate = CostEstimator.estimate(Resources.getFloorplan(), Resources.getInput().getScript());
+		SimulationExecutor executor = new SimulationExecutor(1, 0, 1000, estimate.getMemoryBytes() * 1000, 0, RealTimeMode.TIMER, 2, 1000);
+		ArrayList<SimulationJob> jobs = new ArrayList<SimulationJob>();
+		for (int i = 0; i < 1000; i++) {
+			jobs.add(executor.submit(simulator, Resources.getFloorplan(), Resources.getInput().getScript()));
+		}
+		assertEquals(1000,executor.getRunningRealTimeCount()); // with a single worker
+		for (SimulationJob job : jobs) {
+			job.await();
+			assertEquals(JobStatus.COMPLETED,job.getStatus());
+			assertEquals(1.0,job.getProgress());
+		}
+		for (int i = 0; i < 100 && executor.getRunningRealTimeCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0,executor.getRunningRealTimeCount());
+		executor.shutdown();
+	}
+	
+	@Test
+	void testOutputBusBackpressure() throws InterruptedException {
+		
+		CountDownLatch released = new CountDownLatch(1);
+		
+		// a sink that takes a millisecond per reading
+		ArrayList<String> written = new ArrayList<String>();
+		OutputSink slowSink = new OutputSink() {
+			@Override
+			public void write(Reading reading) throws Exception {
+				Thread.sleep(1);
+				written.add(reading.getName());
+			}
+			
+			@Override
+			public void close() {
+			}
+		};
+		
+		// blocking keeps every reading, in order
+		OutputBus bus = new OutputBus(4, Backpressure.BLOCK, null);
+		bus.addSink("slow", slowSink);
+		for (int i = 0; i < 50; i++) {
+			bus.publish(new Reading(LocalDateTime.now(), "Test", "reading" + i, new HashMap<String, Object>()));
+		}
+		bus.close();
+		assertEquals(50,written.size());
+		assertEquals("reading49",written.get(49));
+		assertEquals(0,bus.getDropped());
+		
+		// dropping does not wait for the sink, which does not write until all readings have been published
+		written.clear();
+		bus = new OutputBus(4, Backpressure.DROP, null);
+		bus.addSink("stuck", new OutputSink() {
+			@Override
+			public void write(Reading reading) throws Exception {
+				released.await();
+				written.add(reading.getName());
+			}
+			
+			@Override
+			public void close() {
+			}
+		});
+		for (int i = 0; i < 50; i++) {
+			bus.publish(new Reading(LocalDateTime.now(), "Test", "reading" + i, new HashMap<String, Object>()));
+		}
+		assertTrue(bus.getDropped() > 0);
+		released.countDown();
+		bus.close();
+		assertTrue(bus.getDropped() > 0);
+		assertEquals(50,written.size() + bus.getDropped());
+		for (int i = 1; i < written.size(); i++) {
+			assertTrue(Integer.parseInt(written.get(i).substring(7)) > Integer.parseInt(written.get(i - 1).substring(7)));
+		}
+	}
+	
+	@Test
+	void testMqttAsyncPublishing() throws Exception {
+		// a broker that holds back its acknowledgements until they are released
+		try (MqttBrokerStandIn broker = new MqttBrokerStandIn(0)) {
+			MqttPahoAsync pipelined = new MqttPahoAsync("localhost", String.valueOf(broker.getPort()), "smarthome", 1, 100, null);
+			broker.holdAcks();
+			
+			// publishes do not wait for their acknowledgements
+			for (int i = 0; i < 10; i++) {
+				pipelined.publish("{\"reading\":" + i + "}");
+			}
+			assertEquals(10,pipelined.getBacklog());
+			assertEquals(0,pipelined.getPublished());
+			
+			broker.releaseAcks();
+			pipelined.flush();
+			assertEquals(10,pipelined.getPublished());
+			assertEquals(0,pipelined.getBacklog());
+			pipelined.disconnectMqtt();
+			assertEquals(10,broker.getPublished());
+		}
+	}
+	
+	@Test
+	void testMqttTopicPerSensorOnConnections() throws Exception {
+		
+		String input = "agent(John_Doe){goto(1,3);wait(5);goto(4,4)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		try (MqttBrokerStandIn broker = new MqttBrokerStandIn(0)) {
+			Simulator simulator = new Simulator(
+				LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+				true,
+				1.0,
+				true,
+				1,
+				"localhost",
+				String.valueOf(broker.getPort()),
+				"smarthome",
+				false,
+				"test_simulation",
+				7357L
+			);
+			simulator.setMqttTopicPerSensor(true);
+			simulator.setMqttConnections(3);
+			
+			SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			job.run();
+			assertEquals(JobStatus.COMPLETED,job.getStatus());
+			assertEquals(3,broker.getConnections());
+			assertEquals(new HashSet<String>(Arrays.asList("smarthome/PresenceSensor/door")),broker.getTopics());
+			assertTrue(broker.getPublished() > 0);
+			
+			// dictionary ids would be defined on a single topic only
+			simulator.setOutputDictionary(true);
+			assertEquals("ERROR: \"outputDictionary\" cannot be used with MQTT output",simulator.test());
+		}
+	}
+	
+	@Test
+	void testReadingEncoderMatchesOutput() throws Exception {
+		HashMap<String, Object> state = new HashMap<String, Object>();
+		state.put("on", true);
+		state.put("channel", 7);
+		state.put("volume", 0.5);
+		state.put("program", "news \"live\"");
+		state.put("tags", Arrays.asList("a", "b"));
+		LocalDateTime time = LocalDateTime.of(2020, 1, 2, 3, 4, 5, 6007);
+		Reading reading = new Reading(time, "Television", "television", state);
+		
+		ObjectMapper mapper = new ObjectMapper();
+		String expected = mapper.writeValueAsString(new Output(time, "Television", "television", state));
+		ReadingEncoder encoder = new ReadingEncoder();
+		assertEquals(expected,new String(encoder.encodeToArray(reading), StandardCharsets.UTF_8));
+		// the buffer is reused by the next reading
+		assertEquals(expected.length(),encoder.encode(reading));
+		assertEquals(expected,new String(encoder.getBuffer(), 0, expected.length(), StandardCharsets.UTF_8));
+		
+		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn");
+		for (LocalDateTime t : Arrays.asList(time, LocalDateTime.of(999, 12, 31, 23, 59, 59, 999999999), LocalDateTime.of(10000, 1, 1, 0, 0))) {
+			assertEquals(t.format(formatter),IsoTimestamp.format(t));
+		}
+	}
+	
+	@Test
+	void testTypedSensorState() throws Exception {
+		Television television = new Television();
+		SensorState state = television.getState();
+		assertEquals("{power=OFF, channel=CHANNEL1, volume=5}",state.toString());
+		
+		// only changes mark the state dirty
+		state.clearDirty();
+		television.updateState("OFF");
+		assertFalse(state.isDirty());
+		television.updateState("ON");
+		television.updateState("VOLUME_UP");
+		assertTrue(state.isDirty());
+		assertEquals(6,state.get("volume"));
+		
+		// the typed state is encoded like the same map
+		LocalDateTime time = LocalDateTime.of(2020, 1, 2, 3, 4, 5, 6007);
+		Reading reading = new Reading(time, "Television", "television", state);
+		state.put("volume", 7); // the reading holds a copy
+		ObjectMapper mapper = new ObjectMapper();
+		String expected = mapper.writeValueAsString(new Output(time, "Television", "television", new HashMap<String, Object>(reading.getState())));
+		assertEquals(mapper.readTree(expected),mapper.readTree(new ReadingEncoder().encodeToArray(reading)));
+		assertEquals(6,reading.getState().get("volume"));
+		
+		// keys that are not declared are added to the state of that sensor only, after the declared fields
+		PresenceSensor sensor = new PresenceSensor();
+		sensor.getState().put("note", "test");
+		assertEquals("{triggered=false, note=test}",sensor.getState().toString());
+		assertEquals("{triggered=false, note=test}",sensor.getState().copy().toString());
+		assertEquals("{triggered=false}",new PresenceSensor().getState().toString());
+	}
+	
+	@Test
+	void testDeltaEncoding() throws Exception {
+		Television television = new Television();
+		LocalDateTime time = LocalDateTime.of(2020, 1, 2, 3, 4, 5, 6007);
+		ReadingEncoder encoder = new ReadingEncoder(Encoding.JSON, false, 3);
+		ObjectMapper mapper = new ObjectMapper();
+		
+		// full state in the first reading of every three, changed fields in the others
+		JsonNode first = mapper.readTree(encoder.encodeToArray(new Reading(time, "Television", "television", television.getState())));
+		assertEquals("{\"power\":\"OFF\",\"channel\":\"CHANNEL1\",\"volume\":5}",first.get("state").toString());
+		television.updateState("ON");
+		JsonNode second = mapper.readTree(encoder.encodeToArray(new Reading(time, "Television", "television", television.getState())));
+		assertNull(second.get("state"));
+		assertEquals("{\"power\":\"ON\"}",second.get("delta").toString());
+		JsonNode third = mapper.readTree(encoder.encodeToArray(new Reading(time, "Television", "television", television.getState())));
+		assertEquals("{}",third.get("delta").toString());
+		JsonNode fourth = mapper.readTree(encoder.encodeToArray(new Reading(time, "Television", "television", television.getState())));
+		assertEquals("{\"power\":\"ON\",\"channel\":\"CHANNEL1\",\"volume\":5}",fourth.get("state").toString());
+		
+		// sensors are tracked separately, and dictionary readings only hold the changed keys
+		ReadingEncoder dictionaryEncoder = new ReadingEncoder(Encoding.JSON, true, 10);
+		Television other = new Television();
+		dictionaryEncoder.encode(new Reading(time, "Television", "television", television.getState()));
+		assertEquals(3,mapper.readTree(dictionaryEncoder.encodeToArray(new Reading(time, "Television", "other", other.getState()))).get(2).size() / 2);
+		other.updateState("ON");
+		other.updateState("VOLUME_UP");
+		assertEquals("[0,\"ON\",2,6]",mapper.readTree(dictionaryEncoder.encodeToArray(new Reading(time, "Television", "other", other.getState()))).get(2).toString());
+	}
+	
+	@Test
+	void testBinaryEncodings() throws Exception {
+		HashMap<String, Object> state = new HashMap<String, Object>();
+		state.put("on", true);
+		LocalDateTime time = LocalDateTime.of(2020, 1, 2, 3, 4, 5, 6007);
+		Reading reading = new Reading(time, "Lamp", "lamp", state);
+		ObjectMapper jsonMapper = new ObjectMapper();
+		ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+		byte[] json = new ReadingEncoder().encodeToArray(reading);
+		
+		// CBOR holds the same object
+		byte[] cbor = new ReadingEncoder(Encoding.CBOR, false).encodeToArray(reading);
+		assertEquals(jsonMapper.readTree(json),cborMapper.readTree(cbor));
+		
+		// MessagePack
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(0x84);
+		expected.write(0xa4);
+		expected.write("time".getBytes());
+		expected.write(0xbd);
+		expected.write("2020-01-02T03:04:05.000006007".getBytes());
+		expected.write(0xa4);
+		expected.write("type".getBytes());
+		expected.write(0xa4);
+		expected.write("Lamp".getBytes());
+		expected.write(0xa4);
+		expected.write("name".getBytes());
+		expected.write(0xa4);
+		expected.write("lamp".getBytes());
+		expected.write(0xa5);
+		expected.write("state".getBytes());
+		expected.write(0x81);
+		expected.write(0xa2);
+		expected.write("on".getBytes());
+		expected.write(0xc3);
+		assertArrayEquals(expected.toByteArray(),new ReadingEncoder(Encoding.MESSAGEPACK, false).encodeToArray(reading));
+		
+		// the dictionary defines the sensor and keys with the first reading only
+		ReadingEncoder dictionary = new ReadingEncoder(Encoding.JSON, true);
+		assertEquals("[1577934245000006007,0,[0,true],[0,\"Lamp\",\"lamp\"],[0,\"on\"]]",new String(dictionary.encodeToArray(reading), StandardCharsets.UTF_8));
+		assertEquals("[1577934245000006007,0,[0,true]]",new String(dictionary.encodeToArray(reading), StandardCharsets.UTF_8));
+		ReadingEncoder compact = new ReadingEncoder(Encoding.MESSAGEPACK, true);
+		compact.encode(reading);
+		assertTrue(compact.encode(reading) * 4 < json.length);
+	}
+	
+	@Test
+	void testEncodedFileOutput() throws Exception {
+		
+		String input = "agent(John_Doe){goto(1,3);wait(5);goto(4,4)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_encoded_output",
+			7357L
+		);
+		simulator.setOutputEncoding(Encoding.CBOR);
+		simulator.setEncodedFileOutput(true);
+		
+		SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+		job.run();
+		assertEquals(JobStatus.COMPLETED,job.getStatus());
+		File file = new File("test_encoded_output.cbor");
+		try {
+			int readings = 0;
+			MappingIterator<JsonNode> iterator = new ObjectMapper(new CBORFactory()).readerFor(JsonNode.class).readValues(file);
+			while (iterator.hasNext()) {
+				assertEquals("door",iterator.next().get("name").asText());
+				readings++;
+			}
+			assertTrue(readings > 0);
+		} finally {
+			file.delete();
+		}
+		
+		simulator.setOutputEncoding(null);
+		assertEquals("ERROR: \"outputEncoding\" must be JSON, CBOR or MESSAGEPACK",simulator.test());
+	}
+	
+	@Test
+	void testPassiveSensorEmission() throws Exception {
+		
+		String input = "agent(John_Doe){goto(1,3);wait(600);goto(4,4)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		SensorPassive door = Resources.getFloorplan().getPassiveSensors().get(0);
+		
+		try {
+			// the agent stands on the door sensor for 600 seconds, which is read every second
+			assertTrue(countReadings(door, Emission.PERIODIC, 60) >= 600);
+			// a single reading when the door is entered
+			assertEquals(1,countReadings(door, Emission.ON_CHANGE, 60));
+			// and a heartbeat every minute
+			assertEquals(11,countReadings(door, Emission.HEARTBEAT, 60));
+			
+			door.setHeartbeatPeriods(0);
+			assertEquals("ERROR: \"heartbeatPeriods\" of the passive sensor door must be at least 1",Resources.getFloorplan().test());
+		} finally {
+			door.setEmission(Emission.PERIODIC);
+			door.setHeartbeatPeriods(60);
+		}
+	}
+	
+	private long countReadings(SensorPassive door, Emission emission, int heartbeatPeriods) throws Exception {
+		door.setEmission(emission);
+		door.setHeartbeatPeriods(heartbeatPeriods);
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_emission_output",
+			7357L
+		);
+		simulator.setEncodedFileOutput(true);
+		
+		SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+		job.run();
+		assertEquals(JobStatus.COMPLETED,job.getStatus());
+		File file = new File("test_emission_output.jsonl");
+		try (Stream<String> lines = Files.lines(file.toPath())) {
+			return lines.count();
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	void testCsvFileOutput() throws Exception {
+		
+		// typed columns per sensor type, compressed
+		String input = "agent(John_Doe){goto(1,3);wait(5);interact(television,ON)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			true,
+			"test_csv_output",
+			7357L
+		);
+		simulator.setCsvTypedColumns(true);
+		simulator.setCsvCompression(Compression.GZIP);
+		simulator.setCsvRotateSeconds(3);
+		
+		SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+		job.run();
+		assertEquals(JobStatus.COMPLETED,job.getStatus());
+		File door = new File("test_csv_output.PresenceSensor.0.csv.gz");
+		File doorRotated = new File("test_csv_output.PresenceSensor.1.csv.gz");
+		File television = new File("test_csv_output.Television.0.csv.gz");
+		try {
+			List<String> lines = readGzipLines(door);
+			assertEquals("time,name,triggered",lines.get(0));
+			assertTrue(lines.get(1).endsWith(",door,true"));
+			assertEquals(4,lines.size()); // readings of the first 3 simulated seconds
+			assertEquals("time,name,triggered",readGzipLines(doorRotated).get(0));
+			lines = readGzipLines(television);
+			assertEquals("time,name,power,channel,volume",lines.get(0));
+			assertTrue(lines.get(1).endsWith(",television,ON,CHANNEL1,5"));
+		} finally {
+			door.delete();
+			doorRotated.delete();
+			television.delete();
+		}
+		
+		// a single file with escaped values
+		CsvFileSink sink = new CsvFileSink("test_csv_escaped", false, Compression.NONE, 0, 0);
+		HashMap<String, Object> state = new HashMap<String, Object>();
+		state.put("text", "a \"quoted\", text");
+		sink.write(new Reading(LocalDateTime.of(2020, 1, 2, 3, 4, 5, 6007), "Note", "note, 1", state));
+		sink.close();
+		File file = new File("test_csv_escaped.csv");
+		try {
+			assertEquals(Arrays.asList("time,type,name,state", "2020-01-02T03:04:05.000006007,Note,\"note, 1\",\"{text=a \"\"quoted\"\", text}\""),Files.readAllLines(file.toPath()));
+		} finally {
+			file.delete();
+		}
+		
+		// sensors that are put fields by name mid-run write parts of their own instead of truncating the file
+		PresenceSensor plainDoor = new PresenceSensor();
+		PresenceSensor noted = new PresenceSensor();
+		PresenceSensor roomed = new PresenceSensor();
+		sink = new CsvFileSink("test_csv_schema", true, Compression.NONE, 0, 0);
+		LocalDateTime time = LocalDateTime.of(2020, 1, 1, 0, 0);
+		sink.write(new Reading(time, "PresenceSensor", "door", plainDoor.getState()));
+		noted.getState().put("note", "a");
+		roomed.getState().put("room", "hall");
+		for (int i = 1; i <= 2; i++) {
+			sink.write(new Reading(time.plusSeconds(i), "PresenceSensor", "noted", noted.getState()));
+			sink.write(new Reading(time.plusSeconds(i), "PresenceSensor", "roomed", roomed.getState()));
+			sink.write(new Reading(time.plusSeconds(i), "PresenceSensor", "door", plainDoor.getState()));
+		}
+		sink.close();
+		File plain = new File("test_csv_schema.PresenceSensor.csv");
+		File note = new File("test_csv_schema.PresenceSensor.1.csv");
+		File room = new File("test_csv_schema.PresenceSensor.2.csv");
+		try {
+			List<String> lines = Files.readAllLines(plain.toPath());
+			assertEquals(4,lines.size());
+			assertEquals("time,name,triggered",lines.get(0));
+			assertTrue(lines.get(3).endsWith(",door,false"));
+			lines = Files.readAllLines(note.toPath());
+			assertEquals(Arrays.asList("time,name,triggered,note", "2020-01-01T00:00:01.000000000,noted,false,a", "2020-01-01T00:00:02.000000000,noted,false,a"),lines);
+			lines = Files.readAllLines(room.toPath());
+			assertEquals(3,lines.size());
+			assertEquals("time,name,triggered,room",lines.get(0));
+			assertTrue(lines.get(2).endsWith(",roomed,false,hall"));
+		} finally {
+			plain.delete();
+			note.delete();
+			room.delete();
+		}
+	}
+	
+	@Test
+	void testColumnarLogOutput() throws Exception {
+		
+		String input = "agent(John_Doe){goto(1,3);wait(5);interact(television,ON);interact(television,VOLUME_UP)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_columnar_output",
+			7357L
+		);
+		simulator.setColumnarOutput(true);
+		simulator.setColumnarRowGroupSize(4);
+		
+		SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+		job.run();
+		assertEquals(JobStatus.COMPLETED,job.getStatus());
+		File file = new File("test_columnar_output.iotc");
+		try (ColumnarLogReader reader = new ColumnarLogReader(file.toPath())) {
+			assertTrue(reader.getRowGroupCount() > 2);
+			ColumnarLogReader.RowGroup doors = reader.getRowGroup(0);
+			assertEquals("PresenceSensor",doors.getType());
+			assertEquals(4,doors.getRowCount());
+			assertEquals("triggered",doors.getColumnName(0));
+			assertEquals(StateField.Type.BOOLEAN,doors.getColumnType(0));
+			assertTrue(doors.getBoolean(0, 3));
+			assertEquals(1000000000L,doors.getTimeNanos(1) - doors.getTimeNanos(0));
+			
+			ArrayList<String> televisions = new ArrayList<String>();
+			for (Reading reading : reader.readAll()) {
+				if (reading.getType().equals("Television")) {
+					televisions.add(reading.getName()+" "+reading.getState().get("power")+" "+reading.getState().get("volume"));
+				}
+			}
+			assertEquals(Arrays.asList("television ON 5", "television ON 6"),televisions);
+		} finally {
+			file.delete();
+		}
+		
+		// null, string and object values
+		ColumnarLogSink sink = new ColumnarLogSink("test_columnar_values", 100);
+		LocalDateTime time = LocalDateTime.of(2020, 1, 2, 3, 4, 5, 6007);
+		HashMap<String, Object> state = new HashMap<String, Object>();
+		state.put("text", "f\u00fcnf");
+		state.put("position", null);
+		sink.write(new Reading(time, "Note", "note", state));
+		state.put("position", new Position(1, 2));
+		sink.write(new Reading(time.plusDays(1), "Note", "note", state));
+		sink.close();
+		file = new File("test_columnar_values.iotc");
+		try (ColumnarLogReader reader = new ColumnarLogReader(file.toPath())) {
+			List<Reading> readings = reader.readAll();
+			assertEquals(time.plusDays(1),readings.get(1).getTime());
+			assertEquals("f\u00fcnf",readings.get(0).getState().get("text"));
+			assertNull(readings.get(0).getState().get("position"));
+			assertEquals("{\"x\":1,\"y\":2}",readings.get(1).getState().get("position"));
+		} finally {
+			file.delete();
+		}
+		
+		// readings whose fields have been put by name go to a row group with their columns
+		PresenceSensor noted = new PresenceSensor();
+		PresenceSensor roomed = new PresenceSensor();
+		noted.getState().put("note", "a");
+		roomed.getState().put("room", "hall");
+		sink = new ColumnarLogSink("test_columnar_schemas", 100);
+		sink.write(new Reading(time, "PresenceSensor", "noted", noted.getState()));
+		sink.write(new Reading(time, "PresenceSensor", "roomed", roomed.getState()));
+		sink.close();
+		file = new File("test_columnar_schemas.iotc");
+		try (ColumnarLogReader reader = new ColumnarLogReader(file.toPath())) {
+			HashMap<String, Map<String, Object>> states = new HashMap<String, Map<String, Object>>();
+			for (Reading reading : reader.readAll()) {
+				states.put(reading.getName(), reading.getState());
+			}
+			assertEquals(Map.of("triggered", false, "note", "a"),states.get("noted"));
+			assertEquals(Map.of("triggered", false, "room", "hall"),states.get("roomed"));
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	void testEventLogOutput() throws Exception {
+		
+		String input = "agent(John_Doe){goto(1,3);wait(5);interact(television,ON)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_event_log",
+			7357L
+		);
+		simulator.setXesOutput(true);
+		simulator.setXesSpillEvents(2); // merges sorted chunks
+		simulator.setOcelOutput(true);
+		
+		SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+		job.run();
+		assertEquals(JobStatus.COMPLETED,job.getStatus());
+		File xes = new File("test_event_log.xes");
+		File ocel = new File("test_event_log.ocel.json");
+		try {
+			// a trace of the agent, with the readings of the sensors it was at in order of time
+			Document log = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xes);
+			NodeList traces = log.getElementsByTagName("trace");
+			assertEquals(1,traces.getLength());
+			NodeList events = ((Element) traces.item(0)).getElementsByTagName("event");
+			assertTrue(events.getLength() > 2);
+			String previous = "";
+			for (int i = 0; i < events.getLength(); i++) {
+				Element time = (Element) ((Element) events.item(i)).getElementsByTagName("date").item(0);
+				assertTrue(time.getAttribute("value").compareTo(previous) >= 0);
+				previous = time.getAttribute("value");
+			}
+			Element last = (Element) events.item(events.getLength() - 1);
+			assertEquals("television",((Element) last.getElementsByTagName("string").item(0)).getAttribute("value"));
+			
+			// events related to the sensor and agent objects
+			JsonNode eventLog = new ObjectMapper().readTree(ocel);
+			assertEquals(events.getLength(),eventLog.get("events").size());
+			JsonNode event = eventLog.get("events").get(0);
+			assertEquals("PresenceSensor",event.get("type").asText());
+			assertEquals("[{\"name\":\"triggered\",\"value\":true}]",event.get("attributes").toString());
+			assertEquals("[{\"objectId\":\"door\",\"qualifier\":\"sensor\"},{\"objectId\":\"John_Doe\",\"qualifier\":\"agent\"}]",event.get("relationships").toString());
+			assertEquals("[{\"id\":\"door\",\"type\":\"PresenceSensor\"},{\"id\":\"John_Doe\",\"type\":\"Agent\"},{\"id\":\"television\",\"type\":\"Television\"}]",eventLog.get("objects").toString());
+		} finally {
+			xes.delete();
+			ocel.delete();
+		}
+		
+		// more chunks than are read at once are merged in passes
+		XesSink sink = new XesSink("test_event_log_merged", EventLogCase.SENSOR, 1);
+		LocalDateTime time = LocalDateTime.of(2020, 1, 1, 0, 0);
+		for (int i = 0; i < 2 * XesSink.MERGE_INPUTS; i++) {
+			for (String name : Arrays.asList("door", "window", "television")) {
+				HashMap<String, Object> state = new HashMap<String, Object>();
+				state.put("count", i);
+				sink.write(new Reading(time.plusSeconds(i), "Counter", name, state));
+			}
+		}
+		assertEquals(6 * XesSink.MERGE_INPUTS - 1,sink.getMetrics().get("chunks")); // the last event is still in memory
+		sink.close();
+		xes = new File("test_event_log_merged.xes");
+		try {
+			NodeList traces = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xes).getElementsByTagName("trace");
+			assertEquals(3,traces.getLength());
+			for (int i = 0; i < traces.getLength(); i++) {
+				NodeList counts = ((Element) traces.item(i)).getElementsByTagName("int");
+				assertEquals(2 * XesSink.MERGE_INPUTS,counts.getLength());
+				for (int j = 0; j < counts.getLength(); j++) {
+					assertEquals(String.valueOf(j),((Element) counts.item(j)).getAttribute("value"));
+				}
+			}
+			assertEquals(0,new File(".").getAbsoluteFile().listFiles((directory, name) -> name.startsWith("xes-chunk-")).length);
+		} finally {
+			xes.delete();
+		}
+	}
+	
+	@Test
+	void testDatabaseOutput() throws Exception {
+		
+		String input = "agent(John_Doe){goto(1,3);wait(5);interact(television,ON)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			false,
+			"test_database",
+			7357L
+		);
+		simulator.setDatabaseOutput(true);
+		simulator.setDatabaseBatchSize(2); // commits while the readings are inserted
+		assertEquals(DatabaseIndexing.AFTER_LOAD,simulator.getDatabaseIndexing());
+		
+		SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+		job.run();
+		assertEquals(JobStatus.COMPLETED,job.getStatus());
+		File file = new File("test_database" + DatabaseSink.FILE_EXTENSION);
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:" + new File("test_database").getAbsolutePath());
+				Statement statement = connection.createStatement()) {
+			// a table per sensor type with typed columns
+			ResultSet result = statement.executeQuery("SELECT COUNT(*), MIN(\"time\") FROM \"PresenceSensor\" WHERE \"name\" = 'door' AND \"triggered\"");
+			assertTrue(result.next());
+			assertEquals(6,result.getInt(1));
+			assertEquals(LocalDateTime.parse("2020-01-01T00:00:04.121320343"),result.getObject(2, LocalDateTime.class));
+			result = statement.executeQuery("SELECT \"power\", \"volume\" FROM \"Television\"");
+			assertTrue(result.next());
+			assertEquals("ON",result.getString(1));
+			assertEquals(5,result.getInt(2));
+			
+			// indexes created after the load
+			result = statement.executeQuery("SELECT COUNT(DISTINCT INDEX_NAME) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'Television'");
+			assertTrue(result.next());
+			assertEquals(2,result.getInt(1));
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	void testQueueOutput() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		LocalDateTime time = LocalDateTime.of(2020, 1, 1, 0, 0);
+		int count = 1000;
+		
+		// a tailer started before the queue exists reads the readings while they are appended
+		QueueTailer tailer = new QueueTailer("test_queue");
+		ArrayList<String> received = new ArrayList<String>();
+		Thread consumer = new Thread(() -> {
+			try {
+				while (!tailer.isEnded()) {
+					byte[] payload = tailer.pollBytes();
+					if (payload == null) {
+						Thread.onSpinWait();
+					} else {
+						received.add(mapper.readTree(payload).get("name").asText());
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		consumer.start();
+		
+		QueueSink sink = new QueueSink("test_queue", new ReadingEncoder(), 4096);
+		try {
+			for (int i = 0; i < count; i++) {
+				HashMap<String, Object> state = new HashMap<String, Object>();
+				state.put("value", i);
+				sink.write(new Reading(time.plusSeconds(i), "Test", "reading" + i, state));
+			}
+			sink.close();
+			consumer.join(10000);
+			assertFalse(consumer.isAlive());
+			assertTrue((long) sink.getMetrics().get("segments") > 10);
+			assertEquals(Encoding.JSON,tailer.getEncoding());
+			assertEquals(count,received.size());
+			for (int i = 0; i < count; i++) {
+				assertEquals("reading" + i,received.get(i));
+			}
+		} finally {
+			tailer.close();
+			for (long index = 0; Files.deleteIfExists(new File("test_queue." + index + QueueSink.FILE_EXTENSION).toPath()); index++) {
+			}
+		}
+	}
+	
+	@Test
+	void testRecordAndReplay() throws Exception {
+		
+		String input = "agent(John_Doe){goto(1,3);wait(5);interact(television,ON)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			true,
+			"test_recording",
+			7357L
+		);
+		simulator.setCsvTypedColumns(true);
+		simulator.setRecordOutput(true);
+		SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+		job.run();
+		assertEquals(JobStatus.COMPLETED,job.getStatus());
+		
+		// the replay needs no floorplan or input, and writes the same readings
+		Simulator replay = new Simulator(null, false, 0.01, false, 0, "broker.hivemq.com", "1883", "smarthome", true, "test_replayed", null);
+		replay.setCsvTypedColumns(true);
+		replay.setReplayFileName("test_recording" + RecordingSink.FILE_EXTENSION);
+		assertEquals("consumed",replay.test());
+		SimulationJob replayJob = new SimulationJob(1, replay, null, null, null);
+		replayJob.run();
+		try {
+			assertEquals(JobStatus.COMPLETED,replayJob.getStatus());
+			assertEquals(7,replayJob.getProcessedEvents());
+			assertEquals(1.0,replayJob.getProgress());
+			assertEquals(job.getSimulatedTime(),replayJob.getSimulatedTime());
+			assertTrue(replayJob.getElapsedSeconds() >= 0.09); // paced at a hundredth of the 9.8 simulated seconds
+			for (String type : new String[] {"PresenceSensor", "Television"}) {
+				assertEquals(Files.readAllLines(new File("test_recording." + type + ".csv").toPath()),Files.readAllLines(new File("test_replayed." + type + ".csv").toPath()));
+			}
+		} finally {
+			new File("test_recording" + RecordingSink.FILE_EXTENSION).delete();
+			for (String name : new String[] {"test_recording", "test_replayed"}) {
+				new File(name + ".PresenceSensor.csv").delete();
+				new File(name + ".Television.csv").delete();
+			}
+		}
+		
+		replay.setReplayFileName("test_missing" + RecordingSink.FILE_EXTENSION);
+		assertEquals("ERROR: the recording \"test_missing.iotr\" does not exist",replay.test());
+	}
+	
+	@Test
+	void testResultCache() throws Exception {
+		
+		String input = "agent(John_Doe){goto(1,3);wait(5);interact(television,ON)}";
+		assertEquals("consumed",simulationController.postInput(input));
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			true,
+			"test_cached",
+			7357L
+		);
+		simulator.setCsvTypedColumns(true);
+		simulator.setCacheDirectory("test_cache");
+		File cache = new File("test_cache");
+		try {
+			// the first run is simulated and cached, the second one replayed from the cache
+			SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			job.run();
+			assertEquals(JobStatus.COMPLETED,job.getStatus());
+			assertFalse(job.isCacheHit());
+			assertEquals(1,cache.listFiles().length);
+			List<String> simulated = Files.readAllLines(new File("test_cached.Television.csv").toPath());
+			
+			SimulationJob cachedJob = new SimulationJob(1, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			cachedJob.run();
+			assertEquals(JobStatus.COMPLETED,cachedJob.getStatus());
+			assertTrue(cachedJob.isCacheHit());
+			assertEquals(job.getSimulatedTime(),cachedJob.getSimulatedTime());
+			assertEquals(simulated,Files.readAllLines(new File("test_cached.Television.csv").toPath()));
+			
+			// verified runs are simulated and compared with the cache
+			simulator.setCacheVerify(true);
+			SimulationJob verifiedJob = new SimulationJob(2, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			verifiedJob.run();
+			assertEquals(JobStatus.COMPLETED,verifiedJob.getStatus());
+			assertFalse(verifiedJob.isCacheHit());
+			assertEquals(1,cache.listFiles().length);
+			
+			// another seed is another entry, which evicts the first one if only one fits
+			simulator.setCacheVerify(false);
+			simulator.setSeed(7358L);
+			simulator.setCacheMaxBytes(cache.listFiles()[0].length() + 1);
+			new SimulationJob(3, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null).run();
+			assertEquals(1,cache.listFiles().length);
+			simulator.setSeed(7357L);
+			SimulationJob evictedJob = new SimulationJob(4, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			evictedJob.run();
+			assertFalse(evictedJob.isCacheHit());
+			
+			// the recording for the cache is complete when the other outputs drop readings
+			simulator.setSeed(7359L);
+			simulator.setBackpressure(Backpressure.DROP);
+			simulator.setOutputBufferSize(1);
+			new SimulationJob(5, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null).run();
+			simulator.setBackpressure(Backpressure.BLOCK);
+			simulator.setOutputBufferSize(8192);
+			simulator.setCacheVerify(true);
+			SimulationJob droppingJob = new SimulationJob(6, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			droppingJob.run();
+			assertEquals(JobStatus.COMPLETED,droppingJob.getStatus());
+			simulator.setCacheVerify(false);
+			
+			// the recording of a run whose output has failed is deleted
+			simulator.setSeed(7360L);
+			simulator.setCsvFileName("test_missing/test_cached");
+			int entries = cache.listFiles().length;
+			SimulationJob failedJob = new SimulationJob(7, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			failedJob.run();
+			assertEquals(JobStatus.FAILED,failedJob.getStatus());
+			assertEquals(entries,cache.listFiles().length);
+			simulator.setCsvFileName("test_cached");
+			
+			// incremental planning is another entry, whichever planning mode has been cached first
+			simulator.setCacheMaxBytes(1L << 30);
+			for (long seed : new long[] {7361L, 7362L}) {
+				simulator.setSeed(seed);
+				boolean incremental = seed == 7362L;
+				for (int i = 0; i < 4; i++) {
+					simulator.setIncrementalPlanning(incremental);
+					SimulationJob plannedJob = new SimulationJob(8 + i, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+					plannedJob.run();
+					assertEquals(JobStatus.COMPLETED,plannedJob.getStatus());
+					assertEquals(i >= 2,plannedJob.isCacheHit());
+					incremental = !incremental;
+				}
+			}
+			simulator.setIncrementalPlanning(false);
+		} finally {
+			if (cache.listFiles() != null) {
+				for (File file : cache.listFiles()) {
+					file.delete();
+				}
+			}
+			cache.delete();
+			new File("test_cached.PresenceSensor.csv").delete();
+			new File("test_cached.Television.csv").delete();
+		}
+		
+		simulator.setCacheMaxBytes(0);
+		assertEquals("ERROR: \"cacheMaxBytes\" has not been defined as a positive integer",simulator.test());
+		simulator.setCacheMaxBytes(1L << 30);
+		simulator.setBackpressure(null);
+		assertEquals("ERROR: \"backpressure\" must be BLOCK, DROP or SAMPLE",simulator.test());
+	}
+	
+	@Test
+	void testIncrementalPlanning() throws Exception {
+		
+		ArrayList<Agent> agents = Resources.getFloorplan().getAgents();
+		ArrayList<Agent> twoAgents = new ArrayList<Agent>(agents);
+		twoAgents.add(new Agent("Jane_Roe", new Position(4,4), 1.5));
+		Resources.getFloorplan().setAgents(twoAgents);
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			true,
+			"test_planned",
+			7357L
+		);
+		simulator.setCsvTypedColumns(true);
+		simulator.setIncrementalPlanning(true);
+		PlanCache plans = PlanCache.getShared();
+		plans.clear();
+		try {
+			String unchanged = "agent(John_Doe){goto(1,3);wait(5);interact(television,ON)}";
+			assertEquals("consumed",simulationController.postInput(unchanged + "agent(Jane_Roe){goto(0,4);goto(4,0)}"));
+			new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null).run();
+			long hits = (Long) plans.getMetrics().get("hits");
+			long misses = (Long) plans.getMetrics().get("misses");
+			
+			// only the agent whose instructions have changed is planned again
+			assertEquals("consumed",simulationController.postInput(unchanged + "agent(Jane_Roe){goto(0,4);wait(2);goto(4,0)}"));
+			SimulationJob job = new SimulationJob(1, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			job.run();
+			assertEquals(JobStatus.COMPLETED,job.getStatus());
+			assertEquals(hits + 1,plans.getMetrics().get("hits"));
+			assertEquals(misses + 1,plans.getMetrics().get("misses"));
+			List<String> presence = Files.readAllLines(new File("test_planned.PresenceSensor.csv").toPath());
+			List<String> television = Files.readAllLines(new File("test_planned.Television.csv").toPath());
+			
+			// and the run is the same as if every agent had been planned again
+			plans.clear();
+			SimulationJob replannedJob = new SimulationJob(2, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			replannedJob.run();
+			assertEquals(job.getSimulatedTime(),replannedJob.getSimulatedTime());
+			assertEquals(job.getProcessedEvents(),replannedJob.getProcessedEvents());
+			assertEquals(presence,Files.readAllLines(new File("test_planned.PresenceSensor.csv").toPath()));
+			assertEquals(television,Files.readAllLines(new File("test_planned.Television.csv").toPath()));
+		} finally {
+			Resources.getFloorplan().setAgents(agents);
+			plans.clear();
+			new File("test_planned.PresenceSensor.csv").delete();
+			new File("test_planned.Television.csv").delete();
+		}
+		
+		simulator.setPlanCacheEvents(0);
+		assertEquals("ERROR: \"planCacheEvents\" has not been defined as a positive integer",simulator.test());
+	}
+	
+	@Test
+	void testCheckpointAndResume() throws Exception {
+		
+		Simulator simulator = new Simulator(
+			LocalDateTime.parse("2020-01-01T00:00:00.000000000", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnn")),
+			true,
+			1.0,
+			false,
+			0,
+			"broker.hivemq.com",
+			"1883",
+			"smarthome",
+			true,
+			"test_checkpointed",
+			7357L
+		);
+		simulator.setCsvTypedColumns(true);
+		simulator.setCheckpointSeconds(250); // taken while the agent waits at the window, before the last goto(window)
+		
+		// sensors with positions in their state, the floor sensor only emits when the position changes
+		ArrayList<SensorPassive> passiveSensors = Resources.getFloorplan().getPassiveSensors();
+		ArrayList<Position> floor = new ArrayList<Position>();
+		for (int x = 0; x < 5; x++) {
+			for (int y = 0; y < 5; y++) {
+				floor.add(new Position(x,y));
+			}
+		}
+		FloorSensor floorSensor = new FloorSensor();
+		floorSensor.setName("floor");
+		floorSensor.setPhysicalArea(floor);
+		floorSensor.setInteractArea(floor);
+		floorSensor.setWalkable(true);
+		floorSensor.setTriggerFrequency(1000000000L);
+		floorSensor.setEmission(Emission.ON_CHANGE);
+		FloorSensorGlobal floorSensorGlobal = new FloorSensorGlobal();
+		floorSensorGlobal.setName("floorGlobal");
+		floorSensorGlobal.setPhysicalArea(new ArrayList<Position>());
+		floorSensorGlobal.setInteractArea(new ArrayList<Position>());
+		floorSensorGlobal.setWalkable(true);
+		floorSensorGlobal.setTriggerFrequency(1000000000L);
+		ArrayList<SensorPassive> sensors = new ArrayList<SensorPassive>(passiveSensors);
+		sensors.add(floorSensor);
+		sensors.add(floorSensorGlobal);
+		Resources.getFloorplan().setPassiveSensors(sensors);
+		try {
+			assertEquals("consumed",simulationController.postInput("agent(John_Doe){repeat(3){goto(4,4);wait(60);goto(window);wait(60);goto(1,3)}}"));
+			SimulationJob job = new SimulationJob(0, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			job.run();
+			assertEquals(JobStatus.COMPLETED,job.getStatus());
+			assertTrue(new File("test_checkpointed" + Checkpoint.FILE_EXTENSION).isFile());
+			LocalDateTime checkpointTime = Checkpoint.getTime(new File("test_checkpointed" + Checkpoint.FILE_EXTENSION).toPath());
+			
+			// the resumed run writes the readings after the last checkpoint
+			simulator.setCheckpointSeconds(0);
+			simulator.setCsvFileName("test_resumed");
+			simulator.setResumeFileName("test_checkpointed" + Checkpoint.FILE_EXTENSION);
+			assertEquals("consumed",simulator.test());
+			SimulationJob resumedJob = new SimulationJob(1, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			resumedJob.run();
+			assertEquals(JobStatus.COMPLETED,resumedJob.getStatus());
+			assertEquals(job.getSimulatedTime(),resumedJob.getSimulatedTime());
+			for (String sensor : Arrays.asList("PresenceSensor", "FloorSensor", "FloorSensorGlobal")) {
+				List<String> lines = Files.readAllLines(new File("test_checkpointed." + sensor + ".csv").toPath());
+				List<String> resumed = Files.readAllLines(new File("test_resumed." + sensor + ".csv").toPath());
+				assertTrue(resumed.size() > 1);
+				assertEquals(lines.get(0),resumed.get(0));
+				assertEquals(lines.subList(lines.size() - resumed.size() + 1, lines.size()),resumed.subList(1, resumed.size()), sensor);
+			}
+			List<String> resumedGlobal = Files.readAllLines(new File("test_resumed.FloorSensorGlobal.csv").toPath());
+			List<String> resumedFloor = Files.readAllLines(new File("test_resumed.FloorSensor.csv").toPath());
+			
+			// a fork continues from the same checkpoint with another random generator and picks another side of the window
+			simulator.setCsvFileName("test_forked");
+			simulator.setForkSeed(1L);
+			SimulationJob forkedJob = new SimulationJob(2, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			forkedJob.run();
+			assertEquals(JobStatus.COMPLETED,forkedJob.getStatus());
+			List<String> forkedGlobal = Files.readAllLines(new File("test_forked.FloorSensorGlobal.csv").toPath());
+			assertEquals(resumedGlobal.get(1),forkedGlobal.get(1));
+			LocalDateTime firstReading = LocalDateTime.parse(forkedGlobal.get(1).substring(0, forkedGlobal.get(1).indexOf(',')));
+			assertFalse(firstReading.isBefore(checkpointTime));
+			assertTrue(firstReading.isBefore(checkpointTime.plusSeconds(1)));
+			assertNotEquals(resumedFloor,Files.readAllLines(new File("test_forked.FloorSensor.csv").toPath()));
+			
+			// a checkpoint cannot be resumed with another input
+			assertEquals("consumed",simulationController.postInput("agent(John_Doe){goto(4,4)}"));
+			SimulationJob otherJob = new SimulationJob(3, simulator, Resources.getFloorplan(), Resources.getInput().getScript(), null);
+			otherJob.run();
+			assertEquals(JobStatus.FAILED,otherJob.getStatus());
+		} finally {
+			Resources.getFloorplan().setPassiveSensors(passiveSensors);
+			new File("test_checkpointed" + Checkpoint.FILE_EXTENSION).delete();
+			for (String run : Arrays.asList("test_checkpointed", "test_resumed", "test_forked")) {
+				for (String sensor : Arrays.asList("PresenceSensor", "FloorSensor", "FloorSensorGlobal")) {
+					new File(run + "." + sensor + ".csv").delete();
+				}
+			}
+		}
+		
+		assertEquals("ERROR: the checkpoint \"test_checkpointed" + Checkpoint.FILE_EXTENSION + "\" does not exist",simulator.test());
+		simulator.setResumeFileName(null);
+		simulator.setCheckpointSeconds(100);
+		simulator.setIncrementalPlanning(true);
+		assertEquals("ERROR: runs with \"incrementalPlanning\" cannot be checkpointed or resumed",simulator.test());
+		simulator.setIncrementalPlanning(false);
+		simulator.setCheckpointSeconds(-1);
+		assertEquals("ERROR: \"checkpointSeconds\" must not be negative",simulator.test());
+	}
+	
+	private List<String> readGzipLines(File file) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+			return reader.lines().collect(Collectors.toList());
+		}
+	}
+	
+	@Test
+	void testRealTimePlaybackDoesNotDrift() throws InterruptedException {
+		// 2000 events of one simulated second at 0.5 milliseconds each
+		PlaybackClock playback = new PlaybackClock(0.0005, 100000);
+		long start = System.nanoTime();
+		for (int i = 1; i <= 2000; i++) {
+			playback.awaitSimulatedTime(i * 1000000000L);
+		}
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+		assertTrue(elapsedSeconds >= 0.9999, "ended early after " + elapsedSeconds + " seconds");
+		assertTrue(elapsedSeconds < 1.05, "drifted to " + elapsedSeconds + " seconds");
+	}
+	
+	@Test
+	void testRealTimePlaybackPauseAndSpeed() throws InterruptedException {
+		PlaybackClock playback = new PlaybackClock(1.0, 1000000);
+		playback.pause();
+		Thread thread = new Thread(() -> {
+			try {
+				playback.awaitSimulatedTime(10000000L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		thread.start();
+		thread.join(100);
+		assertTrue(thread.isAlive());
+		
+		// a simulated hour at 10 nanoseconds per simulated second is due right away
+		playback.setRelativeTime(0.00000001);
+		playback.resume();
+		thread.join(1000);
+		assertFalse(thread.isAlive());
+		playback.awaitSimulatedTime(3600000000000L);
+	}
+	
 	@Test
 	void testSimulationRelativeTimeZero() throws MqttPersistenceException, JsonProcessingException, InterruptedException, MqttException {
 		